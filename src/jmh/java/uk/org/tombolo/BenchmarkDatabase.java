@@ -0,0 +1,35 @@
+package uk.org.tombolo;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.org.tombolo.core.utils.DatabaseUtils;
+import uk.org.tombolo.core.utils.HibernateUtil;
+
+/**
+ * BenchmarkDatabase.java
+ * Benchmark state giving access to the database. Like the tests, benchmarks run against the test database, which
+ * is cleared before and after every trial. States that need the database take this one in their setup method.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    @Setup(Level.Trial)
+    public void startDatabase() {
+        // Ensure we aren't clobbering our production DB
+        if (!System.getProperty("environment", "").equals("test")) {
+            throw new Error("Not running in test mode. You're going to clobber your database!");
+        }
+
+        HibernateUtil.startup();
+        DatabaseUtils.clearAllData();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() {
+        DatabaseUtils.clearAllData();
+        HibernateUtil.shutdown();
+    }
+}
@@ -0,0 +1,64 @@
+package uk.org.tombolo.core.utils;
+
+import org.openjdk.jmh.annotations.*;
+import uk.org.tombolo.BenchmarkDatabase;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.core.TimedValue;
+import uk.org.tombolo.importer.ParsingException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the timestamps found in datasources, and saving batches of timed values to the database.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimedValueUtilsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Timestamps {
+        // One of each of the supported formats
+        @Param({"2011-01-01T00:00:00", "2011", "2011 - 12", "2011/12", "Jan-11", "January 2011"})
+        String timestamp;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+        @Param({"1000", "10000"})
+        int batchSize;
+
+        private static final int TIMESTAMPS_PER_SUBJECT = 10;
+
+        private List<TimedValue> timedValues;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase database) {
+            SubjectType subjectType = TestFactory.makeSubjectType(TestFactory.DEFAULT_PROVIDER, "benchmark", "Benchmark");
+            Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "benchmark");
+            List<Subject> subjects = TestFactory.makeSyntheticSubjects(subjectType, "benchmark",
+                    batchSize / TIMESTAMPS_PER_SUBJECT);
+            timedValues = TestFactory.buildSyntheticTimedValues(subjects, attribute, TIMESTAMPS_PER_SUBJECT, 42L);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LocalDateTime parseTimestampString(Timestamps timestamps) throws ParsingException {
+        return TimedValueUtils.parseTimestampString(timestamps.timestamp);
+    }
+
+    // After the first invocation every value already exists, so this measures the update path of the upsert
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int save(Batch batch) {
+        return TimedValueUtils.save(batch.timedValues);
+    }
+}
@@ -0,0 +1,78 @@
+package uk.org.tombolo.execution;
+
+import org.openjdk.jmh.annotations.*;
+import uk.org.tombolo.FieldBuilder;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.field.Field;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and insertions of field values in the FieldCache, from one and from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FieldCacheBenchmark {
+    @Param({"1000", "100000"})
+    int subjectCount;
+
+    private FieldCache fieldCache;
+    private Field doubleField;
+    private Field stringField;
+    private List<Subject> subjects;
+
+    @Setup
+    public void setUp() throws Exception {
+        fieldCache = new FieldCache();
+        doubleField = FieldBuilder.constantField("doubleField", "1").build().toField();
+        stringField = FieldBuilder.constantField("stringField", "value").build().toField();
+        subjects = TestFactory.buildSyntheticSubjects(
+                new SubjectType(TestFactory.DEFAULT_PROVIDER, "benchmark", "Benchmark"), subjectCount);
+
+        for (Subject subject : subjects) {
+            fieldCache.putCachedDouble(doubleField, subject, subject.getId());
+            fieldCache.putCachedValue(stringField, subject, subject.getLabel());
+        }
+    }
+
+    // Each thread walks through the subjects on its own
+    @State(Scope.Thread)
+    public static class SubjectPosition {
+        private int next = 0;
+
+        Subject next(List<Subject> subjects) {
+            Subject subject = subjects.get(next);
+            next = (next + 1) % subjects.size();
+            return subject;
+        }
+    }
+
+    @Benchmark
+    public Double getCachedDouble(SubjectPosition position) {
+        return fieldCache.getCachedDouble(doubleField, position.next(subjects));
+    }
+
+    @Benchmark
+    public String getCachedValue(SubjectPosition position) {
+        return fieldCache.getChachedValue(stringField, position.next(subjects));
+    }
+
+    @Benchmark
+    public void putCachedDouble(SubjectPosition position) {
+        Subject subject = position.next(subjects);
+        fieldCache.putCachedDouble(doubleField, subject, subject.getId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Double getCachedDoubleConcurrently(SubjectPosition position) {
+        return fieldCache.getCachedDouble(doubleField, position.next(subjects));
+    }
+}
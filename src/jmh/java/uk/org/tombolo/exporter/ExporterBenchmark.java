@@ -0,0 +1,54 @@
+package uk.org.tombolo.exporter;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.*;
+import uk.org.tombolo.FieldBuilder;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.field.Field;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing of subjects and their field values by the CSV and GeoJson exporters.
+ * The fields are constant, so this measures the cost of the exporters themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExporterBenchmark {
+    @Param({"1000", "10000"})
+    int subjectCount;
+
+    @Param({"1", "10"})
+    int fieldCount;
+
+    private List<Subject> subjects;
+    private List<Field> fields;
+
+    @Setup
+    public void setUp() throws Exception {
+        subjects = TestFactory.buildSyntheticSubjects(
+                new SubjectType(TestFactory.DEFAULT_PROVIDER, "benchmark", "Benchmark"), subjectCount);
+        fields = new ArrayList<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(FieldBuilder.constantField("field" + i, String.valueOf(i)).build().toField());
+        }
+    }
+
+    @Benchmark
+    public void writeCSV() throws Exception {
+        new CSVExporter().write(new NullWriter(), subjects, fields, true, 1);
+    }
+
+    @Benchmark
+    public void writeGeoJson() throws Exception {
+        new GeoJsonExporter().write(new NullWriter(), subjects, fields, true, 1);
+    }
+}
@@ -0,0 +1,53 @@
+package uk.org.tombolo.field.transformation;
+
+import org.openjdk.jmh.annotations.*;
+import uk.org.tombolo.FieldBuilder;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.recipe.FieldRecipe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of a DescriptiveStatisticsField over constant fields. The field has no cache, so every evaluation
+ * computes the statistic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DescriptiveStatisticsFieldBenchmark {
+    @Param({"mean", "median", "stdev"})
+    DescriptiveStatisticsField.Statistic statistic;
+
+    @Param({"4", "32"})
+    int fieldCount;
+
+    private DescriptiveStatisticsField field;
+    private List<Subject> subjects;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        List<FieldRecipe> fields = new ArrayList<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(FieldBuilder.constantField("field" + i, String.valueOf(i)).build());
+        }
+        field = new DescriptiveStatisticsField("statistic", statistic, fields);
+        field.initialize();
+        subjects = TestFactory.buildSyntheticSubjects(
+                new SubjectType(TestFactory.DEFAULT_PROVIDER, "benchmark", "Benchmark"), 1000);
+    }
+
+    @Benchmark
+    public String valueForSubject() throws Exception {
+        Subject subject = subjects.get(next);
+        next = (next + 1) % subjects.size();
+        return field.valueForSubject(subject, null);
+    }
+}
@@ -0,0 +1,54 @@
+package uk.org.tombolo.field.transformation;
+
+import org.openjdk.jmh.annotations.*;
+import uk.org.tombolo.BenchmarkDatabase;
+import uk.org.tombolo.FieldBuilder;
+import uk.org.tombolo.SubjectSpecificationBuilder;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.execution.FieldCache;
+import uk.org.tombolo.recipe.FieldRecipe;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Initialisation of a PercentilesField, which computes its value field for all the normalisation subjects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PercentilesFieldBenchmark {
+    @Param({"1000", "10000"})
+    int subjectCount;
+
+    private FieldRecipe recipe;
+
+    @Setup
+    public void setUp(BenchmarkDatabase database) throws Exception {
+        SubjectType subjectType = TestFactory.makeSubjectType(TestFactory.DEFAULT_PROVIDER, "benchmark", "Benchmark");
+        Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "benchmark");
+        List<Subject> subjects = TestFactory.makeSyntheticSubjects(subjectType, "benchmark", subjectCount);
+        TestFactory.makeSyntheticTimedValues(subjects, attribute, 1, 42L);
+
+        recipe = FieldBuilder.percentilesField("percentile", 10, false)
+                .set("valueField", FieldBuilder.latestValue(TestFactory.DEFAULT_PROVIDER.getLabel(), "benchmark"))
+                .set("normalizationSubjects", Collections.singletonList(
+                        new SubjectSpecificationBuilder(TestFactory.DEFAULT_PROVIDER.getLabel(), "benchmark")))
+                .build();
+    }
+
+    @Benchmark
+    public PercentilesField initialize() throws Exception {
+        PercentilesField field = (PercentilesField) recipe.toField();
+        field.setFieldCache(new FieldCache());
+        field.initialize();
+        return field;
+    }
+}
@@ -4,6 +4,7 @@ import com.github.fge.jsonschema.core.report.ProcessingReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.importer.ConfigurationException;
+import uk.org.tombolo.importer.DownloadCache;
 import uk.org.tombolo.importer.DownloadUtils;
 import uk.org.tombolo.recipe.DataExportRecipe;
 import uk.org.tombolo.recipe.DataExportRecipeValidator;
@@ -23,6 +24,8 @@ public abstract class AbstractRunner {
     private static final String SYSTEM_PROPERTIES_PROPERTY_NAME = "System properties";
     private static final String SYSTEM_PROPERTIES_FILENAME = "gradle.properties";
     private static final String FILE_DOWNLOAD_CACHE = "fileDownloadCache";
+    private static final String FILE_DOWNLOAD_CACHE_MAX_SIZE = "fileDownloadCacheMaxSize";
+    private static final String FIELD_VALUE_CACHE = "fieldValueCache";
 
     protected Properties loadApiKeys() throws ConfigurationException {
         return loadProperties(API_KEYS_PROPERTY_NAME, API_KEYS_FILENAME);
@@ -61,9 +64,41 @@ public abstract class AbstractRunner {
         DownloadUtils downloadUtils = new DownloadUtils(DownloadUtils.DEFAULT_DATA_CACHE_ROOT);
         if (properties.getProperty(FILE_DOWNLOAD_CACHE) != null)
             downloadUtils = new DownloadUtils(properties.getProperty(FILE_DOWNLOAD_CACHE));
+        Long maxSize = getFileDownloadCacheMaxSize();
+        if (maxSize != null) {
+            log.info("Setting file download cache maximum size: {}", DownloadCache.formatSize(maxSize));
+            downloadUtils.setMaxCacheSize(maxSize);
+        }
         return downloadUtils;
     }
 
+    /**
+     * Returns the maximum size of the file download cache in bytes, or null if it is not limited.
+     */
+    protected Long getFileDownloadCacheMaxSize() throws ConfigurationException {
+        Properties properties = loadProperties(SYSTEM_PROPERTIES_PROPERTY_NAME, SYSTEM_PROPERTIES_FILENAME);
+        String maxSize = properties.getProperty(FILE_DOWNLOAD_CACHE_MAX_SIZE);
+        if (maxSize == null || maxSize.trim().isEmpty())
+            return null;
+        try {
+            return DownloadCache.parseSize(maxSize);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid " + FILE_DOWNLOAD_CACHE_MAX_SIZE + ": " + maxSize, e);
+        }
+    }
+
+    /**
+     * Returns the directory in which field values are kept between exports, or null if it is not configured.
+     */
+    protected File initialiseFieldValueCache() throws ConfigurationException {
+        Properties properties = loadProperties(SYSTEM_PROPERTIES_PROPERTY_NAME, SYSTEM_PROPERTIES_FILENAME);
+        String fieldValueCache = properties.getProperty(FIELD_VALUE_CACHE);
+        if (fieldValueCache == null || fieldValueCache.trim().isEmpty())
+            return null;
+        log.info("Setting field value cache: {}", fieldValueCache);
+        return new File(fieldValueCache.trim());
+    }
+
     private void validateRecipe(String recipe, boolean isString) throws FileNotFoundException {
         ProcessingReport report = DataExportRecipeValidator.validate(!isString? new FileReader(recipe) :
                 new BufferedReader(new InputStreamReader(new ByteArrayInputStream(recipe.getBytes()))));
@@ -28,12 +28,14 @@ public class DataExportRunner extends AbstractRunner {
         String correlation = args[3];
         String forceImports = args[4];
         Boolean clearDatabaseCache = Boolean.parseBoolean(args[5]);
+        // Optional number of export worker threads, 0 means the value in the recipe is used
+        Integer threads = args.length > 6 ? Integer.parseInt(args[6]) : 0;
 
-        run(isString, recipe, output, correlation, forceImports, clearDatabaseCache);
+        run(isString, recipe, output, correlation, forceImports, clearDatabaseCache, threads);
     }
 
     private static void run(Boolean isString, String recipe, String output, String correlation, String forceImports,
-                            Boolean clearDatabaseCache) throws Exception {
+                            Boolean clearDatabaseCache, Integer threads) throws Exception {
         HibernateUtil.startup();
         if (clearDatabaseCache) {
             DatabaseUtils.clearAllData();
@@ -47,6 +49,8 @@ public class DataExportRunner extends AbstractRunner {
 
         // Create engine
         DataExportEngine engine = new DataExportEngine(apiKeys, runner.initialiseDowloadUtils());
+        engine.setThreads(threads);
+        engine.setFieldValueCache(runner.initialiseFieldValueCache());
 
         try (Writer writer = runner.getOutputWriter(output)) {
             String vProvider = engine.verifyProvider(recipe, isString);
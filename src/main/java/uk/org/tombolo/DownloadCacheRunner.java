@@ -0,0 +1,70 @@
+package uk.org.tombolo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.importer.DownloadCache;
+import uk.org.tombolo.importer.DownloadManifest;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Inspects and prunes the file download cache.
+ *
+ * Commands are inspect, to list the cached files, prune, to evict the least recently used files until the cache fits
+ * in the given size or the configured maximum size, and verify, to remove the files whose content does not match
+ * their checksum.
+ */
+public class DownloadCacheRunner extends AbstractRunner {
+    private static final Logger log = LoggerFactory.getLogger(DownloadCacheRunner.class);
+    private static final DownloadCacheRunner runner = new DownloadCacheRunner();
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "inspect";
+        DownloadCache cache = new DownloadCache(runner.initialiseDowloadUtils().getCacheDirectory());
+
+        switch (command) {
+            case "inspect":
+                runner.inspect(cache, System.out);
+                break;
+            case "prune":
+                Long maxSize = args.length > 1 ? DownloadCache.parseSize(args[1]) : runner.getFileDownloadCacheMaxSize();
+                if (maxSize == null) {
+                    log.error("No size to prune the download cache to, set fileDownloadCacheMaxSize or -PmaxSize");
+                    System.exit(1);
+                }
+                List<DownloadCache.CachedFile> evicted = cache.prune(maxSize, file -> false);
+                System.out.println("Evicted " + evicted.size() + " files, the download cache now takes "
+                        + DownloadCache.formatSize(cache.getSize()));
+                break;
+            case "verify":
+                List<DownloadCache.CachedFile> corrupted = cache.verify();
+                for (DownloadCache.CachedFile file : corrupted) {
+                    System.out.println("Removed corrupted file " + file.getPath());
+                }
+                System.out.println("Removed " + corrupted.size() + " corrupted files");
+                break;
+            default:
+                log.error("Unknown command {}, expected inspect, prune or verify", command);
+                System.exit(1);
+        }
+    }
+
+    private void inspect(DownloadCache cache, PrintStream out) throws Exception {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        List<DownloadCache.CachedFile> files = cache.getFiles();
+        out.println("Download cache " + cache.getDirectory() + ", least recently used first");
+        for (DownloadCache.CachedFile file : files) {
+            DownloadManifest.Entry entry = file.getEntry();
+            out.println(String.format("%s  %10s  %-4s %s  %s",
+                    dateFormat.format(new Date(file.getLastUsed())),
+                    DownloadCache.formatSize(file.getSize()),
+                    entry != null && entry.isCompressed() ? "gz" : "",
+                    file.getPath(),
+                    entry != null && entry.getUrl() != null ? entry.getUrl() : ""));
+        }
+        out.println(files.size() + " files taking " + DownloadCache.formatSize(cache.getSize()));
+    }
+}
@@ -9,8 +9,7 @@ import java.util.List;
 
 public class AttributeUtils {
 	public static void save(List<Attribute> attributes){
-		HibernateUtil.withSession(session -> {
-			session.beginTransaction();
+		HibernateUtil.withTransaction(session -> {
 			for (Attribute attribute : attributes) {
 				// FIXME: This might be inefficient if we are updating the attribute over and over again without actually changing it
 				Attribute savedAttribute = getByProviderAndLabel(attribute.getProvider(), attribute.getLabel());
@@ -25,7 +24,6 @@ public class AttributeUtils {
 					session.save(savedAttribute);
 				}
 			}
-			session.getTransaction().commit();
 		});
 	}
 
@@ -37,6 +35,14 @@ public class AttributeUtils {
 		return getByProviderAndLabel(provider.getLabel(), label);
 	}
 
+	public static List<Attribute> getByProvider(Provider provider) {
+		return HibernateUtil.withSession(session -> {
+			return session.createQuery("from Attribute where provider.label = :providerLabel", Attribute.class)
+					.setParameter("providerLabel", provider.getLabel())
+					.list();
+		});
+	}
+
 	public static Attribute getByProviderAndLabel(String providerLabel, String attributeLabel) {
 		return HibernateUtil.withSession(session -> {
 			Query query = session.createQuery("from Attribute where provider.label = :providerLabel and label = :attributeLabel", Attribute.class);
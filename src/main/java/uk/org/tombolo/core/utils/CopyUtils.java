@@ -0,0 +1,164 @@
+package uk.org.tombolo.core.utils;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.QuoteMode;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * CopyUtils.java
+ * Bulk writes rows to a table through the PostgreSQL COPY protocol.
+ *
+ * The rows are streamed into a temporary staging table shaped like the target table and then merged into the
+ * target with a single upsert, so a whole importer buffer costs a handful of statements instead of one per row.
+ * The rows must not contain the same key twice, since an upsert cannot update a row twice.
+ *
+ * Merging changes can also record the keys of the rows under a run, in the written keys table of the target, which is
+ * named after it with a _written suffix and has a run column, the key columns and a current column, set for the keys
+ * written by the current run. The keys go to the database rather than the heap, however many rows the run writes.
+ */
+public class CopyUtils {
+    private static final int COPY_BUFFER_SIZE = 65536;
+    // Empty strings are quoted so that they are not read as NULL
+    private static final CSVFormat COPY_FORMAT = CSVFormat.DEFAULT
+            .withRecordSeparator('\n')
+            .withQuoteMode(QuoteMode.NON_NUMERIC);
+    // The geometry columns of each table merged with copyAndMergeChanges
+    private static final Map<String, Set<String>> GEOMETRY_COLUMNS = new ConcurrentHashMap<>();
+
+    /**
+     * Copies the rows into the table, updating the value columns of the rows whose key already exists.
+     * Runs in the current transaction of the session, which is flushed first so that the rows can refer to
+     * entities saved earlier in the transaction.
+     *
+     * @param session the session whose connection and transaction to use
+     * @param table the table to write to
+     * @param keyColumns the columns of the primary key of the table
+     * @param valueColumns the remaining columns
+     * @param entityClass the entity mapped to the table, whose cached queries are invalidated
+     * @param rows the rows to write, with the key columns first and the value columns after
+     * @return the number of rows inserted or updated
+     */
+    public static int copyAndMerge(Session session, String table, List<String> keyColumns, List<String> valueColumns,
+                                   Class<?> entityClass, Iterable<Object[]> rows) {
+        String stagingTable = copyToStagingTable(session, table, keyColumns, valueColumns, rows);
+        int merged = merge(session, table, stagingTable, keyColumns, valueColumns, entityClass, "");
+
+        // The session may hold stale copies of the rows we have just overwritten
+        session.clear();
+        return merged;
+    }
+
+    /**
+     * Copies the rows into the table like copyAndMerge, but only writes the rows that are new or whose values have
+     * changed, so rows that are already up to date are not rewritten.
+     * Values are compared as stored, and geometries by their EWKB, since PostGIS compares geometries by their
+     * bounding boxes.
+     *
+     * @param run the run to record the keys of the rows under in the written keys table, or null not to record them
+     * @return the number of rows inserted, updated and left as they were
+     */
+    public static MergeResult copyAndMergeChanges(Session session, String table, List<String> keyColumns,
+                                                  List<String> valueColumns, Class<?> entityClass,
+                                                  Iterable<Object[]> rows, String run) {
+        String stagingTable = copyToStagingTable(session, table, keyColumns, valueColumns, rows);
+        int staged = ((Number) session.createNativeQuery("SELECT count(*) FROM " + stagingTable)
+                .getSingleResult()).intValue();
+        int inserted = ((Number) session.createNativeQuery("SELECT count(*) FROM " + stagingTable + " staged"
+                + " WHERE NOT EXISTS (SELECT 1 FROM " + table + " existing WHERE " + keyColumns.stream()
+                        .map(column -> "existing." + column + " = staged." + column)
+                        .collect(Collectors.joining(" AND ")) + ")")
+                .getSingleResult()).intValue();
+
+        Set<String> geometryColumns = getGeometryColumns(session, table);
+        String changed = valueColumns.stream()
+                .map(column -> geometryColumns.contains(column)
+                        ? "ST_AsEWKB(" + table + "." + column + ") IS DISTINCT FROM ST_AsEWKB(EXCLUDED." + column + ")"
+                        : table + "." + column + " IS DISTINCT FROM EXCLUDED." + column)
+                .collect(Collectors.joining(" OR "));
+        int merged = merge(session, table, stagingTable, keyColumns, valueColumns, entityClass, " WHERE " + changed);
+
+        if (run != null) {
+            String keys = String.join(", ", keyColumns);
+            session.createNativeQuery("INSERT INTO " + table + "_written (run, " + keys + ", current)"
+                    + " SELECT :run, " + keys + ", true FROM " + stagingTable
+                    + " ON CONFLICT (run, " + keys + ") DO UPDATE SET current = true")
+                    .setParameter("run", run)
+                    .executeUpdate();
+        }
+
+        session.clear();
+        return new MergeResult(inserted, merged - inserted, staged - merged);
+    }
+
+    // Creates the staging table of the table if needed and copies the rows into it
+    private static String copyToStagingTable(Session session, String table, List<String> keyColumns,
+                                             List<String> valueColumns, Iterable<Object[]> rows) {
+        String stagingTable = table + "_staging";
+        String columns = columns(keyColumns, valueColumns);
+
+        session.flush();
+        session.doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + stagingTable
+                        + " (LIKE " + table + " INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+                statement.execute("TRUNCATE " + stagingTable);
+            }
+
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            String copy = "COPY " + stagingTable + " (" + columns + ") FROM STDIN WITH (FORMAT csv)";
+            try (Writer writer = new OutputStreamWriter(
+                    new PGCopyOutputStream(pgConnection, copy, COPY_BUFFER_SIZE), StandardCharsets.UTF_8);
+                 CSVPrinter printer = new CSVPrinter(writer, COPY_FORMAT)) {
+                for (Object[] row : rows) {
+                    printer.printRecord(row);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not copy rows into " + stagingTable, e);
+            }
+        });
+        return stagingTable;
+    }
+
+    private static int merge(Session session, String table, String stagingTable, List<String> keyColumns,
+                             List<String> valueColumns, Class<?> entityClass, String condition) {
+        String columns = columns(keyColumns, valueColumns);
+        String update = valueColumns.stream()
+                .map(column -> column + " = EXCLUDED." + column)
+                .collect(Collectors.joining(", "));
+        return session.createNativeQuery("INSERT INTO " + table + " (" + columns + ")"
+                + " SELECT " + columns + " FROM " + stagingTable
+                + " ON CONFLICT (" + String.join(", ", keyColumns) + ") DO UPDATE SET " + update + condition)
+                .addSynchronizedEntityClass(entityClass)
+                .executeUpdate();
+    }
+
+    private static String columns(List<String> keyColumns, List<String> valueColumns) {
+        return String.join(", ", keyColumns) + ", " + String.join(", ", valueColumns);
+    }
+
+    private static Set<String> getGeometryColumns(Session session, String table) {
+        return GEOMETRY_COLUMNS.computeIfAbsent(table, key -> {
+            List<?> columns = session.createNativeQuery("SELECT attname FROM pg_attribute"
+                    + " WHERE attrelid = CAST(:table AS regclass) AND atttypid = CAST('geometry' AS regtype)"
+                    + " AND NOT attisdropped")
+                    .setParameter("table", table)
+                    .getResultList();
+            return columns.stream().map(Object::toString).collect(Collectors.toSet());
+        });
+    }
+}
@@ -3,18 +3,41 @@ package uk.org.tombolo.core.utils;
 import org.hibernate.query.Query;
 import uk.org.tombolo.core.DatabaseJournalEntry;
 
+import java.util.List;
+
 /**
  * DatabaseJournal.java
  * The DatabaseJournal is a list of transformations that the database has undergone.
  * For example imports. This is used so we can avoid repeating the job later on,
  * as well as a description of the transforms that this database has undergone.
+ *
+ * Unfinished imports can also record how far they got as a checkpoint under the key of their journal entry,
+ * so that a restarted import can skip the work already committed. The checkpoint goes once the entry is added.
+ * Differential imports also record the keys of the values they write under the key of their journal entry, in the
+ * timed_value_written and fixed_value_written tables, so that a later run can tell which values the entry owns.
+ * Databases created before these tables existed lack them, so they are created the first time they are needed.
  */
 public class DatabaseJournal {
+    private static final String[] CREATE_IMPORT_TABLES = {
+            "create table if not exists import_checkpoint (class_name text not null, key text not null,"
+                    + " checkpoint text not null, primary key (class_name, key))",
+            "create table if not exists timed_value_written (run text not null, subject_id integer not null,"
+                    + " attribute_id integer not null, timestamp timestamp with time zone not null,"
+                    + " current boolean not null, primary key (run, subject_id, attribute_id, timestamp))",
+            "create index if not exists timed_value_written_key"
+                    + " on timed_value_written (subject_id, attribute_id, timestamp)",
+            "create table if not exists fixed_value_written (run text not null, subject_id integer not null,"
+                    + " attribute_id integer not null, current boolean not null,"
+                    + " primary key (run, subject_id, attribute_id))",
+            "create index if not exists fixed_value_written_key on fixed_value_written (subject_id, attribute_id)"
+    };
+    // Whether the import tables are known to exist, reset by tests that drop them
+    static boolean importTablesCreated = false;
+
     public static void addJournalEntry(DatabaseJournalEntry entry) {
-        HibernateUtil.withSession(session -> {
-            session.beginTransaction();
+        HibernateUtil.withTransaction(session -> {
             session.save(entry);
-            session.getTransaction().commit();
+            clearCheckpoint(entry);
         });
     }
 
@@ -27,4 +50,74 @@ public class DatabaseJournal {
             return rowCount != 0;
         });
     }
+
+    /**
+     * Returns a version of the data in the database, which changes whenever a journal entry is added or the
+     * journal is cleared. Journal ids are never reused, so the count and the largest id together tell versions apart.
+     */
+    public static String getDataVersion() {
+        return HibernateUtil.withSession(session -> {
+            Object[] row = (Object[]) session.createQuery(
+                    "select count(*), coalesce(max(id), 0) from DatabaseJournalEntry").uniqueResult();
+            return ((Number) row[0]).longValue() + "-" + ((Number) row[1]).longValue();
+        });
+    }
+
+    /**
+     * Returns the checkpoint recorded by an unfinished run of the journaled import, or null if there is none.
+     */
+    public static String getCheckpoint(DatabaseJournalEntry entry) {
+        createImportTables();
+        return HibernateUtil.withSession(session -> {
+            List<?> checkpoints = session.createNativeQuery(
+                    "select checkpoint from import_checkpoint where class_name = :className and key = :key")
+                    .setParameter("className", entry.getClassName())
+                    .setParameter("key", entry.getKey())
+                    .getResultList();
+            return checkpoints.isEmpty() ? null : (String) checkpoints.get(0);
+        });
+    }
+
+    /**
+     * Records the checkpoint of the journaled import, replacing the one recorded before.
+     * Called in a transaction, the checkpoint is committed along with whatever else the transaction writes.
+     */
+    public static void saveCheckpoint(DatabaseJournalEntry entry, String checkpoint) {
+        createImportTables();
+        HibernateUtil.withTransaction(session -> {
+            session.createNativeQuery("insert into import_checkpoint (class_name, key, checkpoint) "
+                    + "values (:className, :key, :checkpoint) "
+                    + "on conflict (class_name, key) do update set checkpoint = excluded.checkpoint")
+                    .setParameter("className", entry.getClassName())
+                    .setParameter("key", entry.getKey())
+                    .setParameter("checkpoint", checkpoint)
+                    .executeUpdate();
+        });
+    }
+
+    public static void clearCheckpoint(DatabaseJournalEntry entry) {
+        createImportTables();
+        HibernateUtil.withTransaction(session -> {
+            session.createNativeQuery("delete from import_checkpoint where class_name = :className and key = :key")
+                    .setParameter("className", entry.getClassName())
+                    .setParameter("key", entry.getKey())
+                    .executeUpdate();
+        });
+    }
+
+    /**
+     * Creates the checkpoint and written key tables if the database does not have them yet.
+     * The tables are created in a transaction of their own, so that they stay even if the transaction of the caller
+     * is rolled back.
+     */
+    public static synchronized void createImportTables() {
+        if (importTablesCreated)
+            return;
+        HibernateUtil.withThreadSession(() -> HibernateUtil.withTransaction(session -> {
+            for (String statement : CREATE_IMPORT_TABLES)
+                session.createNativeQuery(statement).executeUpdate();
+            return null;
+        }));
+        importTablesCreated = true;
+    }
 }
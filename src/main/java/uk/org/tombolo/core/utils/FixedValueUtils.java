@@ -1,17 +1,25 @@
 package uk.org.tombolo.core.utils;
 
-import org.hibernate.NonUniqueObjectException;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.FixedValue;
+import uk.org.tombolo.core.FixedValueId;
 import uk.org.tombolo.core.Subject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 
 public class FixedValueUtils {
     static Logger log = LoggerFactory.getLogger(FixedValueUtils.class);
+    private static final List<String> KEY_COLUMNS = Arrays.asList("subject_id", "attribute_id");
+    private static final List<String> VALUE_COLUMNS = Collections.singletonList("value");
 
     public static FixedValue getBySubjectAndAttribute(Subject subject, Attribute attribute){
         return HibernateUtil.withSession((session) -> {
@@ -26,29 +34,72 @@ public class FixedValueUtils {
         save(Collections.singletonList(fixedValue));
     }
 
+    /**
+     * Saves the fixed values, replacing the value of those that already exist.
+     * The values are written in bulk with COPY. When the list contains the same subject and attribute more than
+     * once only the first value is saved and the others are reported together.
+     *
+     * @param fixedValues the fixed values to save
+     * @return the number of fixed values saved
+     */
     public static int save(List<FixedValue> fixedValues){
-        return HibernateUtil.withSession((session) -> {
-            int saved = 0;
-            session.beginTransaction();
-            for (FixedValue fixedValue : fixedValues){
-                try{
-                    session.saveOrUpdate(fixedValue);
-                    saved++;
-                }catch(NonUniqueObjectException e){
-                    // This is happening because the TFL stations contain a duplicate ID
-                    log.warn("Could not save fixed value for subject {}, attribute {}: {}",
-                            fixedValue.getId().getSubject().getLabel(),
-                            fixedValue.getId().getAttribute().getLabel(),
-                            e.getMessage());
-                }
-                if ( saved % 20 == 0 ) { //20, same as the JDBC batch size
-                    //flush a batch of inserts and release memory:
-                    session.flush();
-                    session.clear();
-                }
+        return save(fixedValues, 0, (session, rows) -> CopyUtils.copyAndMerge(session, "fixed_value",
+                KEY_COLUMNS, VALUE_COLUMNS, FixedValue.class, rows));
+    }
+
+    /**
+     * Saves the fixed values like save, but only writes those that are new or whose value has changed.
+     *
+     * @param fixedValues the fixed values to save
+     * @return the number of fixed values inserted, updated and left as they were
+     */
+    public static MergeResult saveChanges(List<FixedValue> fixedValues){
+        return saveChanges(fixedValues, null);
+    }
+
+    /**
+     * Saves the fixed values like saveChanges, and records their keys under the run in fixed_value_written.
+     *
+     * @param fixedValues the fixed values to save
+     * @param run the run to record the keys under, or null not to record them
+     * @return the number of fixed values inserted, updated and left as they were
+     */
+    public static MergeResult saveChanges(List<FixedValue> fixedValues, String run){
+        return save(fixedValues, new MergeResult(0, 0, 0), (session, rows) -> CopyUtils.copyAndMergeChanges(
+                session, "fixed_value", KEY_COLUMNS, VALUE_COLUMNS, FixedValue.class, rows, run));
+    }
+
+    private static <T> T save(List<FixedValue> fixedValues, T none, BiFunction<Session, Iterable<Object[]>, T> merge){
+        Map<List<Object>, FixedValue> unique = new LinkedHashMap<>();
+        List<FixedValue> duplicates = new ArrayList<>();
+        for (FixedValue fixedValue : fixedValues) {
+            FixedValueId id = fixedValue.getId();
+            List<Object> key = Arrays.asList(id.getSubject().getId(), id.getAttribute().getId());
+            if (unique.putIfAbsent(key, fixedValue) != null) {
+                duplicates.add(fixedValue);
             }
-            session.getTransaction().commit();
-            return saved;
+        }
+
+        if (!duplicates.isEmpty()) {
+            // This is happening because the TFL stations contain a duplicate ID
+            FixedValueId example = duplicates.get(0).getId();
+            log.warn("Skipped {} fixed values with a duplicate subject and attribute, e.g. subject {}, attribute {}",
+                    duplicates.size(),
+                    example.getSubject().getLabel(),
+                    example.getAttribute().getLabel());
+        }
+
+        if (unique.isEmpty()) {
+            return none;
+        }
+
+        Iterable<Object[]> rows = () -> unique.values().stream().map(fixedValue -> new Object[]{
+                fixedValue.getId().getSubject().getId(),
+                fixedValue.getId().getAttribute().getId(),
+                fixedValue.getValue()
+        }).iterator();
+        return HibernateUtil.withTransaction((session) -> {
+            return merge.apply(session, rows);
         });
     }
 }
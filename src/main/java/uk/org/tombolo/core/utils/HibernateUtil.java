@@ -1,35 +1,51 @@
 package uk.org.tombolo.core.utils;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.hibernate.CacheMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
-import java.io.File;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.sql.DataSource;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ServiceConfigurationError;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * HibernateUtil.java
+ * Owns the session factory and hands out sessions.
+ *
+ * Threads never share a session, so importers, export workers and Py4j callers never share a first-level cache or
+ * a transaction. A call to withSession or withTransaction on a thread without a session of its own gets a session
+ * that is closed when the call returns, so threads that come and go leave no session and cache behind. Work that
+ * benefits from one session across many calls opts in with withThreadSession, which binds a session to the thread
+ * until it returns. Connections come from the HikariCP pool configured in hibernate.cfg.xml, whose size can be set
+ * with the databasePoolSize property, and which work holding many connections at once grows with ensurePoolSize.
+ */
 public class HibernateUtil {
-	private static SessionFactory sessionFactory;
-    private static Session sharedSession;
+    private static final String POOL_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
+
+	private static volatile SessionFactory sessionFactory;
+    // The session bound to each thread for the duration of withThreadSession, opened when it is first used
+    private static final ThreadLocal<BoundSession> threadSession = new ThreadLocal<>();
 
-    public static void startup() {
+    public static synchronized void startup() {
         sessionFactory = buildSessionFactory();
-        sharedSession = sessionFactory.openSession();
-        sharedSession.setCacheMode(CacheMode.NORMAL);
     }
 
-    public static void startUpForPython() {
+    public static synchronized void startUpForPython() {
         sessionFactory = buildSessionFactoryForPython();
-        sharedSession = sessionFactory.openSession();
-        sharedSession.setCacheMode(CacheMode.NORMAL);
     }
 
     private static SessionFactory buildSessionFactoryForPython() {
@@ -43,7 +59,11 @@ public class HibernateUtil {
             settings.put(Environment.USER, "tombolo");
             settings.put(Environment.PASS, "tombolo");
             settings.put(Environment.DIALECT, "org.hibernate.spatial.dialect.postgis.PostgisDialect");
-            
+            settings.put(Environment.CONNECTION_PROVIDER, "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+            if (null != System.getProperty("databasePoolSize")) {
+                settings.put(POOL_SIZE_PROPERTY, System.getProperty("databasePoolSize"));
+            }
+
             registryBuilder.applySettings(settings);
             registry = registryBuilder.build();
             MetadataSources sources = new MetadataSources(registry)
@@ -56,31 +76,154 @@ public class HibernateUtil {
 
             Metadata metadata = sources.getMetadataBuilder().build();
             factory = metadata.getSessionFactoryBuilder().build();
-            
+
         } catch (Exception ex) {
             throw new ServiceConfigurationError("Failed to create SessionFactory", ex);
         }
 
         return factory;
     }
-    
-    public static void shutdown() {
+
+    public static synchronized void shutdown() {
     	// Close caches and connection pools
-        sharedSession.close();
+        threadSession.remove();
     	sessionFactory.close();
+        sessionFactory = null;
     }
 
-    public static void restart() {
+    public static synchronized void restart() {
         if (isStarted()) { shutdown(); }
         startup();
     }
 
+    /**
+     * Grows the connection pool to at least the given number of connections, so that threads holding connections
+     * at the same time do not wait for each other until the pool times out. A larger pool is left as it is.
+     *
+     * @return true if the pool was grown
+     */
+    public static synchronized boolean ensurePoolSize(int connections) {
+        if (!isStarted()) { startup(); }
+        ConnectionProvider provider = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(DataSource.class))
+            return false;
+        DataSource dataSource = provider.unwrap(DataSource.class);
+        if (!(dataSource instanceof HikariDataSource))
+            return false;
+        HikariDataSource pool = (HikariDataSource) dataSource;
+        if (pool.getMaximumPoolSize() >= connections)
+            return false;
+        pool.setMaximumPoolSize(connections);
+        return true;
+    }
+
+    /**
+     * Runs the function on the session bound to the current thread, or on a session of its own that is closed when
+     * the function returns.
+     */
     public static <T> T withSession(Function<Session, T> fn) {
-        return fn.apply(sharedSession);
+        Session session = getThreadSession();
+        if (null == session) {
+            return withThreadSession(() -> fn.apply(getThreadSession()));
+        }
+        return fn.apply(session);
     }
 
     public static void withSession(Consumer<Session> fn) {
-        fn.accept(sharedSession);
+        withSession(session -> {
+            fn.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the function in a transaction on the session bound to the current thread, or on a session of its own.
+     * The transaction is committed when the function returns and rolled back if it throws.
+     * If the session is already in a transaction the function joins it, and the outermost caller commits.
+     *
+     * @param fn the work to be done in the transaction
+     * @return the value returned by the function
+     */
+    public static <T> T withTransaction(Function<Session, T> fn) {
+        Session session = getThreadSession();
+        if (null == session) {
+            return withThreadSession(() -> withTransaction(fn));
+        }
+        if (session.getTransaction().isActive()) {
+            return fn.apply(session);
+        }
+
+        Transaction transaction = session.beginTransaction();
+        try {
+            T result = fn.apply(session);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) { transaction.rollback(); }
+            throw e;
+        }
+    }
+
+    public static void withTransaction(Consumer<Session> fn) {
+        withTransaction(session -> {
+            fn.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the supplier with a new session bound to the current thread.
+     * Every call to withSession made by the supplier on this thread will use that session, so its first-level
+     * cache is shared between the calls. The session is only opened if the supplier uses it, and it is closed when
+     * the supplier returns, which releases its connection back to the pool and drops its cache.
+     *
+     * @param fn the work to be done on the current thread
+     * @return the value returned by the supplier
+     */
+    public static <T> T withThreadSession(Supplier<T> fn) {
+        BoundSession previous = threadSession.get();
+        BoundSession bound = new BoundSession();
+        threadSession.set(bound);
+        try {
+            return fn.get();
+        } finally {
+            if (null != bound.session) { bound.session.close(); }
+            if (null != previous) {
+                threadSession.set(previous);
+            } else {
+                threadSession.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the session bound to the current thread by withThreadSession, opening it if need be, or null if
+     * the thread has none.
+     */
+    static Session getThreadSession() {
+        BoundSession bound = threadSession.get();
+        if (null == bound) {
+            return null;
+        }
+        if (null == bound.session) {
+            bound.session = openSession();
+        }
+        return bound.session;
+    }
+
+    /**
+     * Opens a session that is not bound to any thread, which the caller must close.
+     */
+    static Session openSession() {
+        if (!isStarted()) {
+            synchronized (HibernateUtil.class) {
+                if (!isStarted()) { startup(); }
+            }
+        }
+        Session session = sessionFactory.openSession();
+        session.setCacheMode(CacheMode.NORMAL);
+        return session;
     }
 
     private static SessionFactory buildSessionFactory() {
@@ -107,9 +250,17 @@ public class HibernateUtil {
         if (null != System.getProperty("databasePassword")) {
             cfg.setProperty("hibernate.connection.password", System.getProperty("databasePassword"));
         }
+
+        if (null != System.getProperty("databasePoolSize")) {
+            cfg.setProperty(POOL_SIZE_PROPERTY, System.getProperty("databasePoolSize"));
+        }
     }
 
     private static boolean isStarted() {
-        return null != sharedSession;
+        return null != sessionFactory;
+    }
+
+    private static class BoundSession {
+        private Session session;
     }
 }
@@ -0,0 +1,36 @@
+package uk.org.tombolo.core.utils;
+
+/**
+ * MergeResult.java
+ * The number of rows a merge inserted, updated and left as they were, because they had not changed.
+ */
+public class MergeResult {
+    private final int inserted;
+    private final int updated;
+    private final int unchanged;
+
+    public MergeResult(int inserted, int updated, int unchanged) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.unchanged = unchanged;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Returns the number of rows inserted or updated.
+     */
+    public int getWritten() {
+        return inserted + updated;
+    }
+}
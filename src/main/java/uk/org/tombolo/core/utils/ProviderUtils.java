@@ -11,8 +11,7 @@ public class ProviderUtils {
 	}
 
 	public static void save(Provider provider){
-		HibernateUtil.withSession(session -> {
-			session.beginTransaction();
+		HibernateUtil.withTransaction(session -> {
 			// FIXME: This might be inefficient if we are updating the provider over and over again without actually changing it
 			Provider savedProvider = (Provider) session.get(Provider.class, provider.getLabel());
 			if (savedProvider != null) {
@@ -20,7 +19,6 @@ public class ProviderUtils {
 			} else {
 				session.save(provider);
 			}
-			session.getTransaction().commit();
 		});
 	}
 
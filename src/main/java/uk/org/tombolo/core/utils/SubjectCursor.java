@@ -0,0 +1,110 @@
+package uk.org.tombolo.core.utils;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.recipe.SubjectRecipe;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SubjectCursor.java
+ * The subjects matching a list of subject recipes, read from the database as they are iterated.
+ *
+ * The subjects are scrolled through with a database cursor that fetches a batch of rows at a time, and each subject
+ * is evicted from the session once the iteration has moved past it, so the memory used is bounded by the fetch size
+ * rather than by the number of subjects. The subjects handed out are detached and stay usable after the cursor
+ * moves on.
+ *
+ * The cursor uses the session bound to the calling thread, or a session of its own that is closed with it, and a
+ * transaction since PostgreSQL only fetches in batches within one. It can only be iterated once, from the thread that
+ * created it, and must be closed.
+ */
+public class SubjectCursor implements Iterable<Subject>, AutoCloseable {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final List<SubjectRecipe> subjectRecipes;
+    private final int fetchSize;
+    private final Session session;
+    private final boolean ownsSession;
+    private final boolean ownsTransaction;
+    private ScrollableResults results;
+    private boolean iterated = false;
+
+    SubjectCursor(List<SubjectRecipe> subjectRecipes, int fetchSize) {
+        this.subjectRecipes = subjectRecipes;
+        this.fetchSize = fetchSize;
+        Session threadSession = HibernateUtil.getThreadSession();
+        this.ownsSession = null == threadSession;
+        this.session = ownsSession ? HibernateUtil.openSession() : threadSession;
+        this.ownsTransaction = !session.getTransaction().isActive();
+        if (ownsTransaction)
+            session.beginTransaction();
+    }
+
+    @Override
+    public Iterator<Subject> iterator() {
+        if (iterated)
+            throw new IllegalStateException("A subject cursor can only be iterated once");
+        iterated = true;
+
+        return new Iterator<Subject>() {
+            private int recipeIndex = 0;
+            private Subject next;
+            private Subject previous;
+
+            @Override
+            public boolean hasNext() {
+                if (previous != null) {
+                    session.evict(previous);
+                    previous = null;
+                }
+                while (next == null) {
+                    if (results != null && results.next()) {
+                        next = (Subject) results.get(0);
+                    } else if (recipeIndex < subjectRecipes.size()) {
+                        closeResults();
+                        results = SubjectUtils.queryFromSubjectSpecification(session, subjectRecipes.get(recipeIndex++))
+                                .setFetchSize(fetchSize)
+                                .scroll(ScrollMode.FORWARD_ONLY);
+                    } else {
+                        closeResults();
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Subject next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                previous = next;
+                next = null;
+                return previous;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeResults();
+            if (ownsTransaction && session.getTransaction().isActive())
+                session.getTransaction().commit();
+        } finally {
+            if (ownsSession)
+                session.close();
+        }
+    }
+
+    private void closeResults() {
+        if (results != null) {
+            results.close();
+            results = null;
+        }
+    }
+}
@@ -16,8 +16,7 @@ public class SubjectTypeUtils {
 	
 	public static void save(SubjectType subjectType) {
 		ProviderUtils.save(subjectType.getProvider());
-		HibernateUtil.withSession(session -> {
-			session.beginTransaction();
+		HibernateUtil.withTransaction(session -> {
 			SubjectType existingSubjectType = getSubjectTypeByProviderAndLabel(subjectType.getProvider().getLabel(), subjectType.getLabel());
 			if (existingSubjectType != null) {
 				subjectType.setId(existingSubjectType.getId());
@@ -25,7 +24,6 @@ public class SubjectTypeUtils {
 			} else {
 				session.save(subjectType);
 			}
-			session.getTransaction().commit();
 		});
 	}
 
@@ -1,6 +1,7 @@
 package uk.org.tombolo.core.utils;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.slf4j.Logger;
@@ -12,12 +13,32 @@ import uk.org.tombolo.recipe.SubjectRecipe;
 import uk.org.tombolo.recipe.SubjectRecipe.SubjectAttributeMatchRule;
 
 import javax.persistence.Parameter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 public class SubjectUtils {
 	static Logger log = LoggerFactory.getLogger(TimedValueUtils.class);
+	private static final List<String> KEY_COLUMNS = Collections.singletonList("id");
+	private static final List<String> VALUE_COLUMNS = Arrays.asList("subject_type_id", "label", "name", "shape");
+
+	public static List<Subject> getSubjectsByType(SubjectType subjectType){
+		return HibernateUtil.withSession(session -> {
+			return session.createQuery("from Subject where subjectType = :subjectType", Subject.class)
+					.setParameter("subjectType", subjectType)
+					.list();
+		});
+	}
 
 	public static List<Subject> getSubjectByTypeAndLabelPattern(SubjectType subjectType, String labelPattern){
 		return HibernateUtil.withSession(session -> {
@@ -95,34 +116,142 @@ public class SubjectUtils {
 		}
 		return subjects;
 	}
+
+	/**
+	 * Returns a cursor over the subjects matching the recipes, which reads them from the database as it is iterated
+	 * instead of loading them all at once. The cursor must be closed once done with.
+	 *
+	 * @param subjectRecipes the recipes of the subjects
+	 * @param fetchSize the number of subjects read from the database at a time
+	 */
+	public static SubjectCursor scrollSubjectBySpecifications(List<SubjectRecipe> subjectRecipes, int fetchSize) {
+		return new SubjectCursor(subjectRecipes, fetchSize);
+	}
 	
+	/**
+	 * Saves the subjects, updating those that already exist with the same subject type and label.
+	 *
+	 * The ids of the existing subjects are resolved with a single query for the whole list and the new subjects get
+	 * their ids from the sequence in one go. The ids are written back onto the subjects, so values referring to
+	 * them can be saved straight after, and all the subjects are then written in bulk with COPY.
+	 * When the list contains the same subject type and label more than once they all get the same id and the
+	 * last one wins.
+	 *
+	 * @param subjects the subjects to save
+	 */
 	public static void save(List<Subject> subjects){
-		HibernateUtil.withSession(session -> {
-			session.beginTransaction();
-			int saved = 0;
-			for (Subject subject : subjects) {
-				Subject savedSubject = getSubjectByTypeAndLabel(subject.getSubjectType(), subject.getLabel());
-
-				if (savedSubject == null) {
-					session.saveOrUpdate(subject);
-				} else {
-					// The IDs must be the same so hibernate knows which 'rows' to merge
-					subject.setId(savedSubject.getId());
-					session.update(session.merge(subject));
+		save(subjects, null, (session, rows) -> CopyUtils.copyAndMerge(session, "subject",
+				KEY_COLUMNS, VALUE_COLUMNS, Subject.class, rows));
+	}
+
+	/**
+	 * Saves the subjects like save, but only writes those that are new or whose name, type or shape has changed.
+	 * The ids are written back onto all the subjects, changed or not.
+	 *
+	 * @param subjects the subjects to save
+	 * @return the number of subjects inserted, updated and left as they were
+	 */
+	public static MergeResult saveChanges(List<Subject> subjects){
+		return save(subjects, new MergeResult(0, 0, 0), (session, rows) -> CopyUtils.copyAndMergeChanges(
+				session, "subject", KEY_COLUMNS, VALUE_COLUMNS, Subject.class, rows, null));
+	}
+
+	private static <T> T save(List<Subject> subjects, T none, BiFunction<Session, Iterable<Object[]>, T> merge){
+		if (subjects.isEmpty()) {
+			return none;
+		}
+
+		Map<List<Object>, List<Subject>> subjectsByKey = new LinkedHashMap<>();
+		for (Subject subject : subjects) {
+			subjectsByKey.computeIfAbsent(subjectKey(subject.getSubjectType().getId(), subject.getLabel()),
+					key -> new ArrayList<>()).add(subject);
+		}
+
+		return HibernateUtil.withTransaction(session -> {
+			session.flush();
+			Map<List<Object>, Integer> ids = getIdsByTypeAndLabel(session, subjectsByKey.keySet());
+
+			List<List<Object>> newKeys = subjectsByKey.keySet().stream()
+					.filter(key -> !ids.containsKey(key))
+					.collect(Collectors.toList());
+			List<Integer> newIds = nextIds(session, newKeys.size());
+			for (int i = 0; i < newKeys.size(); i++) {
+				ids.put(newKeys.get(i), newIds.get(i));
+			}
+
+			List<Object[]> rows = new ArrayList<>(subjectsByKey.size());
+			for (Map.Entry<List<Object>, List<Subject>> entry : subjectsByKey.entrySet()) {
+				Integer id = ids.get(entry.getKey());
+				entry.getValue().forEach(subject -> subject.setId(id));
+
+				Subject subject = entry.getValue().get(entry.getValue().size() - 1);
+				rows.add(new Object[]{
+						id,
+						subject.getSubjectType().getId(),
+						subject.getLabel(),
+						subject.getName(),
+						toHexEWKB(subject.getShape())});
+			}
+
+			return merge.apply(session, rows);
+		});
+	}
+
+	private static List<Object> subjectKey(Integer subjectTypeId, String label) {
+		return Arrays.asList(subjectTypeId, label);
+	}
+
+	private static Map<List<Object>, Integer> getIdsByTypeAndLabel(Session session, Collection<List<Object>> keys) {
+		Integer[] subjectTypeIds = keys.stream().map(key -> (Integer) key.get(0)).toArray(Integer[]::new);
+		String[] labels = keys.stream().map(key -> (String) key.get(1)).toArray(String[]::new);
+
+		return session.doReturningWork(connection -> {
+			Map<List<Object>, Integer> ids = new HashMap<>();
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT s.id, s.subject_type_id, s.label FROM subject s"
+							+ " JOIN unnest(?, ?) AS k(subject_type_id, label)"
+							+ " ON s.subject_type_id = k.subject_type_id AND s.label = k.label")) {
+				statement.setArray(1, connection.createArrayOf("integer", subjectTypeIds));
+				statement.setArray(2, connection.createArrayOf("text", labels));
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						ids.put(subjectKey(resultSet.getInt(2), resultSet.getString(3)), resultSet.getInt(1));
+					}
 				}
-				saved++;
+			}
+			return ids;
+		});
+	}
 
-				if ( saved % 20 == 0 ) { //20, same as the JDBC batch size
-					//flush a batch of inserts and release memory:
-					session.flush();
-					session.clear();
+	private static List<Integer> nextIds(Session session, int count) {
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		return session.doReturningWork(connection -> {
+			List<Integer> ids = new ArrayList<>(count);
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT nextval('subject_id_sequence') FROM generate_series(1, ?)")) {
+				statement.setInt(1, count);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						ids.add(resultSet.getInt(1));
+					}
 				}
 			}
-			session.getTransaction().commit();
+			return ids;
 		});
 	}
 
-	private static Query queryFromSubjectSpecification(Session session, SubjectRecipe subjectRecipe) {
+	// PostGIS reads hex EWKB straight into a geometry column
+	private static String toHexEWKB(Geometry shape) {
+		if (shape == null) {
+			return null;
+		}
+		boolean hasZ = Arrays.stream(shape.getCoordinates()).anyMatch(coordinate -> !Double.isNaN(coordinate.z));
+		return WKBWriter.toHex(new WKBWriter(hasZ ? 3 : 2, true).write(shape));
+	}
+
+	static Query queryFromSubjectSpecification(Session session, SubjectRecipe subjectRecipe) {
 		SubjectType subjectType = SubjectTypeUtils.getSubjectTypeByProviderAndLabel(subjectRecipe.getProvider(), subjectRecipe.getSubjectType());
 
 		String hqlQuery = "from Subject s where s.subjectType = :subjectType";
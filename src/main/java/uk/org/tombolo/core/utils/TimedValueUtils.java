@@ -1,27 +1,36 @@
 package uk.org.tombolo.core.utils;
 
-import org.hibernate.NonUniqueObjectException;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.TimedValue;
+import uk.org.tombolo.core.TimedValueId;
 import uk.org.tombolo.importer.ParsingException;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class TimedValueUtils {
 	static Logger log = LoggerFactory.getLogger(TimedValueUtils.class);
+	private static final int LATEST_VALUES_FETCH_SIZE = 10000;
+	private static final List<String> KEY_COLUMNS = Arrays.asList("subject_id", "attribute_id", "timestamp");
+	private static final List<String> VALUE_COLUMNS = Collections.singletonList("value");
 
 	public static List<TimedValue> getBySubjectAndAttribute(Subject subject, Attribute attribute){
 		return HibernateUtil.withSession((session) -> {
@@ -92,34 +101,117 @@ public class TimedValueUtils {
 		});
 	}
 	
+	/**
+	 * forEachLatestByAttributes
+	 * Streams the value with the latest timestamp of every subject for each of the attributes.
+	 *
+	 * Unlike getLatestBySubjectAndAttributes this runs a single SELECT DISTINCT ON query in SQL, so it does not
+	 * build an entity per row. The rows are passed to the consumer ordered by attribute id and then subject id.
+	 *
+	 * @param attributes the attributes to return the values of
+	 * @param consumer the consumer of the latest value of each subject/attribute pair
+	 */
+	public static void forEachLatestByAttributes(List<Attribute> attributes, LatestValueConsumer consumer) {
+		if (attributes.isEmpty()) {
+			return;
+		}
+		Integer[] attributeIds = attributes.stream().map(Attribute::getId).toArray(Integer[]::new);
+		// The rows are only streamed with the fetch size inside a transaction
+		HibernateUtil.withTransaction(session -> {
+			session.doWork(connection -> {
+				try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT DISTINCT ON (attribute_id, subject_id) attribute_id, subject_id, timestamp, value"
+								+ " FROM timed_value WHERE attribute_id = ANY(?)"
+								+ " ORDER BY attribute_id, subject_id, timestamp DESC")) {
+					statement.setArray(1, connection.createArrayOf("integer", attributeIds));
+					statement.setFetchSize(LATEST_VALUES_FETCH_SIZE);
+					try (ResultSet resultSet = statement.executeQuery()) {
+						while (resultSet.next()) {
+							consumer.accept(resultSet.getInt(1), resultSet.getInt(2),
+									resultSet.getTimestamp(3).toLocalDateTime(), resultSet.getDouble(4));
+						}
+					}
+				}
+			});
+		});
+	}
+
+	public interface LatestValueConsumer {
+		void accept(int attributeId, int subjectId, LocalDateTime timestamp, double value);
+	}
+
 	public static void save(TimedValue timedValue){
 		save(Collections.singletonList(timedValue));
 	}
 
+	/**
+	 * Saves the timed values, replacing the value of those that already exist.
+	 * The values are written in bulk with COPY. When the list contains the same subject, attribute and timestamp
+	 * more than once only the first value is saved and the others are reported together.
+	 *
+	 * @param timedValues the timed values to save
+	 * @return the number of timed values saved
+	 */
 	public static int save(List<TimedValue> timedValues){
-		return HibernateUtil.withSession((session) -> {
-			int saved = 0;
-			session.beginTransaction();
-			for (TimedValue timedValue : timedValues){
-				try{
-					session.saveOrUpdate(timedValue);
-					saved++;
-				}catch(NonUniqueObjectException e){
-					// This is happening because the TFL stations contain a duplicate ID
-					log.warn("Could not save timed value for subject {}, attribute {}, time {}: {}",
-							timedValue.getId().getSubject().getLabel(),
-							timedValue.getId().getAttribute().getDescription(),
-							timedValue.getId().getTimestamp().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-							e.getMessage());
-				}
-				if ( saved % 20 == 0 ) { //20, same as the JDBC batch size
-					//flush a batch of inserts and release memory:
-					session.flush();
-					session.clear();
-				}
+		return save(timedValues, 0, (session, rows) -> CopyUtils.copyAndMerge(session, "timed_value",
+				KEY_COLUMNS, VALUE_COLUMNS, TimedValue.class, rows));
+	}
+
+	/**
+	 * Saves the timed values like save, but only writes those that are new or whose value has changed.
+	 *
+	 * @param timedValues the timed values to save
+	 * @return the number of timed values inserted, updated and left as they were
+	 */
+	public static MergeResult saveChanges(List<TimedValue> timedValues){
+		return saveChanges(timedValues, null);
+	}
+
+	/**
+	 * Saves the timed values like saveChanges, and records their keys under the run in timed_value_written.
+	 *
+	 * @param timedValues the timed values to save
+	 * @param run the run to record the keys under, or null not to record them
+	 * @return the number of timed values inserted, updated and left as they were
+	 */
+	public static MergeResult saveChanges(List<TimedValue> timedValues, String run){
+		return save(timedValues, new MergeResult(0, 0, 0), (session, rows) -> CopyUtils.copyAndMergeChanges(
+				session, "timed_value", KEY_COLUMNS, VALUE_COLUMNS, TimedValue.class, rows, run));
+	}
+
+	private static <T> T save(List<TimedValue> timedValues, T none, BiFunction<Session, Iterable<Object[]>, T> merge){
+		Map<List<Object>, TimedValue> unique = new LinkedHashMap<>();
+		List<TimedValue> duplicates = new ArrayList<>();
+		for (TimedValue timedValue : timedValues) {
+			TimedValueId id = timedValue.getId();
+			List<Object> key = Arrays.asList(id.getSubject().getId(), id.getAttribute().getId(), id.getTimestamp());
+			if (unique.putIfAbsent(key, timedValue) != null) {
+				duplicates.add(timedValue);
 			}
-			session.getTransaction().commit();
-			return saved;
+		}
+
+		if (!duplicates.isEmpty()) {
+			// This is happening because the TFL stations contain a duplicate ID
+			TimedValueId example = duplicates.get(0).getId();
+			log.warn("Skipped {} timed values with a duplicate subject, attribute and time, e.g. subject {}, attribute {}, time {}",
+					duplicates.size(),
+					example.getSubject().getLabel(),
+					example.getAttribute().getDescription(),
+					example.getTimestamp().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+		}
+
+		if (unique.isEmpty()) {
+			return none;
+		}
+
+		Iterable<Object[]> rows = () -> unique.values().stream().map(timedValue -> new Object[]{
+				timedValue.getId().getSubject().getId(),
+				timedValue.getId().getAttribute().getId(),
+				timedValue.getId().getTimestamp().format(TimedValueId.DATE_TIME_FORMATTER),
+				timedValue.getValue()
+		}).iterator();
+		return HibernateUtil.withTransaction((session) -> {
+			return merge.apply(session, rows);
 		});
 	}
 	
@@ -3,11 +3,14 @@ package uk.org.tombolo.execution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.AbstractRunner;
-import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.utils.HibernateUtil;
+import uk.org.tombolo.core.utils.SubjectCursor;
 import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.exporter.Exporter;
 import uk.org.tombolo.field.Field;
 import uk.org.tombolo.field.ParentField;
+import uk.org.tombolo.field.PrefetchableField;
 import uk.org.tombolo.field.modelling.ModellingField;
 import uk.org.tombolo.importer.Config;
 import uk.org.tombolo.importer.DownloadUtils;
@@ -25,7 +28,9 @@ import java.io.File;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -34,6 +39,8 @@ public class DataExportEngine implements ExecutionEngine {
 	private static DownloadUtils downloadUtils;
 	private static Properties apiKeys;
 	private FieldCache fieldCache;
+	private Integer threads;
+	private File fieldValueCache;
 
 	public DataExportEngine(Properties apiKeys, DownloadUtils downloadUtils) {
 		this.apiKeys = apiKeys;
@@ -41,14 +48,41 @@ public class DataExportEngine implements ExecutionEngine {
 		fieldCache = new FieldCache();
 	}
 
+	/**
+	 * Sets the number of worker threads used to evaluate the fields.
+	 * When set, it takes precedence over the number of threads in the recipe.
+	 *
+	 * @param threads number of worker threads, or null to use the recipe value
+	 */
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the directory in which field values are kept between exports.
+	 * The values are only reused as long as no importer has written to the database journal since.
+	 *
+	 * @param fieldValueCache directory of the persistent field value cache, or null to not keep values
+	 */
+	public void setFieldValueCache(File fieldValueCache) {
+		this.fieldValueCache = fieldValueCache;
+	}
+
 	public void execute(DataExportRecipe dataExportRecipe, Writer writer, ImporterMatcher forceImports) throws Exception {
 		List<SubjectRecipe> subjectRecipes = dataExportRecipe.getDataset().getSubjects();
+		// Imports hold a connection on each lane and on the writer of its importer, and the export one on the
+		// subject cursor and one on each worker, so a smaller pool would leave threads waiting until it times out
+		int connections = Math.max(2 * getImportThreads(dataExportRecipe) + 1, getThreads(dataExportRecipe) + 1);
+		if (HibernateUtil.ensurePoolSize(connections))
+			log.info("Grew the connection pool to {} connections", connections);
+		ImportPlanner importPlanner = new ImportPlanner(getImportThreads(dataExportRecipe));
 		// Import datasources that are in the global dataset specification
 		for (DatasourceRecipe datasourceSpec : dataExportRecipe.getDataset().getDatasources()) {
 			if (!datasourceSpec.getImporterClass().isEmpty()) {
-				importDatasource(forceImports, datasourceSpec, subjectRecipes);
+				importPlanner.add(datasourceSpec);
 			}
 		}
+		runImports(importPlanner, forceImports, subjectRecipes);
 
 		// Generate fields
 		List<FieldRecipe> fieldSpecs = dataExportRecipe.getDataset().getFields();
@@ -59,47 +93,139 @@ public class DataExportEngine implements ExecutionEngine {
 			fields.add(field);
 		}
 
-		prepareFields(fields, dataExportRecipe.getDataset().getSubjects(), forceImports);
+		prepareFields(fields, importPlanner, subjectRecipes, forceImports);
+		log.info("Imported {} datasources in {} ms", importPlanner.getTimings().size(),
+				importPlanner.getTimings().stream().mapToLong(ImportPlanner.ImportTiming::getMillis).sum());
 
 		// Use the new fields method
 		log.info("Exporting ...");
 		List<SubjectRecipe> subjectSpecList = subjectRecipes;
 		Exporter exporter = (Exporter) Class.forName(dataExportRecipe.getExporter()).newInstance();
-		List<Subject> subjects = SubjectUtils.getSubjectBySpecifications(subjectSpecList);
-		exporter.write(writer, subjects, fields, dataExportRecipe.getTimeStamp());
+		fieldCache.setSpatialIndexEnabled(Boolean.TRUE.equals(dataExportRecipe.getSpatialIndex()));
+		fieldCache.setLatestTimedValues(prefetchLatestTimedValues(fields));
+		// Opened after all the imports, so that it matches the data the fields are computed on
+		if (null != fieldValueCache)
+			fieldCache.setPersistentCache(PersistentFieldCache.open(fieldValueCache));
+		// The subjects are streamed from the database so that they are never all in memory at once
+		try (SubjectCursor subjects = SubjectUtils.scrollSubjectBySpecifications(subjectSpecList, SubjectCursor.DEFAULT_FETCH_SIZE)) {
+			exporter.write(writer, subjects, fields, dataExportRecipe.getTimeStamp(), getThreads(dataExportRecipe));
+		} finally {
+			fieldCache.evictSpatialIndexes();
+			fieldCache.setLatestTimedValues(null);
+			if (null != fieldCache.getPersistentCache()) {
+				fieldCache.getPersistentCache().close();
+				fieldCache.setPersistentCache(null);
+			}
+		}
+	}
+
+	// Loads the latest values of every attribute read by the fields in one go, rather than subject by subject
+	private LatestTimedValues prefetchLatestTimedValues(List<Field> fields) {
+		Map<Integer, Attribute> attributes = new LinkedHashMap<>();
+		collectPrefetchAttributes(fields, attributes);
+		if (attributes.isEmpty())
+			return null;
+
+		LatestTimedValues latestTimedValues = LatestTimedValues.load(new ArrayList<>(attributes.values()));
+		log.info("Prefetched {} latest values for {} attributes", latestTimedValues.size(), attributes.size());
+		return latestTimedValues;
 	}
 
-	private void prepareFields(List<Field> fields, List<SubjectRecipe> subjectRecipes, ImporterMatcher forceImports) throws Exception {
-		// Import datasources that are specified as part of a predefined field
+	private void collectPrefetchAttributes(List<Field> fields, Map<Integer, Attribute> attributes) {
 		for (Field field : fields) {
-			if (field instanceof ModellingField) {
-				// This is a predefined field and hence we need to import the appropriate datasources
-				for (DatasourceRecipe datasourceRecipe : ((ModellingField) field).getDatasources()) {
-					importDatasource(forceImports, datasourceRecipe, subjectRecipes);
-				}
+			if (field instanceof PrefetchableField) {
+				((PrefetchableField) field).getPrefetchAttributes()
+						.forEach(attribute -> attributes.putIfAbsent(attribute.getId(), attribute));
 			}
-
 			if (field instanceof ParentField) {
+				collectPrefetchAttributes(((ParentField) field).getChildFields(), attributes);
+			}
+		}
+	}
+
+	private int getThreads(DataExportRecipe dataExportRecipe) {
+		if (null != threads && threads > 0)
+			return threads;
+		if (null != dataExportRecipe.getThreads() && dataExportRecipe.getThreads() > 0)
+			return dataExportRecipe.getThreads();
+		return 1;
+	}
+
+	private int getImportThreads(DataExportRecipe dataExportRecipe) {
+		if (null != dataExportRecipe.getImportThreads() && dataExportRecipe.getImportThreads() > 0)
+			return dataExportRecipe.getImportThreads();
+		return 1;
+	}
+
+	// Walking the child fields also initialises the parent fields, which is needed before they are shared between
+	// the export worker threads.
+	// The datasources of the modelling fields found at one depth are imported together, before their children are
+	// initialised, since the children may need the imported data.
+	private void prepareFields(List<Field> fields, ImportPlanner importPlanner, List<SubjectRecipe> subjectRecipes,
+							   ImporterMatcher forceImports) throws Exception {
+		List<Field> modellingFields = new ArrayList<>();
+		collectModellingFields(fields, importPlanner, modellingFields);
+		while (!modellingFields.isEmpty()) {
+			runImports(importPlanner, forceImports, subjectRecipes);
+
+			List<Field> children = new ArrayList<>();
+			modellingFields.forEach(field -> children.addAll(((ParentField) field).getChildFields()));
+			modellingFields.clear();
+			collectModellingFields(children, importPlanner, modellingFields);
+		}
+	}
+
+	// Plans the datasources of the modelling fields found in the fields and their children, without walking into
+	// the modelling fields themselves
+	private void collectModellingFields(List<Field> fields, ImportPlanner importPlanner, List<Field> modellingFields) {
+		for (Field field : fields) {
+			if (field instanceof ModellingField) {
+				// This is a predefined field and hence we need to import the appropriate datasources
+				((ModellingField) field).getDatasources().forEach(importPlanner::add);
+				if (field instanceof ParentField)
+					modellingFields.add(field);
+			} else if (field instanceof ParentField) {
 				// This is a parent field and hence we need to prepare its children
-				prepareFields(((ParentField) field).getChildFields(), subjectRecipes, forceImports);
+				collectModellingFields(((ParentField) field).getChildFields(), importPlanner, modellingFields);
 			}
 		}
 	}
 
+	private void runImports(ImportPlanner importPlanner, ImporterMatcher forceImports,
+							List<SubjectRecipe> subjectRecipes) throws Exception {
+		importPlanner.run(datasourceRecipe -> {
+			Importer importer = initialiseImporter(datasourceRecipe.getImporterClass(), datasourceRecipe.getConfigFile());
+			importer.configure(apiKeys);
+			importer.setDownloadUtils(downloadUtils);
+			importer.setSubjectRecipes(subjectRecipes);
+			return new ImportPlanner.DatasourceImport() {
+				@Override
+				public DatasourceRecipe getDatasourceRecipe() {
+					return datasourceRecipe;
+				}
 
-	private void importDatasource(ImporterMatcher forceImports, DatasourceRecipe datasourceRecipe, List<SubjectRecipe> subjectRecipes) throws Exception {
+				@Override
+				public boolean createsSubjects() {
+					return importer.createsSubjects();
+				}
+
+				@Override
+				public String getLane() {
+					return importer.getProvider().getLabel();
+				}
 
-		Importer importer = initialiseImporter(datasourceRecipe.getImporterClass(), datasourceRecipe.getConfigFile());
-		importer.configure(apiKeys);
-		importer.setDownloadUtils(downloadUtils);
-		importer.setSubjectRecipes(subjectRecipes);
-		importer.importDatasource(
-				datasourceRecipe.getDatasourceId(),
-				datasourceRecipe.getGeographyScope(),
-				datasourceRecipe.getTemporalScope(),
-				datasourceRecipe.getLocalData(),
-				forceImports.doesMatch(datasourceRecipe.getImporterClass())
-		);
+				@Override
+				public void run() throws Exception {
+					importer.importDatasource(
+							datasourceRecipe.getDatasourceId(),
+							datasourceRecipe.getGeographyScope(),
+							datasourceRecipe.getTemporalScope(),
+							datasourceRecipe.getLocalData(),
+							forceImports.doesMatch(datasourceRecipe.getImporterClass())
+					);
+				}
+			};
+		});
 	}
 
 	private Importer initialiseImporter(String importerClass, String configFile) throws Exception {
@@ -1,55 +1,271 @@
 package uk.org.tombolo.execution;
 
-import org.ehcache.Cache;
-import org.ehcache.CacheManager;
-import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.CacheManagerBuilder;
-import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.core.utils.SubjectUtils;
+import uk.org.tombolo.field.AbstractField;
 import uk.org.tombolo.field.Field;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Class for caching field values when exporting. This will speed up exports that re-use calculated fields.
+ *
+ * Values are keyed by the identity of the field, which is derived from its recipe so that equivalent fields share
+ * their values, and by the id of the subject. Numeric values are kept as primitive doubles and other values in a
+ * side table of strings. The cache is split in segments that each hold a current and a previous generation of
+ * values; when the current generation fills half of the byte budget of its segment, the previous generation is
+ * dropped. Values read from the previous generation are moved back into the current one.
+ *
+ * When a persistent cache is set, values missing from memory are looked up there and new values are written
+ * through to it, for the fields built from a recipe.
+ *
+ * When spatial indexes are enabled it also holds an in-memory spatial index per subject type, shared by all the
+ * fields of the export and built the first time a field asks for it.
+ * It also holds the latest values prefetched for the export, if any.
  */
 public class FieldCache {
     private Logger log = LoggerFactory.getLogger(FieldCache.class);
     private static final int LOGGING_FREQUENCY = 1000;
-    private static final int DEFAULT_CACHE_SIZE_ENTRIES = 100000;
-    private Cache<String,String> fieldCache;
+    private static final long DEFAULT_CACHE_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final int SEGMENTS = 16;
+    // Rough size of a String entry in a HashMap besides its characters
+    private static final int BYTES_PER_STRING_ENTRY = 96;
 
-    int hits = 0;
-    int misses = 0;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, Integer> fieldIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextFieldIndex = new AtomicInteger(1);
+    private boolean spatialIndexEnabled = false;
+    private final Map<Integer, SubjectSpatialIndex> spatialIndexes = new ConcurrentHashMap<>();
+    private volatile LatestTimedValues latestTimedValues;
+    private volatile PersistentFieldCache persistentCache;
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
     public FieldCache(){
-        CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
-                .withCache("fields",
-                        CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, String.class, ResourcePoolsBuilder.heap(DEFAULT_CACHE_SIZE_ENTRIES)))
-                .build();
-        cacheManager.init();
-        fieldCache = cacheManager.getCache("fields", String.class, String.class);
+        this(DEFAULT_CACHE_SIZE_BYTES);
+    }
+
+    /**
+     * @param maxBytes approximate number of bytes the cached values may take
+     */
+    public FieldCache(long maxBytes){
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
     }
 
     public String getChachedValue(Field field, Subject subject){
-        String cachedValue = fieldCache.get(getCacheKey(field, subject));
-        if (cachedValue != null)
-            hits++;
-        else
-            misses++;
-        if ((hits+misses) % LOGGING_FREQUENCY == 0)
-            log.info("Caching milestone {} ({} hits) ({} misses)", hits+misses, hits, misses);
+        long key = getCacheKey(field, subject);
+        String cachedValue = segmentFor(key).getString(key);
+        PersistentFieldCache persistent = persistentCacheFor(field);
+        if (cachedValue == null && persistent != null) {
+            Double doubleValue = persistent.getDouble(field.getIdentity(), subject.getId());
+            if (doubleValue != null) {
+                segmentFor(key).putDouble(key, doubleValue);
+                cachedValue = doubleValue.toString();
+            } else {
+                cachedValue = persistent.getString(field.getIdentity(), subject.getId());
+                if (cachedValue != null)
+                    segmentFor(key).putString(key, cachedValue);
+            }
+        }
+        countLookup(cachedValue != null);
         return cachedValue;
     }
 
     public void putCachedValue(Field field, Subject subject, String value){
-        fieldCache.put(getCacheKey(field, subject),value);
+        long key = getCacheKey(field, subject);
+        segmentFor(key).putString(key, value);
+        PersistentFieldCache persistent = persistentCacheFor(field);
+        if (persistent != null)
+            persistent.putString(field.getIdentity(), subject.getId(), value);
+    }
+
+    public Double getCachedDouble(Field field, Subject subject){
+        long key = getCacheKey(field, subject);
+        Double cachedValue = segmentFor(key).getDouble(key);
+        PersistentFieldCache persistent = persistentCacheFor(field);
+        if (cachedValue == null && persistent != null) {
+            cachedValue = persistent.getDouble(field.getIdentity(), subject.getId());
+            if (cachedValue != null)
+                segmentFor(key).putDouble(key, cachedValue);
+        }
+        countLookup(cachedValue != null);
+        return cachedValue;
+    }
+
+    public void putCachedDouble(Field field, Subject subject, double value){
+        long key = getCacheKey(field, subject);
+        segmentFor(key).putDouble(key, value);
+        PersistentFieldCache persistent = persistentCacheFor(field);
+        if (persistent != null)
+            persistent.putDouble(field.getIdentity(), subject.getId(), value);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the cached values.
+     */
+    public long getSizeBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getBytes();
+        }
+        return bytes;
+    }
+
+    private void countLookup(boolean hit) {
+        long hitCount = hit ? hits.incrementAndGet() : hits.get();
+        long missCount = hit ? misses.get() : misses.incrementAndGet();
+        if ((hitCount + missCount) % LOGGING_FREQUENCY == 0)
+            log.info("Caching milestone {} ({} hits) ({} misses) ({} bytes)",
+                    hitCount + missCount, hitCount, missCount, getSizeBytes());
+    }
+
+    // Fields not built from a recipe have no identity that would be the same in another run
+    private PersistentFieldCache persistentCacheFor(Field field) {
+        PersistentFieldCache persistent = persistentCache;
+        if (persistent == null || field.getIdentity().startsWith(AbstractField.INSTANCE_IDENTITY_PREFIX))
+            return null;
+        return persistent;
+    }
+
+    // The field index takes the upper half of the key and the subject id the lower half
+    private long getCacheKey(Field field, Subject subject){
+        int fieldIndex = fieldIndexes.computeIfAbsent(field.getIdentity(), identity -> nextFieldIndex.getAndIncrement());
+        return ((long) fieldIndex << 32) | (subject.getId() & 0xFFFFFFFFL);
+    }
+
+    private Segment segmentFor(long key) {
+        int hash = (int) (key ^ (key >>> 32));
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class Segment {
+        private final long generationBytes;
+        private LongDoubleMap doubles = new LongDoubleMap();
+        private LongDoubleMap previousDoubles = new LongDoubleMap();
+        private Map<Long, String> strings = new HashMap<>();
+        private Map<Long, String> previousStrings = new HashMap<>();
+        private long bytes = 0;
+        private long previousBytes = 0;
+
+        private Segment(long maxBytes) {
+            this.generationBytes = Math.max(1, maxBytes / 2);
+        }
+
+        private synchronized Double getDouble(long key) {
+            if (doubles.containsKey(key))
+                return doubles.get(key, Double.NaN);
+            if (previousDoubles.containsKey(key)) {
+                double value = previousDoubles.get(key, Double.NaN);
+                putDouble(key, value);
+                return value;
+            }
+            return null;
+        }
+
+        private synchronized void putDouble(long key, double value) {
+            if (!doubles.containsKey(key)) {
+                reserve(LongDoubleMap.BYTES_PER_ENTRY);
+            }
+            doubles.put(key, value);
+        }
+
+        private synchronized String getString(long key) {
+            String value = strings.get(key);
+            if (value == null) {
+                value = previousStrings.get(key);
+                if (value != null) {
+                    putString(key, value);
+                }
+            }
+            if (value == null) {
+                // Numeric values can also be read as strings
+                Double doubleValue = getDouble(key);
+                if (doubleValue != null)
+                    value = doubleValue.toString();
+            }
+            return value;
+        }
+
+        private synchronized void putString(long key, String value) {
+            if (!strings.containsKey(key)) {
+                reserve(BYTES_PER_STRING_ENTRY + 2L * value.length());
+            }
+            strings.put(key, value);
+        }
+
+        private synchronized long getBytes() {
+            return bytes + previousBytes;
+        }
+
+        // Starts a new generation when the entry does not fit in the current one
+        private void reserve(long entryBytes) {
+            if (bytes + entryBytes > generationBytes) {
+                previousDoubles = doubles;
+                previousStrings = strings;
+                previousBytes = bytes;
+                doubles = new LongDoubleMap();
+                strings = new HashMap<>();
+                bytes = 0;
+            }
+            bytes += entryBytes;
+        }
+    }
+
+    public void setSpatialIndexEnabled(boolean spatialIndexEnabled) {
+        this.spatialIndexEnabled = spatialIndexEnabled;
+    }
+
+    /**
+     * Returns the spatial index over all the subjects of the subject type, loading it if needed.
+     *
+     * @param subjectType the subject type to index
+     * @return the spatial index, or null if spatial indexes are not enabled
+     */
+    public SubjectSpatialIndex getSpatialIndex(SubjectType subjectType) {
+        if (!spatialIndexEnabled || subjectType == null)
+            return null;
+        return spatialIndexes.computeIfAbsent(subjectType.getId(), id -> {
+            SubjectSpatialIndex spatialIndex = new SubjectSpatialIndex(SubjectUtils.getSubjectsByType(subjectType));
+            log.info("Indexed {} subjects of type {}", spatialIndex.size(), subjectType.getLabel());
+            return spatialIndex;
+        });
+    }
+
+    public void evictSpatialIndexes() {
+        spatialIndexes.clear();
+    }
+
+    public LatestTimedValues getLatestTimedValues() {
+        return latestTimedValues;
+    }
+
+    public void setLatestTimedValues(LatestTimedValues latestTimedValues) {
+        this.latestTimedValues = latestTimedValues;
+    }
+
+    public PersistentFieldCache getPersistentCache() {
+        return persistentCache;
     }
 
-    private String getCacheKey(Field field, Subject subject){
-        return field.hashCode()
-                + "\t"
-                +subject.getId();
+    public void setPersistentCache(PersistentFieldCache persistentCache) {
+        this.persistentCache = persistentCache;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,206 @@
+package uk.org.tombolo.execution;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.core.utils.HibernateUtil;
+import uk.org.tombolo.recipe.DatasourceRecipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ImportPlanner.java
+ * Plans and runs the imports of the datasources of an export.
+ *
+ * Datasources are added as they are found in the recipe, and a datasource added twice is only imported once.
+ * When the pending imports are run, those creating subjects run first and one after another, since the other
+ * imports may refer to their subjects. The remaining imports then run concurrently on a bounded number of threads.
+ * Imports sharing a lane, which is the provider of their importer, still run one after another so that they do not
+ * race to save the same provider and attributes.
+ * The time taken by every import is logged and kept.
+ */
+public class ImportPlanner {
+    private static final Logger log = LoggerFactory.getLogger(ImportPlanner.class);
+
+    private final int threads;
+    private final Set<List<Object>> plannedKeys = new HashSet<>();
+    private final List<DatasourceRecipe> pending = new ArrayList<>();
+    private final List<ImportTiming> timings = new ArrayList<>();
+
+    public ImportPlanner(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Adds the datasource to the pending imports, unless it has already been added.
+     *
+     * @return true if the datasource was added
+     */
+    public boolean add(DatasourceRecipe datasourceRecipe) {
+        if (!plannedKeys.add(datasourceKey(datasourceRecipe)))
+            return false;
+        pending.add(datasourceRecipe);
+        return true;
+    }
+
+    public List<DatasourceRecipe> getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the time taken by every import run so far, in the order they finished.
+     */
+    public List<ImportTiming> getTimings() {
+        return timings;
+    }
+
+    /**
+     * Runs the pending imports.
+     *
+     * @param factory the factory of the imports of the datasources
+     * @throws Exception the exception thrown by a failed import, once the other lanes have been cancelled
+     */
+    public void run(ImportFactory factory) throws Exception {
+        List<DatasourceImport> subjectImports = new ArrayList<>();
+        Map<String, List<DatasourceImport>> lanes = new LinkedHashMap<>();
+        for (DatasourceRecipe datasourceRecipe : pending) {
+            DatasourceImport datasourceImport = factory.create(datasourceRecipe);
+            if (datasourceImport.createsSubjects()) {
+                subjectImports.add(datasourceImport);
+            } else {
+                lanes.computeIfAbsent(datasourceImport.getLane(), lane -> new ArrayList<>()).add(datasourceImport);
+            }
+        }
+        pending.clear();
+
+        for (DatasourceImport subjectImport : subjectImports) {
+            runTimed(subjectImport);
+        }
+
+        int laneThreads = Math.min(threads, lanes.size());
+        if (laneThreads <= 1) {
+            for (List<DatasourceImport> lane : lanes.values()) {
+                runLane(lane);
+            }
+            return;
+        }
+
+        log.info("Importing {} lanes of datasources on {} threads", lanes.size(), laneThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(laneThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (List<DatasourceImport> lane : lanes.values()) {
+                futures.add(pool.submit(() -> runLaneWithThreadSession(lane)));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw new Error("Worker failed while importing datasources", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Each worker gets its own session, since Hibernate sessions cannot be shared between threads
+    private Void runLaneWithThreadSession(List<DatasourceImport> lane) throws Exception {
+        Exception exception = HibernateUtil.withThreadSession(() -> {
+            try {
+                runLane(lane);
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+        if (exception != null) {
+            throw exception;
+        }
+        return null;
+    }
+
+    private void runLane(List<DatasourceImport> lane) throws Exception {
+        for (DatasourceImport datasourceImport : lane) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedException("Import of datasources was cancelled");
+            runTimed(datasourceImport);
+        }
+    }
+
+    private void runTimed(DatasourceImport datasourceImport) throws Exception {
+        long start = System.currentTimeMillis();
+        datasourceImport.run();
+        ImportTiming timing = new ImportTiming(datasourceImport.getDatasourceRecipe(), System.currentTimeMillis() - start);
+        synchronized (timings) {
+            timings.add(timing);
+        }
+        log.info("Import of {}:{} took {} ms",
+                timing.getDatasourceRecipe().getImporterClass(),
+                timing.getDatasourceRecipe().getDatasourceId(),
+                timing.getMillis());
+    }
+
+    private static List<Object> datasourceKey(DatasourceRecipe datasourceRecipe) {
+        return Arrays.asList(
+                datasourceRecipe.getImporterClass(),
+                datasourceRecipe.getDatasourceId(),
+                datasourceRecipe.getGeographyScope(),
+                datasourceRecipe.getTemporalScope(),
+                datasourceRecipe.getLocalData(),
+                datasourceRecipe.getConfigFile());
+    }
+
+    /**
+     * The import of one datasource, ready to run.
+     */
+    public interface DatasourceImport {
+        DatasourceRecipe getDatasourceRecipe();
+
+        /**
+         * Returns true if the import creates subjects that other imports may refer to.
+         */
+        boolean createsSubjects();
+
+        /**
+         * Returns the lane of the import. Imports in the same lane never run at the same time.
+         */
+        String getLane();
+
+        void run() throws Exception;
+    }
+
+    public interface ImportFactory {
+        DatasourceImport create(DatasourceRecipe datasourceRecipe) throws Exception;
+    }
+
+    public static class ImportTiming {
+        private final DatasourceRecipe datasourceRecipe;
+        private final long millis;
+
+        ImportTiming(DatasourceRecipe datasourceRecipe, long millis) {
+            this.datasourceRecipe = datasourceRecipe;
+            this.millis = millis;
+        }
+
+        public DatasourceRecipe getDatasourceRecipe() {
+            return datasourceRecipe;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package uk.org.tombolo.execution;
+
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.TimedValue;
+import uk.org.tombolo.core.utils.TimedValueUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LatestTimedValues.java
+ * The latest TimedValue of every subject for a set of attributes, loaded with a single query before an export.
+ *
+ * Values are held per attribute in arrays sorted by subject id, so a lookup is a binary search and a value costs
+ * a few bytes rather than a whole TimedValue entity. Equal timestamps share one instance.
+ * The lookup is read only once loaded and can be used from several threads.
+ */
+public class LatestTimedValues {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<Integer, AttributeValues> valuesByAttribute = new HashMap<>();
+    private int size = 0;
+
+    public static LatestTimedValues load(List<Attribute> attributes) {
+        LatestTimedValues latestTimedValues = new LatestTimedValues();
+        Map<LocalDateTime, LocalDateTime> timestamps = new HashMap<>();
+        for (Attribute attribute : attributes) {
+            latestTimedValues.valuesByAttribute.put(attribute.getId(), new AttributeValues());
+        }
+
+        TimedValueUtils.forEachLatestByAttributes(attributes, (attributeId, subjectId, timestamp, value) -> {
+            latestTimedValues.valuesByAttribute.get(attributeId)
+                    .add(subjectId, timestamps.computeIfAbsent(timestamp, t -> t), value);
+            latestTimedValues.size++;
+        });
+        return latestTimedValues;
+    }
+
+    /**
+     * Returns true if the latest values of the attribute were loaded, even if no subject has a value for it.
+     */
+    public boolean contains(Attribute attribute) {
+        return valuesByAttribute.containsKey(attribute.getId());
+    }
+
+    /**
+     * Returns the latest value of the attribute on the subject, or null if there is none.
+     * The attribute must be one of those loaded.
+     */
+    public TimedValue get(Subject subject, Attribute attribute) {
+        AttributeValues values = valuesByAttribute.get(attribute.getId());
+        int index = Arrays.binarySearch(values.subjectIds, 0, values.size, subject.getId());
+        if (index < 0) {
+            return null;
+        }
+        return new TimedValue(subject, attribute, values.timestamps[index], values.values[index]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Rows arrive ordered by subject id, so appending keeps the arrays sorted
+    private static class AttributeValues {
+        private int[] subjectIds = new int[INITIAL_CAPACITY];
+        private LocalDateTime[] timestamps = new LocalDateTime[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size = 0;
+
+        private void add(int subjectId, LocalDateTime timestamp, double value) {
+            if (size == subjectIds.length) {
+                subjectIds = Arrays.copyOf(subjectIds, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            subjectIds[size] = subjectId;
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+}
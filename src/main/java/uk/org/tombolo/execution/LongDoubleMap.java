@@ -0,0 +1,78 @@
+package uk.org.tombolo.execution;
+
+/**
+ * LongDoubleMap.java
+ * An open addressing hash map from primitive longs to primitive doubles, so that neither keys nor values are boxed.
+ *
+ * The key 0 is reserved to mark empty slots. The map is not thread safe.
+ */
+class LongDoubleMap {
+    private static final int INITIAL_CAPACITY = 64;
+    // A slot holds a key and a value, and the table is kept at most half full
+    static final int BYTES_PER_ENTRY = 2 * (Long.BYTES + Double.BYTES);
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Returns the value of the key, or the default value if the key is not in the map.
+     */
+    double get(long key, double defaultValue) {
+        int slot = find(keys, key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    boolean containsKey(long key) {
+        return keys[find(keys, key)] == key;
+    }
+
+    void put(long key, double value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("The key 0 is reserved");
+        }
+        int slot = find(keys, key);
+        if (keys[slot] != key) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = find(keys, key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Returns the slot of the key, or the empty slot where it would go
+    private static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new double[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,213 @@
+package uk.org.tombolo.execution;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.core.utils.DatabaseJournal;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PersistentFieldCache.java
+ * An on-disk store of field values that outlives a single export, so that a recipe run again on the same data does
+ * not recompute its fields.
+ *
+ * Values are kept in one file per field, named by a hash of the identity of the field, which is derived from its
+ * recipe. The files live in a directory named by the data version of the database journal. Any importer writing a
+ * journal entry changes the version, and the directories of other versions are removed when the cache is opened, so
+ * values computed on older data are never read.
+ *
+ * Each file is an append-only log of values and is read in full the first time the field is looked up.
+ * The cache can be used from several threads.
+ */
+public class PersistentFieldCache implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PersistentFieldCache.class);
+    private static final String VERSION_DIRECTORY_PREFIX = "journal-";
+    private static final String FILE_SUFFIX = ".values";
+    private static final byte DOUBLE_RECORD = 'D';
+    private static final byte STRING_RECORD = 'S';
+    // DataOutput.writeUTF is limited to 65535 bytes, and a char takes at most three of them
+    private static final int MAX_STRING_LENGTH = 65535 / 3;
+    // Subject ids are stored with this bit set since LongDoubleMap reserves the key 0
+    private static final long PRESENT = 1L << 32;
+
+    private final File directory;
+    private final Map<String, FieldValues> fieldValues = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the cache for the current data version of the database journal.
+     *
+     * @param root the directory holding the cache
+     */
+    public static PersistentFieldCache open(File root) throws IOException {
+        return new PersistentFieldCache(root, DatabaseJournal.getDataVersion());
+    }
+
+    PersistentFieldCache(File root, String dataVersion) throws IOException {
+        directory = new File(root, VERSION_DIRECTORY_PREFIX + dataVersion);
+        Files.createDirectories(directory.toPath());
+        removeOtherVersions(root);
+    }
+
+    public Double getDouble(String identity, int subjectId) {
+        return valuesFor(identity).getDouble(subjectId);
+    }
+
+    public String getString(String identity, int subjectId) {
+        return valuesFor(identity).getString(subjectId);
+    }
+
+    public void putDouble(String identity, int subjectId, double value) {
+        valuesFor(identity).putDouble(subjectId, value);
+    }
+
+    public void putString(String identity, int subjectId, String value) {
+        if (value.length() > MAX_STRING_LENGTH)
+            return;
+        valuesFor(identity).putString(subjectId, value);
+    }
+
+    /**
+     * Writes the pending values of every field to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        for (FieldValues values : fieldValues.values()) {
+            values.close();
+        }
+        log.info("Persisted field values of {} fields in {}", fieldValues.size(), directory);
+    }
+
+    private FieldValues valuesFor(String identity) {
+        return fieldValues.computeIfAbsent(identity, key -> {
+            FieldValues values = new FieldValues(new File(directory, DigestUtils.sha256Hex(key) + FILE_SUFFIX));
+            try {
+                values.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read cached field values from " + values.file, e);
+            }
+            return values;
+        });
+    }
+
+    private void removeOtherVersions(File root) {
+        File[] versions = root.listFiles((dir, name) -> name.startsWith(VERSION_DIRECTORY_PREFIX));
+        if (versions == null)
+            return;
+        for (File version : versions) {
+            if (!version.equals(directory)) {
+                log.info("Removing field values of old data version {}", version);
+                FileUtils.deleteQuietly(version);
+            }
+        }
+    }
+
+    private static class FieldValues {
+        private final File file;
+        private final LongDoubleMap doubles = new LongDoubleMap();
+        private final Map<Integer, String> strings = new HashMap<>();
+        private DataOutputStream out;
+
+        private FieldValues(File file) {
+            this.file = file;
+        }
+
+        // Reads the log, dropping a record left incomplete by an interrupted run
+        private void load() throws IOException {
+            if (!file.exists())
+                return;
+            long validLength = 0;
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+                 DataInputStream in = new DataInputStream(counter)) {
+                while (true) {
+                    byte type = in.readByte();
+                    int subjectId = in.readInt();
+                    if (type == DOUBLE_RECORD) {
+                        doubles.put(keyOf(subjectId), in.readDouble());
+                    } else if (type == STRING_RECORD) {
+                        strings.put(subjectId, in.readUTF());
+                    } else {
+                        break;
+                    }
+                    validLength = counter.getByteCount();
+                }
+            } catch (EOFException e) {
+                // End of the log
+            }
+            if (validLength < file.length()) {
+                log.warn("Discarding incomplete field values at the end of {}", file);
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                }
+            }
+        }
+
+        private synchronized Double getDouble(int subjectId) {
+            long key = keyOf(subjectId);
+            return doubles.containsKey(key) ? doubles.get(key, Double.NaN) : null;
+        }
+
+        // Numeric values can also be read as strings
+        private synchronized String getString(int subjectId) {
+            String value = strings.get(subjectId);
+            if (value == null) {
+                Double doubleValue = getDouble(subjectId);
+                if (doubleValue != null)
+                    value = doubleValue.toString();
+            }
+            return value;
+        }
+
+        private synchronized void putDouble(int subjectId, double value) {
+            long key = keyOf(subjectId);
+            if (doubles.containsKey(key) && Double.compare(doubles.get(key, Double.NaN), value) == 0)
+                return;
+            doubles.put(key, value);
+            try {
+                output().writeByte(DOUBLE_RECORD);
+                output().writeInt(subjectId);
+                output().writeDouble(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write cached field values to " + file, e);
+            }
+        }
+
+        private synchronized void putString(int subjectId, String value) {
+            if (value.equals(strings.get(subjectId)))
+                return;
+            strings.put(subjectId, value);
+            try {
+                output().writeByte(STRING_RECORD);
+                output().writeInt(subjectId);
+                output().writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write cached field values to " + file, e);
+            }
+        }
+
+        private DataOutputStream output() throws IOException {
+            if (out == null)
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            return out;
+        }
+
+        private static long keyOf(int subjectId) {
+            return (subjectId & 0xFFFFFFFFL) | PRESENT;
+        }
+
+        private synchronized void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+}
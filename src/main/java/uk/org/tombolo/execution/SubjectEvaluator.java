@@ -0,0 +1,120 @@
+package uk.org.tombolo.execution;
+
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.utils.HibernateUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SubjectEvaluator.java
+ * Evaluates a function for every subject of an export and hands the results back in the original subject order.
+ *
+ * With more than one thread the subjects are split in chunks that are evaluated concurrently on a pool of workers.
+ * Each chunk is evaluated with its own Hibernate session, so workers never share the session of the main thread.
+ * The number of chunks in flight is bounded, so results do not pile up in memory when writing is slower than
+ * evaluating.
+ */
+public class SubjectEvaluator {
+    private static final int CHUNK_SIZE = 50;
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+
+    private final int threads;
+
+    public SubjectEvaluator(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Applies the function to every subject and passes the results to the consumer in subject order.
+     * The consumer is always called on the calling thread.
+     *
+     * @param subjects the subjects to evaluate
+     * @param function the function to apply to each subject, possibly on a worker thread
+     * @param consumer the consumer of the results
+     * @throws Exception the first exception thrown by either the function or the consumer
+     */
+    public <T> void evaluateInOrder(Iterable<Subject> subjects, SubjectFunction<T> function,
+                                    ResultConsumer<T> consumer) throws Exception {
+        if (threads == 1) {
+            for (Subject subject : subjects) {
+                consumer.accept(function.apply(subject));
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<T>>> pending = new ArrayDeque<>();
+        try {
+            Iterator<Subject> iterator = subjects.iterator();
+            while (iterator.hasNext()) {
+                List<Subject> chunk = new ArrayList<>(CHUNK_SIZE);
+                while (iterator.hasNext() && chunk.size() < CHUNK_SIZE) {
+                    chunk.add(iterator.next());
+                }
+                pending.add(pool.submit(() -> evaluateChunk(chunk, function)));
+
+                if (pending.size() >= threads * CHUNKS_IN_FLIGHT_PER_THREAD) {
+                    consumeChunk(pending.poll(), consumer);
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumeChunk(pending.poll(), consumer);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private <T> List<T> evaluateChunk(List<Subject> chunk, SubjectFunction<T> function) throws Exception {
+        List<T> results = new ArrayList<>(chunk.size());
+        Exception exception = HibernateUtil.withThreadSession(() -> {
+            try {
+                for (Subject subject : chunk) {
+                    results.add(function.apply(subject));
+                }
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        });
+        if (exception != null) {
+            throw exception;
+        }
+        return results;
+    }
+
+    private <T> void consumeChunk(Future<List<T>> future, ResultConsumer<T> consumer) throws Exception {
+        List<T> results;
+        try {
+            results = future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new Error("Worker failed while evaluating subjects", e.getCause());
+        }
+        for (T result : results) {
+            consumer.accept(result);
+        }
+    }
+
+    public interface SubjectFunction<T> {
+        T apply(Subject subject) throws Exception;
+    }
+
+    public interface ResultConsumer<T> {
+        void accept(T result) throws Exception;
+    }
+}
@@ -0,0 +1,104 @@
+package uk.org.tombolo.execution;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import uk.org.tombolo.core.Subject;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SubjectSpatialIndex.java
+ * An in-memory spatial index over the subjects of a subject type.
+ *
+ * The subjects are held in an STRtree together with a prepared version of their shape, so that containment,
+ * within and nearest subject queries can be answered without a round trip to PostGIS. The results are the same as
+ * those of SubjectUtils.subjectsContainingSubject, subjectsWithinSubject and subjectNearestSubject.
+ * The index is read only once built and can be queried from several threads.
+ */
+public class SubjectSpatialIndex {
+    private static final Comparator<Subject> BY_ID = Comparator.comparing(Subject::getId);
+
+    private final STRtree tree = new STRtree();
+
+    public SubjectSpatialIndex(List<Subject> subjects) {
+        for (Subject subject : subjects) {
+            if (subject.getShape() != null) {
+                tree.insert(subject.getShape().getEnvelopeInternal(),
+                        new Entry(subject, PreparedGeometryFactory.prepare(subject.getShape())));
+            }
+        }
+        tree.build();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Returns the indexed subjects whose shape contains the geometry, ordered by id.
+     */
+    public List<Subject> subjectsContaining(Geometry geometry) {
+        if (geometry == null) { return Collections.emptyList(); }
+        return candidates(geometry.getEnvelopeInternal()).stream()
+                .filter(entry -> entry.shape.contains(geometry))
+                .map(entry -> entry.subject)
+                .sorted(BY_ID)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the indexed subjects whose shape is within the geometry, ordered by id.
+     */
+    public List<Subject> subjectsWithin(Geometry geometry) {
+        if (geometry == null) { return Collections.emptyList(); }
+        PreparedGeometry container = PreparedGeometryFactory.prepare(geometry);
+        return candidates(geometry.getEnvelopeInternal()).stream()
+                .filter(entry -> container.contains(entry.subject.getShape()))
+                .map(entry -> entry.subject)
+                .sorted(BY_ID)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the indexed subject nearest to the geometry, or null if there is none within the radius.
+     * The radius is in the units of the coordinates of the geometry.
+     */
+    public Subject nearestSubject(Geometry geometry, double radius) {
+        if (geometry == null) { return null; }
+        Envelope searchEnvelope = new Envelope(geometry.getEnvelopeInternal());
+        searchEnvelope.expandBy(radius);
+
+        Subject nearest = null;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (Entry entry : candidates(searchEnvelope)) {
+            double distance = entry.subject.getShape().distance(geometry);
+            if (distance <= radius && (distance < nearestDistance
+                    || (distance == nearestDistance && BY_ID.compare(entry.subject, nearest) < 0))) {
+                nearest = entry.subject;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Entry> candidates(Envelope envelope) {
+        return (List<Entry>) tree.query(envelope);
+    }
+
+    private static class Entry {
+        private final Subject subject;
+        private final PreparedGeometry shape;
+
+        private Entry(Subject subject, PreparedGeometry shape) {
+            this.subject = subject;
+            this.shape = shape;
+        }
+    }
+}
@@ -5,11 +5,11 @@ import org.apache.commons.csv.CSVPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.execution.SubjectEvaluator;
 import uk.org.tombolo.field.Field;
 import uk.org.tombolo.field.IncomputableFieldException;
 import uk.org.tombolo.field.SingleValueField;
 
-import java.io.IOException;
 import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -19,18 +19,16 @@ public class CSVExporter implements Exporter {
 	private Boolean timeStamp;
 
 	@Override
-	public void write(Writer writer, List<Subject> subjects, List<Field> fields, Boolean timeStamp) throws IOException {
+	public void write(Writer writer, Iterable<Subject> subjects, List<Field> fields, Boolean timeStamp, int threads) throws Exception {
 		this.timeStamp = null == timeStamp ? true : timeStamp;
 		List<String> columnNames = getColumnNames(fields);
 
 		CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
 		printer.printRecord(columnNames);
 
-		for (Subject subject : subjects) {
-			printer.printRecord(
-					tabulateSubjectMap(columnNames,
-							flattenSubject(fields, subject)));
-		}
+		new SubjectEvaluator(threads).evaluateInOrder(subjects,
+				subject -> tabulateSubjectMap(columnNames, flattenSubject(fields, subject)),
+				record -> printer.printRecord(record));
 	}
 
 	public List<String> getColumnNames(List<Field> fields) {
@@ -7,5 +7,21 @@ import java.io.Writer;
 import java.util.List;
 
 public interface Exporter {
-	void write(Writer writer, List<Subject> subjects, List<Field> fields, Boolean timeStamp) throws Exception;
+	/**
+	 * Writes the value of every field for every subject.
+	 * The subjects are iterated once and written as they come, so they can be streamed from the database
+	 * rather than held in memory.
+	 *
+	 * @param threads the number of worker threads used to evaluate the fields, the output order is always
+	 *                the order of the subjects
+	 */
+	void write(Writer writer, Iterable<Subject> subjects, List<Field> fields, Boolean timeStamp, int threads) throws Exception;
+
+	default void write(Writer writer, List<Subject> subjects, List<Field> fields, Boolean timeStamp, int threads) throws Exception {
+		write(writer, (Iterable<Subject>) subjects, fields, timeStamp, threads);
+	}
+
+	default void write(Writer writer, List<Subject> subjects, List<Field> fields, Boolean timeStamp) throws Exception {
+		write(writer, subjects, fields, timeStamp, 1);
+	}
 }
@@ -6,10 +6,12 @@ import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.execution.SubjectEvaluator;
 import uk.org.tombolo.field.Field;
 import uk.org.tombolo.field.IncomputableFieldException;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
 
@@ -18,7 +20,8 @@ public class GeoJsonExporter implements Exporter {
 	private static final int LOGGING_FREQUENCY = 100;
 	private Boolean timeStamp;
 
-	public void write(Writer writer, List<Subject> subjects, List<Field> fields, Boolean timeStamp) throws IOException {
+	@Override
+	public void write(Writer writer, Iterable<Subject> subjects, List<Field> fields, Boolean timeStamp, int threads) throws Exception {
 		this.timeStamp = null == timeStamp ? true : timeStamp;
 
 		JsonWriter jsonWriter = new JsonWriter(writer);
@@ -27,15 +30,17 @@ public class GeoJsonExporter implements Exporter {
 		jsonWriter.name("type").value("FeatureCollection");
 		jsonWriter.name("features").beginArray();
 
-		log.info("Exporting {} subjects", subjects.size());
-		int subjectCounter = 0;
-		for (Subject subject : subjects) {
-			subjectCounter++;
-			writeFeatureForSubject(fields, subject, jsonWriter);
-			if (subjectCounter % LOGGING_FREQUENCY == 0)
-				log.info("Exported {} subjects", subjectCounter);
-		}
-		log.info("Exported {} subjects", subjectCounter);
+		log.info("Exporting subjects");
+		int[] subjectCounter = {0};
+		new SubjectEvaluator(threads).evaluateInOrder(subjects,
+				subject -> getFeatureForSubject(fields, subject),
+				feature -> {
+					jsonWriter.jsonValue(feature);
+					subjectCounter[0]++;
+					if (subjectCounter[0] % LOGGING_FREQUENCY == 0)
+						log.info("Exported {} subjects", subjectCounter[0]);
+				});
+		log.info("Exported {} subjects", subjectCounter[0]);
 
 		jsonWriter.endArray();
 		jsonWriter.endObject();
@@ -43,7 +48,11 @@ public class GeoJsonExporter implements Exporter {
 		jsonWriter.close();
 	}
 
-	private void writeFeatureForSubject(List<Field> fields, Subject subject, JsonWriter jsonWriter) throws IOException {
+	// Features are serialised on their own so that they can be computed by the worker threads
+	private String getFeatureForSubject(List<Field> fields, Subject subject) throws IOException {
+		StringWriter featureWriter = new StringWriter();
+		JsonWriter jsonWriter = new JsonWriter(featureWriter);
+
 		jsonWriter.beginObject();
 
 		jsonWriter.name("type").value("Feature");
@@ -51,6 +60,9 @@ public class GeoJsonExporter implements Exporter {
 		jsonWriter.name("properties").jsonValue(getPropertiesForSubject(fields, subject).toJSONString());
 
 		jsonWriter.endObject();
+		jsonWriter.close();
+
+		return featureWriter.toString();
 	}
 
 	private JSONObject getPropertiesForSubject(List<Field> fields, Subject subject) throws IOException {
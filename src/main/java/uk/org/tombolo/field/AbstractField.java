@@ -1,11 +1,22 @@
 package uk.org.tombolo.field;
 
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
 import uk.org.tombolo.execution.FieldCache;
+import uk.org.tombolo.execution.LatestTimedValues;
+import uk.org.tombolo.execution.SubjectSpatialIndex;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractField implements Field {
+    private static final AtomicLong instanceCounter = new AtomicLong();
+    // Prefix of the identities of fields not built from a recipe, which are only meaningful within one run
+    public static final String INSTANCE_IDENTITY_PREFIX = "instance:";
+
     protected String label;
     protected FieldCache fieldCache;
+    // Transient so that Gson does not read it from the recipe
+    private transient volatile String identity;
 
     public AbstractField(String label){
         this.label = label;
@@ -21,6 +32,26 @@ public abstract class AbstractField implements Field {
         this.fieldCache = fieldCache;
     }
 
+    /**
+     * Returns the identity set from the recipe of the field, or one unique to this instance if the field was not
+     * built from a recipe.
+     */
+    @Override
+    public String getIdentity() {
+        if (null == identity) {
+            synchronized (this) {
+                if (null == identity)
+                    identity = INSTANCE_IDENTITY_PREFIX + getClass().getName() + "@" + instanceCounter.incrementAndGet();
+            }
+        }
+        return identity;
+    }
+
+    @Override
+    public void setIdentity(String identity) {
+        this.identity = identity;
+    }
+
     protected String getCachedValue(Subject subject){
         if (fieldCache != null)
             return fieldCache.getChachedValue(this, subject);
@@ -32,4 +63,26 @@ public abstract class AbstractField implements Field {
             fieldCache.putCachedValue(this, subject, value);
     }
 
+    protected Double getCachedDouble(Subject subject){
+        if (fieldCache != null)
+            return fieldCache.getCachedDouble(this, subject);
+        return null;
+    }
+
+    protected void setCachedDouble(Subject subject, double value){
+        if (fieldCache != null)
+            fieldCache.putCachedDouble(this, subject, value);
+    }
+
+    protected LatestTimedValues getLatestTimedValues(){
+        if (fieldCache != null)
+            return fieldCache.getLatestTimedValues();
+        return null;
+    }
+
+    protected SubjectSpatialIndex getSpatialIndex(SubjectType subjectType){
+        if (fieldCache != null)
+            return fieldCache.getSpatialIndex(subjectType);
+        return null;
+    }
 }
@@ -23,9 +23,14 @@ import uk.org.tombolo.execution.FieldCache;
  *
  * Currently every Field must return some JSON, but this may change in future to some more
  * generic structured data type.
+ *
+ * The identity of a Field is a string that is equal for equivalent fields. Fields built from a
+ * FieldRecipe take it from the recipe, so that they can share cached values.
  */
 public interface Field {
     JSONObject jsonValueForSubject(Subject subject, Boolean timeStamp) throws IncomputableFieldException;
     String getLabel();
     void setFieldCache(FieldCache fieldCache);
+    String getIdentity();
+    void setIdentity(String identity);
 }
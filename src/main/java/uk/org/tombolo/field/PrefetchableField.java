@@ -0,0 +1,17 @@
+package uk.org.tombolo.field;
+
+import uk.org.tombolo.core.Attribute;
+
+import java.util.List;
+
+/**
+ * PrefetchableField.java
+ * A Field that reads the latest TimedValues of some attributes.
+ *
+ * Before exporting, the DataExportEngine loads the latest values of these attributes for every subject in one
+ * query and makes them available through the FieldCache, so the field does not have to query them subject by
+ * subject.
+ */
+public interface PrefetchableField extends Field {
+    List<Attribute> getPrefetchAttributes();
+}
@@ -11,6 +11,7 @@ import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.SubjectType;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
+import uk.org.tombolo.execution.SubjectSpatialIndex;
 import uk.org.tombolo.field.*;
 import uk.org.tombolo.recipe.FieldRecipe;
 import uk.org.tombolo.recipe.SubjectRecipe;
@@ -102,16 +103,19 @@ public class GeographicAggregationField extends AbstractField implements SingleV
 
     private Double getDoubleValueForSubject(Subject subject) throws IncomputableFieldException {
         if (null == singleValueField) { initialize(); }
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
         Double value = aggregateSubjects(aggregator, getAggregationSubjects(subject));
         if (value != null)
-            setCachedValue(subject, value.toString());
+            setCachedDouble(subject, value);
         return value;
     }
 
     private List<Subject> getAggregationSubjects(Subject subject) throws IncomputableFieldException {
+        SubjectSpatialIndex spatialIndex = getSpatialIndex(aggregatorSubjectType);
+        if (spatialIndex != null)
+            return spatialIndex.subjectsWithin(subject.getShape());
         return SubjectUtils.subjectsWithinSubject(aggregatorSubjectType, subject);
     }
 
@@ -5,6 +5,7 @@ import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.SubjectType;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
+import uk.org.tombolo.execution.SubjectSpatialIndex;
 import uk.org.tombolo.field.*;
 import uk.org.tombolo.recipe.FieldRecipe;
 import uk.org.tombolo.recipe.SubjectRecipe;
@@ -64,7 +65,10 @@ public class MapToContainingSubjectField extends AbstractField implements Parent
             throw new IncomputableFieldException(String.format("Cannot compute field: No containing subject type for " +
                     "subject %s", subject.getName()));
         }
-        List<Subject> subjectsContainingSubject = SubjectUtils.subjectsContainingSubject(containerSubjectType, subject);
+        SubjectSpatialIndex spatialIndex = getSpatialIndex(containerSubjectType);
+        List<Subject> subjectsContainingSubject = (spatialIndex != null)
+                ? spatialIndex.subjectsContaining(subject.getShape())
+                : SubjectUtils.subjectsContainingSubject(containerSubjectType, subject);
         if (subjectsContainingSubject.size() != 1) {
             throw new IncomputableFieldException(String.format(
                     "Subject %s is contained by %d subjects of type %s (%s), but should be contained by 1 only",
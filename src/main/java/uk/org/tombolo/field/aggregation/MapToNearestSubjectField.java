@@ -5,6 +5,7 @@ import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.SubjectType;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
+import uk.org.tombolo.execution.SubjectSpatialIndex;
 import uk.org.tombolo.field.*;
 import uk.org.tombolo.recipe.FieldRecipe;
 import uk.org.tombolo.recipe.SubjectRecipe;
@@ -58,7 +59,10 @@ public class MapToNearestSubjectField extends AbstractField implements ParentFie
     }
 
     private Subject getSubjectProximalToSubject(Subject outputSubject) throws IncomputableFieldException {
-        Subject nearestSubject = SubjectUtils.subjectNearestSubject(nearestSubjectTypeObject, outputSubject, maxRadius);
+        SubjectSpatialIndex spatialIndex = getSpatialIndex(nearestSubjectTypeObject);
+        Subject nearestSubject = (spatialIndex != null)
+                ? spatialIndex.nearestSubject(outputSubject.getShape(), maxRadius)
+                : SubjectUtils.subjectNearestSubject(nearestSubjectTypeObject, outputSubject, maxRadius);
         if (nearestSubject == null) {
             throw new IncomputableFieldException(String.format(
                     "Subject %s has no nearby subjects of type %s, but should have 1",
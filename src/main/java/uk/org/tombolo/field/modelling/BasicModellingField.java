@@ -2,7 +2,11 @@ package uk.org.tombolo.field.modelling;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.json.simple.JSONObject;
 import uk.org.tombolo.core.Subject;
@@ -19,11 +23,17 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URL;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A field that takes as input a specification (recipe) of a potentially complex field or model
  * and returns a value that is calculated according to the specification.
+ *
+ * The recipe of the field only names the specification, so the identity of the field also has a digest of the
+ * specification and of those of the modelling fields nested in it, and cached values go when a specification changes.
  */
 public class BasicModellingField extends AbstractField implements ModellingField, ParentField, Field {
     // Variables that can be passed by the user in recipes
@@ -32,6 +42,7 @@ public class BasicModellingField extends AbstractField implements ModellingField
 
     // Variables that are updated by the class
     Field field;
+    private transient volatile String specificationDigest;
 
     // Path and postfixes for predefined field specifications
     // Could be made configurable at some point
@@ -62,14 +73,23 @@ public class BasicModellingField extends AbstractField implements ModellingField
         return obj;
     }
 
+    /**
+     * Returns the identity set from the recipe of the field followed by the digest of its specification, or one
+     * unique to this instance if the field was not built from a recipe.
+     */
+    @Override
+    public String getIdentity() {
+        String identity = super.getIdentity();
+        if (identity.startsWith(INSTANCE_IDENTITY_PREFIX))
+            return identity;
+        if (specificationDigest == null)
+            specificationDigest = digestSpecification(recipe);
+        return identity + "\t" + specificationDigest;
+    }
+
     public void initialize() {
         // Initialise field
-        String fieldFilename = fieldSpecPath+recipe+fieldSpecPostfix;
-        URL fieldFileURL = ClassLoader.getSystemResource(fieldFilename);
-        if (fieldFileURL == null){
-            throw new Error("Model Recipe not found: "+fieldFilename);
-        }
-        File fieldFile = new File(fieldFileURL.getFile());
+        File fieldFile = specificationFile(recipe);
         try {
             field = RecipeDeserializer
                     .fromJsonFile(fieldFile, FieldRecipe.class)
@@ -104,6 +124,59 @@ public class BasicModellingField extends AbstractField implements ModellingField
         }
     }
 
+    private static File specificationFile(String recipe) {
+        String fieldFilename = fieldSpecPath+recipe+fieldSpecPostfix;
+        URL fieldFileURL = ClassLoader.getSystemResource(fieldFilename);
+        if (fieldFileURL == null){
+            throw new Error("Model Recipe not found: "+fieldFilename);
+        }
+        return new File(fieldFileURL.getFile());
+    }
+
+    // Digests the specification along with those of the modelling fields nested in it, without building the fields
+    static String digestSpecification(String recipe) {
+        StringBuilder specifications = new StringBuilder();
+        readSpecifications(recipe, new HashSet<>(), specifications);
+        return DigestUtils.sha256Hex(specifications.toString());
+    }
+
+    private static void readSpecifications(String recipe, Set<String> read, StringBuilder specifications) {
+        if (!read.add(recipe))
+            return;
+        String json;
+        try {
+            json = FileUtils.readFileToString(specificationFile(recipe));
+        } catch (IOException e) {
+            throw new Error("Could not read specification file", e);
+        }
+        specifications.append(recipe).append('\n').append(json).append('\n');
+        Set<String> nested = new HashSet<>();
+        findNestedRecipes(new JsonParser().parse(json), nested);
+        nested.stream().sorted().forEach(nestedRecipe -> readSpecifications(nestedRecipe, read, specifications));
+    }
+
+    private static void findNestedRecipes(JsonElement element, Set<String> recipes) {
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(child -> findNestedRecipes(child, recipes));
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            if (isModellingField(object.get("fieldClass")) && object.has("recipe"))
+                recipes.add(object.get("recipe").getAsString());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet())
+                findNestedRecipes(entry.getValue(), recipes);
+        }
+    }
+
+    private static boolean isModellingField(JsonElement fieldClass) {
+        if (fieldClass == null || !fieldClass.isJsonPrimitive())
+            return false;
+        try {
+            return BasicModellingField.class.isAssignableFrom(Class.forName(fieldClass.getAsString()));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
     @Override
     public List<Field> getChildFields() {
         if (field == null)
@@ -70,9 +70,9 @@ public class ArithmeticField extends AbstractField implements SingleValueField,
     }
 
     private Double calculateValueForSubject(Subject subject) throws IncomputableFieldException {
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
 
         if (null == singleValueField1) { initialize(); }
         Double retVal = operator.apply(
@@ -85,7 +85,7 @@ public class ArithmeticField extends AbstractField implements SingleValueField,
             throw new IncomputableFieldException(String.format("Arithmetic operation %s returned Infinity (possible division by zero?)", operation));
         }
 
-        setCachedValue(subject, retVal.toString());
+        setCachedDouble(subject, retVal);
         return retVal;
     }
 
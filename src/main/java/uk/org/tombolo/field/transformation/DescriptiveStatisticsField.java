@@ -94,9 +94,9 @@ public class DescriptiveStatisticsField extends AbstractField implements SingleV
 
     private Double getDoubleValueForSubject(Subject subject) throws IncomputableFieldException {
         // Check for cached value
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
 
         // Initialise
         if (null == singleValueFields)
@@ -127,6 +127,7 @@ public class DescriptiveStatisticsField extends AbstractField implements SingleV
                     statistic.getStatistic().getClass().getSimpleName()));
         }
 
+        setCachedDouble(subject, descriptiveStaistic);
         return descriptiveStaistic;
     }
 
@@ -50,9 +50,9 @@ public class FieldValueSumField extends AbstractField implements ParentField, Si
     }
 
     private Double sumFields(Subject subject) throws IncomputableFieldException {
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
         if (sumFields == null)
             initialize();
         Double sum = 0d;
@@ -61,7 +61,7 @@ public class FieldValueSumField extends AbstractField implements ParentField, Si
                 throw new IncomputableFieldException("Field sum only valid for single value fields");
             sum += Double.parseDouble(((SingleValueField)field).valueForSubject(subject, true));
         }
-        setCachedValue(subject, sum.toString());
+        setCachedDouble(subject, sum);
         return sum;
     }
 
@@ -10,16 +10,19 @@ import uk.org.tombolo.core.TimedValue;
 import uk.org.tombolo.core.TimedValueId;
 import uk.org.tombolo.core.utils.AttributeUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
+import uk.org.tombolo.execution.LatestTimedValues;
 import uk.org.tombolo.field.AbstractField;
 import uk.org.tombolo.field.IncomputableFieldException;
+import uk.org.tombolo.field.PrefetchableField;
 import uk.org.tombolo.field.SingleValueField;
 import uk.org.tombolo.recipe.AttributeMatcher;
 
 import java.time.LocalDateTime;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -27,7 +30,7 @@ import java.util.stream.Collectors;
  * For a subject, returns the sum of its TimedValues for a list of dividend
  * attributes divided by a divisor attribute.
  */
-public class FractionOfTotalField extends AbstractField implements SingleValueField {
+public class FractionOfTotalField extends AbstractField implements SingleValueField, PrefetchableField {
     private final List<AttributeMatcher> dividendAttributes;
     private final AttributeMatcher divisorAttribute;
     private Map<AttributeMatcher, Attribute> cachedAttributes;
@@ -82,7 +85,7 @@ public class FractionOfTotalField extends AbstractField implements SingleValueFi
 
     private List<TimedValue> getLatestTimedValuesForSubjectAndAttributes(Subject subject, List<AttributeMatcher> attributeMatchers) throws IncomputableFieldException {
         List<Attribute> attributes = getAttributes(attributeMatchers);
-        List<TimedValue> timedValues = TimedValueUtils.getLatestBySubjectAndAttributes(subject, attributes);
+        List<TimedValue> timedValues = getLatestTimedValues(subject, attributes);
 
         // We check for and throw on missing timedValues with some info on what they are
         if (timedValues.size() != attributeMatchers.size()) {
@@ -95,6 +98,28 @@ public class FractionOfTotalField extends AbstractField implements SingleValueFi
         return timedValues;
     }
 
+    private List<TimedValue> getLatestTimedValues(Subject subject, List<Attribute> attributes) {
+        LatestTimedValues latestTimedValues = getLatestTimedValues();
+        if (latestTimedValues == null || !attributes.stream().allMatch(latestTimedValues::contains)) {
+            return TimedValueUtils.getLatestBySubjectAndAttributes(subject, attributes);
+        }
+        return attributes.stream()
+                .collect(Collectors.toMap(Attribute::getId, attribute -> attribute, (a1, a2) -> a1)).values().stream()
+                .map(attribute -> latestTimedValues.get(subject, attribute))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Attribute> getPrefetchAttributes() {
+        try {
+            return getAttributes(ListUtils.union(dividendAttributes, Collections.singletonList(divisorAttribute)));
+        } catch (IllegalArgumentException e) {
+            // The field will report the missing attribute when evaluated
+            return Collections.emptyList();
+        }
+    }
+
     private List<Attribute> getAttributes(List<AttributeMatcher> attributeMatchers) {
         return attributeMatchers.stream().map(this::getAttribute).collect(Collectors.toList());
     }
@@ -111,7 +136,7 @@ public class FractionOfTotalField extends AbstractField implements SingleValueFi
     }
 
     protected Attribute getAttribute(AttributeMatcher attributeMatcher) {
-        if (null == cachedAttributes) { cachedAttributes = new HashMap<>(); } // Gson will null this field whatever we do
+        if (null == cachedAttributes) { cachedAttributes = new ConcurrentHashMap<>(); } // Gson will null this field whatever we do
         if (cachedAttributes.containsKey(attributeMatcher)) return cachedAttributes.get(attributeMatcher);
 
         Attribute attr = AttributeUtils.getByProviderAndLabel(attributeMatcher.provider, attributeMatcher.label);
@@ -62,9 +62,9 @@ public class LinearCombinationField extends AbstractField implements SingleValue
     }
 
     private Double calculateValueForSubject(Subject subject) throws IncomputableFieldException {
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
 
         if (null == singleValueFields || singleValueFields.isEmpty()) { initialize(); }
 
@@ -86,6 +86,7 @@ public class LinearCombinationField extends AbstractField implements SingleValue
                         subject.getSubjectType().getLabel());
             }
         }
+        setCachedDouble(subject, linearCombination);
         return linearCombination;
     }
 
@@ -65,9 +65,9 @@ public class ListArithmeticField extends AbstractField implements SingleValueFie
     }
 
     private Double calculateValueForSubject(Subject subject) throws IncomputableFieldException {
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
 
         if (null == singleValueFields || singleValueFields.isEmpty()) { initialize(); }
 
@@ -84,7 +84,7 @@ public class ListArithmeticField extends AbstractField implements SingleValueFie
             throw new IncomputableFieldException(String.format("Arithmetic operation %s returned Infinity (possible division by zero?)", operation));
         }
 
-        setCachedValue(subject, retVal.toString());
+        setCachedDouble(subject, retVal);
         return retVal;
     }
 
@@ -62,9 +62,9 @@ public class PercentilesField extends AbstractField implements ParentField, Sing
     }
 
     private Double calculateValueForSubject(Subject subject) throws IncomputableFieldException {
-        String cachedValue = getCachedValue(subject);
+        Double cachedValue = getCachedDouble(subject);
         if (cachedValue != null)
-            return Double.parseDouble(cachedValue);
+            return cachedValue;
 
         if (singleValueField == null)
             initialize();
@@ -77,7 +77,7 @@ public class PercentilesField extends AbstractField implements ParentField, Sing
                 }else{
                     value =  new Double(i+1);
                 }
-                setCachedValue(subject, value.toString());
+                setCachedDouble(subject, value);
                 return value;
             }
         }
@@ -1,21 +1,27 @@
 package uk.org.tombolo.field.value;
 
 import org.json.simple.JSONObject;
+import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.TimedValue;
 import uk.org.tombolo.core.TimedValueId;
 import uk.org.tombolo.core.utils.TimedValueUtils;
+import uk.org.tombolo.execution.LatestTimedValues;
 import uk.org.tombolo.field.IncomputableFieldException;
+import uk.org.tombolo.field.PrefetchableField;
 import uk.org.tombolo.field.SingleValueField;
 import uk.org.tombolo.recipe.AttributeMatcher;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * LatestValueField.java
  * Returns the latest TimedValue for a particular Attribute on the given subject, plus metadata
  *
  * The metadata is regarding the attribute.
  */
-public class LatestValueField extends BasicValueField implements SingleValueField {
+public class LatestValueField extends BasicValueField implements SingleValueField, PrefetchableField {
     public LatestValueField(String label, AttributeMatcher attribute) {
         super(label, attribute);
     }
@@ -39,8 +45,22 @@ public class LatestValueField extends BasicValueField implements SingleValueFiel
         return withinMetadata(obj);
     }
 
+    @Override
+    public List<Attribute> getPrefetchAttributes() {
+        try {
+            return Collections.singletonList(getAttribute());
+        } catch (IncomputableFieldException e) {
+            // The field will report the missing attribute when evaluated
+            return Collections.emptyList();
+        }
+    }
+
     private TimedValue getTimedValue(Subject subject) throws IncomputableFieldException {
-        TimedValue timedValue = TimedValueUtils.getLatestBySubjectAndAttribute(subject, getAttribute());
+        Attribute attribute = getAttribute();
+        LatestTimedValues latestTimedValues = getLatestTimedValues();
+        TimedValue timedValue = (latestTimedValues != null && latestTimedValues.contains(attribute))
+                ? latestTimedValues.get(subject, attribute)
+                : TimedValueUtils.getLatestBySubjectAndAttribute(subject, attribute);
         if (timedValue == null) {
             throw new IncomputableFieldException(String.format("No TimedValue found for attribute %s", getAttribute().getLabel()));
         }
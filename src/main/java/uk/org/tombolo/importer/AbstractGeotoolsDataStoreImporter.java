@@ -117,6 +117,11 @@ public abstract class AbstractGeotoolsDataStoreImporter extends AbstractImporter
         }
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     final public void importDatasource(Datasource datasource, List<String> geographyScope, List<String> temporalScope, List<String> datasourceLocation) throws Exception {
         DataStore dataStore = getDataStoreForDatasource(datasource);
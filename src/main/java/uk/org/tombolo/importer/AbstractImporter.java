@@ -8,14 +8,25 @@ import uk.org.tombolo.importer.utils.JournalEntryUtils;
 import uk.org.tombolo.recipe.SubjectRecipe;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractImporter implements Importer {
-	// Flushing threshold for TimedValue/FixedValue/Subject save buffers
+	// Initial flushing threshold for TimedValue/FixedValue/Subject save buffers, adapted as buffers are written
 	private static final Integer BUFFER_THRESHOLD = 10000;
+	// Bounds of the thresholds, which can be set with the importBufferMinSize and importBufferMaxSize properties
+	private static final int MIN_BUFFER_SIZE = 1000;
+	private static final int MAX_BUFFER_SIZE = 500000;
+	// Share of the heap the items of a buffer can take, as several buffers of each kind can wait for the writer
+	private static final int BUFFER_HEAP_SHARE = 32;
+	// Number of buffers that can wait to be written while the importer goes on parsing
+	private static final int WRITE_QUEUE_CAPACITY = 4;
 
 	protected List<String> datasourceIds;
 	protected List<String> geographyLabels;
@@ -25,13 +36,29 @@ public abstract class AbstractImporter implements Importer {
 	protected final static String DEFAULT_GEOGRAPHY = "all";
 	protected final static String DEFAULT_TEMPORAL = "all";
 
-	private int subjectCount = 0;		// Count of subjects imported during the lifetime of this class instance
-	private int fixedValueCount = 0;	// Count of fixed values imported during the lifetime of this class instance
-	private int timedValueCount = 0;	// Count of timed values imported during the lifetime of this class instance
+	private final AtomicInteger subjectCount = new AtomicInteger();		// Count of subjects imported during the lifetime of this class instance
+	private final AtomicInteger fixedValueCount = new AtomicInteger();	// Count of fixed values imported during the lifetime of this class instance
+	private final AtomicInteger timedValueCount = new AtomicInteger();	// Count of timed values imported during the lifetime of this class instance
 
 	private static final Logger log = LoggerFactory.getLogger(AbstractImporter.class);
 	protected Properties properties = new Properties();
 	protected DownloadUtils downloadUtils;
+	private ImportContext importContext;
+	private final BufferSizer subjectBufferSizer = newBufferSizer("subjects");
+	private final BufferSizer fixedValueBufferSizer = newBufferSizer("fixed values");
+	private final BufferSizer timedValueBufferSizer = newBufferSizer("timed values");
+	// Writes the buffers on a thread of its own during an import
+	private volatile ImportWriter writer;
+	// Orders the writes, numbered as they are submitted, so checkpoints know which writes they come after
+	private final Object writeLock = new Object();
+	private long writesSubmitted;
+	// Checkpoints waiting for the writes they come after, oldest first
+	private final Deque<Checkpoint> pendingCheckpoints = new ArrayDeque<>();
+	// The journal entry of the import running, under which its checkpoints are recorded
+	private volatile DatabaseJournalEntry journalEntry;
+	private volatile String resumeCheckpoint;
+	// The changes of a differential import, which only writes what has changed since the import was journaled
+	private volatile ImportChanges changes;
 
 	public AbstractImporter() {
 		datasourceIds = Collections.emptyList();
@@ -86,7 +113,8 @@ public abstract class AbstractImporter implements Importer {
 	 * @param datasourceId
 	 * @param geographyScope
 	 * @param temporalScope
-	 * @param force forces the importer to run even if it has already run
+	 * @param force forces the importer to run even if it has already run, in which case only the subjects and
+	 *              values that have changed since are written, and values gone from the data source deleted
 	 * @throws Exception
 	 */
 	@Override
@@ -94,24 +122,62 @@ public abstract class AbstractImporter implements Importer {
 		if (!datasourceExists(datasourceId))
 			throw new ConfigurationException("Unknown DatasourceId:" + datasourceId);
 
-		if (!force && DatabaseJournal.journalHasEntry(JournalEntryUtils.getJournalEntryForDatasourceId(
-						getClass().getCanonicalName(), datasourceId, geographyScope, temporalScope, datasourceLocation))) {
+		DatabaseJournalEntry entry = JournalEntryUtils.getJournalEntryForDatasourceId(
+				getClass().getCanonicalName(), datasourceId, geographyScope, temporalScope, datasourceLocation);
+		boolean imported = DatabaseJournal.journalHasEntry(entry);
+		if (!force && imported) {
 			log.info("Skipped importing {}:{} as this import has been completed previously",
 					this.getClass().getCanonicalName(), datasourceId);
 		} else {
-			log.info("Importing {}:{}",
+			log.info(imported ? "Importing {}:{} again, writing only what has changed" : "Importing {}:{}",
 					this.getClass().getCanonicalName(), datasourceId);
 			// Get the details for the data source
 			Datasource datasource = getDatasource(datasourceId);
 			saveDatasourceMetadata(datasource);
-			importDatasource(datasource, geographyScope, temporalScope, datasourceLocation);
-			DatabaseJournal.addJournalEntry(JournalEntryUtils.getJournalEntryForDatasourceId(
-					getClass().getCanonicalName(), datasourceId, geographyScope, temporalScope, datasourceLocation));
+			importContext = new ImportContext();
+			journalEntry = entry;
+			resumeCheckpoint = DatabaseJournal.getCheckpoint(entry);
+			if (resumeCheckpoint != null)
+				log.info("Resuming {}:{} from checkpoint {}",
+						this.getClass().getCanonicalName(), datasourceId, resumeCheckpoint);
+			changes = imported ? new ImportChanges(entry.getClassName() + ":" + entry.getKey(), resumeCheckpoint != null)
+					: null;
+			writer = new ImportWriter(getWriteQueueCapacity());
+			try {
+				importDatasource(datasource, geographyScope, temporalScope, datasourceLocation);
+				// A resumed import finds the keys written before its checkpoint in the key tables, which survive crashes
+				if (changes != null)
+					write(changes::deleteVanishedValues);
+				// The values are only counted, and the import journaled, once they are all written
+				writer.flush();
+				importContext.logSummary();
+				if (changes != null)
+					changes.logSummary();
+				for (BufferSizer sizer : Arrays.asList(subjectBufferSizer, fixedValueBufferSizer, timedValueBufferSizer))
+					log.info("Buffers of {}", sizer.report());
+			} finally {
+				writer.close();
+				writer = null;
+				importContext = null;
+				changes = null;
+				journalEntry = null;
+				resumeCheckpoint = null;
+				synchronized (pendingCheckpoints) {
+					pendingCheckpoints.clear();
+				}
+			}
+			// Adding the entry clears the checkpoint of the import
+			DatabaseJournal.addJournalEntry(entry);
 			log.info("Imported {} subjects, {} fixed values and {} timedValues",
 					subjectCount, fixedValueCount, timedValueCount);
 		}
 	}
 
+	@Override
+	public boolean createsSubjects() {
+		return false;
+	}
+
 	@Override
 	public List<SubjectType> getSubjectTypes(String datasourceId) {
 		return Collections.emptyList();
@@ -190,57 +256,203 @@ public abstract class AbstractImporter implements Importer {
 
 	public void saveAndClearSubjectBuffer(List<Subject> subjectBuffer){
 		log.info("Preparing to write a batch of {} subjects ... ", subjectBuffer.size());
-		SubjectUtils.save(subjectBuffer);
-		subjectCount += subjectBuffer.size();
+		List<Subject> subjects = new ArrayList<>(subjectBuffer);
 		subjectBuffer.clear();
-		log.info("Total subjects written: {}", subjectCount);
+		ImportChanges changes = this.changes;
+		subjectBufferSizer.measure(subjects, BufferSizer::footprint);
+		write(() -> {
+			long start = System.currentTimeMillis();
+			if (changes == null) {
+				SubjectUtils.save(subjects);
+			} else {
+				changes.addSubjects(SubjectUtils.saveChanges(subjects));
+			}
+			subjectBufferSizer.written(subjects.size(), System.currentTimeMillis() - start);
+			log.info("Total subjects written: {}", subjectCount.addAndGet(subjects.size()));
+		});
+		// Subjects are looked up and given ids as they are saved, so the importer waits for them to be written
+		flushWrites();
+		getImportContext().addSubjects(subjects);
 	}
 
 	public void saveAndClearTimedValueBuffer(List<TimedValue> timedValueBuffer){
 		log.info("Preparing to write a batch of {} timed values ...", timedValueBuffer.size());
-		timedValueCount += timedValueBuffer.size();
-		TimedValueUtils.save(timedValueBuffer);
+		List<TimedValue> timedValues = new ArrayList<>(timedValueBuffer);
 		timedValueBuffer.clear();
-		log.info("Total timed values written: {}", timedValueCount);
+		ImportChanges changes = this.changes;
+		timedValueBufferSizer.measure(timedValues, BufferSizer::footprint);
+		write(() -> {
+			long start = System.currentTimeMillis();
+			if (changes == null) {
+				TimedValueUtils.save(timedValues);
+			} else {
+				changes.addTimedValues(TimedValueUtils.saveChanges(timedValues, changes.getRun()));
+			}
+			timedValueBufferSizer.written(timedValues.size(), System.currentTimeMillis() - start);
+			log.info("Total timed values written: {}", timedValueCount.addAndGet(timedValues.size()));
+		});
 	}
 
 	public void saveAndClearFixedValueBuffer(List<FixedValue> fixedValueBuffer){
 		log.info("Preparing to write a batch of {} fixed values ...", fixedValueBuffer.size());
-		fixedValueCount += fixedValueBuffer.size();
-		FixedValueUtils.save(fixedValueBuffer);
+		List<FixedValue> fixedValues = new ArrayList<>(fixedValueBuffer);
 		fixedValueBuffer.clear();
-		log.info("Total fixed values written: {}", fixedValueCount);
+		ImportChanges changes = this.changes;
+		fixedValueBufferSizer.measure(fixedValues, BufferSizer::footprint);
+		write(() -> {
+			long start = System.currentTimeMillis();
+			if (changes == null) {
+				FixedValueUtils.save(fixedValues);
+			} else {
+				changes.addFixedValues(FixedValueUtils.saveChanges(fixedValues, changes.getRun()));
+			}
+			fixedValueBufferSizer.written(fixedValues.size(), System.currentTimeMillis() - start);
+			log.info("Total fixed values written: {}", fixedValueCount.addAndGet(fixedValues.size()));
+		});
+	}
+
+	/**
+	 * Waits for the buffers handed over so far to be written, for importers reading back what they have saved.
+	 * A failure to write any of them is thrown here.
+	 */
+	protected void flushWrites() {
+		ImportWriter writer = this.writer;
+		if (writer != null)
+			writer.flush();
+	}
+
+	/**
+	 * Returns the checkpoint recorded by an earlier run of the import that did not finish, or null if the import
+	 * starts from the beginning. Importers adopting checkpoints skip the work up to it.
+	 */
+	protected String getCheckpoint() {
+		return resumeCheckpoint;
+	}
+
+	/**
+	 * Records that the import got as far as the checkpoint, which can be anything the importer can resume from,
+	 * such as a row number or the name of the last region imported.
+	 * Call it once the buffers holding everything before the checkpoint have been handed over. The checkpoint is
+	 * committed in the same transaction as the first buffer written after those, so that a restarted import never
+	 * skips values that were not saved. Outside an import the checkpoint is ignored.
+	 */
+	protected void checkpoint(String checkpoint) {
+		if (writer == null)
+			return;
+		synchronized (writeLock) {
+			synchronized (pendingCheckpoints) {
+				pendingCheckpoints.add(new Checkpoint(checkpoint, writesSubmitted));
+			}
+		}
+	}
+
+	// Queues the write during an import, with a session of its own on the writer thread, or writes straight away
+	private void write(Runnable write) {
+		ImportWriter writer = this.writer;
+		if (writer == null) {
+			write.run();
+		} else {
+			DatabaseJournalEntry entry = journalEntry;
+			synchronized (writeLock) {
+				long sequence = ++writesSubmitted;
+				writer.submit(() -> HibernateUtil.withThreadSession(() -> {
+					HibernateUtil.withTransaction(session -> {
+						write.run();
+						saveCheckpoint(entry, sequence);
+					});
+					return null;
+				}));
+			}
+		}
+	}
+
+	// Saves the latest checkpoint coming after writes up to the given one, in the transaction of that write
+	private void saveCheckpoint(DatabaseJournalEntry entry, long sequence) {
+		Checkpoint due = null;
+		synchronized (pendingCheckpoints) {
+			while (!pendingCheckpoints.isEmpty() && pendingCheckpoints.peek().afterWrite <= sequence)
+				due = pendingCheckpoints.poll();
+		}
+		if (due != null)
+			DatabaseJournal.saveCheckpoint(entry, due.checkpoint);
+	}
+
+	@Override
+	public synchronized ImportContext getImportContext() {
+		if (importContext == null)
+			importContext = new ImportContext();
+		return importContext;
 	}
 
 	public int getSubjectCount() {
-		return subjectCount;
+		return subjectCount.get();
 	}
 
 	public int getFixedValueCount() {
-		return fixedValueCount;
+		return fixedValueCount.get();
 	}
 
 	public int getTimedValueCount() {
-		return timedValueCount;
+		return timedValueCount.get();
 	}
 
+	/**
+	 * Returns the number of buffers that can wait to be written before the importer waits for the writer.
+	 */
+	protected int getWriteQueueCapacity() {
+		return WRITE_QUEUE_CAPACITY;
+	}
+
+	/**
+	 * Returns the threshold for the combined size of the subject, fixed value and timed value buffers, which is the
+	 * threshold of the subject buffer since subjects take the most memory.
+	 */
 	@Override
 	public int getCombinedBufferSize() {
-		return BUFFER_THRESHOLD;
+		return subjectBufferSizer.getSize();
 	}
 
+	/**
+	 * Returns the threshold for flushing the subject buffer, which adapts to the memory the subjects take and the
+	 * time it takes to write them. Importers should flush once their buffer holds at least that many subjects,
+	 * since the threshold changes as buffers are written.
+	 */
 	@Override
 	public int getSubjectBufferSize() {
-		return BUFFER_THRESHOLD;
+		return subjectBufferSizer.getSize();
 	}
 
+	/**
+	 * Returns the threshold for flushing the fixed value buffer, which adapts like the subject buffer threshold.
+	 */
 	@Override
 	public int getFixedValueBufferSize() {
-		return BUFFER_THRESHOLD;
+		return fixedValueBufferSizer.getSize();
 	}
 
+	/**
+	 * Returns the threshold for flushing the timed value buffer, which adapts like the subject buffer threshold.
+	 */
 	@Override
 	public int getTimedValueBufferSize() {
-		return BUFFER_THRESHOLD;
+		return timedValueBufferSizer.getSize();
+	}
+
+	private static BufferSizer newBufferSizer(String name) {
+		return new BufferSizer(name, BUFFER_THRESHOLD,
+				Integer.getInteger("importBufferMinSize", MIN_BUFFER_SIZE),
+				Integer.getInteger("importBufferMaxSize", MAX_BUFFER_SIZE),
+				Runtime.getRuntime().maxMemory() / BUFFER_HEAP_SHARE);
+	}
+
+	private static class Checkpoint {
+		private final String checkpoint;
+		// Number of writes submitted before the checkpoint
+		private final long afterWrite;
+
+		private Checkpoint(String checkpoint, long afterWrite) {
+			this.checkpoint = checkpoint;
+			this.afterWrite = afterWrite;
+		}
 	}
 }
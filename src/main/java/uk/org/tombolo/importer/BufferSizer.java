@@ -0,0 +1,151 @@
+package uk.org.tombolo.importer;
+
+import com.vividsolutions.jts.geom.Geometry;
+import uk.org.tombolo.core.FixedValue;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.TimedValue;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * BufferSizer.java
+ * Sizes a save buffer of an importer from the memory its items take and the time it takes to write them.
+ *
+ * The size doubles while full buffers are written quickly and halves when a buffer takes long to write, within the
+ * bounds given. It is also capped by a memory budget, using the average footprint of the items handed over so far,
+ * so that buffers of subjects with large geometries stay small while buffers of timed values can grow large.
+ *
+ * Footprints are estimates for a 64-bit JVM with compressed references, good enough to size buffers with.
+ */
+class BufferSizer {
+    // Writes quicker than this grow the buffer, and writes slower than the other shrink it
+    private static final long FAST_WRITE_MILLIS = 1000;
+    private static final long SLOW_WRITE_MILLIS = 5000;
+
+    private final String name;
+    private final int minSize;
+    private final int maxSize;
+    private final long memoryBudget;
+
+    private int size;
+    private long itemsMeasured;
+    private long bytesMeasured;
+
+    // Statistics since the last report
+    private int flushes;
+    private long itemsWritten;
+    private long totalWriteMillis;
+    private long maxWriteMillis;
+    private int smallestSize;
+    private int largestSize;
+
+    /**
+     * @param name the name of the items, for the report
+     * @param initialSize the size until buffers have been written
+     * @param minSize the smallest size
+     * @param maxSize the largest size
+     * @param memoryBudget the number of bytes the items of a buffer can take
+     */
+    BufferSizer(String name, int initialSize, int minSize, int maxSize, long memoryBudget) {
+        this.name = name;
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.memoryBudget = memoryBudget;
+        size = bound(initialSize);
+        resetStatistics();
+    }
+
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Measures the footprint of a buffer handed over to be written.
+     */
+    synchronized <T> void measure(List<T> buffer, ToLongFunction<T> footprint) {
+        for (T item : buffer) {
+            bytesMeasured += footprint.applyAsLong(item);
+        }
+        itemsMeasured += buffer.size();
+        resize(size);
+    }
+
+    /**
+     * Adapts the size to the time it took to write a buffer.
+     */
+    synchronized void written(int items, long millis) {
+        flushes++;
+        itemsWritten += items;
+        totalWriteMillis += millis;
+        maxWriteMillis = Math.max(maxWriteMillis, millis);
+
+        if (millis > SLOW_WRITE_MILLIS) {
+            resize(size / 2);
+        } else if (millis < FAST_WRITE_MILLIS && items >= size) {
+            // Only full buffers tell whether a larger one would be written quickly too
+            resize(2L * size);
+        }
+    }
+
+    /**
+     * Returns the sizes chosen and the write times since the last report, and starts over.
+     */
+    synchronized String report() {
+        String report = flushes == 0 ? name + ": no buffers written, size " + size : String.format(
+                "%s: %d buffers of %d on average, size %d to %d, now %d, about %d bytes each, "
+                        + "written in %d ms on average and %d ms at most",
+                name, flushes, itemsWritten / flushes, smallestSize, largestSize, size, getBytesPerItem(),
+                totalWriteMillis / flushes, maxWriteMillis);
+        resetStatistics();
+        return report;
+    }
+
+    private void resetStatistics() {
+        flushes = 0;
+        itemsWritten = 0;
+        totalWriteMillis = 0;
+        maxWriteMillis = 0;
+        smallestSize = size;
+        largestSize = size;
+    }
+
+    private void resize(long size) {
+        this.size = bound(size);
+        smallestSize = Math.min(smallestSize, this.size);
+        largestSize = Math.max(largestSize, this.size);
+    }
+
+    private long getBytesPerItem() {
+        return itemsMeasured == 0 ? 0 : bytesMeasured / itemsMeasured;
+    }
+
+    private int bound(long size) {
+        long bytesPerItem = getBytesPerItem();
+        if (bytesPerItem > 0)
+            size = Math.min(size, memoryBudget / bytesPerItem);
+        return (int) Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    static long footprint(Subject subject) {
+        return 96 + footprint(subject.getLabel()) + footprint(subject.getName()) + footprint(subject.getShape());
+    }
+
+    static long footprint(FixedValue fixedValue) {
+        return 80 + footprint(fixedValue.getValue());
+    }
+
+    static long footprint(TimedValue timedValue) {
+        // The value, its id and the timestamp with its date and time
+        return 160;
+    }
+
+    private static long footprint(String string) {
+        return string == null ? 0 : 40 + 2L * string.length();
+    }
+
+    private static long footprint(Geometry geometry) {
+        // Each coordinate is an object of three doubles referenced from an array, and every part has some overhead
+        return geometry == null ? 0 : 48L * geometry.getNumPoints() + 100L * geometry.getNumGeometries();
+    }
+}
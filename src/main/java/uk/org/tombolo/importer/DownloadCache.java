@@ -0,0 +1,229 @@
+package uk.org.tombolo.importer;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * DownloadCache.java
+ * Inspects and prunes the directory in which DownloadUtils caches downloaded files.
+ *
+ * The cache is kept within a disk budget by evicting the least recently used files first. The modification time of
+ * a file is its last use, since DownloadUtils touches cached files whenever they are fetched. Files with identical
+ * content are hard links to the same data, so they only count once towards the size of the cache.
+ */
+public class DownloadCache {
+	private static final Logger log = LoggerFactory.getLogger(DownloadCache.class);
+	private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)\\s*([KMGT]?)B?", Pattern.CASE_INSENSITIVE);
+	private static final String SIZE_UNITS = "KMGT";
+
+	private final File directory;
+
+	public DownloadCache(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the files in the cache, least recently used first.
+	 */
+	public List<CachedFile> getFiles() throws IOException {
+		if (!directory.isDirectory())
+			return new ArrayList<>();
+		DownloadManifest manifest = DownloadManifest.forDirectory(directory);
+		Path root = directory.toPath();
+		List<CachedFile> files = new ArrayList<>();
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+				if (DownloadManifest.isManifestFile(path.toFile()))
+					continue;
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (FileNotFoundException | java.nio.file.NoSuchFileException e) {
+					// Removed while walking the cache
+					continue;
+				}
+				String relativePath = root.relativize(path).toString().replace(File.separatorChar, '/');
+				files.add(new CachedFile(relativePath, path.toFile(), attributes.size(),
+						attributes.lastModifiedTime().toMillis(), attributes.fileKey(), manifest.get(relativePath)));
+			}
+		}
+		files.sort(Comparator.comparingLong(CachedFile::getLastUsed));
+		return files;
+	}
+
+	/**
+	 * Returns the disk space taken by the cache, counting linked files once.
+	 */
+	public long getSize() throws IOException {
+		return uniqueSize(getFiles());
+	}
+
+	/**
+	 * Evicts the least recently used files until the cache fits in the given size.
+	 *
+	 * @param maxSize the maximum size of the cache in bytes
+	 * @param keep the files that must not be evicted, such as those in use
+	 * @return the evicted files
+	 */
+	public List<CachedFile> prune(long maxSize, Predicate<File> keep) throws IOException {
+		List<CachedFile> files = getFiles();
+		Map<Object, Integer> links = new HashMap<>();
+		for (CachedFile file : files) {
+			if (file.fileKey != null)
+				links.merge(file.fileKey, 1, Integer::sum);
+		}
+
+		DownloadManifest manifest = DownloadManifest.forDirectory(directory);
+		long size = uniqueSize(files);
+		List<CachedFile> evicted = new ArrayList<>();
+		for (CachedFile file : files) {
+			if (size <= maxSize)
+				break;
+			if (keep.test(file.getFile()))
+				continue;
+			Files.deleteIfExists(file.getFile().toPath());
+			manifest.remove(file.getPath());
+			evicted.add(file);
+			// The space of linked content is only freed with its last link
+			if (file.fileKey == null || links.merge(file.fileKey, -1, Integer::sum) == 0)
+				size -= file.getSize();
+		}
+
+		if (!evicted.isEmpty())
+			log.info("Evicted {} files from download cache {}, now {}",
+					evicted.size(), directory, formatSize(size));
+		if (size > maxSize)
+			log.warn("Download cache {} takes {}, over its budget of {}, since the remaining files are in use",
+					directory, formatSize(size), formatSize(maxSize));
+		return evicted;
+	}
+
+	/**
+	 * Checks the content of every downloaded file against the checksum in the manifest, and removes the files that
+	 * do not match so that they are downloaded again.
+	 *
+	 * @return the removed files
+	 */
+	public List<CachedFile> verify() throws IOException {
+		DownloadManifest manifest = DownloadManifest.forDirectory(directory);
+		List<CachedFile> corrupted = new ArrayList<>();
+		for (CachedFile file : getFiles()) {
+			DownloadManifest.Entry entry = file.getEntry();
+			if (entry == null || entry.getSha256() == null)
+				continue;
+			String sha256;
+			try (InputStream in = file.openContent()) {
+				sha256 = DigestUtils.sha256Hex(in);
+			} catch (IOException e) {
+				sha256 = null;
+			}
+			if (!entry.getSha256().equals(sha256)) {
+				log.warn("Removing corrupted file {} from download cache", file.getPath());
+				Files.deleteIfExists(file.getFile().toPath());
+				manifest.remove(file.getPath());
+				corrupted.add(file);
+			}
+		}
+		return corrupted;
+	}
+
+	/**
+	 * Parses a size in bytes, optionally followed by a unit of K, M, G or T, such as 512M or 20GB.
+	 */
+	public static long parseSize(String size) {
+		Matcher matcher = SIZE_PATTERN.matcher(size.trim());
+		if (!matcher.matches())
+			throw new IllegalArgumentException("Invalid size: " + size);
+		long bytes = Long.parseLong(matcher.group(1));
+		String unit = matcher.group(2).toUpperCase();
+		return unit.isEmpty() ? bytes : bytes << (10 * (SIZE_UNITS.indexOf(unit) + 1));
+	}
+
+	public static String formatSize(long bytes) {
+		if (bytes < 1024)
+			return bytes + " B";
+		int unit = Math.min(SIZE_UNITS.length(), (63 - Long.numberOfLeadingZeros(bytes)) / 10);
+		return String.format("%.1f %sB", bytes / (double) (1L << (10 * unit)), SIZE_UNITS.charAt(unit - 1));
+	}
+
+	private static long uniqueSize(List<CachedFile> files) {
+		Set<Object> counted = new HashSet<>();
+		long size = 0;
+		for (CachedFile file : files) {
+			if (file.fileKey == null || counted.add(file.fileKey))
+				size += file.getSize();
+		}
+		return size;
+	}
+
+	public static class CachedFile {
+		private final String path;
+		private final File file;
+		private final long size;
+		private final long lastUsed;
+		// Identifies the stored data, so that hard links to the same data can be recognised
+		private final Object fileKey;
+		private final DownloadManifest.Entry entry;
+
+		private CachedFile(String path, File file, long size, long lastUsed, Object fileKey,
+						   DownloadManifest.Entry entry) {
+			this.path = path;
+			this.file = file;
+			this.size = size;
+			this.lastUsed = lastUsed;
+			this.fileKey = fileKey;
+			this.entry = entry;
+		}
+
+		/**
+		 * Returns the path of the file relative to the cache directory.
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastUsed() {
+			return lastUsed;
+		}
+
+		/**
+		 * Returns the manifest entry of the file, or null for a file cached before the manifest existed.
+		 */
+		public DownloadManifest.Entry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * Opens the content of the file, decompressing it if it is stored compressed.
+		 */
+		public InputStream openContent() throws IOException {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			return entry != null && entry.isCompressed() ? new GZIPInputStream(in) : in;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package uk.org.tombolo.importer;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DownloadManifest.java
+ * The record of the files in a download cache: where each was downloaded from, the validators the server sent with
+ * it, its length, its SHA-256 checksum and whether it is stored compressed.
+ *
+ * Entries are keyed by the path of the file relative to the cache directory. Files without an entry were cached
+ * before the manifest existed or put in place by hand, and are trusted as they are.
+ *
+ * The manifest is a JSON file in the cache directory, rewritten atomically on every change. There is a single
+ * manifest per cache directory in the process, shared by every thread downloading into it.
+ */
+public class DownloadManifest {
+	private static final Logger log = LoggerFactory.getLogger(DownloadManifest.class);
+	private static final String MANIFEST_FILE = "manifest.json";
+	private static final Map<File, DownloadManifest> manifests = new ConcurrentHashMap<>();
+
+	private final File file;
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	public static DownloadManifest forDirectory(File cacheDirectory) throws IOException {
+		try {
+			return manifests.computeIfAbsent(cacheDirectory.getCanonicalFile(), directory -> {
+				DownloadManifest manifest = new DownloadManifest(new File(directory, MANIFEST_FILE));
+				try {
+					manifest.load();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return manifest;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private DownloadManifest(File file) {
+		this.file = file;
+	}
+
+	public synchronized Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public synchronized void put(String path, Entry entry) throws IOException {
+		entries.put(path, entry);
+		save();
+	}
+
+	public synchronized void remove(String path) throws IOException {
+		if (entries.remove(path) != null)
+			save();
+	}
+
+	/**
+	 * Returns a copy of the entries, keyed by path.
+	 */
+	public synchronized Map<String, Entry> getEntries() {
+		return new TreeMap<>(entries);
+	}
+
+	private void load() throws IOException {
+		if (!file.exists())
+			return;
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			JSONObject json = (JSONObject) new JSONParser().parse(reader);
+			for (Object path : json.keySet()) {
+				entries.put((String) path, Entry.fromJSON((JSONObject) json.get(path)));
+			}
+		} catch (ParseException | ClassCastException e) {
+			// The cached files are then trusted as they are, the same as files cached before the manifest existed
+			log.warn("Ignoring unreadable download manifest {}: {}", file, e.getMessage());
+			entries.clear();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void save() throws IOException {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			json.put(entry.getKey(), entry.getValue().toJSON());
+		}
+		File temporary = new File(file.getPath() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8)) {
+			json.writeJSONString(writer);
+		}
+		moveAtomically(temporary, file);
+	}
+
+	static boolean isManifestFile(File file) {
+		return file.getName().startsWith(MANIFEST_FILE);
+	}
+
+	static void moveAtomically(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	public static class Entry {
+		private final String url;
+		private final String eTag;
+		private final String lastModified;
+		private final long length;
+		private final String sha256;
+		private final boolean compressed;
+
+		public Entry(String url, String eTag, String lastModified, long length, String sha256) {
+			this(url, eTag, lastModified, length, sha256, false);
+		}
+
+		public Entry(String url, String eTag, String lastModified, long length, String sha256, boolean compressed) {
+			this.url = url;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.sha256 = sha256;
+			this.compressed = compressed;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns the length of the file as stored in the cache.
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the checksum of the content of the file, before any compression, or null for a download that has
+		 * not finished.
+		 */
+		public String getSha256() {
+			return sha256;
+		}
+
+		/**
+		 * Returns true if the file is stored gzip compressed.
+		 */
+		public boolean isCompressed() {
+			return compressed;
+		}
+
+		public boolean hasValidator() {
+			return eTag != null || lastModified != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		private JSONObject toJSON() {
+			JSONObject json = new JSONObject();
+			json.put("url", url);
+			json.put("etag", eTag);
+			json.put("lastModified", lastModified);
+			json.put("length", length);
+			json.put("sha256", sha256);
+			if (compressed)
+				json.put("compressed", true);
+			return json;
+		}
+
+		private static Entry fromJSON(JSONObject json) {
+			Number length = (Number) json.get("length");
+			return new Entry(
+					(String) json.get("url"),
+					(String) json.get("etag"),
+					(String) json.get("lastModified"),
+					length == null ? -1 : length.longValue(),
+					(String) json.get("sha256"),
+					Boolean.TRUE.equals(json.get("compressed")));
+		}
+	}
+}
@@ -1,7 +1,8 @@
 package uk.org.tombolo.importer;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.IOUtils;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -9,49 +10,142 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * DownloadUtils.java
+ * Fetches remote resources through a local cache directory.
+ *
+ * Downloads are written to a partial file next to the cached file and only moved into place once complete, so an
+ * interrupted download never leaves a truncated file in the cache. A partial file left by an earlier attempt is
+ * resumed with a range request if the server still has the same version of the resource. Failed downloads are
+ * retried a few times.
+ *
+ * The validators sent by the server and the checksum of every downloaded file are recorded in the manifest of the
+ * cache. Cached files are revalidated with a conditional request when fetched and downloaded again if the resource
+ * has changed; if the server cannot be reached the cached file is used as it is.
+ *
+ * Text fetched as a stream is stored gzip compressed and decompressed as it is read. A compressed file fetched as a
+ * file is decompressed into a temporary copy, deleted when the JVM exits, and stays compressed in the cache. A
+ * download with the same content as a file already in the cache is stored as a hard link to it. When a maximum size
+ * is set the least recently used files are evicted after each download, see DownloadCache.
+ */
 public class DownloadUtils {
 	private static Logger log = LoggerFactory.getLogger(DownloadUtils.class);
 
 	public static final String DEFAULT_DATA_CACHE_ROOT = "/tmp";
+	public static final int DEFAULT_DOWNLOAD_THREADS = 4;
 	private static final String TOMBOLO_DATA_CACHE_DIRECTORY = "TomboloData";
-	
+	private static final String PARTIAL_SUFFIX = ".part";
+	private static final String COMPRESSED_SUFFIX = ".gz";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final String LINK_SUFFIX = ".link";
+	private static final Set<String> TEXT_SUFFIXES = new HashSet<>(Arrays.asList(
+			".csv", ".tsv", ".txt", ".json", ".geojson", ".xml", ".kml", ".html"));
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+	private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+	private static final int READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	// Fetches of the same file from different threads are serialised, as they would write to the same partial file
+	private static final Map<String, Object> fileLocks = new ConcurrentHashMap<>();
+
 	private String tomboloDataCacheRootDirectory = DEFAULT_DATA_CACHE_ROOT;	// Configurable root to where to store cached data
+	private int downloadThreads = DEFAULT_DOWNLOAD_THREADS;
+	private boolean revalidate = true;
+	private long maxCacheSize = 0;
+	private final Set<String> fetchedFiles = ConcurrentHashMap.newKeySet();
+	// Decompressed copies of compressed cached files, by the path and checksum of their cache entry
+	private final Map<String, File> decompressedFiles = new ConcurrentHashMap<>();
 
 	public DownloadUtils(String dataCacheRootDirectory){
 		tomboloDataCacheRootDirectory = dataCacheRootDirectory;
 	}
 
+	/**
+	 * Sets the maximum number of downloads run at the same time by fetchFiles.
+	 */
+	public void setDownloadThreads(int downloadThreads) {
+		this.downloadThreads = Math.max(1, downloadThreads);
+	}
+
+	/**
+	 * Sets whether cached files are checked against the server before being used.
+	 */
+	public void setRevalidate(boolean revalidate) {
+		this.revalidate = revalidate;
+	}
+
+	/**
+	 * Sets the size in bytes the cache is kept within by evicting the least recently used files, or 0 for no limit.
+	 * Files fetched through this instance are never evicted by it.
+	 */
+	public void setMaxCacheSize(long maxCacheSize) {
+		this.maxCacheSize = Math.max(0, maxCacheSize);
+	}
+
 	public File fetchFile(URL url, String prefix, String suffix) throws IOException{
-		createCacheDir(prefix);
-		File localDatasourceFile = urlToLocalFile(url, prefix, suffix);
-		log.info("Fetching local file: {}", localDatasourceFile.getCanonicalPath());
-		if (!localDatasourceFile.exists()){
-			// Local datafile does not exist so we should download it
-			log.info("Local file not found: {} \nDownloading external resource: {}",
-													localDatasourceFile.getCanonicalPath(), url.toString());
-			FileUtils.copyURLToFile(url, localDatasourceFile);
+		return fetch(url, prefix, suffix, Collections.emptyMap(), false);
+	}
+
+	/**
+	 * Fetches several files, downloading at most the configured number of them at the same time.
+	 *
+	 * @return the local files, in the order of the urls
+	 */
+	public List<File> fetchFiles(List<URL> urls, String prefix, String suffix) throws IOException {
+		List<File> files = new ArrayList<>();
+		int threads = Math.min(downloadThreads, urls.size());
+		if (threads <= 1) {
+			for (URL url : urls) {
+				files.add(fetchFile(url, prefix, suffix));
+			}
+			return files;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<File>> futures = new ArrayList<>();
+			for (URL url : urls) {
+				futures.add(pool.submit(() -> fetchFile(url, prefix, suffix)));
+			}
+			for (Future<File> future : futures) {
+				try {
+					files.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while downloading files");
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new Error("Worker failed while downloading files", e.getCause());
+				}
+			}
+			return files;
+		} finally {
+			pool.shutdownNow();
 		}
-		return localDatasourceFile;
 	}
 
 	public InputStream fetchInputStream(URL url, String prefix, String suffix) throws IOException {
-		createCacheDir(prefix);
-		File localDatasourceFile = urlToLocalFile(url, prefix, suffix);
-		log.info("Fetching local file: {}", localDatasourceFile.getCanonicalPath());
-		if (!localDatasourceFile.exists()){
-			log.info("Local file not found: {} \nDownloading external resource: {}",
-												localDatasourceFile.getCanonicalPath(), url.toString());
-			URLConnection connection = url.openConnection();
-			if (suffix.equals(".json")) connection.setRequestProperty("Accept", "application/json");
-			return new TeeInputStream(connection.getInputStream(), new FileOutputStream(localDatasourceFile));
-		} else {
-			return new FileInputStream(localDatasourceFile);
-		}
+		Map<String, String> requestProperties = suffix.equals(".json")
+				? Collections.singletonMap("Accept", "application/json")
+				: Collections.emptyMap();
+		File file = fetch(url, prefix, suffix, requestProperties, true);
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		if (file.getPath().equals(urlToLocalFile(url, prefix, suffix).getPath() + COMPRESSED_SUFFIX))
+			return new GZIPInputStream(in);
+		return in;
 	}
 
 	public static String paramsToString(Map<String,String> params){
@@ -67,6 +161,311 @@ public class DownloadUtils {
 		return (JSONObject) parser.parse(new InputStreamReader(fetchInputStream(url, prefix, ".json")));
 	}
 
+	private File fetch(URL url, String prefix, String suffix, Map<String, String> requestProperties, boolean asStream)
+			throws IOException {
+		createCacheDir(prefix);
+		File localDatasourceFile = urlToLocalFile(url, prefix, suffix);
+		File compressedFile = new File(localDatasourceFile.getPath() + COMPRESSED_SUFFIX);
+		log.info("Fetching local file: {}", localDatasourceFile.getCanonicalPath());
+		String path = prefix + "/" + localDatasourceFile.getName();
+		String canonicalPath = localDatasourceFile.getCanonicalPath();
+		fetchedFiles.add(canonicalPath);
+		synchronized (fileLocks.computeIfAbsent(canonicalPath, key -> new Object())) {
+			File cachedFile = validCachedFile(url, localDatasourceFile, path, requestProperties);
+			if (cachedFile == null)
+				cachedFile = validCachedFile(url, compressedFile, path + COMPRESSED_SUFFIX, requestProperties);
+			if (cachedFile != null) {
+				// The modification time of a cached file records its last use, so that it is evicted last
+				cachedFile.setLastModified(System.currentTimeMillis());
+				if (cachedFile.equals(compressedFile) && !asStream)
+					return decompress(compressedFile, path + COMPRESSED_SUFFIX, localDatasourceFile);
+				return cachedFile;
+			}
+
+			// Local datafile does not exist so we should download it
+			log.info("Local file not found: {} \nDownloading external resource: {}",
+					localDatasourceFile.getCanonicalPath(), url.toString());
+			// Text is only stored compressed when it is read as a stream, since callers of fetchFile need the file
+			boolean compress = asStream && TEXT_SUFFIXES.contains(suffix.toLowerCase());
+			download(url, localDatasourceFile, path, requestProperties, compress);
+			enforceMaxCacheSize();
+			return compress ? compressedFile : localDatasourceFile;
+		}
+	}
+
+	// Returns the file if it is in the cache and matches the manifest, revalidating it if possible
+	private File validCachedFile(URL url, File file, String path, Map<String, String> requestProperties)
+			throws IOException {
+		if (!file.exists())
+			return null;
+		DownloadManifest manifest = getManifest();
+		DownloadManifest.Entry entry = manifest.get(path);
+		if (entry == null) {
+			// Cached before the manifest existed, or put in place by hand
+			return file;
+		}
+		if (entry.getLength() == file.length()) {
+			if (revalidate && entry.hasValidator())
+				revalidate(url, file, path, entry, requestProperties);
+			return file;
+		}
+		log.warn("Local file {} does not match the download manifest, discarding it", file.getCanonicalPath());
+		Files.delete(file.toPath());
+		manifest.remove(path);
+		return null;
+	}
+
+	private void download(URL url, File localDatasourceFile, String path, Map<String, String> requestProperties,
+			boolean compress) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				downloadOnce(url, localDatasourceFile, path, requestProperties, compress);
+				return;
+			} catch (IOException e) {
+				if (attempt >= MAX_ATTEMPTS || !isRetryable(e))
+					throw e;
+				log.warn("Download of {} failed, retrying ({} of {}): {}", url, attempt, MAX_ATTEMPTS, e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while downloading " + url);
+				}
+			}
+		}
+	}
+
+	private void downloadOnce(URL url, File localDatasourceFile, String path, Map<String, String> requestProperties,
+			boolean compress) throws IOException {
+		DownloadManifest manifest = getManifest();
+		File partialFile = new File(localDatasourceFile.getPath() + PARTIAL_SUFFIX);
+		String partialPath = path + PARTIAL_SUFFIX;
+		File storedFile = compress ? new File(localDatasourceFile.getPath() + COMPRESSED_SUFFIX) : localDatasourceFile;
+		String storedPath = compress ? path + COMPRESSED_SUFFIX : path;
+		URLConnection connection = openConnection(url, requestProperties);
+
+		if (!(connection instanceof HttpURLConnection)) {
+			// No validators or ranges outside of HTTP, but the download is still moved into place once complete
+			try (InputStream in = connection.getInputStream()) {
+				FileUtils.copyInputStreamToFile(in, partialFile);
+			}
+			complete(url, partialFile, partialPath, storedFile, storedPath, compress, null, null);
+			return;
+		}
+
+		HttpURLConnection http = (HttpURLConnection) connection;
+		DownloadManifest.Entry partialEntry = manifest.get(partialPath);
+		long offset = 0;
+		if (partialFile.length() > 0 && partialEntry != null && partialEntry.hasValidator()) {
+			offset = partialFile.length();
+			http.setRequestProperty("Range", "bytes=" + offset + "-");
+			// The server only sends the rest of the resource if it has not changed since the download started
+			http.setRequestProperty("If-Range",
+					partialEntry.getETag() != null ? partialEntry.getETag() : partialEntry.getLastModified());
+		}
+
+		int status = http.getResponseCode();
+		if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0 && rangeStart(http) == offset) {
+			log.info("Resuming download of {} from byte {}", url, offset);
+			receive(http, url, partialFile, offset);
+			complete(url, partialFile, partialPath, storedFile, storedPath, compress,
+					partialEntry.getETag(), partialEntry.getLastModified());
+		} else if (status == HttpURLConnection.HTTP_OK) {
+			String eTag = http.getHeaderField("ETag");
+			String lastModified = http.getHeaderField("Last-Modified");
+			manifest.put(partialPath, new DownloadManifest.Entry(url.toString(), eTag, lastModified, -1, null));
+			receive(http, url, partialFile, 0);
+			complete(url, partialFile, partialPath, storedFile, storedPath, compress, eTag, lastModified);
+		} else {
+			http.disconnect();
+			if (status == HttpURLConnection.HTTP_PARTIAL || status == 416) {
+				// The partial file cannot be resumed, so the next attempt starts again from the beginning
+				Files.deleteIfExists(partialFile.toPath());
+				manifest.remove(partialPath);
+				throw new IOException("Could not resume download of " + url + " from byte " + offset);
+			}
+			if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE)
+				throw new FileNotFoundException(url.toString());
+			throw new HttpStatusException(url, status);
+		}
+	}
+
+	private void revalidate(URL url, File cachedFile, String path, DownloadManifest.Entry entry,
+			Map<String, String> requestProperties) {
+		try {
+			URLConnection connection = openConnection(url, requestProperties);
+			if (!(connection instanceof HttpURLConnection))
+				return;
+			HttpURLConnection http = (HttpURLConnection) connection;
+			if (entry.getETag() != null)
+				http.setRequestProperty("If-None-Match", entry.getETag());
+			if (entry.getLastModified() != null)
+				http.setRequestProperty("If-Modified-Since", entry.getLastModified());
+
+			int status = http.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				log.info("Local file is up to date with {}", url);
+				http.disconnect();
+			} else if (status == HttpURLConnection.HTTP_OK) {
+				log.info("External resource has changed, downloading it again: {}", url);
+				File partialFile = new File(cachedFile.getPath() + PARTIAL_SUFFIX);
+				String partialPath = path + PARTIAL_SUFFIX;
+				String eTag = http.getHeaderField("ETag");
+				String lastModified = http.getHeaderField("Last-Modified");
+				getManifest().put(partialPath,
+						new DownloadManifest.Entry(url.toString(), eTag, lastModified, -1, null));
+				receive(http, url, partialFile, 0);
+				complete(url, partialFile, partialPath, cachedFile, path, entry.isCompressed(), eTag, lastModified);
+			} else {
+				http.disconnect();
+				log.warn("Could not revalidate {} (HTTP {}), using local file", url, status);
+			}
+		} catch (IOException e) {
+			log.warn("Could not revalidate {}, using local file: {}", url, e.getMessage());
+		}
+	}
+
+	// Writes the body of the response to the partial file, starting at the given offset
+	private static void receive(HttpURLConnection http, URL url, File partialFile, long offset) throws IOException {
+		long contentLength = http.getContentLengthLong();
+		try (InputStream in = http.getInputStream();
+			 OutputStream out = new FileOutputStream(partialFile, offset > 0)) {
+			IOUtils.copyLarge(in, out);
+		}
+		if (contentLength >= 0 && partialFile.length() != offset + contentLength)
+			throw new IOException("Download of " + url + " ended after " + partialFile.length()
+					+ " of " + (offset + contentLength) + " bytes");
+	}
+
+	// Moves a finished download into the cache, compressing it or linking it to identical cached content first
+	private void complete(URL url, File partialFile, String partialPath, File storedFile, String storedPath,
+			boolean compress, String eTag, String lastModified) throws IOException {
+		String sha256;
+		try (InputStream in = new FileInputStream(partialFile)) {
+			sha256 = DigestUtils.sha256Hex(in);
+		}
+		File contentFile = partialFile;
+		if (compress) {
+			contentFile = new File(storedFile.getPath() + TEMPORARY_SUFFIX);
+			try (InputStream in = new FileInputStream(partialFile);
+				 OutputStream out = new GZIPOutputStream(new FileOutputStream(contentFile))) {
+				IOUtils.copyLarge(in, out);
+			}
+			Files.delete(partialFile.toPath());
+		}
+		long length = contentFile.length();
+		linkToDuplicate(contentFile, storedPath, sha256, compress, length);
+		DownloadManifest.moveAtomically(contentFile, storedFile);
+
+		DownloadManifest manifest = getManifest();
+		manifest.put(storedPath,
+				new DownloadManifest.Entry(url.toString(), eTag, lastModified, length, sha256, compress));
+		manifest.remove(partialPath);
+	}
+
+	// Replaces the file with a hard link to a cached file with the same content, so that the content is stored once
+	private void linkToDuplicate(File contentFile, String storedPath, String sha256, boolean compressed, long length)
+			throws IOException {
+		for (Map.Entry<String, DownloadManifest.Entry> cached : getManifest().getEntries().entrySet()) {
+			DownloadManifest.Entry entry = cached.getValue();
+			File duplicate = new File(getCacheDirectory(), cached.getKey());
+			if (cached.getKey().equals(storedPath) || !sha256.equals(entry.getSha256())
+					|| entry.isCompressed() != compressed || entry.getLength() != length
+					|| duplicate.length() != length)
+				continue;
+			File link = new File(contentFile.getPath() + LINK_SUFFIX);
+			try {
+				Files.deleteIfExists(link.toPath());
+				Files.createLink(link.toPath(), duplicate.toPath());
+			} catch (IOException | UnsupportedOperationException e) {
+				log.debug("Could not link {} to {}: {}", storedPath, cached.getKey(), e.getMessage());
+				return;
+			}
+			DownloadManifest.moveAtomically(link, contentFile);
+			log.info("Content of {} is already cached as {}, storing it once", storedPath, cached.getKey());
+			return;
+		}
+	}
+
+	// Decompresses a compressed cached file for callers that need the file itself, leaving it compressed in the cache.
+	// The copy is named like the cached file, in a temporary directory next to it, so that it keeps its suffix and is
+	// never evicted while this instance may use it. It is reused until the cached content changes.
+	private File decompress(File compressedFile, String compressedPath, File localDatasourceFile) throws IOException {
+		DownloadManifest.Entry entry = getManifest().get(compressedPath);
+		String key = compressedPath + "@" + (entry == null ? "" : entry.getSha256());
+		File decompressedFile = decompressedFiles.get(key);
+		if (decompressedFile != null && decompressedFile.exists())
+			return decompressedFile;
+
+		File directory = Files.createTempDirectory(
+				localDatasourceFile.getParentFile().toPath(), localDatasourceFile.getName() + ".").toFile();
+		// Deleted in the reverse order of registration, so the directory goes after the file in it
+		directory.deleteOnExit();
+		decompressedFile = new File(directory, localDatasourceFile.getName());
+		decompressedFile.deleteOnExit();
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(compressedFile)))) {
+			FileUtils.copyInputStreamToFile(in, decompressedFile);
+		}
+		log.info("Decompressed {} into {}", compressedPath, decompressedFile);
+		decompressedFiles.put(key, decompressedFile);
+		return decompressedFile;
+	}
+
+	private void enforceMaxCacheSize() throws IOException {
+		if (maxCacheSize > 0)
+			new DownloadCache(getCacheDirectory()).prune(maxCacheSize, this::isFetched);
+	}
+
+	// Files fetched through this instance may still be in use, so they are never evicted by it
+	private boolean isFetched(File file) {
+		try {
+			String path = file.getCanonicalPath();
+			return fetchedFiles.stream().anyMatch(path::startsWith);
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	private static URLConnection openConnection(URL url, Map<String, String> requestProperties) throws IOException {
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		requestProperties.forEach(connection::setRequestProperty);
+		return connection;
+	}
+
+	// Returns the first byte of a Content-Range header of the form "bytes first-last/length"
+	private static long rangeStart(HttpURLConnection http) {
+		String contentRange = http.getHeaderField("Content-Range");
+		if (contentRange == null || !contentRange.startsWith("bytes "))
+			return -1;
+		try {
+			return Long.parseLong(contentRange.substring("bytes ".length(), contentRange.indexOf('-')).trim());
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+
+	private static boolean isRetryable(IOException e) {
+		if (e instanceof FileNotFoundException)
+			return false;
+		if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+			return false;
+		if (e instanceof HttpStatusException) {
+			int status = ((HttpStatusException) e).status;
+			return status >= 500 || status == HttpURLConnection.HTTP_CLIENT_TIMEOUT || status == 429;
+		}
+		return true;
+	}
+
+	public File getCacheDirectory() {
+		return new File(tomboloDataCacheRootDirectory + "/" + TOMBOLO_DATA_CACHE_DIRECTORY);
+	}
+
+	private DownloadManifest getManifest() throws IOException {
+		return DownloadManifest.forDirectory(getCacheDirectory());
+	}
+
 	private File urlToLocalFile (URL url, String prefix, String suffix){
 		String urlKey = UUID.nameUUIDFromBytes(url.toString().getBytes()).toString();
 		return new File(
@@ -80,4 +479,13 @@ public class DownloadUtils {
 	private void createCacheDir(String prefix) throws IOException {
 		FileUtils.forceMkdir(new File(tomboloDataCacheRootDirectory + "/" + TOMBOLO_DATA_CACHE_DIRECTORY + "/" + prefix));
 	}
+
+	private static class HttpStatusException extends IOException {
+		private final int status;
+
+		private HttpStatusException(URL url, int status) {
+			super("HTTP " + status + " fetching " + url);
+			this.status = status;
+		}
+	}
 }
@@ -0,0 +1,129 @@
+package uk.org.tombolo.importer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.core.utils.DatabaseJournal;
+import uk.org.tombolo.core.utils.HibernateUtil;
+import uk.org.tombolo.core.utils.MergeResult;
+
+/**
+ * ImportChanges.java
+ * Keeps track of what a differential import changes, for the summary logged at the end of the import.
+ *
+ * A differential import only writes the rows that are new or have changed, and then deletes the values that are
+ * gone from the data source. The keys of the values written are recorded under the run, named after the journal
+ * entry of the import, in the timed_value_written and fixed_value_written tables, in the transactions that write
+ * the values. A value is deleted only when an earlier differential run of the same entry wrote it and this run did
+ * not, and no other entry recorded it, so the values of other scopes of the same importer are left alone. A first
+ * import records no keys, so values are deleted from the second run importing the entry again. Subjects are shared
+ * between data sources, so they are never deleted.
+ *
+ * The key tables are logged, so the keys committed with the checkpoint of a failed import survive a crash of the
+ * database and are kept for the import resuming it.
+ */
+class ImportChanges {
+    private static final Logger log = LoggerFactory.getLogger(ImportChanges.class);
+    private static final String[] WRITTEN_TABLES = {"timed_value_written", "fixed_value_written"};
+
+    private final String run;
+    private final Counts subjects = new Counts();
+    private final Counts fixedValues = new Counts();
+    private final Counts timedValues = new Counts();
+
+    /**
+     * @param run the run to record the keys of the values written under, the same for every run of a journal entry
+     * @param resumed whether the import resumes a failed one, whose keys are then kept as written by this run
+     */
+    ImportChanges(String run, boolean resumed) {
+        this.run = run;
+        DatabaseJournal.createImportTables();
+        if (!resumed) {
+            HibernateUtil.withTransaction(session -> {
+                for (String table : WRITTEN_TABLES) {
+                    session.createNativeQuery("UPDATE " + table + " SET current = false WHERE run = :run AND current")
+                            .setParameter("run", run)
+                            .executeUpdate();
+                }
+            });
+        }
+    }
+
+    String getRun() {
+        return run;
+    }
+
+    synchronized void addSubjects(MergeResult result) {
+        subjects.add(result);
+    }
+
+    synchronized void addFixedValues(MergeResult result) {
+        fixedValues.add(result);
+    }
+
+    synchronized void addTimedValues(MergeResult result) {
+        timedValues.add(result);
+    }
+
+    /**
+     * Deletes the values that earlier runs wrote and this run did not write again, along with their keys, in the
+     * current transaction.
+     */
+    synchronized void deleteVanishedValues() {
+        HibernateUtil.withTransaction(session -> {
+            fixedValues.deleted += session.createNativeQuery("DELETE FROM fixed_value f USING fixed_value_written w"
+                    + " WHERE w.run = :run AND NOT w.current"
+                    + " AND f.subject_id = w.subject_id AND f.attribute_id = w.attribute_id"
+                    + " AND NOT EXISTS (SELECT 1 FROM fixed_value_written o WHERE o.run <> :run"
+                    + " AND o.subject_id = w.subject_id AND o.attribute_id = w.attribute_id)")
+                    .setParameter("run", run)
+                    .executeUpdate();
+            timedValues.deleted += session.createNativeQuery("DELETE FROM timed_value t USING timed_value_written w"
+                    + " WHERE w.run = :run AND NOT w.current"
+                    + " AND t.subject_id = w.subject_id AND t.attribute_id = w.attribute_id"
+                    + " AND t.timestamp = w.timestamp"
+                    + " AND NOT EXISTS (SELECT 1 FROM timed_value_written o WHERE o.run <> :run"
+                    + " AND o.subject_id = w.subject_id AND o.attribute_id = w.attribute_id"
+                    + " AND o.timestamp = w.timestamp)")
+                    .setParameter("run", run)
+                    .executeUpdate();
+            for (String table : WRITTEN_TABLES) {
+                session.createNativeQuery("DELETE FROM " + table + " WHERE run = :run AND NOT current")
+                        .setParameter("run", run)
+                        .executeUpdate();
+            }
+            // The values are deleted behind the back of Hibernate, so its cached queries may hold them
+            if (fixedValues.deleted + timedValues.deleted > 0)
+                session.getSessionFactory().getCache().evictQueryRegions();
+        });
+    }
+
+    synchronized void logSummary() {
+        log.info("Changes: subjects {}; fixed values {}; timed values {}", subjects, fixedValues, timedValues);
+    }
+
+    synchronized int getDeletedFixedValueCount() {
+        return fixedValues.deleted;
+    }
+
+    synchronized int getDeletedTimedValueCount() {
+        return timedValues.deleted;
+    }
+
+    private static class Counts {
+        private int inserted;
+        private int updated;
+        private int unchanged;
+        private int deleted;
+
+        private void add(MergeResult result) {
+            inserted += result.getInserted();
+            updated += result.getUpdated();
+            unchanged += result.getUnchanged();
+        }
+
+        @Override
+        public String toString() {
+            return inserted + " inserted, " + updated + " updated, " + unchanged + " unchanged, " + deleted + " deleted";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package uk.org.tombolo.importer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Provider;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.core.utils.AttributeUtils;
+import uk.org.tombolo.core.utils.SubjectUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ImportContext.java
+ * Resolves the labels of subjects and attributes for the duration of an import, without querying the database for
+ * every value.
+ *
+ * The subjects of a subject type and the attributes of a provider are loaded in a single query the first time one of
+ * them is needed. A label that is not among them is looked up once on its own, in case it was saved since, and
+ * remembered either way. Subjects saved by the importer are added as they are saved.
+ *
+ * Unknown labels are logged once each, and counted, rather than for every value that refers to them.
+ */
+public class ImportContext {
+    private static final Logger log = LoggerFactory.getLogger(ImportContext.class);
+
+    // Subjects by label, for each subject type, and attributes by label, for each provider
+    private final Map<String, Map<String, Subject>> subjects = new HashMap<>();
+    private final Map<String, Map<String, Attribute>> attributes = new HashMap<>();
+    // Number of references to each unknown label
+    private final Map<String, Integer> unknownSubjects = new HashMap<>();
+    private final Map<String, Integer> unknownAttributes = new HashMap<>();
+
+    /**
+     * Returns the subject of the given type and label, or null if there is none.
+     */
+    public synchronized Subject getSubject(SubjectType subjectType, String label) {
+        Map<String, Subject> labels = subjects.computeIfAbsent(key(subjectType), key -> {
+            Map<String, Subject> loaded = new HashMap<>();
+            for (Subject subject : SubjectUtils.getSubjectsByType(subjectType)) {
+                loaded.put(subject.getLabel(), subject);
+            }
+            log.debug("Loaded {} subjects of type {}", loaded.size(), subjectType.getLabel());
+            return loaded;
+        });
+        if (!labels.containsKey(label))
+            labels.put(label, SubjectUtils.getSubjectByTypeAndLabel(subjectType, label));
+        return labels.get(label);
+    }
+
+    /**
+     * Returns the attribute of the given provider and label, or null if there is none.
+     */
+    public synchronized Attribute getAttribute(Provider provider, String label) {
+        Map<String, Attribute> labels = attributes.computeIfAbsent(provider.getLabel(), key -> {
+            Map<String, Attribute> loaded = new HashMap<>();
+            for (Attribute attribute : AttributeUtils.getByProvider(provider)) {
+                loaded.put(attribute.getLabel(), attribute);
+            }
+            return loaded;
+        });
+        if (!labels.containsKey(label))
+            labels.put(label, AttributeUtils.getByProviderAndLabel(provider, label));
+        return labels.get(label);
+    }
+
+    /**
+     * Adds saved subjects to the subjects of their type, if these are loaded.
+     */
+    public synchronized void addSubjects(List<Subject> saved) {
+        for (Subject subject : saved) {
+            Map<String, Subject> labels = subjects.get(key(subject.getSubjectType()));
+            if (labels != null)
+                labels.put(subject.getLabel(), subject);
+        }
+    }
+
+    /**
+     * Records a reference to an unknown subject, logging it the first time.
+     */
+    public synchronized void reportUnknownSubject(SubjectType subjectType, String label) {
+        if (unknownSubjects.merge(key(subjectType) + ":" + label, 1, Integer::sum) == 1)
+            log.warn("Unknown subject: {} ({}), skipping its values", label, subjectType.getLabel());
+    }
+
+    /**
+     * Records a reference to an unknown attribute, logging it the first time.
+     */
+    public synchronized void reportUnknownAttribute(Provider provider, String label) {
+        if (unknownAttributes.merge(provider.getLabel() + ":" + label, 1, Integer::sum) == 1)
+            log.warn("Unknown attribute: {} ({}), skipping its values", label, provider.getLabel());
+    }
+
+    public synchronized int getUnknownSubjectCount() {
+        return unknownSubjects.size();
+    }
+
+    public synchronized int getUnknownAttributeCount() {
+        return unknownAttributes.size();
+    }
+
+    /**
+     * Logs how many values were skipped because of unknown labels.
+     */
+    public synchronized void logSummary() {
+        if (!unknownSubjects.isEmpty())
+            log.warn("Skipped {} values referring to {} unknown subjects",
+                    unknownSubjects.values().stream().mapToInt(Integer::intValue).sum(), unknownSubjects.size());
+        if (!unknownAttributes.isEmpty())
+            log.warn("Skipped {} values referring to {} unknown attributes",
+                    unknownAttributes.values().stream().mapToInt(Integer::intValue).sum(), unknownAttributes.size());
+    }
+
+    // Subject types have no equals, so they are told apart by provider and label
+    private static String key(SubjectType subjectType) {
+        return subjectType.getProvider().getLabel() + ":" + subjectType.getLabel();
+    }
+}
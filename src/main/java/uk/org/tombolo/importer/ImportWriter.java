@@ -0,0 +1,115 @@
+package uk.org.tombolo.importer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImportWriter.java
+ * Writes the buffers of an importer on a dedicated thread, so that the importer goes on parsing while they are written.
+ *
+ * Writes are done one at a time in the order they are submitted, so values are written after the subjects they refer
+ * to. At most a given number of writes wait in the queue; submitting another one blocks until the oldest is done.
+ *
+ * Once a write fails, the writes still queued are dropped and the failure is thrown to the importer by its next call
+ * to submit or flush.
+ */
+class ImportWriter {
+    private static final Logger log = LoggerFactory.getLogger(ImportWriter.class);
+
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread writer = new Thread(runnable, "import-writer");
+        writer.setDaemon(true);
+        return writer;
+    });
+    private final Semaphore capacity;
+    private volatile Throwable failure;
+
+    /**
+     * @param capacity the number of writes that can wait in the queue, besides the one being written
+     */
+    ImportWriter(int capacity) {
+        this.capacity = new Semaphore(Math.max(0, capacity) + 1);
+    }
+
+    /**
+     * Queues the write, waiting for room in the queue if it is full.
+     */
+    void submit(Runnable write) {
+        checkFailure();
+        capacity.acquireUninterruptibly();
+        try {
+            thread.execute(() -> {
+                try {
+                    if (failure == null)
+                        write.run();
+                } catch (RuntimeException | Error e) {
+                    log.error("Write failed, dropping the writes still queued", e);
+                    failure = e;
+                } finally {
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for all the writes submitted so far to be done, and throws the failure of any of them.
+     */
+    void flush() {
+        Future<?> done = thread.submit(() -> {});
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    done.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // The writes must be done before the importer can go on
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new Error("Writer failed while flushing", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits for the writes still queued and stops the writer thread.
+     */
+    void close() {
+        thread.shutdown();
+        boolean interrupted = false;
+        while (!thread.isTerminated()) {
+            try {
+                thread.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void checkFailure() {
+        Throwable e = failure;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+    }
+}
@@ -94,6 +94,11 @@ public interface Importer {
 	void verifyConfiguration() throws ConfigurationException;
 	Properties getConfiguration();
 
+	/**
+	 * Returns the context resolving the labels of subjects and attributes for the import in progress.
+	 */
+	ImportContext getImportContext();
+
 	int getSubjectCount();
 	int getFixedValueCount();
 	int getTimedValueCount();
@@ -103,6 +108,12 @@ public interface Importer {
 	int getFixedValueBufferSize();
 	int getSubjectBufferSize();
 
+	/**
+	 * Returns true if the importer saves subjects, which imports of other importers may refer to.
+	 * An importer that only saves values for subjects of existing types returns false.
+	 */
+	boolean createsSubjects();
+
 	List<SubjectType> getSubjectTypes(String datasourceId);
 	List<Attribute> getTimedValueAttributes(String datasourceId) throws Exception;
 	List<Attribute> getFixedValueAttributes(String datasourceId) throws Exception;
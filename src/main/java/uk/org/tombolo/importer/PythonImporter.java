@@ -76,6 +76,11 @@ public class PythonImporter extends AbstractImporter {
         super.saveAndClearFixedValueBuffer(fixedValueBuffer);
     }
 
+	@Override
+	public boolean createsSubjects() {
+		return true;
+	}
+
 	@Override
 	public Provider getProvider() {
 		return null;
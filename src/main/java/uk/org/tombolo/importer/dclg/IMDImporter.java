@@ -1,14 +1,12 @@
 package uk.org.tombolo.importer.dclg;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import uk.org.tombolo.core.*;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.importer.ons.OaImporter;
+import uk.org.tombolo.importer.utils.ParallelCSVReader;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -66,33 +64,35 @@ public class IMDImporter extends AbstractDCLGImporter {
     protected void importDatasource(Datasource datasource, List<String> geographyScope, List<String> temporalScope, List<String> datasourceLocation) throws Exception {
         // Save timed values
         LocalDateTime timestamp = LocalDateTime.parse("2015-01-01T00:00:01", TimedValueId.DATE_TIME_FORMATTER);
-        String line;
-        BufferedReader br = new BufferedReader(new InputStreamReader(
-                downloadUtils.fetchInputStream(new URL(IMD_DATA_CSV), getProvider().getLabel(), ".csv")));
-        while ((line = br.readLine())!=null){
-            CSVParser parser = CSVParser.parse(line, CSVFormat.DEFAULT);
-            List<CSVRecord> records = parser.getRecords();
-
-            String lsoaLabel = records.get(0).get(0);
-
-            if (lsoaLabel.startsWith("LSOA"))
-                continue;
-            Subject lsoa = SubjectUtils.getSubjectByTypeAndLabel(datasource.getUniqueSubjectType(), lsoaLabel);
-
-            if (lsoa == null)
-                continue;
-
-            List<TimedValue> timedValueBuffer = new ArrayList<>();
-            for (int i = 0; i < datasource.getTimedValueAttributes().size(); i++){
-                TimedValue timedValue = new TimedValue(
-                        lsoa,
-                        datasource.getTimedValueAttributes().get(i),
-                        timestamp,
-                        Double.valueOf(records.get(0).get(i+4)));
-                timedValueBuffer.add(timedValue);
-            }
-            saveAndClearTimedValueBuffer(timedValueBuffer);
-        }
+        List<Attribute> attributes = datasource.getTimedValueAttributes();
+        File file = downloadUtils.fetchFile(new URL(IMD_DATA_CSV), getProvider().getLabel(), ".csv");
+        List<TimedValue> timedValueBuffer = new ArrayList<>();
+        new ParallelCSVReader().read(file, CSVFormat.DEFAULT,
+                (CSVRecord record, List<TimedValue> timedValues) -> {
+                    String lsoaLabel = record.get(0);
+
+                    if (lsoaLabel.startsWith("LSOA"))
+                        return;
+                    Subject lsoa = getImportContext().getSubject(datasource.getUniqueSubjectType(), lsoaLabel);
+
+                    if (lsoa == null)
+                        return;
+
+                    for (int i = 0; i < attributes.size(); i++){
+                        TimedValue timedValue = new TimedValue(
+                                lsoa,
+                                attributes.get(i),
+                                timestamp,
+                                Double.valueOf(record.get(i+4)));
+                        timedValues.add(timedValue);
+                    }
+                },
+                chunk -> {
+                    timedValueBuffer.addAll(chunk.getValues());
+                    if (timedValueBuffer.size() >= getTimedValueBufferSize())
+                        saveAndClearTimedValueBuffer(timedValueBuffer);
+                });
+        saveAndClearTimedValueBuffer(timedValueBuffer);
     }
 
     private enum AttributeId {
@@ -4,19 +4,17 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.PrecisionModel;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Workbook;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.importer.utils.CoordinateUtils;
 import uk.org.tombolo.importer.utils.ExcelUtils;
 import uk.org.tombolo.importer.utils.LatLong;
+import uk.org.tombolo.importer.utils.StreamingXlsxReader;
 
+import java.io.File;
 import java.net.URL;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.IntStream;
 
 /**
  * Class importing schools in England
@@ -74,12 +72,12 @@ public class SchoolsImporter extends AbstractDfEImporter {
 
     }
 
-    // Schools' workbook
-    Workbook workbook;
+    // Schools' workbook, streamed one row at a time
+    File workbookFile;
+    ExcelUtils excelUtils = new ExcelUtils();
 
     protected void setupUtils(DatasourceId id) throws Exception {
-        ExcelUtils excelUtils = new ExcelUtils();
-        workbook = excelUtils.getWorkbook(downloadUtils.fetchInputStream(new URL(id.filePath), getProvider().getLabel(), ".xlsx"));
+        workbookFile = downloadUtils.fetchFile(new URL(id.filePath), getProvider().getLabel(), ".xlsx");
     }
 
     @Override
@@ -93,76 +91,81 @@ public class SchoolsImporter extends AbstractDfEImporter {
         // Keep track of the seen outcudes so we don't calculate the coordinate every time
         Map<String, Coordinate> seenCoordinates = new HashMap<>();
 
-        Iterator<Row> rowIterator = workbook.getSheetAt(DatasourceId.schools.sheetIdx).rowIterator();
-        DataFormatter dataFormatter = new DataFormatter();
-        Row header = rowIterator.next();
-        while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            String label;
-            String name;
-            String postcode;
-
-            try {
-                label = getProvider().getLabel() + "_schools_" + row.getCell(LABEL_COLUMN_INDEX).toString();
-                name = row.getCell(NAME_COLUMN_INDEX).toString();
-                postcode = row.getCell(POSTCODE_COLUMN_INDEX).toString();
-
-            } catch (Exception e) {
-                // Continue with the other data, if any.
-                continue;
-            }
-
-            // create the geography from the coordinates matching the postcode
-            GeometryFactory gf = new GeometryFactory(new PrecisionModel(), Subject.SRID);
-            String outcode = postcode.split(" ")[0];
-            LatLong latlong = postcodeToCoord.get(outcode);
-            Geometry geometry;
-            Coordinate coordinate = seenCoordinates.get(outcode);
-            if (coordinate == null){
-                try {
-                    coordinate = new Coordinate(Double.parseDouble(latlong.getLongitude()),
-                            Double.parseDouble(latlong.getLatitude()));
-                    seenCoordinates.put(outcode, coordinate);
-                } catch (Exception e) {
-                    // Nothing to do, we will have an empty geometry for this subject
+        try (StreamingXlsxReader reader = excelUtils.getStreamingReader(workbookFile)) {
+            reader.readSheet(DatasourceId.schools.sheetIdx, row -> {
+                // The first row is the header with the attribute labels
+                if (row.getRowNum() == 0)
+                    return true;
+                String label = row.getCellText(LABEL_COLUMN_INDEX);
+                String name = row.getCellText(NAME_COLUMN_INDEX);
+                String postcode = row.getCellText(POSTCODE_COLUMN_INDEX);
+                if (label == null || name == null || postcode == null) {
+                    // Continue with the other data, if any.
+                    return true;
                 }
-            }
-            geometry = gf.createPoint(coordinate);
-
-            Subject subject = new Subject(
-                    datasource.getUniqueSubjectType(),
-                    label,
-                    name,
-                    geometry
-            );
-            subjects.add(subject);
-
-            int attributeIndex = 0;
-            for (Attribute attribute : datasource.getFixedValueAttributes()) {
-                fixedValues.add(new FixedValue(
-                        subject,
-                        attribute,
-                        dataFormatter.formatCellValue(row.getCell(attributeIndex++))));
-            }
+                label = getProvider().getLabel() + "_schools_" + label;
+
+                // create the geography from the coordinates matching the postcode
+                GeometryFactory gf = new GeometryFactory(new PrecisionModel(), Subject.SRID);
+                String outcode = postcode.split(" ")[0];
+                LatLong latlong = postcodeToCoord.get(outcode);
+                Geometry geometry;
+                Coordinate coordinate = seenCoordinates.get(outcode);
+                if (coordinate == null){
+                    try {
+                        coordinate = new Coordinate(Double.parseDouble(latlong.getLongitude()),
+                                Double.parseDouble(latlong.getLatitude()));
+                        seenCoordinates.put(outcode, coordinate);
+                    } catch (Exception e) {
+                        // Nothing to do, we will have an empty geometry for this subject
+                    }
+                }
+                geometry = gf.createPoint(coordinate);
+
+                Subject subject = new Subject(
+                        datasource.getUniqueSubjectType(),
+                        label,
+                        name,
+                        geometry
+                );
+                subjects.add(subject);
+
+                int attributeIndex = 0;
+                for (Attribute attribute : datasource.getFixedValueAttributes()) {
+                    fixedValues.add(new FixedValue(
+                            subject,
+                            attribute,
+                            row.getFormattedCellValue(attributeIndex++)));
+                }
+                return true;
+            });
         }
         saveAndClearSubjectBuffer(subjects);
         saveAndClearFixedValueBuffer(fixedValues);
     }
 
     @Override
-    public List<Attribute> getFixedValueAttributes(String datasourceID) {
+    public List<Attribute> getFixedValueAttributes(String datasourceID) throws Exception {
         List<Attribute> attributes = new ArrayList<>();
 
-        Row attributeHeader = workbook.getSheetAt(DatasourceId.schools.sheetIdx).rowIterator().next();
-        IntStream.rangeClosed(attributeHeader.getFirstCellNum(), attributeHeader.getLastCellNum() - 1)
-                .forEach(idx -> {
-                            String label = attributeHeader.getCell(idx).getStringCellValue();
-                            attributes.add(new Attribute(getProvider(), label, label));
-                        }
-                );
+        try (StreamingXlsxReader reader = excelUtils.getStreamingReader(workbookFile)) {
+            reader.readSheet(DatasourceId.schools.sheetIdx, attributeHeader -> {
+                for (int idx = 0; idx < attributeHeader.getLastCellNum(); idx++) {
+                    String label = attributeHeader.getStringCellValue(idx);
+                    attributes.add(new Attribute(getProvider(), label, label));
+                }
+                // Only the header is needed
+                return false;
+            });
+        }
         return attributes;
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String datasourceID) {
         return Arrays.asList(new SubjectType(getProvider(), "dfeSchools", "DfE schools UK"));
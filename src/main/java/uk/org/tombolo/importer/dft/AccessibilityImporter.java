@@ -10,7 +10,6 @@ import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.Datasource;
 import uk.org.tombolo.core.DatasourceSpec;
 import uk.org.tombolo.core.SubjectType;
-import uk.org.tombolo.core.utils.AttributeUtils;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.importer.ons.AbstractONSImporter;
 import uk.org.tombolo.importer.ons.OaImporter;
@@ -161,7 +160,7 @@ public class AccessibilityImporter extends AbstractDFTImporter {
             for (int columnId = 0; columnId < attributeLabelRow.getLastCellNum(); columnId++){
                 RowCellExtractor tmpAttributeLabelExtractor = new RowCellExtractor(columnId, CellType.STRING);
                 tmpAttributeLabelExtractor.setRow(attributeLabelRow);
-                Attribute attribute = AttributeUtils.getByProviderAndLabel(getProvider(), tmpAttributeLabelExtractor.extract());
+                Attribute attribute = getImportContext().getAttribute(getProvider(), tmpAttributeLabelExtractor.extract());
                 if (attribute != null){
                     ConstantExtractor attributeExtractor = new ConstantExtractor(attribute.getLabel());
                     RowCellExtractor valueExtractor = new RowCellExtractor(columnId, CellType.NUMERIC);
@@ -5,22 +5,21 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.PrecisionModel;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
-import uk.org.tombolo.core.utils.AttributeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
 import uk.org.tombolo.importer.AbstractImporter;
 import uk.org.tombolo.importer.ConfigurationException;
 import uk.org.tombolo.importer.utils.CoordinateUtils;
+import uk.org.tombolo.importer.utils.ParallelCSVReader;
 
-import java.io.InputStreamReader;
+import java.io.File;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This importer imports traffic count information from Department for Transport.
@@ -49,8 +48,6 @@ public class TrafficCountImporter extends AbstractImporter {
 	private static final int STARTJUNCTION_INDEX = 10;
 	private static final int ENDJUNCTION_INDEX = 11;
 
-	private static final int TIMED_VALUE_BUFFER_SIZE = 100000;
-
 	protected enum DatasourceId {
 		trafficVolume(new DatasourceSpec(
 				TrafficCountImporter.class,
@@ -262,13 +259,13 @@ public class TrafficCountImporter extends AbstractImporter {
 	}
 	
 	@Override
-	public int getTimedValueBufferSize() {
-		return TIMED_VALUE_BUFFER_SIZE;
+	public DatasourceSpec getDatasourceSpec(String datasourceId) throws Exception {
+		return DatasourceId.valueOf(datasourceId).datasourceSpec;
 	}
 
 	@Override
-	public DatasourceSpec getDatasourceSpec(String datasourceId) throws Exception {
-		return DatasourceId.valueOf(datasourceId).datasourceSpec;
+	public boolean createsSubjects() {
+		return true;
 	}
 
 	@Override
@@ -286,91 +283,120 @@ public class TrafficCountImporter extends AbstractImporter {
 
 		SubjectType subjectType = datasource.getUniqueSubjectType();
 
-		for (String geogrpahyLabel : geographyScope) {
+		// An earlier run that did not finish checkpointed the geography and the record it got to
+		int resumeGeography = 0;
+		long resumeRecord = 0;
+		String checkpoint = getCheckpoint();
+		if (checkpoint != null) {
+			int separator = checkpoint.lastIndexOf(':');
+			resumeGeography = Math.max(0, geographyScope.indexOf(checkpoint.substring(0, separator)));
+			resumeRecord = Long.parseLong(checkpoint.substring(separator + 1));
+		}
+
+		for (int geographyIndex = resumeGeography; geographyIndex < geographyScope.size(); geographyIndex++) {
+			String geogrpahyLabel = geographyScope.get(geographyIndex);
+			long skippedRecords = geographyIndex == resumeGeography ? resumeRecord : 0;
 
 			URL url = new URL(getTrafficCountUrl(datasourceId, geogrpahyLabel));
 
 			// Read timed values
+			// Records are parsed and located on the reader workers, and subjects and values are made in file order here
 			GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), Subject.SRID);
 			Set<Long> trafficCounters = new HashSet<Long>();
 			List<TimedValue> timedValueBuffer = new ArrayList<TimedValue>();
-			CSVParser csvParser = new CSVParser(new InputStreamReader(
-					downloadUtils.fetchInputStream(url, getProvider().getLabel(), ".csv")), CSVFormat.RFC4180);
-			for (CSVRecord record : csvParser) {
-				long id;
-				try {
-					id = Long.valueOf(record.get(ID_INDEX));
-				} catch (NumberFormatException e) {
-					// We do not have a proper id ... could be header
-					continue;
-				}
-				String label = "DfT-TrafficCounter-" + id;
-				String year = record.get(YEAR_INDEX);
-
-				// Save subject object
-				if (!trafficCounters.contains(id)){
-					// We have not seen this id before
-					long easting = Long.valueOf(record.get(EASTING_INDEX));
-					long northing = Long.valueOf(record.get(NORTHING_INDEX));
-					String road = record.get(ROADNAME_INDEX);
-					String startJunction = record.get(STARTJUNCTION_INDEX);
-					String endJunction = record.get(ENDJUNCTION_INDEX);
-
-					Coordinate coordinate = CoordinateUtils.osgbToWgs84(easting, northing);
-					Point point = geometryFactory.createPoint(coordinate);
-
-					String name = road + " (" + startJunction + " to " + endJunction + ")";
-
-					// Save subject
-					Subject subject = new Subject(subjectType, label, name, point);
-					List<Subject> subjectList = new ArrayList<Subject>();
-					subjectList.add(subject);
-					saveAndClearSubjectBuffer(subjectList);
-					subject = SubjectUtils.getSubjectByTypeAndLabel(subjectType, label);
-
-					// Add fixed values
-					List<FixedValue> fixedValueBuffer = new ArrayList<>();
-					for (FixedAttribute fixedAttribute : FixedAttribute.values()){
-						Attribute attribute = AttributeUtils.getByProviderAndLabel(getProvider(), fixedAttribute.attribute.getLabel());
-						String stringValue = record.get(fixedAttribute.columnIndex);
-						FixedValue fixedValue = new FixedValue(subject, attribute, stringValue);
-						fixedValueBuffer.add(fixedValue);
-					}
-					saveAndClearFixedValueBuffer(fixedValueBuffer);
-
-					// Add subject to list of added subjects
-					trafficCounters.add(id);
-				}
-
-				Subject subject = SubjectUtils.getSubjectByTypeAndLabel(subjectType, label);
-				LocalDateTime timestamp = TimedValueUtils.parseTimestampString(year);
-
-				// Import timed values
-				switch (datasourceId){
-					case trafficCounts:
-						for (CountAttribute countAttribute : CountAttribute.values()){
-							Attribute attribute = AttributeUtils.getByProviderAndLabel(getProvider(), countAttribute.attribute.getLabel());
-							double count = Double.valueOf(record.get(countAttribute.columnIndex));
-							TimedValue timedValue = new TimedValue(subject, attribute, timestamp, count);
-							timedValueBuffer.add(timedValue);
+			AtomicLong recordCount = new AtomicLong();
+			File file = downloadUtils.fetchFile(url, getProvider().getLabel(), ".csv");
+			new ParallelCSVReader().read(file, CSVFormat.RFC4180,
+					(CSVRecord record, List<CountRecord> countRecords) -> {
+						long id;
+						try {
+							id = Long.valueOf(record.get(ID_INDEX));
+						} catch (NumberFormatException e) {
+							// We do not have a proper id ... could be header
+							return;
 						}
-						break;
-					case trafficVolume:
-						for (VolumeAttribute volumeAttribute : VolumeAttribute.values()){
-							Attribute attribute = AttributeUtils.getByProviderAndLabel(getProvider(), volumeAttribute.attribute.getLabel());
-							double count = Double.valueOf(record.get(volumeAttribute.columnIndex));
-							TimedValue timedValue = new TimedValue(subject, attribute, timestamp, count);
-							timedValueBuffer.add(timedValue);
+						long easting = Long.valueOf(record.get(EASTING_INDEX));
+						long northing = Long.valueOf(record.get(NORTHING_INDEX));
+						Coordinate coordinate = CoordinateUtils.osgbToWgs84(easting, northing);
+						countRecords.add(new CountRecord(record, id, geometryFactory.createPoint(coordinate),
+								TimedValueUtils.parseTimestampString(record.get(YEAR_INDEX))));
+					},
+					chunk -> {
+						for (CountRecord countRecord : chunk.getValues()) {
+							long recordNumber = chunk.getFirstRecordNumber() + countRecord.record.getRecordNumber() - 1;
+							if (recordNumber <= skippedRecords)
+								continue;
+							importCountRecord(countRecord, datasourceId, subjectType, trafficCounters, timedValueBuffer);
+
+							if (timedValueBuffer.size() > getTimedValueBufferSize()) {
+								saveAndClearTimedValueBuffer(timedValueBuffer);
+								checkpoint(geogrpahyLabel + ":" + recordNumber);
+							}
 						}
-						break;
-				}
-
-				if (timedValueBuffer.size() > getTimedValueBufferSize())
-					saveAndClearTimedValueBuffer(timedValueBuffer);
+						recordCount.set(chunk.getFirstRecordNumber() + chunk.getRecordCount() - 1);
+					});
+			saveAndClearTimedValueBuffer(timedValueBuffer);
+			checkpoint(geogrpahyLabel + ":" + recordCount.get());
+		}
+	}
 
+	private void importCountRecord(CountRecord countRecord, DatasourceId datasourceId, SubjectType subjectType,
+			Set<Long> trafficCounters, List<TimedValue> timedValueBuffer) {
+		CSVRecord record = countRecord.record;
+		long id = countRecord.id;
+		String label = "DfT-TrafficCounter-" + id;
+
+		// Save subject object
+		if (!trafficCounters.contains(id)){
+			// We have not seen this id before
+			String road = record.get(ROADNAME_INDEX);
+			String startJunction = record.get(STARTJUNCTION_INDEX);
+			String endJunction = record.get(ENDJUNCTION_INDEX);
+
+			String name = road + " (" + startJunction + " to " + endJunction + ")";
+
+			// Save subject
+			Subject subject = new Subject(subjectType, label, name, countRecord.point);
+			List<Subject> subjectList = new ArrayList<Subject>();
+			subjectList.add(subject);
+			saveAndClearSubjectBuffer(subjectList);
+			subject = getImportContext().getSubject(subjectType, label);
+
+			// Add fixed values
+			List<FixedValue> fixedValueBuffer = new ArrayList<>();
+			for (FixedAttribute fixedAttribute : FixedAttribute.values()){
+				Attribute attribute = getImportContext().getAttribute(getProvider(), fixedAttribute.attribute.getLabel());
+				String stringValue = record.get(fixedAttribute.columnIndex);
+				FixedValue fixedValue = new FixedValue(subject, attribute, stringValue);
+				fixedValueBuffer.add(fixedValue);
 			}
-			saveAndClearTimedValueBuffer(timedValueBuffer);
-			csvParser.close();
+			saveAndClearFixedValueBuffer(fixedValueBuffer);
+
+			// Add subject to list of added subjects
+			trafficCounters.add(id);
+		}
+
+		Subject subject = getImportContext().getSubject(subjectType, label);
+		LocalDateTime timestamp = countRecord.timestamp;
+
+		// Import timed values
+		switch (datasourceId){
+			case trafficCounts:
+				for (CountAttribute countAttribute : CountAttribute.values()){
+					Attribute attribute = getImportContext().getAttribute(getProvider(), countAttribute.attribute.getLabel());
+					double count = Double.valueOf(record.get(countAttribute.columnIndex));
+					TimedValue timedValue = new TimedValue(subject, attribute, timestamp, count);
+					timedValueBuffer.add(timedValue);
+				}
+				break;
+			case trafficVolume:
+				for (VolumeAttribute volumeAttribute : VolumeAttribute.values()){
+					Attribute attribute = getImportContext().getAttribute(getProvider(), volumeAttribute.attribute.getLabel());
+					double count = Double.valueOf(record.get(volumeAttribute.columnIndex));
+					TimedValue timedValue = new TimedValue(subject, attribute, timestamp, count);
+					timedValueBuffer.add(timedValue);
+				}
+				break;
 		}
 	}
 
@@ -417,4 +443,19 @@ public class TrafficCountImporter extends AbstractImporter {
 
 		return attributes;
 	}
+
+	// A record of counts, with the location of its counter and its timestamp parsed on the reader workers
+	private static class CountRecord {
+		private final CSVRecord record;
+		private final long id;
+		private final Point point;
+		private final LocalDateTime timestamp;
+
+		private CountRecord(CSVRecord record, long id, Point point, LocalDateTime timestamp) {
+			this.record = record;
+			this.id = id;
+			this.point = point;
+			this.timestamp = timestamp;
+		}
+	}
 }
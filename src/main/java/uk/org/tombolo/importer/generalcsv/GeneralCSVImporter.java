@@ -5,19 +5,17 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.PrecisionModel;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.importer.Config;
 import uk.org.tombolo.importer.GeneralImporter;
 import uk.org.tombolo.importer.utils.CoordinateUtils;
+import uk.org.tombolo.importer.utils.ParallelCSVReader;
 
 import java.io.File;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
@@ -30,7 +28,10 @@ import java.util.stream.IntStream;
 public class GeneralCSVImporter extends GeneralImporter {
     static Logger log = LoggerFactory.getLogger(GeneralCSVImporter.class);
 
-    private List csvRecords;
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT;
+
+    private File csvFile;
+    private List<String> header;
     private DatasourceSpec datasourceSpec;
 
     public GeneralCSVImporter(Config config) {
@@ -54,6 +55,11 @@ public class GeneralCSVImporter extends GeneralImporter {
         return datasourceSpec;
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return "no".equalsIgnoreCase(config.getExistingSubject());
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String dataSourceID) {
         if ("yes".equalsIgnoreCase(config.getExistingSubject())) {
@@ -66,10 +72,8 @@ public class GeneralCSVImporter extends GeneralImporter {
     public List<Attribute> getFixedValueAttributes(String datasourceID) {
         List<Attribute> attributes = new ArrayList<>();
 
-        CSVRecord attributeHeader = (CSVRecord) csvRecords.get(0);
-
         List<Integer> attributeIndexes;
-        attributeIndexes = IntStream.rangeClosed(1, attributeHeader.size() - 1).boxed().collect(Collectors.toList());
+        attributeIndexes = IntStream.rangeClosed(1, header.size() - 1).boxed().collect(Collectors.toList());
 
         if (!config.getGeographyProjection().equals("")) {
             attributeIndexes.remove(config.getGeographyXIndex());
@@ -77,7 +81,7 @@ public class GeneralCSVImporter extends GeneralImporter {
         }
 
         for (int index : attributeIndexes) {
-            String attrString = attributeHeader.get(index);
+            String attrString = header.get(index);
             attributes.add(new Attribute(
                     getProvider(),
                     attrString,
@@ -89,7 +93,6 @@ public class GeneralCSVImporter extends GeneralImporter {
     }
 
     protected void setupUtils() throws Exception {
-        CSVFormat format = CSVFormat.DEFAULT;
         String fileLocation = config.getFileLocation();
         URL url;
         try {
@@ -102,55 +105,65 @@ public class GeneralCSVImporter extends GeneralImporter {
             url = file.toURI().toURL();
         }
 
-        InputStreamReader isr = new InputStreamReader(
-                downloadUtils.fetchInputStream(url, getProvider().getLabel(), ".csv"));
-        CSVParser csvFileParser = new CSVParser(isr, format);
-        csvRecords = csvFileParser.getRecords();
+        // The records are read in chunks when importing, so only the header is read here
+        csvFile = downloadUtils.fetchFile(url, getProvider().getLabel(), ".csv");
+        header = ParallelCSVReader.readHeader(csvFile, FORMAT);
     }
 
     @Override
     protected void importDatasource(Datasource datasource, List<String> geographyScope, List<String> temporalScope, List<String> datasourceLocation) throws Exception {
-        int subjectIDIdx = config.getSubjectIDIndex();
+        boolean newSubject = "no".equalsIgnoreCase(config.getExistingSubject());
+        SubjectType subjectType = newSubject ? datasource.getUniqueSubjectType() :
+                SubjectTypeUtils.getSubjectTypeByProviderAndLabel(
+                        config.getSubjectType().getProvider().getLabel(),
+                        config.getSubjectType().getLabel()
+                );
+        List<Attribute> attributes = datasource.getFixedValueAttributes();
         List<FixedValue> fixedValues = new ArrayList<>();
         List<Subject> subjects = new ArrayList<>();
-        Iterator<CSVRecord> csvRecordIterator = csvRecords.iterator();
-        CSVRecord header = csvRecordIterator.next();
-        Subject subject;
-
-        boolean newSubject = "no".equalsIgnoreCase(config.getExistingSubject());
 
-        while (csvRecordIterator.hasNext()) {
-            CSVRecord record = csvRecordIterator.next();
-            if (newSubject) {
-                subject = new Subject(
-                        datasource.getUniqueSubjectType(),
-                        record.get(config.getSubjectIDIndex()),
-                        "",
-                        getShape(record)
-                );
-                subjects.add(subject);
+        // Records are turned into subjects and fixed values on the reader workers, and saved in file order here
+        new ParallelCSVReader().read(csvFile, FORMAT.withFirstRecordAsHeader(),
+                (CSVRecord record, List<Row> rows) -> rows.add(getRow(record, subjectType, attributes, newSubject)),
+                chunk -> {
+                    for (Row row : chunk.getValues()) {
+                        if (newSubject) subjects.add(row.subject);
+                        fixedValues.addAll(row.fixedValues);
+                    }
+                    // The subjects of a chunk are saved before its fixed values refer to them
+                    if (newSubject && subjects.size() >= getSubjectBufferSize()) saveAndClearSubjectBuffer(subjects);
+                    if (fixedValues.size() >= getFixedValueBufferSize()) {
+                        if (newSubject) saveAndClearSubjectBuffer(subjects);
+                        saveAndClearFixedValueBuffer(fixedValues);
+                    }
+                });
 
-            } else {
-                subject = SubjectUtils.getSubjectByTypeAndLabel(
-                        SubjectTypeUtils.getSubjectTypeByProviderAndLabel(
-                                config.getSubjectType().getProvider().getLabel(),
-                                config.getSubjectType().getLabel()
-                        ),
-                        record.get(subjectIDIdx)
-                );
-            }
+        if (newSubject) saveAndClearSubjectBuffer(subjects);
+        saveAndClearFixedValueBuffer(fixedValues);
+    }
 
-            int attributeIndex = 1;
-            for (Attribute attribute : datasource.getFixedValueAttributes()) {
-                fixedValues.add(new FixedValue(
-                        subject,
-                        attribute,
-                        record.get(attributeIndex++)));
-            }
+    private Row getRow(CSVRecord record, SubjectType subjectType, List<Attribute> attributes, boolean newSubject) {
+        Subject subject;
+        if (newSubject) {
+            subject = new Subject(
+                    subjectType,
+                    record.get(config.getSubjectIDIndex()),
+                    "",
+                    getShape(record)
+            );
+        } else {
+            subject = getImportContext().getSubject(subjectType, record.get(config.getSubjectIDIndex()));
         }
 
-        if (newSubject) saveAndClearSubjectBuffer(subjects);
-        saveAndClearFixedValueBuffer(fixedValues);
+        List<FixedValue> fixedValues = new ArrayList<>();
+        int attributeIndex = 1;
+        for (Attribute attribute : attributes) {
+            fixedValues.add(new FixedValue(
+                    subject,
+                    attribute,
+                    record.get(attributeIndex++)));
+        }
+        return new Row(subject, fixedValues);
     }
 
     private Geometry getShape(CSVRecord record) {
@@ -179,4 +192,14 @@ public class GeneralCSVImporter extends GeneralImporter {
 
         return null;
     }
+
+    private static class Row {
+        private final Subject subject;
+        private final List<FixedValue> fixedValues;
+
+        private Row(Subject subject, List<FixedValue> fixedValues) {
+            this.subject = subject;
+            this.fixedValues = fixedValues;
+        }
+    }
 }
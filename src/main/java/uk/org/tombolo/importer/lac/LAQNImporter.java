@@ -37,9 +37,7 @@ public class LAQNImporter extends AbstractImporter {
             "@SiteLink", "@DataOwner", "@DataManager"));
     private String dataSourceURL = "http://api.erg.kcl.ac.uk/AirQuality/Annual/MonitoringObjective/";
     private static DatasourceSpec datasourceSpec;
-    private JSONReader reader;
     private int attributeSize;
-    private ArrayList<LinkedHashMap<String, List<String>>> flatJson;
 
     public LAQNImporter() throws Exception {
         datasourceSpec = new DatasourceSpec(getClass(), LAQN_SUBJECT_TYPE_LABEL, LAQN_SUBJECT_TYPE_LABEL,
@@ -68,68 +66,77 @@ public class LAQNImporter extends AbstractImporter {
     @Override
     protected void importDatasource(Datasource datasource, List<String> geographyScope, List<String> temporalScope, List<String> datasourceLocation) throws Exception {
 
-        flatJson = readData(importerURL(
+        URL url = new URL(importerURL(
                 null != geographyScope && !geographyScope.isEmpty() ? geographyScope.get(0) : "",
                 null != temporalScope && !temporalScope.isEmpty() ? temporalScope.get(0) : ""
         ));
 
-        ArrayList<Attribute> attr = getAttributes();
-        setAttributeSize(attr.size());
-        AttributeUtils.save(attr);
-
-
         SubjectType subjectType = SubjectTypeUtils.getOrCreate(
                 getProvider(),
                 datasource.getUniqueSubjectType().getLabel(),
                 datasource.getUniqueSubjectType().getName()
         );
 
-        saveAndClearSubjectBuffer(getSubjects(subjectType));
+        // The document is streamed twice, first for the attributes and subjects and then for the values that refer
+        // to them, so that a single site is held in memory at a time
+        LinkedHashMap<String, Attribute> objectiveAttributes = new LinkedHashMap<>();
+        Set<String> uniqueKeys = new LinkedHashSet<>();
+        List<Subject> subjectBuffer = new ArrayList<>();
+        readData(url).readSections(section -> {
+            addObjectiveAttributes(section, objectiveAttributes);
+            uniqueKeys.addAll(section.keySet());
+            subjectBuffer.add(getSubject(subjectType, section));
+            if (subjectBuffer.size() >= getSubjectBufferSize()) saveAndClearSubjectBuffer(subjectBuffer);
+        });
 
-        List<Subject> subjects =
-                SubjectUtils.getSubjectByTypeAndLabelPattern(
-                        SubjectTypeUtils.getSubjectTypeByProviderAndLabel(
-                                "erg.kcl.ac.uk","airQualityControl"),"%%");
+        ArrayList<Attribute> attr = new ArrayList<>(objectiveAttributes.values());
+        uniqueKeys.stream().map(key -> new Attribute(getProvider(), key.substring(1), "Unique key")).forEach(attr::add);
+        setAttributeSize(attr.size());
+        AttributeUtils.save(attr);
+        saveAndClearSubjectBuffer(subjectBuffer);
 
-        ArrayList<Attribute> attributes = getAttributes().stream()
+        Map<String, Subject> subjects = SubjectUtils.getSubjectByTypeAndLabelPattern(subjectType, "%%").stream()
+                .collect(Collectors.toMap(Subject::getLabel, subject -> subject, (first, second) -> first));
+
+        ArrayList<Attribute> attributes = attr.stream()
                                         .map(attribute -> AttributeUtils.getByProviderAndLabel(getProvider().getLabel(),
                                         attribute.getLabel())).collect(Collectors.toCollection(ArrayList::new));
 
-        saveAndClearFixedValueBuffer(getFixedValue(subjects, attributes));
-        saveAndClearTimedValueBuffer(getTimedValue(subjects, attributes));
+        List<FixedValue> fixedValueBuffer = new ArrayList<>();
+        List<TimedValue> timedValueBuffer = new ArrayList<>();
+        readData(url).readSections(section -> {
+            Subject subject = subjects.get(section.get("@SiteCode").get(0));
+            addFixedValues(subject, section, attributes, fixedValueBuffer);
+            addTimedValues(subject, section, attributes, timedValueBuffer);
+            if (fixedValueBuffer.size() >= getFixedValueBufferSize()) saveAndClearFixedValueBuffer(fixedValueBuffer);
+            if (timedValueBuffer.size() >= getTimedValueBufferSize()) saveAndClearTimedValueBuffer(timedValueBuffer);
+        });
+        saveAndClearFixedValueBuffer(fixedValueBuffer);
+        saveAndClearTimedValueBuffer(timedValueBuffer);
     }
 
 
-    private ArrayList<Attribute> getAttributes() throws IOException {
-
-        ArrayList<Attribute> attributes = new ArrayList<>();
+    private void addObjectiveAttributes(LinkedHashMap<String, List<String>> section,
+                                        LinkedHashMap<String, Attribute> attributes) {
 
-        ArrayList<String> keepTrack = new ArrayList<>();
-        flatJson.forEach(data -> IntStream.range(0, data.get("@SpeciesCode").size()).forEachOrdered(i -> {
-            String attrlabel = data.get("@SpeciesCode").get(i) + " " +
-                    data.get("@ObjectiveName").get(i).substring(0, data.get("@ObjectiveName").get(i).length() < 25 ?
-                            data.get("@ObjectiveName").get(i).length() : 24);
-            if (!keepTrack.contains(attrlabel)) {
-
-                attributes.add(new Attribute(getProvider(), attrlabel,
-                        data.get("@ObjectiveName").get(i)));
-                keepTrack.add(attrlabel);
-            }
-        }));
+        List<String> speciesCodes = section.get("@SpeciesCode");
+        List<String> objectiveNames = section.get("@ObjectiveName");
+        IntStream.range(0, speciesCodes.size()).forEachOrdered(i -> {
+            String attrlabel = speciesCodes.get(i) + " " +
+                    objectiveNames.get(i).substring(0, objectiveNames.get(i).length() < 25 ?
+                            objectiveNames.get(i).length() : 24);
+            attributes.putIfAbsent(attrlabel, new Attribute(getProvider(), attrlabel, objectiveNames.get(i)));
+        });
+    }
 
-        reader.allUniquekeys().stream().map(attr -> new Attribute(
-                    getProvider(),
-                    attr.substring(1),
-                    "Unique key"
-        )).forEach(attributes::add);
+    private JSONReader readData(URL url) throws IOException {
 
-        return attributes;
+        return new JSONReader(downloadUtils.fetchInputStream(url, "uk.lac", ".json"));
     }
 
-    private ArrayList<LinkedHashMap<String, List<String>>> readData(String url) throws IOException {
-
-        reader = new JSONReader(downloadUtils.fetchInputStream(new URL(url), "uk.lac", ".json"));
-        return reader.getData();
+    @Override
+    public boolean createsSubjects() {
+        return true;
     }
 
     @Override
@@ -137,58 +144,46 @@ public class LAQNImporter extends AbstractImporter {
         return Collections.singletonList(new SubjectType(getProvider(), LAQN_SUBJECT_TYPE_LABEL, LAQN_SUBJECT_TYPE_DESC));
     }
 
-    private ArrayList<Subject> getSubjects(SubjectType subjectType) {
-        return flatJson.stream().map(sections -> new Subject(
+    private Subject getSubject(SubjectType subjectType, LinkedHashMap<String, List<String>> section) {
+        return new Subject(
                 subjectType,
-                sections.get("@SiteCode").get(0),
-                sections.get("@SiteName").get(0),
-                shape(sections.get("@Latitude").get(0), sections.get("@Longitude").get(0))
-        )).collect(Collectors.toCollection(ArrayList::new));
-
+                section.get("@SiteCode").get(0),
+                section.get("@SiteName").get(0),
+                shape(section.get("@Latitude").get(0), section.get("@Longitude").get(0))
+        );
     }
 
-    private ArrayList<FixedValue> getFixedValue(List<Subject> subjects, ArrayList<Attribute> attributes) throws IOException {
-        ArrayList<FixedValue> fixedValues = new ArrayList<>();
+    private void addFixedValues(Subject subject, LinkedHashMap<String, List<String>> section,
+                                ArrayList<Attribute> attributes, List<FixedValue> fixedValues) {
 
-        IntStream.range(0, flatJson.size()).forEachOrdered(i -> {
-            Subject subject = subjects.get(i);
-            for (Attribute attribute : attributes) {
+        for (Attribute attribute : attributes) {
 
-                if (UNIQUE_TAGS.contains("@"+attribute.getLabel())) {
-                    fixedValues.add(new FixedValue(subject, attribute, flatJson.get(i).get("@"+attribute.getLabel()).get(0)));
-                }
+            if (UNIQUE_TAGS.contains("@"+attribute.getLabel())) {
+                fixedValues.add(new FixedValue(subject, attribute, section.get("@"+attribute.getLabel()).get(0)));
             }
-        });
-
-        return fixedValues;
+        }
     }
 
-    private ArrayList<TimedValue> getTimedValue(List<Subject> subjects, ArrayList<Attribute> attributes) throws InterruptedException, ParsingException {
-        ArrayList<TimedValue> timedValues = new ArrayList<>();
+    private void addTimedValues(Subject subject, LinkedHashMap<String, List<String>> section,
+                                ArrayList<Attribute> attributes, List<TimedValue> timedValues) {
 
-        IntStream.range(0, flatJson.size()).forEachOrdered(i -> {
-            Subject subject = subjects.get(i);
-            IntStream.range(0, flatJson.get(i).get("@SpeciesCode").size()).forEachOrdered(j -> {
+        IntStream.range(0, section.get("@SpeciesCode").size()).forEachOrdered(j -> {
 
-                for (Attribute attribute : attributes) {
-                    if (attribute.getLabel().startsWith(flatJson.get(i).get("@SpeciesCode").get(j)) &&
-                            attribute.getDescription().equalsIgnoreCase(flatJson.get(i).get("@ObjectiveName").get(j))) {
-                        try {
-                            timedValues.add(new TimedValue(subject, attribute,
-                                    time(flatJson.get(i).get("@Year").get(j)),
-                                    Double.parseDouble(flatJson.get(i).get("@Value").get(j))));
-                        } catch (ParsingException pe) {
-                            log.warn(pe.getMessage());
-                        } finally {
-                            break;
-                        }
+            for (Attribute attribute : attributes) {
+                if (attribute.getLabel().startsWith(section.get("@SpeciesCode").get(j)) &&
+                        attribute.getDescription().equalsIgnoreCase(section.get("@ObjectiveName").get(j))) {
+                    try {
+                        timedValues.add(new TimedValue(subject, attribute,
+                                time(section.get("@Year").get(j)),
+                                Double.parseDouble(section.get("@Value").get(j))));
+                    } catch (ParsingException pe) {
+                        log.warn(pe.getMessage());
+                    } finally {
+                        break;
                     }
                 }
-            });
-
+            }
         });
-
-        return timedValues;
     }
 
     private LocalDateTime time(String time) throws ParsingException {
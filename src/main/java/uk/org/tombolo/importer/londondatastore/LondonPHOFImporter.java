@@ -1,9 +1,6 @@
 package uk.org.tombolo.importer.londondatastore;
 
 import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
@@ -12,6 +9,7 @@ import uk.org.tombolo.importer.DownloadUtils;
 import uk.org.tombolo.importer.ons.AbstractONSImporter;
 import uk.org.tombolo.importer.ons.OaImporter;
 import uk.org.tombolo.importer.utils.ExcelUtils;
+import uk.org.tombolo.importer.utils.StreamingXlsxReader;
 import uk.org.tombolo.importer.utils.extraction.*;
 
 import java.net.URL;
@@ -46,20 +44,19 @@ public class LondonPHOFImporter extends AbstractLondonDatastoreImporter {
 
     }
 
-    ExcelUtils excelUtils = new ExcelUtils();
+    // The indicators are in the fourth sheet, below a header row
+    private static final int SHEET_INDEX = 3;
 
-    Workbook workbook = null;
+    ExcelUtils excelUtils = new ExcelUtils();
 
     public LondonPHOFImporter(){
         datasourceIds = stringsFromEnumeration(DatasourceId.class);
     }
 
-    public Workbook getWorkbook() {
-        return workbook;
-    }
-
-    public void setWorkbook(Workbook workbook) {
-        this.workbook = workbook;
+    // The workbook is streamed, so it is read again rather than kept between the attributes and the values
+    private StreamingXlsxReader getReader() throws Exception {
+        return excelUtils.getStreamingReader(
+                downloadUtils.fetchFile(new URL(DATAFILE), getProvider().getLabel(), DATAFILE_SUFFIX));
     }
 
     @Override
@@ -81,40 +78,37 @@ public class LondonPHOFImporter extends AbstractLondonDatastoreImporter {
         RowCellExtractor timestampExtractor = new RowCellExtractor(1, CellType.STRING);
         RowCellExtractor valueExtractor = new RowCellExtractor(6, CellType.NUMERIC);
 
-        if (null == getWorkbook()) {
-            setWorkbook(excelUtils.getWorkbook(
-                    downloadUtils.fetchInputStream(new URL(DATAFILE), getProvider().getLabel(), DATAFILE_SUFFIX)));
-        }
-
         List<TimedValue> timedValueBuffer = new ArrayList<>();
-        Sheet sheet = workbook.getSheetAt(3);
-        Iterator<Row> rowIterator = sheet.iterator();
-        Row header = rowIterator.next();
-        while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            attributeNameExtractor.setRow(row);
-            subjectExtractor.setRow(row);
-            timestampExtractor.setRow(row);
-            valueExtractor.setRow(row);
-
-            String attributeLabel = attributeNameExtractor.extract();
-            TimedValueExtractor timedValueExtractor = new TimedValueExtractor(
-                    getProvider(),
-                    subjectType,
-                    subjectExtractor,
-                    new ConstantExtractor(attributeLabel),
-                    timestampExtractor,
-                    valueExtractor
-            );
-            try {
-                timedValueBuffer.add(timedValueExtractor.extract());
-            }catch (UnknownSubjectLabelException e){
-                // No worries if the subject does not exist
-            }catch (ExtractorException e){
-                log.warn(e.getMessage());
-            }
+        try (StreamingXlsxReader reader = getReader()) {
+            reader.readSheet(SHEET_INDEX, row -> {
+                if (row.getRowNum() == 0)
+                    return true;
+                attributeNameExtractor.setRow(row);
+                subjectExtractor.setRow(row);
+                timestampExtractor.setRow(row);
+                valueExtractor.setRow(row);
+
+                String attributeLabel = attributeNameExtractor.extract();
+                TimedValueExtractor timedValueExtractor = new TimedValueExtractor(
+                        getProvider(),
+                        subjectType,
+                        subjectExtractor,
+                        new ConstantExtractor(attributeLabel),
+                        timestampExtractor,
+                        valueExtractor
+                );
+                try {
+                    timedValueBuffer.add(timedValueExtractor.extract());
+                    if (timedValueBuffer.size() >= getTimedValueBufferSize())
+                        saveAndClearTimedValueBuffer(timedValueBuffer);
+                }catch (UnknownSubjectLabelException e){
+                    // No worries if the subject does not exist
+                }catch (ExtractorException e){
+                    log.warn(e.getMessage());
+                }
+                return true;
+            });
         }
-        workbook.close();
         saveAndClearTimedValueBuffer(timedValueBuffer);
     }
 
@@ -122,28 +116,22 @@ public class LondonPHOFImporter extends AbstractLondonDatastoreImporter {
     public List<Attribute> getTimedValueAttributes(String datasourceID) throws Exception {
         RowCellExtractor attributeNameExtractor = new RowCellExtractor(0, CellType.STRING);
 
-        if (null == getWorkbook()) {
-            setWorkbook(excelUtils.getWorkbook(
-                    downloadUtils.fetchInputStream(new URL(DATAFILE), getProvider().getLabel(), DATAFILE_SUFFIX)));
-        }
-
         Map<String, Attribute> attributes = new HashMap<>();
-        Sheet sheet = workbook.getSheetAt(3);
-        Iterator<Row> rowIterator = sheet.iterator();
-        Row header = rowIterator.next();
-        while (rowIterator.hasNext()){
-            Row row = rowIterator.next();
-
-            attributeNameExtractor.setRow(row);
-            String attributeLabel = attributeNameExtractor.extract();
-
-            if (!attributes.containsKey(attributeLabel))
-                attributes.put(
-                        attributeLabel,
-                        new Attribute(getProvider(), attributeLabel, attributeLabel)
-                );
+        try (StreamingXlsxReader reader = getReader()) {
+            reader.readSheet(SHEET_INDEX, row -> {
+                if (row.getRowNum() == 0)
+                    return true;
+                attributeNameExtractor.setRow(row);
+                String attributeLabel = attributeNameExtractor.extract();
+
+                if (!attributes.containsKey(attributeLabel))
+                    attributes.put(
+                            attributeLabel,
+                            new Attribute(getProvider(), attributeLabel, attributeLabel)
+                    );
+                return true;
+            });
         }
-        workbook.close();
         return new ArrayList<>(attributes.values());
     }
 }
@@ -45,6 +45,11 @@ public final class HealthOrganisationImporter extends AbstractImporter {
         );
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String datasourceId) {
         DatasourceSpec datasourceSpec = DatasourceId.valueOf(datasourceId).datasourceSpec;
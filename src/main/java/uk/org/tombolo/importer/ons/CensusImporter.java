@@ -2,15 +2,16 @@ package uk.org.tombolo.importer.ons;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.EnumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.AttributeUtils;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
 import uk.org.tombolo.importer.utils.JSONReader;
+import uk.org.tombolo.importer.utils.ParallelCSVReader;
 import uk.org.tombolo.recipe.SubjectRecipe;
 
 import java.io.*;
@@ -47,7 +48,7 @@ public class CensusImporter extends AbstractONSImporter {
         try {
             return getSeedData().stream().map(CensusDescription::getDataSetTable)
                     .collect(Collectors.toCollection(ArrayList::new));
-        } catch (IOException e) {
+        } catch (Exception e) {
             log.error("An error has occurred while downloading DatasourceID's" + e.getMessage());
         }
 
@@ -124,37 +125,39 @@ public class CensusImporter extends AbstractONSImporter {
             List<TimedValue> timedValueBuffer = new ArrayList<>();
             String dataUrl = getDataUrl(datasource.getDatasourceSpec().getId(), subjectTypeFromRecipe.getSubjectType());
 
-            InputStream dataStream = downloadUtils.fetchInputStream(
-                    new URL(dataUrl), getProvider().getLabel(), ".csv");
-
-            CSVParser csvParser = new CSVParser(new InputStreamReader(dataStream),
-                    CSVFormat.RFC4180.withFirstRecordAsHeader());
-
-            csvParser.forEach(record -> {
-                Subject subject = SubjectUtils.getSubjectByTypeAndLabel(subjectType, record.get("geography code"));
-                if (subject != null) {
-                    attributes.forEach(attribute -> {
-                        String value = record.get(attribute.getDescription());
-                        TimedValue timedValue = new TimedValue(subject, attribute, TIMESTAMP, Double.valueOf(value));
-                        timedValueBuffer.add(timedValue);
+            // Bulk files of small areas run to gigabytes, so they are mapped and read in chunks on several threads
+            File dataFile = downloadUtils.fetchFile(new URL(dataUrl), getProvider().getLabel(), ".csv");
+            new ParallelCSVReader().read(dataFile, CSVFormat.RFC4180.withFirstRecordAsHeader(),
+                    (CSVRecord record, List<TimedValue> timedValues) -> {
+                        Subject subject = getImportContext().getSubject(subjectType, record.get("geography code"));
+                        if (subject != null) {
+                            attributes.forEach(attribute -> {
+                                String value = record.get(attribute.getDescription());
+                                TimedValue timedValue = new TimedValue(subject, attribute, TIMESTAMP, Double.valueOf(value));
+                                timedValues.add(timedValue);
+                            });
+                        }
+                    },
+                    chunk -> {
+                        timedValueBuffer.addAll(chunk.getValues());
+                        if (timedValueBuffer.size() >= getTimedValueBufferSize())
+                            saveAndClearTimedValueBuffer(timedValueBuffer);
                     });
-                }
-            });
 
             saveAndClearTimedValueBuffer(timedValueBuffer);
         }
     }
 
-    private ArrayList<CensusDescription> getSeedData() throws IOException {
+    private ArrayList<CensusDescription> getSeedData() throws Exception {
 
-        ArrayList<LinkedHashMap<String, List<String>>> jsonData =
-                new JSONReader(downloadUtils.fetchInputStream(new URL(SEED_URL), "uk.gov.ons", ".json"),
-                        Arrays.asList("id", "value")).getData();
+        JSONReader reader = new JSONReader(downloadUtils.fetchInputStream(new URL(SEED_URL), "uk.gov.ons", ".json"),
+                Arrays.asList("id", "value"));
 
         String regEx = "(qs)(\\d+)(ew)";
         Pattern pattern = Pattern.compile(regEx);
 
-        jsonData.forEach(value -> {
+        // The seed lists every dataset of the census, so its sections are handled as they are read
+        reader.readSections(value -> {
             String prev = "";
             for (List<String> v : value.values()) {
                 for (String s : v) {
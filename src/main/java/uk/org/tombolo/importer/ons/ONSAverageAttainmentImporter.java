@@ -1,23 +1,20 @@
 package uk.org.tombolo.importer.ons;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
+import uk.org.tombolo.importer.utils.ExcelUtils;
+import uk.org.tombolo.importer.utils.SheetRow;
+import uk.org.tombolo.importer.utils.StreamingXlsxReader;
 
 import java.io.File;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -78,59 +75,59 @@ public class ONSAverageAttainmentImporter extends AbstractONSImporter {
             }
             url = file.toURI().toURL();
         }
-        InputStream isr = downloadUtils.fetchInputStream(url, getProvider().getLabel(), ".xlsx");
-
-        XSSFWorkbook workbook = new XSSFWorkbook(isr);
-        Sheet datatypeSheet = workbook.getSheetAt(DatasourceId.ONSAverageAttainment.sheet);
-
-        Iterator<Row> rowIterator = datatypeSheet.rowIterator();
-
-        // Skipping unrelevant rows
-        rowIterator.next();
-        rowIterator.next();
-        rowIterator.next();
-        rowIterator.next();
-        rowIterator.next();
-        rowIterator.next();
-
-        while (rowIterator.hasNext()){
-            Row row = rowIterator.next();
-
-            Subject subject = SubjectUtils.getSubjectByTypeAndLabel(localauthority, String.valueOf(row.getCell(0)).trim());
+        File localFile = downloadUtils.fetchFile(url, getProvider().getLabel(), ".xlsx");
+
+        try (StreamingXlsxReader reader = new ExcelUtils().getStreamingReader(localFile)) {
+            // This is the row number that contains our time values (years) in the dataset
+            SheetRow[] rowTime = new SheetRow[1];
+            int[] rowCount = {0};
+            reader.readSheet(DatasourceId.ONSAverageAttainment.sheet, row -> {
+                if (row.getRowNum() == 5)
+                    rowTime[0] = row;
+                // Skipping unrelevant rows
+                if (rowCount[0]++ >= 6)
+                    importRow(datasource, localauthority, rowTime[0], row, timedValues);
+                return true;
+            });
+        }
+        saveAndClearTimedValueBuffer(timedValues);
+    }
 
-            // Dataset specific: The dataset contains mixed geometries. Check that the geometries in the excel file
-            // match the "Area code" column. If they are not null proceed
+    private void importRow(Datasource datasource, SubjectType localauthority, SheetRow rowTime, SheetRow row,
+                           List<TimedValue> timedValues) throws Exception {
+        Subject subject = getImportContext().getSubject(localauthority, String.valueOf(row.getCellText(0)).trim());
 
-            if (subject != null){
-                // Looping through the time values
-                for (int timeValuesIndex = 3; timeValuesIndex <= 5; timeValuesIndex++ ) {
+        // Dataset specific: The dataset contains mixed geometries. Check that the geometries in the excel file
+        // match the "Area code" column. If they are not null proceed
 
-                    // This is the row number that contains our time values (years) in the dataset
-                    Row rowTime = datatypeSheet.getRow(5);
-                    String year = rowTime.getCell(timeValuesIndex).toString();
+        if (subject != null){
+            // Looping through the time values
+            for (int timeValuesIndex = 3; timeValuesIndex <= 5; timeValuesIndex++ ) {
 
-                    log.info("The date is formated as first year appearing. Eg: 2014/15 is formatted as 2014");
-                    year = year.substring(0, 4);
-                    LocalDateTime timestamp = TimedValueUtils.parseTimestampString(year);
+                String year = rowTime.getCellText(timeValuesIndex);
 
-                    try {
+                log.info("The date is formated as first year appearing. Eg: 2014/15 is formatted as 2014");
+                year = year.substring(0, 4);
+                LocalDateTime timestamp = TimedValueUtils.parseTimestampString(year);
 
-                        Double record = row.getCell(timeValuesIndex).getNumericCellValue();
+                try {
 
-                        // Here is where we are assigning the values of our .csv file to the attribute fields we
-                        // created.
-                        Attribute attribute = datasource.getTimedValueAttributes().get(0);
-                        timedValues.add(new TimedValue(subject, attribute, timestamp, record));
+                    Double record = row.getNumericCellValue(timeValuesIndex);
 
-                    } catch (IllegalStateException e) {
-                        log.warn("Missing value fo subject:" + subject.getLabel().toString() + ". Defaulting to zero. Consider using BackoffField or ConstantField");
-                        continue;
-                    }
+                    // Here is where we are assigning the values of our .csv file to the attribute fields we
+                    // created.
+                    Attribute attribute = datasource.getTimedValueAttributes().get(0);
+                    timedValues.add(new TimedValue(subject, attribute, timestamp, record));
 
+                } catch (IllegalStateException e) {
+                    log.warn("Missing value fo subject:" + subject.getLabel().toString() + ". Defaulting to zero. Consider using BackoffField or ConstantField");
+                    continue;
                 }
+
             }
         }
-        saveAndClearTimedValueBuffer(timedValues);
+        if (timedValues.size() >= getTimedValueBufferSize())
+            saveAndClearTimedValueBuffer(timedValues);
     }
 
     @Override
@@ -52,6 +52,11 @@ public final class OaImporter extends AbstractImporter {
         return AbstractONSImporter.PROVIDER;
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String datasourceId) {
         return Collections.singletonList(getSubjectType(OaType.valueOf(datasourceId)));
@@ -0,0 +1,50 @@
+package uk.org.tombolo.importer.osm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * IdBitmap.java
+ * A set of OSM entity ids, one bit per id.
+ *
+ * OSM ids run into the billions, so the bits are kept in pages of 65536 ids that are only allocated once one of their
+ * ids is added. Ids referenced by a region extract are clustered, so most allocated pages are dense.
+ */
+public class IdBitmap {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_WORDS = (1 << PAGE_SHIFT) / Long.SIZE;
+    private static final int WORD_MASK = PAGE_WORDS - 1;
+
+    private final Map<Long, long[]> pages = new HashMap<>();
+    private long cardinality = 0;
+
+    public void add(long id) {
+        long[] page = pages.computeIfAbsent(id >> PAGE_SHIFT, key -> new long[PAGE_WORDS]);
+        int word = (int) (id >>> 6) & WORD_MASK;
+        long bit = 1L << id;
+        if ((page[word] & bit) == 0) {
+            page[word] |= bit;
+            cardinality++;
+        }
+    }
+
+    public boolean contains(long id) {
+        long[] page = pages.get(id >> PAGE_SHIFT);
+        return page != null && (page[(int) (id >>> 6) & WORD_MASK] & (1L << id)) != 0;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Returns the memory taken by the bits, in bytes.
+     */
+    public long getMemorySize() {
+        return (long) pages.size() * PAGE_WORDS * Long.BYTES;
+    }
+}
@@ -0,0 +1,171 @@
+package uk.org.tombolo.importer.osm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NodeLocationStore.java
+ * A store of the locations of OSM nodes, outside of the Java heap.
+ *
+ * Each node takes a 16 byte record of its id and its latitude and longitude as integers in units of 1e-7 degrees,
+ * the precision of OSM coordinates. The records are kept in a temporary memory-mapped file, so the operating system
+ * pages them in and out as needed rather than holding them on the heap.
+ *
+ * Lookups use a binary search on the id. PBF files list nodes by increasing id, so the records are usually sorted as
+ * they are added; otherwise they are sorted before the first lookup. The store can be written from one thread, and
+ * read from several once it is no longer written to.
+ */
+public class NodeLocationStore implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(NodeLocationStore.class);
+    private static final int RECORD_BYTES = 16;
+    private static final int CHUNK_SHIFT = 22;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_BYTES;
+    private static final double COORDINATE_UNITS = 1e7;
+    // Coordinates are rebuilt the way PBF readers decode them at the default granularity of 100 nanodegrees
+    private static final double NANO = .000000001;
+    private static final long GRANULARITY = 100;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+    private long lastId = Long.MIN_VALUE;
+    private volatile boolean sorted = true;
+
+    public NodeLocationStore() throws IOException {
+        file = Files.createTempFile("tombolo-osm-nodes", ".bin").toFile();
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+    }
+
+    public void put(long id, double longitude, double latitude) throws IOException {
+        if (id <= lastId)
+            sorted = false;
+        lastId = id;
+        int chunk = (int) (size >>> CHUNK_SHIFT);
+        if (chunk == chunks.size())
+            chunks.add(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, chunk * CHUNK_BYTES, CHUNK_BYTES));
+        int offset = (int) (size & CHUNK_MASK) * RECORD_BYTES;
+        MappedByteBuffer buffer = chunks.get(chunk);
+        buffer.putLong(offset, id);
+        buffer.putInt(offset + 8, (int) Math.round(latitude * COORDINATE_UNITS));
+        buffer.putInt(offset + 12, (int) Math.round(longitude * COORDINATE_UNITS));
+        size++;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the node, for getLongitude and getLatitude, or -1 if it is not in the store.
+     */
+    public long indexOf(long id) {
+        if (!sorted)
+            sort();
+        long low = 0;
+        long high = size - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleId = id(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public double getLatitude(long index) {
+        return decode(buffer(index).getInt(offset(index) + 8));
+    }
+
+    public double getLongitude(long index) {
+        return decode(buffer(index).getInt(offset(index) + 12));
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        randomAccessFile.close();
+        if (!file.delete())
+            log.warn("Could not delete node location store {}", file);
+    }
+
+    private synchronized void sort() {
+        if (sorted)
+            return;
+        log.info("Sorting {} node locations by id", size);
+        quickSort(0, size - 1);
+        sorted = true;
+    }
+
+    // Sorts the records in place, recursing into the smaller part so that the stack stays shallow
+    private void quickSort(long low, long high) {
+        while (low < high) {
+            long pivot = id((low + high) >>> 1);
+            long i = low;
+            long j = high;
+            while (i <= j) {
+                while (id(i) < pivot) i++;
+                while (id(j) > pivot) j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (j - low < high - i) {
+                quickSort(low, j);
+                low = i;
+            } else {
+                quickSort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private void swap(long first, long second) {
+        MappedByteBuffer firstBuffer = buffer(first);
+        MappedByteBuffer secondBuffer = buffer(second);
+        int firstOffset = offset(first);
+        int secondOffset = offset(second);
+        long id = firstBuffer.getLong(firstOffset);
+        long coordinates = firstBuffer.getLong(firstOffset + 8);
+        firstBuffer.putLong(firstOffset, secondBuffer.getLong(secondOffset));
+        firstBuffer.putLong(firstOffset + 8, secondBuffer.getLong(secondOffset + 8));
+        secondBuffer.putLong(secondOffset, id);
+        secondBuffer.putLong(secondOffset + 8, coordinates);
+    }
+
+    private long id(long index) {
+        return buffer(index).getLong(offset(index));
+    }
+
+    private MappedByteBuffer buffer(long index) {
+        return chunks.get((int) (index >>> CHUNK_SHIFT));
+    }
+
+    private static int offset(long index) {
+        return (int) (index & CHUNK_MASK) * RECORD_BYTES;
+    }
+
+    private static double decode(int coordinate) {
+        return NANO * (GRANULARITY * coordinate);
+    }
+}
@@ -0,0 +1,52 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+
+import java.util.*;
+
+/**
+ * OSMCategoryFilter.java
+ * Matches OSM entities against the categories of a built-in importer, a map of tag keys to the values of interest,
+ * where the value * matches any value.
+ *
+ * The categories are compiled into sets so that an entity is matched by looking up each of its tags, without
+ * converting the tags to a map first.
+ */
+public class OSMCategoryFilter {
+    private static final String WILDCARD = "*";
+
+    // Keys whose values all match, and the values of interest of the other keys
+    private final Set<String> anyValueKeys = new HashSet<>();
+    private final Map<String, Set<String>> keyValues = new HashMap<>();
+
+    public OSMCategoryFilter(Map<String, List<String>> categories) {
+        for (Map.Entry<String, List<String>> category : categories.entrySet()) {
+            if (category.getValue().contains(WILDCARD)) {
+                anyValueKeys.add(category.getKey());
+            } else {
+                keyValues.put(category.getKey(), new HashSet<>(category.getValue()));
+            }
+        }
+    }
+
+    public static OSMCategoryFilter forDatasource(String datasourceId) {
+        return new OSMCategoryFilter(OSMBuiltInImporters.valueOf(datasourceId).getCategories());
+    }
+
+    public boolean matches(OsmEntity entity) {
+        for (int i = 0; i < entity.getNumberOfTags(); i++) {
+            OsmTag tag = entity.getTag(i);
+            if (matches(tag.getKey(), tag.getValue()))
+                return true;
+        }
+        return false;
+    }
+
+    public boolean matches(String key, String value) {
+        if (anyValueKeys.contains(key))
+            return true;
+        Set<String> values = keyValues.get(key);
+        return values != null && values.contains(value);
+    }
+}
@@ -2,101 +2,97 @@ package uk.org.tombolo.importer.osm;
 
 import com.vividsolutions.jts.geom.*;
 import de.topobyte.osm4j.core.access.OsmHandler;
-import de.topobyte.osm4j.core.dataset.InMemoryMapDataSet;
 import de.topobyte.osm4j.core.model.iface.*;
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Way;
 import de.topobyte.osm4j.core.model.util.OsmModelUtil;
 import de.topobyte.osm4j.core.resolve.EntityNotFoundException;
+import de.topobyte.osm4j.core.resolve.OsmEntityProvider;
 import de.topobyte.osm4j.geometry.GeometryBuilder;
 import de.topobyte.osm4j.geometry.MissingEntitiesStrategy;
 import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.FixedValue;
 import uk.org.tombolo.core.Subject;
-import uk.org.tombolo.core.utils.AttributeUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class extending the functionality of OSMHandler to persist only the entities we are interested in and save the ways
  * as subjects while reading.
  *
+ * Only the locations of the nodes are kept, in a NodeLocationStore off the heap, and the ways without their tags, which
+ * is all the geometry builder needs to resolve the geometries of the ways and relations.
+ *
+ * Besides handling entities one by one, the handler is split in stages for OSMParallelReader: entities are stored on
+ * the reading thread, matched and built on any thread, and persisted on the importing thread.
  */
 public class OSMEntityHandler implements OsmHandler {
     public static Logger log = LoggerFactory.getLogger(OSMEntityHandler.class);
-    public static final int SIZE_BUFFER = 100000;
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), Subject.SRID);
 
-    private final InMemoryMapDataSet dataSet = new InMemoryMapDataSet();
-    private final TLongObjectMap<OsmNode> nodes = dataSet.getNodes();
-    private final TLongObjectMap<OsmWay> ways = dataSet.getWays();
-
+    private final NodeLocationStore nodeLocations;
+    private final TLongObjectMap<OsmWay> ways = new TLongObjectHashMap<>();
+    private final OsmEntityProvider entityProvider = new EntityProvider();
 
     private List<FixedValue> fixedValues = new ArrayList<>();
     private List<Subject> subjects = new ArrayList<>();
 
-    private GeometryBuilder builder;
+    // Geometry builders are not shared between the threads matching entities
+    private final ThreadLocal<GeometryBuilder> builders = ThreadLocal.withInitial(() -> {
+        GeometryBuilder builder = new GeometryBuilder(GEOMETRY_FACTORY);
+        // Throw exception if entities are missing
+        builder.setMissingEntitiesStrategy(MissingEntitiesStrategy.THROW_EXCEPTION);
+        return builder;
+    });
     private OSMImporter importer;
 
-    private String datasourceId;
+    private final OSMCategoryFilter filter;
+    // The nodes and ways to store, or null to store them all
+    private IdBitmap referencedNodes;
+    private IdBitmap referencedWays;
+    // The entities imported by the regions imported at the same time, or null when importing a single region
+    private OSMEntityRegistry registry;
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private long subjectCount = 0;
 
-    public OSMEntityHandler(OSMImporter importer, String datasourceId) {
+    public OSMEntityHandler(OSMImporter importer, String datasourceId) throws IOException {
         this.importer = importer;
-        this.datasourceId = datasourceId;
-
-        builder = new GeometryBuilder(GEOMETRY_FACTORY);
-        // Throw exception if entities are missing
-        builder.setMissingEntitiesStrategy(MissingEntitiesStrategy.THROW_EXCEPTION);
+        filter = OSMCategoryFilter.forDatasource(datasourceId);
+        nodeLocations = new NodeLocationStore();
     }
 
     @Override
     public void handle(OsmBounds bounds) throws IOException
     {
-        dataSet.setBounds(bounds);
+        // The bounds are not needed to build the geometries
     }
 
     @Override
     public void handle(OsmNode node) throws IOException
     {
-        // We are not interested in the node tags, but just the coordinates to create a geometry for the ways
-        nodes.put(node.getId(), node);
-        handleEntity(node, builder.build(node));
+        store(node);
+        persist(match(node));
     }
 
     @Override
     public void handle(OsmWay way) throws IOException
     {
-        Geometry osmGeometry = null;
-        try {
-            osmGeometry = builder.build(way, dataSet);
-            if (osmGeometry instanceof LinearRing) {
-                osmGeometry = new Polygon((LinearRing) osmGeometry, null, GEOMETRY_FACTORY);
-            }
-        } catch (IllegalArgumentException e) {
-            log.warn("Could not build way (illegal argument): {}", e.getMessage());
-        } catch (EntityNotFoundException e) {
-            // Nothing to do, continue...
-            log.warn("Could not build way (entity not found): {}", e.getMessage());
-        }
-        ways.put(way.getId(), way);
-        handleEntity(way, osmGeometry);
+        store(way);
+        persist(match(way));
     }
 
     @Override
     public void handle(OsmRelation relation) throws IOException
     {
-        Geometry osmGeometry = null;
-        try {
-            osmGeometry = builder.build(relation, dataSet);
-        } catch (EntityNotFoundException e) {
-            // Nothing to do, continue...
-            log.warn("Could not build way (entity not found): {}", e.getMessage());
-        }
-        handleEntity(relation, osmGeometry);
+        persist(match(relation));
     }
 
     @Override
@@ -105,40 +101,161 @@ public class OSMEntityHandler implements OsmHandler {
         // save the remaining subjects and values
         importer.saveAndClearSubjectBuffer(subjects);
         importer.saveAndClearFixedValueBuffer(fixedValues);
+        ways.clear();
+        nodeLocations.close();
+    }
+
+    /**
+     * Restricts the nodes and ways kept to build geometries to those found by an OSMReferenceScanner.
+     */
+    void setReferences(IdBitmap nodes, IdBitmap ways) {
+        referencedNodes = nodes;
+        referencedWays = ways;
+    }
+
+    /**
+     * Shares the entities imported with the handlers of other regions, so that entities in several regions are only
+     * persisted once.
+     */
+    void setRegistry(OSMEntityRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the number of subjects persisted by the handler.
+     */
+    public long getSubjectCount() {
+        return subjectCount;
     }
 
-    private void handleEntity(OsmEntity entity, Geometry osmGeometry) {
+    /**
+     * Returns the number of matching entities skipped because another region imported them.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Keeps what is needed to build the geometries of the ways and relations that follow the entity.
+     * Must not be called while entities are being matched on other threads.
+     */
+    void store(OsmEntity entity) throws IOException {
+        if (entity instanceof OsmNode) {
+            // We are not interested in the node tags, but just the coordinates to create a geometry for the ways
+            OsmNode node = (OsmNode) entity;
+            if (referencedNodes != null && !referencedNodes.contains(node.getId()))
+                return;
+            nodeLocations.put(node.getId(), node.getLongitude(), node.getLatitude());
+        } else if (entity instanceof OsmWay) {
+            // Relations only need the nodes of their member ways
+            OsmWay way = (OsmWay) entity;
+            if (referencedWays != null && !referencedWays.contains(way.getId()))
+                return;
+            ways.put(way.getId(), new Way(way.getId(), OsmModelUtil.nodesAsList(way)));
+        }
+    }
+
+    /**
+     * Matches the entity against the categories of the datasource and builds its geometry.
+     * Can be called from several threads at once.
+     *
+     * @return the entity to persist, or null if it does not match or has no valid geometry
+     */
+    MatchedEntity match(OsmEntity entity) {
+        // Check if the entity has one of the predefined tags
+        if (!filter.matches(entity))
+            return null;
+        if (registry != null && registry.isImported(entity)) {
+            duplicateCount.incrementAndGet();
+            return null;
+        }
         // Convert the entity's tags to a map
         Map<String, String> tags = OsmModelUtil.getTagsAsMap(entity);
-        // Categories
-        Map<String, List<String>> categories = OSMBuiltInImporters.valueOf(datasourceId).getCategories();
-        // Check if the subject has one of the predefined tags
-        categoriesloop:
-        for (String categoryKey : categories.keySet()) {
-            if (tags.containsKey(categoryKey)) {
-                // The entity has at least one tag that matches one of the importers category
-                if (categories.get(categoryKey).contains("*")) {
-                    // The entity has a tag that matches the category key and the value is a wildcard
-                    // Hence we persist the entity
-                    persistEntity(entity, osmGeometry, tags);
-                    break categoriesloop;
-                }
 
-                for (String categoryValue : categories.get(categoryKey)) {
-                    if (tags.get(categoryKey).equals(categoryValue)) {
-                        // The entity has a tag that matches a category key and value
-                        // Hence we persist the entity
-                        persistEntity(entity, osmGeometry, tags);
-                        break categoriesloop;
-                    }
+        Geometry geometry = buildGeometry(entity);
+        // If the geometry is null, not valid or empty, it will be skipped
+        if (geometry == null || !geometry.isValid() || geometry.isEmpty()) {
+            log.warn("Could not build {}: {} (geometry not valid or empty): {}", entity.getClass(), entity.getId(),
+                    geometry);
+            return null;
+        }
+
+        // Check if it's a GeometryCollection and dump it to a chosen geometry eventually
+        if (geometry instanceof GeometryCollection && !(geometry instanceof MultiPolygon)) {
+            Geometry chosenGeo = dumpGeometryCollection((GeometryCollection) geometry);
+            if (chosenGeo.isEmpty()) {
+                log.warn("Could not build {}: {} (geometry collection contains only empty geometries): {}",
+                        entity.getClass(), entity.getId(), geometry);
+                return null;
+            }
+            geometry = chosenGeo;
+        }
+
+        if (registry != null && !registry.claim(entity)) {
+            duplicateCount.incrementAndGet();
+            return null;
+        }
+
+        geometry.setSRID(Subject.SRID);
+        return new MatchedEntity(entity.getId(), tags, geometry);
+    }
+
+    private Geometry buildGeometry(OsmEntity entity) {
+        GeometryBuilder builder = builders.get();
+        if (entity instanceof OsmNode)
+            return builder.build((OsmNode) entity);
+
+        Geometry osmGeometry = null;
+        if (entity instanceof OsmWay) {
+            try {
+                osmGeometry = builder.build((OsmWay) entity, entityProvider);
+                if (osmGeometry instanceof LinearRing) {
+                    osmGeometry = new Polygon((LinearRing) osmGeometry, null, GEOMETRY_FACTORY);
                 }
+            } catch (IllegalArgumentException e) {
+                log.warn("Could not build way (illegal argument): {}", e.getMessage());
+            } catch (EntityNotFoundException e) {
+                // Nothing to do, continue...
+                log.warn("Could not build way (entity not found): {}", e.getMessage());
+            }
+        } else {
+            try {
+                osmGeometry = builder.build((OsmRelation) entity, entityProvider);
+            } catch (EntityNotFoundException e) {
+                // Nothing to do, continue...
+                log.warn("Could not build way (entity not found): {}", e.getMessage());
+            }
+        }
+        return osmGeometry;
+    }
+
+    /**
+     * Adds the subject and fixed values of a matched entity to the buffers, saving them when they are full.
+     * Must be called on the importing thread, in the order of the entities in the file.
+     */
+    void persist(MatchedEntity entity) {
+        if (entity != null) {
+            // Save subject
+            Subject subject = new Subject(
+                    importer.getSubjectType(),
+                    "osm" + entity.id,
+                    entity.tags.get("name"),
+                    entity.geometry
+            );
+            subjects.add(subject);
+            subjectCount++;
+
+            // Save fixed attributes
+            for (String tag : entity.tags.keySet()){
+                Attribute attribute = importer.getAttribute(tag);
+                FixedValue fixedValue = new FixedValue(subject, attribute, entity.tags.get(tag));
+                fixedValues.add(fixedValue);
             }
         }
-        if (subjects.size() == SIZE_BUFFER) {
+        if (subjects.size() >= importer.getSubjectBufferSize()) {
             importer.saveAndClearSubjectBuffer(subjects);
             importer.saveAndClearFixedValueBuffer(fixedValues);
         }
-
     }
 
     /**
@@ -163,44 +280,45 @@ public class OSMEntityHandler implements OsmHandler {
         return element;
     }
 
-    private void persistEntity(OsmEntity entity, Geometry geometry, Map<String, String> tags) {
-        // If the geometry is null, not valid or empty, it will be skipped
-        if (geometry == null || !geometry.isValid() || geometry.isEmpty()) {
-            log.warn("Could not build {}: {} (geometry not valid or empty): {}", entity.getClass(), entity.getId(),
-                    geometry);
-            return;
+    /**
+     * Resolves the nodes from their stored locations, creating them as they are needed, and the ways from the ways
+     * read so far. Relations are not resolved, as before.
+     */
+    private class EntityProvider implements OsmEntityProvider {
+        @Override
+        public OsmNode getNode(long id) throws EntityNotFoundException {
+            long index = nodeLocations.indexOf(id);
+            if (index < 0)
+                throw new EntityNotFoundException("unable to find node with id: " + id);
+            return new Node(id, nodeLocations.getLongitude(index), nodeLocations.getLatitude(index));
         }
 
-        // Check if it's a GeometryCollection and dump it to a chosen geometry eventually
-        if (geometry instanceof GeometryCollection && !(geometry instanceof MultiPolygon)) {
-            Geometry chosenGeo = dumpGeometryCollection((GeometryCollection) geometry);
-            if (chosenGeo.isEmpty()) {
-                log.warn("Could not build {}: {} (geometry collection contains only empty geometries): {}",
-                        entity.getClass(), entity.getId(), geometry);
-                return;
-            }
-            geometry = chosenGeo;
+        @Override
+        public OsmWay getWay(long id) throws EntityNotFoundException {
+            OsmWay way = ways.get(id);
+            if (way == null)
+                throw new EntityNotFoundException("unable to find way with id: " + id);
+            return way;
         }
 
-        geometry.setSRID(Subject.SRID);
-        // Save subject
-        Subject subject = new Subject(
-                importer.getSubjectType(),
-                "osm" + entity.getId(),
-                tags.get("name"),
-                geometry
-        );
-        subjects.add(subject);
-
-        // Save fixed attributes
-        for (String tag : tags.keySet()){
-            Attribute attribute = AttributeUtils.getByProviderAndLabel(importer.getProvider(), tag);
-            if(attribute == null) {
-                attribute = importer.attributeFromTag(tag);
-                AttributeUtils.save(attribute);
-            }
-            FixedValue fixedValue = new FixedValue(subject, attribute, tags.get(tag));
-            fixedValues.add(fixedValue);
+        @Override
+        public OsmRelation getRelation(long id) throws EntityNotFoundException {
+            throw new EntityNotFoundException("unable to find relation with id: " + id);
+        }
+    }
+
+    /**
+     * An entity that matches the categories of the datasource, with its tags and valid geometry.
+     */
+    static class MatchedEntity {
+        private final long id;
+        private final Map<String, String> tags;
+        private final Geometry geometry;
+
+        private MatchedEntity(long id, Map<String, String> tags, Geometry geometry) {
+            this.id = id;
+            this.tags = tags;
+            this.geometry = geometry;
         }
     }
 }
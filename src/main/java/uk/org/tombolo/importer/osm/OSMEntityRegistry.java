@@ -0,0 +1,53 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.model.iface.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * OSMEntityRegistry.java
+ * The OSM entities imported so far, by type and id, shared by the regions imported at the same time.
+ *
+ * Entities near the border of a region are also in the extracts of the neighbouring regions. An entity is only
+ * persisted by the region that claims it first. Claims are made once the geometry of the entity is built, since an
+ * entity crossing the border can be incomplete in one extract but not in another.
+ */
+public class OSMEntityRegistry {
+    private final Map<EntityType, IdBitmap> imported = new EnumMap<>(EntityType.class);
+
+    public OSMEntityRegistry() {
+        for (EntityType type : EntityType.values()) {
+            imported.put(type, new IdBitmap());
+        }
+    }
+
+    public synchronized boolean isImported(OsmEntity entity) {
+        return imported.get(typeOf(entity)).contains(entity.getId());
+    }
+
+    /**
+     * Claims the entity for import.
+     *
+     * @return true if the entity was not claimed before
+     */
+    public synchronized boolean claim(OsmEntity entity) {
+        IdBitmap ids = imported.get(typeOf(entity));
+        if (ids.contains(entity.getId()))
+            return false;
+        ids.add(entity.getId());
+        return true;
+    }
+
+    public synchronized long size() {
+        return imported.values().stream().mapToLong(IdBitmap::cardinality).sum();
+    }
+
+    private static EntityType typeOf(OsmEntity entity) {
+        if (entity instanceof OsmNode)
+            return EntityType.Node;
+        if (entity instanceof OsmWay)
+            return EntityType.Way;
+        return EntityType.Relation;
+    }
+}
@@ -1,21 +1,38 @@
 package uk.org.tombolo.importer.osm;
 
+import de.topobyte.osm4j.core.access.OsmHandler;
 import de.topobyte.osm4j.pbf.seq.PbfReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.AttributeUtils;
+import uk.org.tombolo.core.utils.HibernateUtil;
 import uk.org.tombolo.importer.AbstractImporter;
+import uk.org.tombolo.importer.ConfigurationException;
 
 import java.io.File;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Open street map importer
+ *
+ * The importer can be tuned from the importer configuration, such as apikeys.properties:
+ * osmThreads is the number of threads reading the files, by default the number of processors;
+ * osmRegionThreads is the number of regions imported at the same time, by default 4, each holding its own nodes and
+ * ways; and osmTwoPass is false to keep every node and way rather than scanning the files for those needed first.
  */
 public class OSMImporter extends AbstractImporter {
+    private static final Logger log = LoggerFactory.getLogger(OSMImporter.class);
+    private static final int DEFAULT_REGION_THREADS = 4;
+    protected static final String PROP_THREADS = "osmThreads";
+    protected static final String PROP_REGION_THREADS = "osmRegionThreads";
+    protected static final String PROP_TWO_PASS = "osmTwoPass";
     protected static final String URL = "http://download.geofabrik.de";
     // Default area is the whole Great Britain, if the geography scope is empty or null the default area will be considered.
     // The following are the geographic regions for the UK as in geofabrik download server.
@@ -63,6 +80,11 @@ public class OSMImporter extends AbstractImporter {
     );
 
 
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean twoPass = true;
+    private int regionThreads = DEFAULT_REGION_THREADS;
+    private final Map<String, Attribute> attributes = new HashMap<>();
+
     public OSMImporter() {
         datasourceIds = new ArrayList<>();
         Arrays.stream(OSMBuiltInImporters.values()).map(builtin -> builtin.name()).forEach(datasourceIds::add);
@@ -74,6 +96,61 @@ public class OSMImporter extends AbstractImporter {
         return this.subjectType;
     }
 
+    /**
+     * Sets the number of threads decoding the PBF files and building the geometries of their entities.
+     * With a single thread the files are read sequentially.
+     *
+     * @param threads number of worker threads, by default the number of processors
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the number of regions imported at the same time, when importing several regions.
+     * The threads set with setThreads are shared between the regions.
+     *
+     * @param regionThreads number of regions imported at the same time
+     */
+    public void setRegionThreads(int regionThreads) {
+        this.regionThreads = Math.max(1, regionThreads);
+    }
+
+    /**
+     * Sets whether the PBF files are first scanned for the nodes and ways needed by the entities matching the
+     * categories, so that only those are kept while importing.
+     *
+     * @param twoPass true, the default, to scan the files first, false to keep every node and way
+     */
+    public void setTwoPass(boolean twoPass) {
+        this.twoPass = twoPass;
+    }
+
+    @Override
+    public void configure(Properties properties) throws ConfigurationException {
+        super.configure(properties);
+        Integer threads = intProperty(PROP_THREADS);
+        if (threads != null)
+            setThreads(threads);
+        Integer regionThreads = intProperty(PROP_REGION_THREADS);
+        if (regionThreads != null)
+            setRegionThreads(regionThreads);
+        String twoPass = this.properties.getProperty(PROP_TWO_PASS);
+        if (twoPass != null && !twoPass.trim().isEmpty())
+            setTwoPass(Boolean.parseBoolean(twoPass.trim()));
+    }
+
+    private Integer intProperty(String name) throws ConfigurationException {
+        String value = properties.getProperty(name);
+        if (value == null || value.trim().isEmpty())
+            return null;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException("Property " + name + " must be a number: " + value);
+        }
+    }
+
     private String compileURL(String area) {
        return URL + "/" + area + "-latest.osm.pbf";
     }
@@ -89,6 +166,11 @@ public class OSMImporter extends AbstractImporter {
         return new DatasourceSpec(getClass(), builtIn.name(), "", builtIn.getDescription(), URL);
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String datasourceId) {
         subjectType = new SubjectType(getProvider(), "OSMEntity", "Open Street Map Entity");
@@ -108,6 +190,23 @@ public class OSMImporter extends AbstractImporter {
         return new Attribute(getProvider(), tag, "OSM entity having category " + tag);
     }
 
+    /**
+     * Returns the attribute of a tag, saving it the first time the tag is seen.
+     * Regions imported at the same time share the attributes, so that each is only saved once.
+     */
+    synchronized Attribute getAttribute(String tag) {
+        Attribute attribute = attributes.get(tag);
+        if (attribute == null) {
+            attribute = AttributeUtils.getByProviderAndLabel(getProvider(), tag);
+            if (attribute == null) {
+                attribute = attributeFromTag(tag);
+                AttributeUtils.save(attribute);
+            }
+            attributes.put(tag, attribute);
+        }
+        return attribute;
+    }
+
     private File getDatafile(String area) throws Exception {
         return downloadUtils.fetchFile(new URL(compileURL(area)), getProvider().getLabel(), ".osm.pbf");
     }
@@ -117,16 +216,109 @@ public class OSMImporter extends AbstractImporter {
         if (geographyScope == null || geographyScope.isEmpty())
             geographyScope = DEFAULT_AREA;
 
-        for (String area : geographyScope) {
-            File localFile = getDatafile(area);
+        // Since we cannot know the attributes until import time, we store them now
+        List<Attribute> attributes = datasource.getFixedValueAttributes();
+        AttributeUtils.save(attributes);
+
+        String datasourceId = datasource.getDatasourceSpec().getId();
+        log.info("Importing {} on {} threads, {} regions at a time, {}", datasourceId, threads, regionThreads,
+                twoPass ? "scanning for the nodes and ways needed first" : "keeping every node and way");
+        if (geographyScope.size() == 1) {
+            importRegion(geographyScope.get(0), datasourceId, null, threads);
+            return;
+        }
+
+        // Regions imported by an earlier run that did not finish are checkpointed, and skipped
+        Set<String> imported = new LinkedHashSet<>();
+        if (getCheckpoint() != null)
+            imported.addAll(Arrays.asList(getCheckpoint().split(",")));
+        List<String> areas = new ArrayList<>(geographyScope);
+        areas.removeAll(imported);
+        if (!imported.isEmpty())
+            log.info("Skipping {} regions imported before for {}", geographyScope.size() - areas.size(), datasourceId);
+        if (areas.isEmpty())
+            return;
 
-            // Since we cannot know the attributes until import time, we store them now
-            List<Attribute> attributes = datasource.getFixedValueAttributes();
-            AttributeUtils.save(attributes);
+        // Entities near the borders of the regions are in several extracts, and are only imported once
+        OSMEntityRegistry registry = new OSMEntityRegistry();
+        int regions = Math.min(regionThreads, areas.size());
+        int threadsPerRegion = Math.max(1, threads / regions);
+        AtomicInteger done = new AtomicInteger();
+        log.info("Importing {} regions for {}, {} at a time on {} threads each",
+                areas.size(), datasourceId, regions, threadsPerRegion);
+        ExecutorService pool = Executors.newFixedThreadPool(regions);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (String area : areas) {
+                futures.add(pool.submit(() -> {
+                    // Each region is written with its own session, since Hibernate sessions cannot be shared
+                    Exception exception = HibernateUtil.withThreadSession(() -> {
+                        try {
+                            importRegion(area, datasourceId, registry, threadsPerRegion);
+                            return null;
+                        } catch (Exception e) {
+                            return e;
+                        }
+                    });
+                    if (exception != null)
+                        throw exception;
+                    // The buffers of the region are handed over, so it is done once they are written
+                    synchronized (imported) {
+                        imported.add(area);
+                        checkpoint(String.join(",", imported));
+                    }
+                    log.info("Imported {} of {} regions for {}", done.incrementAndGet(), areas.size(), datasourceId);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw new Error("Worker failed while importing regions", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void importRegion(String area, String datasourceId, OSMEntityRegistry registry, int threads)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        log.info("Importing region {} for {}", area, datasourceId);
+        File localFile = getDatafile(area);
+
+        OSMEntityHandler handler = new OSMEntityHandler(this, datasourceId);
+        handler.setRegistry(registry);
+        if (twoPass) {
+            OSMReferenceScanner scanner = new OSMReferenceScanner(OSMCategoryFilter.forDatasource(datasourceId));
+            do {
+                scan(localFile, scanner, threads);
+            } while (!scanner.isComplete());
+            log.info("Keeping {} nodes and {} ways of {} for {}", scanner.getNodes().cardinality(),
+                    scanner.getWays().cardinality(), area, datasourceId);
+            handler.setReferences(scanner.getNodes(), scanner.getWays());
+        }
+        if (threads > 1) {
+            new OSMParallelReader(threads).read(localFile, handler);
+        } else {
+            scan(localFile, handler, threads);
+        }
+        log.info("Imported {} subjects from region {} in {} s, skipping {} entities imported from other regions",
+                handler.getSubjectCount(), area, (System.currentTimeMillis() - start) / 1000,
+                handler.getDuplicateCount());
+    }
 
+    private static void scan(File localFile, OsmHandler handler, int threads) throws Exception {
+        if (threads > 1) {
+            new OSMParallelReader(threads).scan(localFile, handler);
+        } else {
             // Create a reader for PBF data and cache it
             PbfReader reader = new PbfReader(localFile, true);
-            OSMEntityHandler handler = new OSMEntityHandler(this, datasource.getDatasourceSpec().getId());
             reader.setHandler(handler);
             reader.read();
         }
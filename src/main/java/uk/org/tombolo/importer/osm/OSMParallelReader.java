@@ -0,0 +1,208 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.model.iface.*;
+import de.topobyte.osm4j.pbf.seq.PbfReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * OSMParallelReader.java
+ * Reads a PBF file into an OSMEntityHandler, or scans it with any handler, using a pool of worker threads.
+ *
+ * The file is split in its blobs, which are decompressed and decoded on the workers. The decoded entities are stored
+ * in the handler in file order, then matched against the categories and built into geometries on the workers, and
+ * finally persisted in file order on the calling thread, the single writer. The number of blobs in flight is bounded,
+ * so reading waits for writing when the database is the bottleneck.
+ *
+ * Entities are matched while later blobs are stored, so ways and relations only see the nodes and ways before them,
+ * as when reading sequentially. Matching is let finish before storing anything it could read, which never happens
+ * with files that list all nodes, then all ways, then all relations. The result is then the same as reading the
+ * file sequentially with the handler.
+ */
+public class OSMParallelReader {
+    private static final Logger log = LoggerFactory.getLogger(OSMParallelReader.class);
+    private static final int BLOBS_IN_FLIGHT_PER_THREAD = 2;
+
+    private final int threads;
+
+    private OSMEntityHandler handler;
+    private final Deque<Future<List<OSMEntityHandler.MatchedEntity>>> matching = new ArrayDeque<>();
+    // Whether the entities being matched can read the stored nodes or ways
+    private boolean matchingReadsNodes = false;
+    private boolean matchingReadsWays = false;
+
+    public OSMParallelReader(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Reads the file into the handler, matching and persisting its entities.
+     */
+    public void read(File file, OSMEntityHandler handler) throws Exception {
+        this.handler = handler;
+        matchingReadsNodes = false;
+        matchingReadsWays = false;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            decode(file, pool, entities -> {
+                dispatch(pool, entities);
+                while (matching.size() >= threads * BLOBS_IN_FLIGHT_PER_THREAD)
+                    persist(matching.poll());
+            });
+            while (!matching.isEmpty())
+                persist(matching.poll());
+        } finally {
+            matching.clear();
+            pool.shutdownNow();
+        }
+        handler.complete();
+    }
+
+    /**
+     * Decodes the file on the workers and passes its entities to the handler, in file order on the calling thread.
+     */
+    public void scan(File file, OsmHandler handler) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            decode(file, pool, entities -> {
+                for (OsmEntity entity : entities) {
+                    if (entity instanceof OsmNode) {
+                        handler.handle((OsmNode) entity);
+                    } else if (entity instanceof OsmWay) {
+                        handler.handle((OsmWay) entity);
+                    } else {
+                        handler.handle((OsmRelation) entity);
+                    }
+                }
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+        handler.complete();
+    }
+
+    private void decode(File file, ExecutorService pool, BlobConsumer consumer) throws Exception {
+        int maxInFlight = threads * BLOBS_IN_FLIGHT_PER_THREAD;
+        Deque<Future<List<OsmEntity>>> decoding = new ArrayDeque<>();
+        try (PbfBlobReader blobs = new PbfBlobReader(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] header = new byte[0];
+            int blobCount = 0;
+            PbfBlobReader.Blob blob;
+            while ((blob = blobs.next()) != null) {
+                if (blob.isHeader()) {
+                    header = blob.getFrame();
+                    continue;
+                }
+                byte[] headerFrame = header;
+                byte[] dataFrame = blob.getFrame();
+                decoding.add(pool.submit(() -> decode(headerFrame, dataFrame)));
+                blobCount++;
+
+                if (decoding.size() >= maxInFlight)
+                    consumer.accept(await(decoding.poll()));
+            }
+            while (!decoding.isEmpty())
+                consumer.accept(await(decoding.poll()));
+            log.info("Decoded {} blobs of {} on {} threads", blobCount, file.getName(), threads);
+        }
+    }
+
+    private static List<OsmEntity> decode(byte[] header, byte[] data) throws Exception {
+        List<OsmEntity> entities = new ArrayList<>();
+        PbfReader reader = new PbfReader(new SequenceInputStream(
+                new ByteArrayInputStream(header), new ByteArrayInputStream(data)), false);
+        reader.setHandler(new OsmHandler() {
+            @Override
+            public void handle(OsmBounds bounds) {
+            }
+
+            @Override
+            public void handle(OsmNode node) {
+                entities.add(node);
+            }
+
+            @Override
+            public void handle(OsmWay way) {
+                entities.add(way);
+            }
+
+            @Override
+            public void handle(OsmRelation relation) {
+                entities.add(relation);
+            }
+
+            @Override
+            public void complete() {
+            }
+        });
+        reader.read();
+        return entities;
+    }
+
+    // Stores the decoded entities of a blob and starts matching them
+    private void dispatch(ExecutorService pool, List<OsmEntity> entities) throws Exception {
+        boolean hasNodes = false;
+        boolean hasWays = false;
+        boolean hasRelations = false;
+        for (OsmEntity entity : entities) {
+            hasNodes |= entity instanceof OsmNode;
+            hasWays |= entity instanceof OsmWay;
+            hasRelations |= entity instanceof OsmRelation;
+        }
+        if ((hasNodes && matchingReadsNodes) || (hasWays && matchingReadsWays)) {
+            while (!matching.isEmpty())
+                persist(matching.poll());
+        }
+        if (matching.isEmpty()) {
+            matchingReadsNodes = false;
+            matchingReadsWays = false;
+        }
+
+        for (OsmEntity entity : entities) {
+            handler.store(entity);
+        }
+        matchingReadsNodes |= hasWays || hasRelations;
+        matchingReadsWays |= hasRelations;
+        matching.add(pool.submit(() -> {
+            List<OSMEntityHandler.MatchedEntity> matched = new ArrayList<>();
+            for (OsmEntity entity : entities) {
+                OSMEntityHandler.MatchedEntity match = handler.match(entity);
+                if (match != null)
+                    matched.add(match);
+            }
+            return matched;
+        }));
+    }
+
+    private void persist(Future<List<OSMEntityHandler.MatchedEntity>> future) throws Exception {
+        for (OSMEntityHandler.MatchedEntity entity : await(future)) {
+            handler.persist(entity);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new Error("Worker failed while reading OSM data", e.getCause());
+        }
+    }
+
+    private interface BlobConsumer {
+        void accept(List<OsmEntity> entities) throws Exception;
+    }
+}
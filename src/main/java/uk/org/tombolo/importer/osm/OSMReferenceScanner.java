@@ -0,0 +1,84 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.model.iface.*;
+
+/**
+ * OSMReferenceScanner.java
+ * Finds the nodes and ways needed to build the geometries of the ways and relations that match a category filter.
+ *
+ * A first scan of the file records the matching ways with their nodes, and the members of the matching relations.
+ * Relations come after the ways in a PBF file, so the nodes of member ways that do not match themselves are only
+ * known after a second scan of the ways, which is needed when isComplete returns false.
+ */
+public class OSMReferenceScanner implements OsmHandler {
+    private final OSMCategoryFilter filter;
+    private final IdBitmap nodes = new IdBitmap();
+    private final IdBitmap ways = new IdBitmap();
+    // The member ways whose nodes are not recorded yet
+    private final IdBitmap memberWays = new IdBitmap();
+    private int scans = 0;
+
+    public OSMReferenceScanner(OSMCategoryFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the ids of the nodes needed by the matching ways and relations.
+     */
+    public IdBitmap getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the ids of the ways that match or are needed by the matching relations.
+     */
+    public IdBitmap getWays() {
+        return ways;
+    }
+
+    /**
+     * Returns true if the nodes of all the needed ways are recorded, otherwise the file must be scanned again.
+     */
+    public boolean isComplete() {
+        return memberWays.isEmpty() || scans > 1;
+    }
+
+    @Override
+    public void handle(OsmBounds bounds) {
+    }
+
+    @Override
+    public void handle(OsmNode node) {
+    }
+
+    @Override
+    public void handle(OsmWay way) {
+        if (scans > 0 ? memberWays.contains(way.getId()) : filter.matches(way)) {
+            ways.add(way.getId());
+            for (int i = 0; i < way.getNumberOfNodes(); i++) {
+                nodes.add(way.getNodeId(i));
+            }
+        }
+    }
+
+    @Override
+    public void handle(OsmRelation relation) {
+        if (scans > 0 || !filter.matches(relation))
+            return;
+        for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+            OsmRelationMember member = relation.getMember(i);
+            if (member.getType() == EntityType.Node) {
+                nodes.add(member.getId());
+            } else if (member.getType() == EntityType.Way && !ways.contains(member.getId())) {
+                ways.add(member.getId());
+                memberWays.add(member.getId());
+            }
+        }
+    }
+
+    @Override
+    public void complete() {
+        scans++;
+    }
+}
@@ -0,0 +1,118 @@
+package uk.org.tombolo.importer.osm;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * PbfBlobReader.java
+ * Splits an OSM PBF file in its blobs without decoding them.
+ *
+ * A PBF file is a sequence of blobs, each framed by the length of its header, the header, naming the type of the blob
+ * and giving the size of its data, and the compressed data. Since the frames are independent, the header blob followed
+ * by any data blob is itself a valid PBF file, which lets the blobs be decoded on different threads.
+ */
+public class PbfBlobReader implements Closeable {
+    private static final String HEADER_TYPE = "OSMHeader";
+    // The limits of the PBF format
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final DataInputStream input;
+
+    public PbfBlobReader(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    /**
+     * Returns the next blob, or null at the end of the file.
+     */
+    public Blob next() throws IOException {
+        int headerSize;
+        try {
+            headerSize = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+            throw new IOException("Invalid PBF blob header size " + headerSize);
+        byte[] header = new byte[headerSize];
+        input.readFully(header);
+
+        String type = null;
+        int dataSize = -1;
+        // The header is a protocol buffers message of the type (field 1), index data (field 2) and data size (field 3)
+        ByteArrayInputStream fields = new ByteArrayInputStream(header);
+        while (fields.available() > 0) {
+            long key = readVarint(fields);
+            int field = (int) (key >>> 3);
+            int wireType = (int) (key & 7);
+            if (wireType == 0) {
+                long value = readVarint(fields);
+                if (field == 3)
+                    dataSize = (int) value;
+            } else if (wireType == 2) {
+                byte[] value = new byte[(int) readVarint(fields)];
+                if (fields.read(value, 0, value.length) != value.length)
+                    throw new IOException("Truncated PBF blob header");
+                if (field == 1)
+                    type = new String(value, StandardCharsets.UTF_8);
+            } else {
+                throw new IOException("Unexpected wire type " + wireType + " in PBF blob header");
+            }
+        }
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+            throw new IOException("Invalid PBF blob header of type " + type + " and data size " + dataSize);
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(4 + headerSize + dataSize);
+        DataOutputStream output = new DataOutputStream(frame);
+        output.writeInt(headerSize);
+        output.write(header);
+        byte[] data = new byte[dataSize];
+        input.readFully(data);
+        output.write(data);
+        return new Blob(type, frame.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new IOException("Truncated PBF blob header");
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint in PBF blob header");
+    }
+
+    public static class Blob {
+        private final String type;
+        private final byte[] frame;
+
+        private Blob(String type, byte[] frame) {
+            this.type = type;
+            this.frame = frame;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isHeader() {
+            return HEADER_TYPE.equals(type);
+        }
+
+        /**
+         * Returns the blob as it is in the file, framed by its header.
+         */
+        public byte[] getFrame() {
+            return frame;
+        }
+    }
+}
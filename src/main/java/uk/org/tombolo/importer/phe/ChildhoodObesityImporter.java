@@ -1,18 +1,17 @@
 package uk.org.tombolo.importer.phe;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
 import uk.org.tombolo.importer.ons.AbstractONSImporter;
 import uk.org.tombolo.importer.ons.OaImporter;
+import uk.org.tombolo.importer.utils.ExcelUtils;
+import uk.org.tombolo.importer.utils.SheetRow;
+import uk.org.tombolo.importer.utils.StreamingXlsxReader;
 
 import java.io.File;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.LocalDateTime;
@@ -91,90 +90,96 @@ public class ChildhoodObesityImporter extends AbstractPheImporter {
             url = file.toURI().toURL();
         }
 
-        // Fetching and reading the file using fetchInputStream
-        InputStream isr = downloadUtils.fetchInputStream(url, getProvider().getLabel(), ".xlsx");
-        XSSFWorkbook workbook = new XSSFWorkbook(isr);
-
-        // Loop through the excell sheets
-        for (int sheet = 1; sheet <= 4; sheet = sheet+1){
-            Sheet datatypeSheet = workbook.getSheetAt(sheet);
-
-            Iterator<Row> rowIterator = datatypeSheet.rowIterator();
+        // Fetching the file and streaming its rows
+        File localFile = downloadUtils.fetchFile(url, getProvider().getLabel(), ".xlsx");
+        try (StreamingXlsxReader reader = new ExcelUtils().getStreamingReader(localFile)) {
+            List<String> sheetNames = reader.getSheetNames();
+            List<Integer> loopingIndices = getLoopingIndices(whichDatasource);
             int j = whichDatasource.equals("childhoodObesityLA")
                     || whichDatasource.equals("childhoodObesityMSOA") ? 3 : 4;
-            for (int i=0; i<j; i++){
-                rowIterator.next();
 
+            // Loop through the excell sheets
+            for (int sheet = 1; sheet <= 4; sheet = sheet+1){
+                String attributeSheetName = sheetNames.get(sheet);
+                // The rows with the years and the attribute labels are among the first rows, before the data
+                SheetRow[] headerRows = new SheetRow[2];
+                int[] rowCount = {0};
+                reader.readSheet(sheet, row -> {
+                    if (row.getRowNum() == loopingIndices.get(3))
+                        headerRows[0] = row;
+                    else if (row.getRowNum() == loopingIndices.get(3) + 1)
+                        headerRows[1] = row;
+                    if (rowCount[0]++ >= j)
+                        importRow(datasource, whichDatasource, attributeSheetName, headerRows[0], headerRows[1], row,
+                                timedValues);
+                    return true;
+                });
             }
+        }
+        saveAndClearTimedValueBuffer(timedValues);
+    }
 
-            while (rowIterator.hasNext()) {
-
-                Row row = rowIterator.next();
-                List<Integer> loopingIndices = getLoopingIndices(whichDatasource);
-                Subject subject = SubjectUtils.getSubjectByTypeAndLabel(getSubjectGeometry(whichDatasource), String.valueOf(row.getCell(loopingIndices.get(2))).trim());
-
-                // Dataset specific: The dataset contains mixed geometries. Check that the geometries in the excel file
-                // match the "Area code" column. If they are not null proceed
-                if (subject!=null){
-
-                    // Dataset specific:  Looping through the time value
-                    for (int timeValuesIndex=loopingIndices.get(0); timeValuesIndex < datatypeSheet.getRow(loopingIndices.get(3)).getLastCellNum(); timeValuesIndex+=loopingIndices.get(1)) {
-
-                        // The temporal framework is given in intervals. We take the end of the interval to be our time value
-                        Row rowTime = datatypeSheet.getRow(loopingIndices.get(3));
-                        String year = rowTime.getCell(timeValuesIndex).toString();
-                        year =  "20" + year.substring(year.length()-2);
-                        LocalDateTime timestamp = TimedValueUtils.parseTimestampString(year);
-
-                        Row rowAttr = datatypeSheet.getRow(loopingIndices.get(3)+1);
-                        String attrPercentage = rowAttr.getCell(timeValuesIndex+ 2).getStringCellValue();
-                        String attrLci = rowAttr.getCell(timeValuesIndex+ 3).getStringCellValue();
-                        String attrUci = rowAttr.getCell(timeValuesIndex+ 4).getStringCellValue();
-
-                        try {
-
-                            String attributeSheetName = datatypeSheet.getSheetName();
-
-                            for( int i = 0; i < datasource.getTimedValueAttributes().size(); i++) {
-                                if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrPercentage)){
-                                    Double record_percentage = row.getCell(timeValuesIndex + 2).getNumericCellValue();
-                                    Attribute attribute_percentage = datasource.getTimedValueAttributes().get(i);
-                                    timedValues.add(new TimedValue(
-                                            subject,
-                                            attribute_percentage,
-                                            timestamp,
-                                            record_percentage/100.));
-
-                                } else if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrLci)){
-                                    Double record_lci = row.getCell(timeValuesIndex + 3).getNumericCellValue();
-                                    Attribute attribute_lci = datasource.getTimedValueAttributes().get(i);
-                                    timedValues.add(new TimedValue(
-                                            subject,
-                                            attribute_lci,
-                                            timestamp,
-                                            record_lci/100.));
-
-                                } else if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrUci)){
-                                    Double record_uci = row.getCell(timeValuesIndex + 4).getNumericCellValue();
-                                    Attribute attribute_uci = datasource.getTimedValueAttributes().get(i);
-                                    timedValues.add(new TimedValue(
-                                            subject,
-                                            attribute_uci,
-                                            timestamp,
-                                            record_uci/100.));
-                                } else {
-                                    continue;
-                                }
-                            }
-                        } catch (IllegalStateException e) {
+    private void importRow(Datasource datasource, String whichDatasource, String attributeSheetName, SheetRow rowTime,
+                           SheetRow rowAttr, SheetRow row, List<TimedValue> timedValues) throws Exception {
+        List<Integer> loopingIndices = getLoopingIndices(whichDatasource);
+        Subject subject = getImportContext().getSubject(getSubjectGeometry(whichDatasource), String.valueOf(row.getCellText(loopingIndices.get(2))).trim());
+
+        // Dataset specific: The dataset contains mixed geometries. Check that the geometries in the excel file
+        // match the "Area code" column. If they are not null proceed
+        if (subject!=null){
+
+            // Dataset specific:  Looping through the time value
+            for (int timeValuesIndex=loopingIndices.get(0); timeValuesIndex < rowTime.getLastCellNum(); timeValuesIndex+=loopingIndices.get(1)) {
+
+                // The temporal framework is given in intervals. We take the end of the interval to be our time value
+                String year = rowTime.getCellText(timeValuesIndex);
+                year =  "20" + year.substring(year.length()-2);
+                LocalDateTime timestamp = TimedValueUtils.parseTimestampString(year);
+
+                String attrPercentage = rowAttr.getStringCellValue(timeValuesIndex+ 2);
+                String attrLci = rowAttr.getStringCellValue(timeValuesIndex+ 3);
+                String attrUci = rowAttr.getStringCellValue(timeValuesIndex+ 4);
+
+                try {
+
+                    for( int i = 0; i < datasource.getTimedValueAttributes().size(); i++) {
+                        if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrPercentage)){
+                            Double record_percentage = row.getNumericCellValue(timeValuesIndex + 2);
+                            Attribute attribute_percentage = datasource.getTimedValueAttributes().get(i);
+                            timedValues.add(new TimedValue(
+                                    subject,
+                                    attribute_percentage,
+                                    timestamp,
+                                    record_percentage/100.));
+
+                        } else if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrLci)){
+                            Double record_lci = row.getNumericCellValue(timeValuesIndex + 3);
+                            Attribute attribute_lci = datasource.getTimedValueAttributes().get(i);
+                            timedValues.add(new TimedValue(
+                                    subject,
+                                    attribute_lci,
+                                    timestamp,
+                                    record_lci/100.));
+
+                        } else if (datasource.getTimedValueAttributes().get(i).getLabel().contains(attributeSheetName + "_" + attrUci)){
+                            Double record_uci = row.getNumericCellValue(timeValuesIndex + 4);
+                            Attribute attribute_uci = datasource.getTimedValueAttributes().get(i);
+                            timedValues.add(new TimedValue(
+                                    subject,
+                                    attribute_uci,
+                                    timestamp,
+                                    record_uci/100.));
+                        } else {
                             continue;
                         }
                     }
+                } catch (IllegalStateException e) {
+                    continue;
                 }
             }
         }
-        saveAndClearTimedValueBuffer(timedValues);
-        workbook.close();
+        if (timedValues.size() >= getTimedValueBufferSize())
+            saveAndClearTimedValueBuffer(timedValues);
     }
 
     public List<Integer> getLoopingIndices (String which_datasource){
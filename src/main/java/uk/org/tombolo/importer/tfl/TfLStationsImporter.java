@@ -9,8 +9,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import uk.org.tombolo.core.*;
-import uk.org.tombolo.core.utils.AttributeUtils;
-import uk.org.tombolo.core.utils.SubjectUtils;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -108,11 +106,11 @@ public class TfLStationsImporter extends TfLImporter {
 
 			// Timed Values
 			List<TimedValue> timedValues = new ArrayList<TimedValue>();
-			Attribute servingLines = AttributeUtils.getByProviderAndLabel(getProvider(), AttributeName.ServingLineCount.name());
+			Attribute servingLines = getImportContext().getAttribute(getProvider(), AttributeName.ServingLineCount.name());
 			for (int i=0; i< stations.getLength(); i++){
 				Node station = stations.item(i);
 				String stationLabel = stationLabelFromNode(station);
-				Subject subject = SubjectUtils.getSubjectByTypeAndLabel(datasource.getUniqueSubjectType(), stationLabel);
+				Subject subject = getImportContext().getSubject(datasource.getUniqueSubjectType(), stationLabel);
 
 				// Serving Line Count
 				NodeList servingLineList = (NodeList) xpath.evaluate("./servingLines/servingLine", station, XPathConstants.NODESET);
@@ -131,6 +129,11 @@ public class TfLStationsImporter extends TfLImporter {
 		return "tfl:station:"+stationType+":"+stationId;
 	}
 
+	@Override
+	public boolean createsSubjects() {
+		return true;
+	}
+
 	@Override
 	public List<SubjectType> getSubjectTypes(String datasourceId) {
 		return Collections.singletonList(new SubjectType(getProvider(), SubjectTypeName.TfLStation.name(), "Transport for London Station"));
@@ -247,12 +247,17 @@ public class TwitterImporter extends AbstractImporter {
 
         }
 
-        if (subjects.size() % getSubjectBufferSize() == 0) {
+        if (subjects.size() >= getSubjectBufferSize()) {
             saveAndClearSubjectBuffer(subjects);
             saveAndClearFixedValueBuffer(fixedValues);
         }
     }
 
+    @Override
+    public boolean createsSubjects() {
+        return true;
+    }
+
     @Override
     public List<SubjectType> getSubjectTypes(String dataSourceID) {
         return Arrays.asList(new SubjectType(getProvider(), "Tweet", "Tweet from Twitter"));
@@ -1,7 +1,6 @@
 package uk.org.tombolo.importer.utils;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import uk.org.tombolo.core.TimedValue;
 import uk.org.tombolo.importer.Importer;
@@ -10,10 +9,7 @@ import uk.org.tombolo.importer.utils.extraction.ExtractorException;
 import uk.org.tombolo.importer.utils.extraction.TimedValueExtractor;
 import uk.org.tombolo.importer.utils.extraction.UnknownSubjectLabelException;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,35 +19,44 @@ import java.util.List;
 public class CSVUtils {
 
     public static void extractAndSaveTimedValues(List<TimedValueExtractor> extractors, Importer importer, File localFile)
-            throws IOException, ExtractorException {
-
-        String line;
-        BufferedReader br = new BufferedReader(new FileReader(localFile));
+            throws Exception {
         List<TimedValue> timedValueBuffer = new ArrayList<>();
-        while ((line = br.readLine())!=null) {
-            CSVParser parser = CSVParser.parse(line, CSVFormat.DEFAULT);
-            List<CSVRecord> records = parser.getRecords();
-            for(TimedValueExtractor extractor: extractors){
-                if (extractor.getSubjectLabelExtractor() instanceof CSVExtractor)
-                    ((CSVExtractor) extractor.getSubjectLabelExtractor()).setCsvRecord(records.get(0));
-                if (extractor.getAttributeLabelExtractor() instanceof CSVExtractor)
-                    ((CSVExtractor) extractor.getAttributeLabelExtractor()).setCsvRecord(records.get(0));
-                if (extractor.getTimestampExtractor() instanceof CSVExtractor)
-                    ((CSVExtractor) extractor.getTimestampExtractor()).setCsvRecord(records.get(0));
-                if (extractor.getValueExtractor() instanceof CSVExtractor)
-                    ((CSVExtractor) extractor.getValueExtractor()).setCsvRecord(records.get(0));
-                try {
-                    timedValueBuffer.add(extractor.extract());
-                }catch (UnknownSubjectLabelException e){
-                    // No reason to panic even if Subject does not exist and no reason to run the rest of the extractors
-                    // Keep Calm and Break
-                    break;
-                } catch (ExtractorException ee) {
-                    ee.getMessage();
-                }
-            }
+        for (TimedValueExtractor extractor : extractors) {
+            extractor.setImportContext(importer.getImportContext());
         }
-        br.close();
+        // The extractors hold the record they extract from, so records are parsed on the workers but extracted here
+        new ParallelCSVReader().read(localFile, CSVFormat.DEFAULT,
+                (CSVRecord record, List<CSVRecord> records) -> records.add(record),
+                chunk -> {
+                    for (CSVRecord record : chunk.getValues()) {
+                        extractTimedValues(extractors, record, timedValueBuffer);
+                    }
+                    if (timedValueBuffer.size() >= importer.getTimedValueBufferSize())
+                        importer.saveAndClearTimedValueBuffer(timedValueBuffer);
+                });
         importer.saveAndClearTimedValueBuffer(timedValueBuffer);
     }
+
+    private static void extractTimedValues(List<TimedValueExtractor> extractors, CSVRecord record,
+                                           List<TimedValue> timedValueBuffer) {
+        for(TimedValueExtractor extractor: extractors){
+            if (extractor.getSubjectLabelExtractor() instanceof CSVExtractor)
+                ((CSVExtractor) extractor.getSubjectLabelExtractor()).setCsvRecord(record);
+            if (extractor.getAttributeLabelExtractor() instanceof CSVExtractor)
+                ((CSVExtractor) extractor.getAttributeLabelExtractor()).setCsvRecord(record);
+            if (extractor.getTimestampExtractor() instanceof CSVExtractor)
+                ((CSVExtractor) extractor.getTimestampExtractor()).setCsvRecord(record);
+            if (extractor.getValueExtractor() instanceof CSVExtractor)
+                ((CSVExtractor) extractor.getValueExtractor()).setCsvRecord(record);
+            try {
+                timedValueBuffer.add(extractor.extract());
+            }catch (UnknownSubjectLabelException e){
+                // No reason to panic even if Subject does not exist and no reason to run the rest of the extractors
+                // Keep Calm and Break
+                break;
+            } catch (ExtractorException ee) {
+                ee.getMessage();
+            }
+        }
+    }
 }
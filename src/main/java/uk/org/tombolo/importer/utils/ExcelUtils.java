@@ -1,6 +1,7 @@
 package uk.org.tombolo.importer.utils;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -12,6 +13,8 @@ import uk.org.tombolo.importer.Importer;
 import uk.org.tombolo.importer.utils.extraction.BlankCellException;
 import uk.org.tombolo.importer.utils.extraction.ExtractorException;
 import uk.org.tombolo.importer.utils.extraction.TimedValueExtractor;
+import uk.org.tombolo.importer.utils.extraction.UnknownAttributeLabelException;
+import uk.org.tombolo.importer.utils.extraction.UnknownSubjectLabelException;
 
 import java.io.File;
 import java.io.IOException;
@@ -31,32 +34,87 @@ public class ExcelUtils {
 		return WorkbookFactory.create(file);
 	}
 
-	public void extractAndSaveTimedValues(Sheet sheet, Importer importer, List<TimedValueExtractor> extractors){
-		int valueCount = 0;
-		List<TimedValue> timedValueBuffer = new ArrayList<>();
+	/**
+	 * Returns a reader streaming the rows of an xlsx workbook, rather than loading the whole workbook.
+	 */
+	public StreamingXlsxReader getStreamingReader(InputStream is) throws IOException, OpenXML4JException {
+		return new StreamingXlsxReader(is);
+	}
 
-		// Extract timed values
+	public StreamingXlsxReader getStreamingReader(File file) throws IOException, OpenXML4JException {
+		return new StreamingXlsxReader(file);
+	}
+
+	public void extractAndSaveTimedValues(Sheet sheet, Importer importer, List<TimedValueExtractor> extractors){
+		TimedValueBuffer buffer = new TimedValueBuffer(importer, extractors);
 		Iterator<Row> rowIterator = sheet.iterator();
 		while (rowIterator.hasNext()) {
-			Row row = rowIterator.next();
+			buffer.extract(SheetRow.of(rowIterator.next()));
+		}
+		buffer.flush();
+	}
+
+	/**
+	 * Extracts and saves the timed values of a sheet as its rows are read, so that only the current row is in memory.
+	 */
+	public void extractAndSaveTimedValues(StreamingXlsxReader reader, int sheetIndex, Importer importer,
+										  List<TimedValueExtractor> extractors) throws Exception {
+		TimedValueBuffer buffer = new TimedValueBuffer(importer, extractors);
+		reader.readSheet(sheetIndex, row -> {
+			buffer.extract(row);
+			return true;
+		});
+		buffer.flush();
+	}
+
+	public void extractAndSaveTimedValues(StreamingXlsxReader reader, String sheetName, Importer importer,
+										  List<TimedValueExtractor> extractors) throws Exception {
+		TimedValueBuffer buffer = new TimedValueBuffer(importer, extractors);
+		reader.readSheet(sheetName, row -> {
+			buffer.extract(row);
+			return true;
+		});
+		buffer.flush();
+	}
+
+	/**
+	 * Applies the extractors to rows and saves the extracted values whenever the buffer of the importer is full.
+	 */
+	private class TimedValueBuffer {
+		private final Importer importer;
+		private final List<TimedValueExtractor> extractors;
+		private final List<TimedValue> timedValueBuffer = new ArrayList<>();
+
+		private TimedValueBuffer(Importer importer, List<TimedValueExtractor> extractors) {
+			this.importer = importer;
+			this.extractors = extractors;
+			for (TimedValueExtractor extractor : extractors) {
+				extractor.setImportContext(importer.getImportContext());
+			}
+		}
+
+		private void extract(SheetRow row) {
 			for (TimedValueExtractor extractor : extractors) {
 				extractor.setRow(row);
 				try {
 					TimedValue timedValue = extractor.extract();
 					timedValueBuffer.add(timedValue);
-					valueCount++;
-					if (valueCount % importer.getTimedValueBufferSize() == 0) {
+					if (timedValueBuffer.size() >= importer.getTimedValueBufferSize()) {
 						// Buffer is full ... we write values to db
 						importer.saveAndClearTimedValueBuffer(timedValueBuffer);
 					}
 				}catch (BlankCellException e){
 					// We ignore this since there may be multiple blank cells in the data without having to worry
+				}catch (UnknownSubjectLabelException | UnknownAttributeLabelException e){
+					// Already reported to the import context, once for each label
 				}catch (ExtractorException e){
 					log.warn("Could not extract value: {}",e.getMessage());
 				}
 			}
 		}
-		importer.saveAndClearTimedValueBuffer(timedValueBuffer);
+
+		private void flush() {
+			importer.saveAndClearTimedValueBuffer(timedValueBuffer);
+		}
 	}
-	
 }
@@ -1,11 +1,10 @@
 package uk.org.tombolo.importer.utils;
 
-import javax.json.*;
+import javax.json.Json;
+import javax.json.stream.JsonParser;
 import java.io.*;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -65,6 +64,10 @@ import java.util.stream.Collectors;
  *            @Achieved                 [Yes]
  *
  * If there are multiple tags in the same section then there values will be appended in the single tag
+ *
+ * The document is read with the streaming parser of javax.json. getData keeps every section, while readSections and
+ * sectionIterator hand each section over as soon as it is complete and keep none, so that a large document can be
+ * read in constant memory. Both produce the same sections.
  */
 public class JSONReader {
 
@@ -80,9 +83,6 @@ public class JSONReader {
     private ArrayList<LinkedHashMap<String, List<String>>> flatJsonTree
             = new ArrayList<>();
 
-    private LinkedHashMap<String, List<String>> individualSectionOfTree
-            = new LinkedHashMap<>();
-
 
     /*
      *   Constructors to accept request in different formats
@@ -182,77 +182,142 @@ public class JSONReader {
 
     /*
      * The method is responsible for return the flat structure of JSON file to the caller
-     * It does it by passing the incoming stream to @method convertTreeToHashMap
+     * It does it by reading every section from @method sectionIterator
      * The method @return ArrayList of LinkedHashMap that contain the json file divided into sections
      */
 
     public ArrayList<LinkedHashMap<String, List<String>>> getData() {
 
-        JsonReader reader = Json.createReader(is);
-        JsonValue value = reader.read();
-        convertTreeToHashMap(value, EMPTY_KEY);
-        getFlatJsonTree().add(individualSectionOfTree);
-        setFlatJsonTree(flatJsonTree);
+        Iterator<LinkedHashMap<String, List<String>>> sections = sectionIterator();
+        while (sections.hasNext()) getFlatJsonTree().add(sections.next());
 
         return getFlatJsonTree();
     }
 
 
     /*
-     * The method implements a recursive approach in order to traverse the JSON file tree
-     * Its identifies different Json object types like an Object or Array and recursively calls
-     * itself until it finds a tag with a value and passes that data to @method createFlatStructure()
-     * @params value and key of @type JsonValue and String
+     * Passes every section to the handler as soon as it is complete, without keeping it.
+     * @params handler of @type SectionHandler
      */
 
-    private void convertTreeToHashMap(JsonValue value, String key) {
-
-        switch (value.getValueType()) {
-
-            case OBJECT:
-                JsonObject object = (JsonObject) value;
-                for (String k : object.keySet()) convertTreeToHashMap(object.get(k), k);
-                break;
-            case ARRAY:
-                JsonArray array = (JsonArray) value;
-                for (JsonValue j : array) convertTreeToHashMap(j, key);
-                break;
-            case STRING:
-                JsonString string = (JsonString) value;
-                if (key != null) createFlatStructure(key, string.getString());
-                break;
-            case NUMBER:
-                JsonNumber num = (JsonNumber) value;
-                if (key != null) createFlatStructure(key, num.toString());
-                break;
-            case NULL:
-                // Log the type of the object
-                break;
+    public void readSections(SectionHandler handler) throws Exception {
+        Iterator<LinkedHashMap<String, List<String>>> sections = sectionIterator();
+        while (sections.hasNext()) handler.handle(sections.next());
+    }
 
-        }
 
+    /*
+     * @Returns an iterator reading the sections from the stream as they are requested.
+     * The stream is closed once the last section has been read.
+     */
+
+    public Iterator<LinkedHashMap<String, List<String>>> sectionIterator() {
+        return new SectionIterator(Json.createParser(is));
+    }
+
+
+    public interface SectionHandler {
+        void handle(LinkedHashMap<String, List<String>> section) throws Exception;
     }
 
 
     /*
-     * Post receiving the value and key from @method convertTreeToHashMap()
-     * it keeps track of all the processed nodes and add new ones.
-     * @params key and value of @type String and String
+     * Walks the events of the parser, keeping track of the tag that a value belongs to.
+     * Values inside an array belong to the tag of the array, and values of an object to their own tags.
+     * Every value is passed to @method createFlatStructure(), which completes a section when the primary node repeats.
      */
 
-    private void createFlatStructure (String key, String value) {
+    private class SectionIterator implements Iterator<LinkedHashMap<String, List<String>>> {
+
+        private final JsonParser parser;
+
+        // The tags of the enclosing objects and arrays, which may be EMPTY_KEY
+        private final List<String> enclosingKeys = new ArrayList<>();
+
+        private String key = EMPTY_KEY;
+
+        private LinkedHashMap<String, List<String>> individualSectionOfTree = new LinkedHashMap<>();
+
+        private LinkedHashMap<String, List<String>> completedSection;
+
+        private boolean finished = false;
+
+        private SectionIterator(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (completedSection == null && !finished) readEvent();
+            return completedSection != null;
+        }
+
+        @Override
+        public LinkedHashMap<String, List<String>> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            LinkedHashMap<String, List<String>> section = completedSection;
+            completedSection = null;
+            return section;
+        }
+
+        private void readEvent() {
+
+            if (!parser.hasNext()) {
+                completedSection = individualSectionOfTree;
+                finished = true;
+                parser.close();
+                return;
+            }
+
+            switch (parser.next()) {
+
+                case KEY_NAME:
+                    key = parser.getString();
+                    break;
+                case START_OBJECT:
+                case START_ARRAY:
+                    enclosingKeys.add(key);
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    key = enclosingKeys.remove(enclosingKeys.size() - 1);
+                    break;
+                case VALUE_STRING:
+                    if (key != null) createFlatStructure(key, parser.getString());
+                    break;
+                case VALUE_NUMBER:
+                    if (key != null) createFlatStructure(key, parser.getBigDecimal().toString());
+                    break;
+                default:
+                    // Booleans and nulls are not kept
+                    break;
+
+            }
 
-        if (key.equalsIgnoreCase(getPrimaryNode())) {
-            getFlatJsonTree().add(individualSectionOfTree);
-            individualSectionOfTree = new LinkedHashMap<>();
         }
 
-        if (tags.size() > 0 && !tags.contains(key)) return;
-        if (!individualSectionOfTree.containsKey(key)) individualSectionOfTree.put(key, new ArrayList<>());
 
-        individualSectionOfTree.get(key).add(value);
+        /*
+         * Post receiving the value and key from @method readEvent()
+         * it keeps track of all the processed nodes and add new ones.
+         * @params key and value of @type String and String
+         */
+
+        private void createFlatStructure (String key, String value) {
+
+            if (key.equalsIgnoreCase(getPrimaryNode())) {
+                completedSection = individualSectionOfTree;
+                individualSectionOfTree = new LinkedHashMap<>();
+            }
+
+            if (tags.size() > 0 && !tags.contains(key)) return;
+            if (!individualSectionOfTree.containsKey(key)) individualSectionOfTree.put(key, new ArrayList<>());
 
-        if (primaryNode == null) setPrimaryNode(key);
+            individualSectionOfTree.get(key).add(value);
+
+            if (primaryNode == null) setPrimaryNode(key);
+
+        }
 
     }
 
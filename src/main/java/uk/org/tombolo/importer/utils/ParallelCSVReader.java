@@ -0,0 +1,301 @@
+package uk.org.tombolo.importer.utils;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.tombolo.core.utils.HibernateUtil;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelCSVReader.java
+ * Reads a CSV file in chunks of records that are parsed and converted on a pool of worker threads.
+ *
+ * The file is memory mapped and cut into chunks on the calling thread, at line feeds that are not within quotes, so
+ * quoted values may span lines. The chunks are decoded, parsed and converted to values on the workers, and handed to
+ * the consumer in file order on the calling thread, the single writer. Each chunk is converted with a session of its
+ * own, opened if the converter reads the database and closed with the chunk. The number of chunks in flight is bounded,
+ * so reading waits for writing when the database is the bottleneck and only the chunks in flight are on the heap,
+ * however large the file.
+ *
+ * The file must be in UTF-8, or in an encoding in which quotes, escapes and line feeds are single bytes that are never
+ * part of other characters. Records must end with a line feed, as with LF and CRLF line ends, or with the file.
+ * When the format has a header record it is read first, and when the format takes its header from the file, the
+ * records of every chunk are given that header. A header with repeated names, which the parser refuses, is skipped
+ * and the records are then read by index only.
+ */
+public class ParallelCSVReader {
+    private static final Logger log = LoggerFactory.getLogger(ParallelCSVReader.class);
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    // Headers and records are usually short, so the mapping of the first record of a file starts small
+    private static final int MIN_MAPPING_SIZE = 64 * 1024;
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final int threads;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Converts the records of a chunk, on the worker parsing it.
+     */
+    @FunctionalInterface
+    public interface RecordConverter<T> {
+        /**
+         * Adds the values of the record to the values of its chunk. The record number of the record counts from the
+         * start of its chunk; the chunk gives the number in the file.
+         */
+        void convert(CSVRecord record, List<T> values) throws Exception;
+    }
+
+    /**
+     * Consumes the converted chunks, in file order on the calling thread.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer<T> {
+        void accept(Chunk<T> chunk) throws Exception;
+    }
+
+    public ParallelCSVReader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelCSVReader(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the number of bytes after which a chunk ends with the record being read.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Reads the values of the first record of the file, such as the names in its header.
+     *
+     * @return the values, or an empty list if the file is empty
+     */
+    public static List<String> readHeader(File file, CSVFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long start = startOfRecords(channel);
+            if (start >= channel.size())
+                return new ArrayList<>();
+            return readRecord(mapRecords(channel, start, 0, format), format);
+        }
+    }
+
+    /**
+     * Reads the records of the file, converting them on the workers and passing them on to the consumer in order.
+     */
+    public <T> void read(File file, CSVFormat format, RecordConverter<T> converter, ChunkConsumer<T> consumer)
+            throws Exception {
+        int maxInFlight = threads * CHUNKS_IN_FLIGHT_PER_THREAD;
+        Deque<Future<Chunk<T>>> parsing = new ArrayDeque<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = startOfRecords(channel);
+
+            // Chunks start with a record, not with the header, and the parser counts the header as a record
+            CSVFormat chunkFormat = format.withSkipHeaderRecord(false);
+            long recordNumber = 0;
+            if (hasHeaderRecord(format) && start < size) {
+                ByteBuffer header = mapRecords(channel, start, 0, format);
+                start += header.remaining();
+                recordNumber++;
+                List<String> names = readRecord(header, format);
+                if (format.getHeader().length == 0)
+                    chunkFormat = new HashSet<>(names).size() == names.size()
+                            ? chunkFormat.withHeader(names.toArray(new String[0]))
+                            : chunkFormat.withHeader((String[]) null);
+            }
+
+            int chunkCount = 0;
+            while (start < size) {
+                ByteBuffer bytes = mapRecords(channel, start, chunkSize, format);
+                start += bytes.remaining();
+                CSVFormat parseFormat = chunkFormat;
+                parsing.add(pool.submit(() -> parse(bytes, parseFormat, converter)));
+                chunkCount++;
+
+                if (parsing.size() >= maxInFlight)
+                    recordNumber = consume(parsing.poll(), recordNumber, consumer);
+            }
+            while (!parsing.isEmpty())
+                recordNumber = consume(parsing.poll(), recordNumber, consumer);
+            log.info("Read {} records of {} in {} chunks on {} threads",
+                    recordNumber, file.getName(), chunkCount, threads);
+        } finally {
+            parsing.clear();
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> long consume(Future<Chunk<T>> future, long recordNumber, ChunkConsumer<T> consumer)
+            throws Exception {
+        Chunk<T> chunk = await(future);
+        chunk.firstRecordNumber = recordNumber + 1;
+        consumer.accept(chunk);
+        return recordNumber + chunk.recordCount;
+    }
+
+    private static <T> Chunk<T> parse(ByteBuffer bytes, CSVFormat format, RecordConverter<T> converter)
+            throws Exception {
+        // Converters may look subjects up, so each chunk has a session of its own, closed once the chunk is parsed,
+        // rather than leaving a session and its cache on the worker
+        Exception[] failure = {null};
+        Chunk<T> chunk = HibernateUtil.withThreadSession(() -> {
+            try {
+                return convert(bytes, format, converter);
+            } catch (Exception e) {
+                failure[0] = e;
+                return null;
+            }
+        });
+        if (failure[0] != null)
+            throw failure[0];
+        return chunk;
+    }
+
+    private static <T> Chunk<T> convert(ByteBuffer bytes, CSVFormat format, RecordConverter<T> converter)
+            throws Exception {
+        List<T> values = new ArrayList<>();
+        int recordCount = 0;
+        try (CSVParser parser = new CSVParser(reader(bytes), format)) {
+            for (CSVRecord record : parser) {
+                converter.convert(record, values);
+                recordCount++;
+            }
+        }
+        return new Chunk<>(values, recordCount);
+    }
+
+    private static List<String> readRecord(ByteBuffer bytes, CSVFormat format) throws IOException {
+        List<String> values = new ArrayList<>();
+        try (CSVParser parser = new CSVParser(reader(bytes), format.withHeader((String[]) null))) {
+            for (CSVRecord record : parser) {
+                record.forEach(values::add);
+                break;
+            }
+        }
+        return values;
+    }
+
+    private static CharArrayReader reader(ByteBuffer bytes) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes.duplicate());
+        return new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+    }
+
+    private static boolean hasHeaderRecord(CSVFormat format) {
+        return format.getHeader() != null && (format.getHeader().length == 0 || format.getSkipHeaderRecord());
+    }
+
+    // Skips the byte order mark some tools write at the start of UTF-8 files
+    private static long startOfRecords(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(UTF8_BOM.length);
+        channel.read(start, 0);
+        return Arrays.equals(start.array(), UTF8_BOM) ? UTF8_BOM.length : 0;
+    }
+
+    // Maps the records from the start up to the end of the first record that ends at least minLength bytes after it,
+    // mapping more of the file while that record goes on
+    private static ByteBuffer mapRecords(FileChannel channel, long start, int minLength, CSVFormat format)
+            throws IOException {
+        long remaining = channel.size() - start;
+        long length = Math.min(remaining, Math.max(MIN_MAPPING_SIZE, 2L * minLength));
+        while (true) {
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Record at byte " + start + " is too long to be read");
+            ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            int end = findRecordEnd(mapping, minLength, format.getQuoteCharacter(), format.getEscapeCharacter());
+            if (end >= 0 || length == remaining) {
+                mapping.limit(end >= 0 ? end : (int) length);
+                return mapping;
+            }
+            length = Math.min(remaining, 2 * length);
+        }
+    }
+
+    /**
+     * Returns the end of the first record that ends at least minLength bytes into the buffer, just after its line
+     * feed, or -1 if there is none. The buffer must start with a record.
+     */
+    static int findRecordEnd(ByteBuffer buffer, int minLength, Character quote, Character escape) {
+        int quoteByte = quote == null ? -1 : quote;
+        int escapeByte = escape == null ? -1 : escape;
+        boolean quoted = false;
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            int b = buffer.get(i);
+            if (b == escapeByte) {
+                i++;
+            } else if (b == quoteByte) {
+                // A doubled quote within a quoted value toggles twice, so it leaves the value quoted
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted && i >= minLength - 1) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new Error("Worker failed while reading CSV records", e.getCause());
+        }
+    }
+
+    /**
+     * The values converted from a chunk of records.
+     */
+    public static class Chunk<T> {
+        private final List<T> values;
+        private final int recordCount;
+        private long firstRecordNumber;
+
+        private Chunk(List<T> values, int recordCount) {
+            this.values = values;
+            this.recordCount = recordCount;
+        }
+
+        public List<T> getValues() {
+            return values;
+        }
+
+        /**
+         * Returns the number of the first record of the chunk in the file, counting the header record as the parser
+         * does.
+         */
+        public long getFirstRecordNumber() {
+            return firstRecordNumber;
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package uk.org.tombolo.importer.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * SheetRow.java
+ * A row of a spreadsheet, as read by StreamingXlsxReader or taken from a POI workbook.
+ *
+ * Cells are addressed by their 0-based column. Like POI cells, asking for the value of a cell as the wrong type throws
+ * an IllegalStateException. Formula cells have the type of their cached result.
+ */
+public interface SheetRow {
+
+    /**
+     * Returns the 0-based index of the row in its sheet.
+     */
+    int getRowNum();
+
+    /**
+     * Returns one more than the index of the last column with a cell, or -1 if the row has no cells, as Row does.
+     */
+    int getLastCellNum();
+
+    /**
+     * Returns the type of the cell in the given column, or null if there is no cell.
+     */
+    CellType getCellType(int column);
+
+    boolean getBooleanCellValue(int column);
+
+    double getNumericCellValue(int column);
+
+    String getStringCellValue(int column);
+
+    /**
+     * Returns the value of the cell as Cell.toString does, or null if there is no cell.
+     * Streamed formula cells give their cached result rather than their formula.
+     */
+    String getCellText(int column);
+
+    /**
+     * Returns the value of the cell formatted as it is displayed, or an empty string if there is no cell.
+     * Streamed numbers are formatted from their decimal value, so halves can round differently than in a workbook.
+     */
+    String getFormattedCellValue(int column);
+
+    /**
+     * Wraps a row of a POI workbook.
+     */
+    static SheetRow of(Row row) {
+        return row == null ? null : new WorkbookRow(row);
+    }
+
+    class WorkbookRow implements SheetRow {
+        // Data formatters are not thread safe
+        private static final ThreadLocal<DataFormatter> DATA_FORMATTER = ThreadLocal.withInitial(DataFormatter::new);
+        private final Row row;
+
+        private WorkbookRow(Row row) {
+            this.row = row;
+        }
+
+        @Override
+        public int getRowNum() {
+            return row.getRowNum();
+        }
+
+        @Override
+        public int getLastCellNum() {
+            return row.getLastCellNum();
+        }
+
+        @Override
+        public CellType getCellType(int column) {
+            Cell cell = row.getCell(column);
+            if (cell == null)
+                return null;
+            CellType type = cell.getCellTypeEnum();
+            return type == CellType.FORMULA ? cell.getCachedFormulaResultTypeEnum() : type;
+        }
+
+        @Override
+        public boolean getBooleanCellValue(int column) {
+            return cell(column).getBooleanCellValue();
+        }
+
+        @Override
+        public double getNumericCellValue(int column) {
+            return cell(column).getNumericCellValue();
+        }
+
+        @Override
+        public String getStringCellValue(int column) {
+            return cell(column).getStringCellValue();
+        }
+
+        @Override
+        public String getCellText(int column) {
+            Cell cell = row.getCell(column);
+            return cell == null ? null : cell.toString();
+        }
+
+        @Override
+        public String getFormattedCellValue(int column) {
+            return DATA_FORMATTER.get().formatCellValue(row.getCell(column));
+        }
+
+        private Cell cell(int column) {
+            Cell cell = row.getCell(column);
+            if (cell == null)
+                throw new IllegalStateException("No cell in column " + column);
+            return cell;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package uk.org.tombolo.importer.utils;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.LocaleUtil;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * StreamingXlsxReader.java
+ * Reads the rows of the sheets of an xlsx workbook one at a time, with the XSSF event model.
+ *
+ * Opening a workbook with WorkbookFactory builds every cell of every sheet in memory before the first one can be read.
+ * Here the XML of a sheet is parsed as it is read and each row is handed over as soon as it is complete, so only the
+ * shared strings, the styles and the current row are kept in memory.
+ *
+ * Rows are read in the order of the file, so rows needed to make sense of the ones that follow, such as headers, must
+ * be kept by the handler. Formula cells are read as their cached result. Dates use the 1900 date system.
+ */
+public class StreamingXlsxReader implements Closeable {
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final DataFormatter dataFormatter = new DataFormatter();
+
+    /**
+     * Handles the rows of a sheet as they are read.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        /**
+         * @return false to stop reading the sheet
+         */
+        boolean handle(SheetRow row) throws Exception;
+    }
+
+    public StreamingXlsxReader(File file) throws IOException, OpenXML4JException {
+        this(OPCPackage.open(file, PackageAccess.READ));
+    }
+
+    /**
+     * Reads a workbook from a stream. The compressed workbook is kept in memory, so prefer a file where there is one.
+     */
+    public StreamingXlsxReader(InputStream is) throws IOException, OpenXML4JException {
+        this(OPCPackage.open(is));
+    }
+
+    private StreamingXlsxReader(OPCPackage pkg) throws IOException, OpenXML4JException {
+        this.pkg = pkg;
+        try {
+            reader = new XSSFReader(pkg);
+            sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            styles = reader.getStylesTable();
+        } catch (SAXException e) {
+            pkg.revert();
+            throw new IOException("Could not read shared strings", e);
+        } catch (IOException | OpenXML4JException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of the sheets, in the order of the workbook.
+     */
+    public List<String> getSheetNames() throws IOException, OpenXML4JException {
+        List<String> names = new ArrayList<>();
+        Set<PackagePartName> parts = new HashSet<>();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            sheets.next().close();
+            if (parts.add(sheets.getSheetPart().getPartName()))
+                names.add(sheets.getSheetName());
+        }
+        return names;
+    }
+
+    /**
+     * Reads the rows of the sheet at the given 0-based index.
+     */
+    public void readSheet(int index, RowHandler handler) throws Exception {
+        try (InputStream sheet = openSheet(index, null)) {
+            if (sheet == null)
+                throw new IllegalArgumentException("Sheet index (" + index + ") is out of range");
+            read(sheet, handler);
+        }
+    }
+
+    /**
+     * Reads the rows of the sheet with the given name.
+     */
+    public void readSheet(String name, RowHandler handler) throws Exception {
+        try (InputStream sheet = openSheet(-1, name)) {
+            if (sheet == null)
+                throw new IllegalArgumentException("Sheet " + name + " does not exist");
+            read(sheet, handler);
+        }
+    }
+
+    // Opens the sheet with the given index, or name if there is one, or returns null if there is no such sheet.
+    // XSSFReader lists the sheets of workbooks written by POI twice, so sheets are told apart by their part.
+    private InputStream openSheet(int index, String name) throws IOException, OpenXML4JException {
+        Set<PackagePartName> parts = new HashSet<>();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            if (parts.add(sheets.getSheetPart().getPartName())
+                    && (name == null ? parts.size() - 1 == index : sheets.getSheetName().equals(name)))
+                return sheet;
+            sheet.close();
+        }
+        return null;
+    }
+
+    private void read(InputStream sheet, RowHandler handler) throws Exception {
+        XMLReader parser;
+        try {
+            parser = SAXHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Could not create XML parser", e);
+        }
+        parser.setContentHandler(new SheetHandler(handler));
+        try {
+            parser.parse(new InputSource(sheet));
+        } catch (StopReading e) {
+            // The handler has read all the rows it needs
+        } catch (HandlerException e) {
+            throw e.getException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The package is only read, so there is nothing to save
+        pkg.revert();
+    }
+
+    /**
+     * Builds the rows of a sheet from its XML and hands them to the row handler.
+     */
+    private class SheetHandler extends DefaultHandler {
+        private final RowHandler handler;
+        private StreamingRow row;
+        private int rowNum = -1;
+        private int column;
+        private String type;
+        private String style;
+        private boolean inValue;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+        private final StringBuilder value = new StringBuilder();
+
+        private SheetHandler(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+                    row = new StreamingRow(rowNum);
+                    column = -1;
+                    break;
+                case "c":
+                    String reference = attributes.getValue("r");
+                    column = reference == null ? column + 1 : new CellReference(reference).getCol();
+                    type = attributes.getValue("t");
+                    style = attributes.getValue("s");
+                    value.setLength(0);
+                    break;
+                case "v":
+                    inValue = true;
+                    break;
+                case "is":
+                    inInlineString = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inValue = inInlineString && !inPhonetic;
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue)
+                value.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    addCell();
+                    break;
+                case "row":
+                    boolean more;
+                    try {
+                        more = handler.handle(row);
+                    } catch (Exception e) {
+                        throw new HandlerException(e);
+                    }
+                    row = null;
+                    if (!more)
+                        throw new StopReading();
+                    break;
+            }
+        }
+
+        private void addCell() {
+            String text = value.toString();
+            if (type == null || type.equals("n")) {
+                if (text.isEmpty()) {
+                    row.set(column, CellType.BLANK, null, null);
+                } else {
+                    row.set(column, CellType.NUMERIC, Double.parseDouble(text), getStyle());
+                }
+                return;
+            }
+            switch (type) {
+                case "s":
+                    if (text.isEmpty()) {
+                        row.set(column, CellType.BLANK, null, null);
+                    } else {
+                        row.set(column, CellType.STRING, sharedStrings.getEntryAt(Integer.parseInt(text)), null);
+                    }
+                    break;
+                case "inlineStr":
+                case "str":
+                    row.set(column, CellType.STRING, text, null);
+                    break;
+                case "b":
+                    row.set(column, CellType.BOOLEAN, "1".equals(text), null);
+                    break;
+                case "e":
+                    row.set(column, CellType.ERROR, text, null);
+                    break;
+                default:
+                    row.set(column, CellType.STRING, text, null);
+            }
+        }
+
+        private XSSFCellStyle getStyle() {
+            if (style != null)
+                return styles.getStyleAt(Integer.parseInt(style));
+            return styles.getNumCellStyles() > 0 ? styles.getStyleAt(0) : null;
+        }
+    }
+
+    /**
+     * A row read from the XML of a sheet, with the cells it has.
+     */
+    private class StreamingRow implements SheetRow {
+        private final int rowNum;
+        private CellType[] types = new CellType[16];
+        private Object[] values = new Object[16];
+        private XSSFCellStyle[] cellStyles = new XSSFCellStyle[16];
+        private int lastCellNum = -1;
+
+        private StreamingRow(int rowNum) {
+            this.rowNum = rowNum;
+        }
+
+        private void set(int column, CellType type, Object value, XSSFCellStyle style) {
+            if (column >= types.length) {
+                int length = Math.max(column + 1, types.length * 2);
+                types = Arrays.copyOf(types, length);
+                values = Arrays.copyOf(values, length);
+                cellStyles = Arrays.copyOf(cellStyles, length);
+            }
+            types[column] = type;
+            values[column] = value;
+            cellStyles[column] = style;
+            lastCellNum = Math.max(lastCellNum, column + 1);
+        }
+
+        @Override
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        @Override
+        public int getLastCellNum() {
+            return lastCellNum;
+        }
+
+        @Override
+        public CellType getCellType(int column) {
+            return column >= 0 && column < types.length ? types[column] : null;
+        }
+
+        @Override
+        public boolean getBooleanCellValue(int column) {
+            CellType type = getCellType(column);
+            if (type == CellType.BLANK)
+                return false;
+            checkType(column, CellType.BOOLEAN);
+            return (Boolean) values[column];
+        }
+
+        @Override
+        public double getNumericCellValue(int column) {
+            CellType type = getCellType(column);
+            if (type == CellType.BLANK)
+                return 0.0;
+            checkType(column, CellType.NUMERIC);
+            return (Double) values[column];
+        }
+
+        @Override
+        public String getStringCellValue(int column) {
+            CellType type = getCellType(column);
+            if (type == CellType.BLANK)
+                return "";
+            checkType(column, CellType.STRING);
+            return (String) values[column];
+        }
+
+        @Override
+        public String getCellText(int column) {
+            CellType type = getCellType(column);
+            if (type == null)
+                return null;
+            switch (type) {
+                case BLANK:
+                    return "";
+                case BOOLEAN:
+                    return (Boolean) values[column] ? "TRUE" : "FALSE";
+                case NUMERIC:
+                    double number = (Double) values[column];
+                    if (isDate(column)) {
+                        DateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyyy", LocaleUtil.getUserLocale());
+                        dateFormat.setTimeZone(LocaleUtil.getUserTimeZone());
+                        return dateFormat.format(DateUtil.getJavaDate(number));
+                    }
+                    return Double.toString(number);
+                default:
+                    return (String) values[column];
+            }
+        }
+
+        @Override
+        public String getFormattedCellValue(int column) {
+            CellType type = getCellType(column);
+            if (type == null || type == CellType.BLANK)
+                return "";
+            switch (type) {
+                case BOOLEAN:
+                    return (Boolean) values[column] ? "TRUE" : "FALSE";
+                case NUMERIC:
+                    XSSFCellStyle style = cellStyles[column];
+                    if (style == null)
+                        return dataFormatter.formatRawCellContents((Double) values[column], -1, "General");
+                    return dataFormatter.formatRawCellContents(
+                            (Double) values[column], style.getDataFormat(), style.getDataFormatString());
+                default:
+                    return (String) values[column];
+            }
+        }
+
+        private boolean isDate(int column) {
+            XSSFCellStyle style = cellStyles[column];
+            return style != null
+                    && DateUtil.isValidExcelDate((Double) values[column])
+                    && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+        }
+
+        private void checkType(int column, CellType expected) {
+            CellType type = getCellType(column);
+            if (type == null)
+                throw new IllegalStateException("No cell in column " + column);
+            if (type != expected)
+                throw new IllegalStateException("Cannot get a " + expected + " value from a " + type + " cell");
+        }
+    }
+
+    /**
+     * Stops the parsing of a sheet once the handler needs no more rows.
+     */
+    private static class StopReading extends SAXException {
+    }
+
+    /**
+     * Carries an exception thrown by the row handler out of the parser.
+     */
+    private static class HandlerException extends SAXException {
+        private HandlerException(Exception e) {
+            super(e);
+        }
+    }
+}
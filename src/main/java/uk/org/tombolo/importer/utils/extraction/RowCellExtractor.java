@@ -2,11 +2,12 @@ package uk.org.tombolo.importer.utils.extraction;
 
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
+import uk.org.tombolo.importer.utils.SheetRow;
 
 public class RowCellExtractor implements SingleValueExtractor {
     private int columnId;
     private CellType cellType;
-    private Row row;
+    private SheetRow row;
 
     public RowCellExtractor(int columnId, CellType cellType){
         this.columnId = columnId;
@@ -14,6 +15,10 @@ public class RowCellExtractor implements SingleValueExtractor {
     }
 
     public void setRow(Row row){
+        this.row = SheetRow.of(row);
+    }
+
+    public void setRow(SheetRow row){
         this.row = row;
     }
 
@@ -21,18 +26,18 @@ public class RowCellExtractor implements SingleValueExtractor {
     public String extract() throws ExtractorException {
         if (row == null)
             throw new BlankCellException("Empty row");
-        if (row.getCell(columnId) == null)
+        if (row.getCellType(columnId) == null)
             throw new ExtractorException("Column with index "+columnId+" does not exit");
-        if (row.getCell(columnId).getCellTypeEnum() == CellType.BLANK)
+        if (row.getCellType(columnId) == CellType.BLANK)
             throw new BlankCellException("Empty cell value");
         try{
             switch (cellType) {
                 case BOOLEAN:
-                    return String.valueOf(row.getCell(columnId).getBooleanCellValue());
+                    return String.valueOf(row.getBooleanCellValue(columnId));
                 case NUMERIC:
-                    return String.valueOf(row.getCell(columnId).getNumericCellValue());
+                    return String.valueOf(row.getNumericCellValue(columnId));
                 case STRING:
-                    return String.valueOf(row.getCell(columnId).getStringCellValue());
+                    return String.valueOf(row.getStringCellValue(columnId));
                 default:
                     throw new ExtractorException("Unhandled cell type: "+cellType);
             }
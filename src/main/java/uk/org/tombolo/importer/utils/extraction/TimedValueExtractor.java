@@ -7,7 +7,9 @@ import uk.org.tombolo.core.*;
 import uk.org.tombolo.core.utils.AttributeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
+import uk.org.tombolo.importer.ImportContext;
 import uk.org.tombolo.importer.ParsingException;
+import uk.org.tombolo.importer.utils.SheetRow;
 
 import java.time.LocalDateTime;
 
@@ -20,6 +22,7 @@ public class TimedValueExtractor {
     private SingleValueExtractor attributeLabelExtractor;
     private SingleValueExtractor timestampExtractor;
     private SingleValueExtractor valueExtractor;
+    private ImportContext importContext;
 
     public TimedValueExtractor(
             Provider provider,
@@ -36,13 +39,33 @@ public class TimedValueExtractor {
         this.valueExtractor = valueExtractor;
     }
 
+    /**
+     * Resolves subjects and attributes through the context of the import, rather than querying them for every value.
+     * Unknown subjects and attributes are then reported to the context.
+     */
+    public void setImportContext(ImportContext importContext) {
+        this.importContext = importContext;
+    }
+
     public TimedValue extract() throws ExtractorException {
-        Subject subject = SubjectUtils.getSubjectByTypeAndLabel(subjectType, subjectLabelExtractor.extract());
-        if (subject == null)
-            throw new UnknownSubjectLabelException("Unknown subject: "+subjectLabelExtractor.extract()+"("+subjectType.getLabel()+")");
-        Attribute attribute = AttributeUtils.getByProviderAndLabel(provider, attributeLabelExtractor.extract());
-        if (attribute == null)
-            throw new ExtractorException("Unknown attribute: "+attributeLabelExtractor.extract());
+        String subjectLabel = subjectLabelExtractor.extract();
+        Subject subject = importContext == null
+                ? SubjectUtils.getSubjectByTypeAndLabel(subjectType, subjectLabel)
+                : importContext.getSubject(subjectType, subjectLabel);
+        if (subject == null) {
+            if (importContext != null)
+                importContext.reportUnknownSubject(subjectType, subjectLabel);
+            throw new UnknownSubjectLabelException("Unknown subject: "+subjectLabel+"("+subjectType.getLabel()+")");
+        }
+        String attributeLabel = attributeLabelExtractor.extract();
+        Attribute attribute = importContext == null
+                ? AttributeUtils.getByProviderAndLabel(provider, attributeLabel)
+                : importContext.getAttribute(provider, attributeLabel);
+        if (attribute == null) {
+            if (importContext != null)
+                importContext.reportUnknownAttribute(provider, attributeLabel);
+            throw new UnknownAttributeLabelException("Unknown attribute: "+attributeLabel);
+        }
         LocalDateTime timestamp;
         try {
             timestamp = TimedValueUtils.parseTimestampString(timestampExtractor.extract());
@@ -72,6 +95,10 @@ public class TimedValueExtractor {
     }
 
     public void setRow(Row row){
+        setRow(SheetRow.of(row));
+    }
+
+    public void setRow(SheetRow row){
         if (subjectLabelExtractor instanceof RowCellExtractor)
             ((RowCellExtractor) subjectLabelExtractor).setRow(row);
         if (attributeLabelExtractor instanceof RowCellExtractor)
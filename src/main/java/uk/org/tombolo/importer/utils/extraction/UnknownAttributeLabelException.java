@@ -0,0 +1,19 @@
+package uk.org.tombolo.importer.utils.extraction;
+
+public class UnknownAttributeLabelException extends ExtractorException {
+
+    public UnknownAttributeLabelException() { }
+
+    public UnknownAttributeLabelException(String message) {
+        super (message);
+    }
+
+    public UnknownAttributeLabelException(Throwable cause) {
+        super (cause);
+    }
+
+    public UnknownAttributeLabelException(String message, Throwable cause) {
+        super (message, cause);
+    }
+
+}
@@ -8,6 +8,12 @@ public class DataExportRecipe {
 	// FIXME: We could include a syntactic-sugar such as "cvs", and "geojson" and then map that to class-name
 	String exporter;
 	Boolean timeStamp;
+	// Number of worker threads evaluating the fields during the export
+	Integer threads;
+	// Number of threads importing independent datasources concurrently
+	Integer importThreads;
+	// Whether to answer spatial queries of the fields from in-memory indexes rather than the database
+	Boolean spatialIndex;
 
 	public DatasetRecipe getDataset() {
 		return dataset;
@@ -28,4 +34,16 @@ public class DataExportRecipe {
 	public Boolean getTimeStamp() {
 		return timeStamp;
 	}
+
+	public Integer getThreads() {
+		return threads;
+	}
+
+	public Integer getImportThreads() {
+		return importThreads;
+	}
+
+	public Boolean getSpatialIndex() {
+		return spatialIndex;
+	}
 }
@@ -1,10 +1,18 @@
 package uk.org.tombolo.recipe;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import uk.org.tombolo.field.Field;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 public class FieldRecipe {
     private String fieldClass;
     private String json;
+    private transient String identity;
 
     public FieldRecipe(String fieldClass, String json){
         this.fieldClass = fieldClass;
@@ -12,6 +20,34 @@ public class FieldRecipe {
     }
 
     public Field toField() throws ClassNotFoundException {
-        return (Field) RecipeDeserializer.fromJson(json, Class.forName(fieldClass));
+        Field field = (Field) RecipeDeserializer.fromJson(json, Class.forName(fieldClass));
+        field.setIdentity(getIdentity());
+        return field;
+    }
+
+    /**
+     * Returns a string that is equal for recipes describing the same field, whatever the order of their keys.
+     */
+    public String getIdentity() {
+        if (null == identity)
+            identity = fieldClass + "\t" + canonicalize(new JsonParser().parse(json));
+        return identity;
+    }
+
+    private static JsonElement canonicalize(JsonElement element) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                sorted.put(entry.getKey(), canonicalize(entry.getValue()));
+            }
+            JsonObject canonical = new JsonObject();
+            sorted.forEach(canonical::add);
+            return canonical;
+        } else if (element.isJsonArray()) {
+            JsonArray canonical = new JsonArray();
+            element.getAsJsonArray().forEach(child -> canonical.add(canonicalize(child)));
+            return canonical;
+        }
+        return element;
     }
 }
@@ -13,6 +13,9 @@ drop sequence if exists attribute_id_sequence;
 drop table if exists provider;
 
 drop table if exists database_journal;
+drop table if exists import_checkpoint;
+drop table if exists timed_value_written;
+drop table if exists fixed_value_written;
 drop sequence if exists database_journal_id_sequence;
 
 -- Provider
@@ -81,6 +84,34 @@ create table database_journal (
 	key			TEXT NOT NULL
 );
 
+-- Import Checkpoint
+create table import_checkpoint (
+	class_name	TEXT NOT NULL,
+	key			TEXT NOT NULL,
+	checkpoint	TEXT NOT NULL,
+	PRIMARY KEY(class_name,key)
+);
+
+-- Keys of the values written by differential imports, by journal entry, to find the values gone from their data sources
+create table timed_value_written (
+	run				TEXT NOT NULL,
+	subject_id		INTEGER NOT NULL,
+	attribute_id	INTEGER NOT NULL,
+	timestamp		TIMESTAMP WITH TIME ZONE NOT NULL,
+	current			BOOLEAN NOT NULL,
+	PRIMARY KEY(run,subject_id,attribute_id,timestamp)
+);
+create index timed_value_written_key on timed_value_written (subject_id, attribute_id, timestamp);
+
+create table fixed_value_written (
+	run				TEXT NOT NULL,
+	subject_id		INTEGER NOT NULL,
+	attribute_id	INTEGER NOT NULL,
+	current			BOOLEAN NOT NULL,
+	PRIMARY KEY(run,subject_id,attribute_id)
+);
+create index fixed_value_written_key on fixed_value_written (subject_id, attribute_id);
+
 -- Insert default provider
 insert into provider(label, name) values
 ('default_provider_label', 'default_provider_name');
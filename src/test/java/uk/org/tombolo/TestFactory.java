@@ -8,7 +8,10 @@ import uk.org.tombolo.core.utils.*;
 import uk.org.tombolo.importer.ons.OaImporter;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * TestFactory.java
@@ -206,4 +209,80 @@ public final class TestFactory {
         SubjectUtils.save(Collections.singletonList(subject));
         return subject;
     }
+
+    /**
+     * buildSyntheticSubjects
+     * Builds, without persisting, subjects with ids from 1 to count, laid out as unit squares on a grid.
+     * Useful when a large number of subjects is needed without a database.
+     * @param subjectType
+     * @param count The number of subjects
+     * @return The subjects, labelled synthetic0 to synthetic(count - 1)
+     */
+    public static List<Subject> buildSyntheticSubjects(SubjectType subjectType, int count) {
+        List<Subject> subjects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Subject subject = makeSyntheticSubject(subjectType, "synthetic", i, count);
+            subject.setId(i + 1);
+            subjects.add(subject);
+        }
+        return subjects;
+    }
+
+    /**
+     * makeSyntheticSubjects
+     * Builds and persists subjects laid out as unit squares on a grid.
+     * @param subjectType
+     * @param labelPrefix The prefix of the labels, which end with the index of the subject
+     * @param count The number of subjects
+     * @return The persisted subjects
+     */
+    public static List<Subject> makeSyntheticSubjects(SubjectType subjectType, String labelPrefix, int count) {
+        List<Subject> subjects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            subjects.add(makeSyntheticSubject(subjectType, labelPrefix, i, count));
+        }
+        SubjectUtils.save(subjects);
+        return subjects;
+    }
+
+    private static Subject makeSyntheticSubject(SubjectType subjectType, String labelPrefix, int index, int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        Geometry square = makeSquareGeometry((double) (index % columns), (double) (index / columns), 1d);
+        return new Subject(subjectType, labelPrefix + index, labelPrefix + " " + index, square);
+    }
+
+    /**
+     * buildSyntheticTimedValues
+     * Builds, without persisting, timed values for every subject at yearly timestamps starting from {@link #TIMESTAMP}.
+     * The values are random but the same for the same seed.
+     * @param subjects
+     * @param attribute
+     * @param timestampsPerSubject The number of values for each subject
+     * @param seed The seed of the random values
+     * @return The timed values
+     */
+    public static List<TimedValue> buildSyntheticTimedValues(List<Subject> subjects, Attribute attribute,
+                                                             int timestampsPerSubject, long seed) {
+        Random random = new Random(seed);
+        LocalDateTime start = LocalDateTime.parse(TIMESTAMP);
+        List<TimedValue> timedValues = new ArrayList<>(subjects.size() * timestampsPerSubject);
+        for (Subject subject : subjects) {
+            for (int i = 0; i < timestampsPerSubject; i++) {
+                timedValues.add(new TimedValue(subject, attribute, start.plusYears(i), random.nextDouble() * 1000d));
+            }
+        }
+        return timedValues;
+    }
+
+    /**
+     * makeSyntheticTimedValues
+     * Builds and persists timed values as {@link #buildSyntheticTimedValues} does.
+     * @return The persisted timed values
+     */
+    public static List<TimedValue> makeSyntheticTimedValues(List<Subject> subjects, Attribute attribute,
+                                                            int timestampsPerSubject, long seed) {
+        List<TimedValue> timedValues = buildSyntheticTimedValues(subjects, attribute, timestampsPerSubject, seed);
+        TimedValueUtils.save(timedValues);
+        return timedValues;
+    }
 }
@@ -5,6 +5,8 @@ import uk.org.tombolo.AbstractTest;
 import uk.org.tombolo.core.DatabaseJournalEntry;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 
 public class DatabaseJournalTest extends AbstractTest {
     @Test
@@ -24,4 +26,49 @@ public class DatabaseJournalTest extends AbstractTest {
         DatabaseJournal.addJournalEntry(new DatabaseJournalEntry("com.example.Importer", "hello"));
         assertEquals(true, DatabaseJournal.journalHasEntry(new DatabaseJournalEntry("com.example.Importer", "hello")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDataVersionChangesWithNewEntry() throws Exception {
+        String version = DatabaseJournal.getDataVersion();
+        assertEquals(version, DatabaseJournal.getDataVersion());
+
+        DatabaseJournal.addJournalEntry(new DatabaseJournalEntry("com.example.Importer", "hello"));
+        assertNotEquals(version, DatabaseJournal.getDataVersion());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        DatabaseJournalEntry entry = new DatabaseJournalEntry("com.example.Importer", "hello");
+        assertNull(DatabaseJournal.getCheckpoint(entry));
+
+        DatabaseJournal.saveCheckpoint(entry, "row 100");
+        DatabaseJournal.saveCheckpoint(entry, "row 200");
+        assertEquals("row 200", DatabaseJournal.getCheckpoint(entry));
+        assertNull(DatabaseJournal.getCheckpoint(new DatabaseJournalEntry("com.example.Importer", "goodbye")));
+    }
+
+    @Test
+    public void testCheckpointClearedWithNewEntry() throws Exception {
+        DatabaseJournalEntry entry = new DatabaseJournalEntry("com.example.Importer", "hello");
+        DatabaseJournal.saveCheckpoint(entry, "row 100");
+
+        DatabaseJournal.addJournalEntry(entry);
+        assertNull(DatabaseJournal.getCheckpoint(entry));
+    }
+
+    @Test
+    public void testCheckpointTableCreatedWhenMissing() throws Exception {
+        // As in a database created before checkpoints existed
+        HibernateUtil.withTransaction(session -> {
+            session.createNativeQuery("drop table import_checkpoint").executeUpdate();
+        });
+        DatabaseJournal.importTablesCreated = false;
+
+        DatabaseJournalEntry entry = new DatabaseJournalEntry("com.example.Importer", "hello");
+        assertNull(DatabaseJournal.getCheckpoint(entry));
+        DatabaseJournal.saveCheckpoint(entry, "row 100");
+        assertEquals("row 100", DatabaseJournal.getCheckpoint(entry));
+        DatabaseJournal.addJournalEntry(entry);
+        assertNull(DatabaseJournal.getCheckpoint(entry));
+    }
+}
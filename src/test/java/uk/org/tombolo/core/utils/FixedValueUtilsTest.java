@@ -38,4 +38,35 @@ public class FixedValueUtilsTest extends AbstractTest {
                 fixedValue2,
                 FixedValueUtils.getBySubjectAndAttribute(subject, attribute2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSaveReplacesExistingValue() throws Exception {
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+        Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attrLabel");
+        FixedValueUtils.save(new FixedValue(subject, attribute, "one"));
+        FixedValueUtils.save(new FixedValue(subject, attribute, "two"));
+        assertEquals("two", FixedValueUtils.getBySubjectAndAttribute(subject, attribute).getValue());
+    }
+
+    @Test
+    public void testSaveSkipsDuplicates() throws Exception {
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+        Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attrLabel");
+        int saved = FixedValueUtils.save(Arrays.asList(
+                new FixedValue(subject, attribute, "first"),
+                new FixedValue(subject, attribute, "second")));
+        assertEquals(1, saved);
+        assertEquals("first", FixedValueUtils.getBySubjectAndAttribute(subject, attribute).getValue());
+    }
+
+    @Test
+    public void testSaveEscapesText() throws Exception {
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+        Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attrLabel");
+        Attribute attribute2 = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attrLabel2");
+        String text = "quoted \"text\",\nover\ttwo lines \\N";
+        FixedValueUtils.save(Arrays.asList(new FixedValue(subject, attribute, text), new FixedValue(subject, attribute2, "")));
+        assertEquals(text, FixedValueUtils.getBySubjectAndAttribute(subject, attribute).getValue());
+        assertEquals("", FixedValueUtils.getBySubjectAndAttribute(subject, attribute2).getValue());
+    }
+}
@@ -41,4 +41,118 @@ public class HibernateUtilTest {
 
         assertTrue(flag[0]);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWithSessionClosesSessionOfCall() throws Exception {
+        Session first = HibernateUtil.withSession(session -> { return session; });
+        Session second = HibernateUtil.withSession(session -> { return session; });
+
+        assertNotSame(first, second);
+        assertFalse(first.isOpen());
+        assertFalse(second.isOpen());
+    }
+
+    @Test
+    public void testWithSessionSharesSessionWithinCall() throws Exception {
+        HibernateUtil.withSession((Session outer) -> {
+            assertSame(outer, HibernateUtil.withSession(session -> { return session; }));
+            HibernateUtil.withTransaction((Session inner) -> {
+                assertSame(outer, inner);
+            });
+        });
+    }
+
+    @Test
+    public void testWithThreadSessionBindsSession() throws Exception {
+        Session[] sessions = HibernateUtil.withThreadSession(() -> new Session[] {
+                HibernateUtil.withSession(session -> { return session; }),
+                HibernateUtil.withSession(session -> { return session; })
+        });
+
+        assertSame(sessions[0], sessions[1]);
+        assertFalse(sessions[0].isOpen());
+        assertNull(HibernateUtil.getThreadSession());
+    }
+
+    @Test
+    public void testWithThreadSessionGivesEachThreadItsOwnSession() throws Exception {
+        final Session[] otherSession = {null};
+        Session mainSession = HibernateUtil.withThreadSession(() -> {
+            Thread thread = new Thread(() -> {
+                otherSession[0] = HibernateUtil.withSession(session -> { return session; });
+            });
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return HibernateUtil.withSession(session -> { return session; });
+        });
+
+        assertNotNull(otherSession[0]);
+        assertNotSame(mainSession, otherSession[0]);
+        assertFalse(otherSession[0].isOpen());
+    }
+
+    @Test
+    public void testWithThreadSessionNests() throws Exception {
+        HibernateUtil.withThreadSession(() -> {
+            Session outer = HibernateUtil.withSession(session -> { return session; });
+            Session inner = HibernateUtil.withThreadSession(() -> HibernateUtil.withSession(session -> { return session; }));
+
+            assertNotSame(outer, inner);
+            assertFalse(inner.isOpen());
+            assertSame(outer, HibernateUtil.withSession(session -> { return session; }));
+            return null;
+        });
+    }
+
+    @Test
+    public void testWithTransactionCommits() throws Exception {
+        HibernateUtil.withTransaction(session -> {
+            assertTrue(session.getTransaction().isActive());
+        });
+
+        HibernateUtil.withSession((Session session) -> {
+            assertFalse(session.getTransaction().isActive());
+        });
+    }
+
+    @Test
+    public void testWithTransactionRollsBackOnException() throws Exception {
+        try {
+            HibernateUtil.withTransaction((Session session) -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("Exception not rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+
+        HibernateUtil.withSession((Session session) -> {
+            assertFalse(session.getTransaction().isActive());
+        });
+    }
+
+    @Test
+    public void testWithTransactionJoinsActiveTransaction() throws Exception {
+        HibernateUtil.withTransaction((Session outer) -> {
+            HibernateUtil.withTransaction((Session inner) -> {
+                assertSame(outer.getTransaction(), inner.getTransaction());
+            });
+            assertTrue(outer.getTransaction().isActive());
+        });
+    }
+
+    @Test
+    public void testEnsurePoolSizeOnlyGrowsPool() throws Exception {
+        try {
+            assertFalse(HibernateUtil.ensurePoolSize(1));
+            assertTrue(HibernateUtil.ensurePoolSize(100));
+            assertFalse(HibernateUtil.ensurePoolSize(100));
+        } finally {
+            HibernateUtil.restart();
+        }
+    }
+}
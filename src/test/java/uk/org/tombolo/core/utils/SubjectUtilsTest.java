@@ -66,6 +66,53 @@ public class SubjectUtilsTest extends AbstractTest {
 		assertEquals(geometry, testSubject.getShape());
 	}
 
+	@Test
+	public void testSaveWritesIdsBack(){
+		SubjectType testSubjectType = TestFactory.makeSubjectType(TestFactory.DEFAULT_PROVIDER, "awsomeSubjectType1", "Awasome Subject Type");
+		Subject existing = new Subject(testSubjectType, "subject1", "Subject 1a", TestFactory.FAKE_POINT_GEOMETRY);
+		SubjectUtils.save(Arrays.asList(existing));
+
+		Subject updated = new Subject(testSubjectType, "subject1", "Subject 1b", TestFactory.FAKE_POINT_GEOMETRY);
+		Subject created = new Subject(testSubjectType, "subject2", "Subject 2", null);
+		SubjectUtils.save(Arrays.asList(updated, created));
+
+		assertEquals(existing.getId(), updated.getId());
+		assertNotNull(created.getId());
+		assertEquals(created.getId(), SubjectUtils.getSubjectByTypeAndLabel(testSubjectType, "subject2").getId());
+		assertNull(SubjectUtils.getSubjectByTypeAndLabel(testSubjectType, "subject2").getShape());
+		assertEquals("Subject 1b", SubjectUtils.getSubjectByTypeAndLabel(testSubjectType, "subject1").getName());
+	}
+
+	@Test
+	public void testSaveChanges(){
+		SubjectType testSubjectType = TestFactory.makeSubjectType(TestFactory.DEFAULT_PROVIDER, "awsomeSubjectType1", "Awasome Subject Type");
+		SubjectUtils.save(Arrays.asList(
+				new Subject(testSubjectType, "subject1", "Subject 1", TestFactory.FAKE_POINT_GEOMETRY),
+				new Subject(testSubjectType, "subject2", "Subject 2", TestFactory.FAKE_POINT_GEOMETRY)));
+
+		Subject unchanged = new Subject(testSubjectType, "subject1", "Subject 1", TestFactory.FAKE_POINT_GEOMETRY);
+		Subject updated = new Subject(testSubjectType, "subject2", "Subject 2", null);
+		Subject created = new Subject(testSubjectType, "subject3", "Subject 3", null);
+		MergeResult result = SubjectUtils.saveChanges(Arrays.asList(unchanged, updated, created));
+
+		assertEquals(1, result.getInserted());
+		assertEquals(1, result.getUpdated());
+		assertEquals(1, result.getUnchanged());
+		assertNotNull(unchanged.getId());
+		assertNull(SubjectUtils.getSubjectByTypeAndLabel(testSubjectType, "subject2").getShape());
+	}
+
+	@Test
+	public void testSaveDuplicatesInSameList(){
+		SubjectType testSubjectType = TestFactory.makeSubjectType(TestFactory.DEFAULT_PROVIDER, "awsomeSubjectType1", "Awasome Subject Type");
+		Subject subject1 = new Subject(testSubjectType, "subject1", "Subject 1a", TestFactory.FAKE_POINT_GEOMETRY);
+		Subject subject2 = new Subject(testSubjectType, "subject1", "Subject 1b", TestFactory.FAKE_POINT_GEOMETRY);
+		SubjectUtils.save(Arrays.asList(subject1, subject2));
+
+		assertEquals(subject1.getId(), subject2.getId());
+		assertEquals("Subject 1b", SubjectUtils.getSubjectByTypeAndLabel(testSubjectType, "subject1").getName());
+	}
+
 	@Test
 	public void testGetSubjectByTypeAndLabel(){
 		Subject subject = SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000001");
@@ -155,6 +202,29 @@ public class SubjectUtilsTest extends AbstractTest {
 		assertTrue("Name " + subjects.get(0).getName() + " matches searched pattern %don", subjects.get(0).getName().contains("don"));
 	}
 
+	@Test
+	public void testScrollSubjectBySpecifications() throws Exception {
+		List<SubjectRecipe> specs = DataExportSpecificationBuilder.withCSVExporter()
+				.addSubjectSpecification(new SubjectSpecificationBuilder(AbstractONSImporter.PROVIDER.getLabel(), "localAuthority").setMatcher("label", "E09%"))
+				.addSubjectSpecification(new SubjectSpecificationBuilder(AbstractONSImporter.PROVIDER.getLabel(), "localAuthority").setMatcher("label", "E08%"))
+				.build().getDataset().getSubjects();
+
+		List<Subject> subjects = new ArrayList<>();
+		try (SubjectCursor cursor = SubjectUtils.scrollSubjectBySpecifications(specs, 1)) {
+			for (Subject subject : cursor) {
+				subjects.add(subject);
+			}
+			// Subjects the cursor has moved past are no longer held by the session
+			assertFalse(HibernateUtil.withSession(session -> { return session.contains(subjects.get(0)); }));
+		}
+
+		assertEquals(2, subjects.size());
+		assertEquals("E09000001", subjects.get(0).getLabel());
+		assertEquals("E08000035", subjects.get(1).getLabel());
+		assertEquals(localAuthority.getLabel(), subjects.get(0).getSubjectType().getLabel());
+		assertEquals(SubjectUtils.getSubjectBySpecifications(specs), subjects);
+	}
+
 	@Test
 	public void testGetSubjectBySpecificationWithSubject() throws Exception {
 		SubjectRecipe spec = DataExportSpecificationBuilder.withCSVExporter().addSubjectSpecification(
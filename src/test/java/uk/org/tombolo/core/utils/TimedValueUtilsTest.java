@@ -66,4 +66,57 @@ public class TimedValueUtilsTest extends AbstractTest {
 		assertTrue("Contains value for attr1 with latest timestamp", results.contains(latest1));
 		assertTrue("Contains value for attr2 with latest timestamp", results.contains(latest2));
 	}
+
+	@Test
+	public void testSaveReplacesExistingValue() {
+		Subject subject = TestFactory.makeNamedSubject("E01000001");
+		Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+		LocalDateTime timestamp = LocalDateTime.parse("2011-01-03T00:00");
+		TimedValueUtils.save(new TimedValue(subject, attribute, timestamp, 100d));
+		TimedValueUtils.save(new TimedValue(subject, attribute, timestamp, 300d));
+
+		List<TimedValue> results = TimedValueUtils.getBySubjectAndAttribute(subject, attribute);
+		assertEquals(1, results.size());
+		assertEquals(300d, results.get(0).getValue(), 0d);
+		assertEquals(timestamp, results.get(0).getId().getTimestamp());
+	}
+
+	@Test
+	public void testSaveSkipsDuplicates() {
+		Subject subject = TestFactory.makeNamedSubject("E01000001");
+		Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+		LocalDateTime timestamp = LocalDateTime.parse("2011-01-03T00:00");
+		int saved = TimedValueUtils.save(Arrays.asList(
+				new TimedValue(subject, attribute, timestamp, 100d),
+				new TimedValue(subject, attribute, timestamp, 300d),
+				new TimedValue(subject, attribute, timestamp.plusDays(1), 400d)));
+
+		assertEquals(2, saved);
+		assertEquals(100d, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).stream()
+				.filter(timedValue -> timedValue.getId().getTimestamp().equals(timestamp))
+				.findFirst().get().getValue(), 0d);
+	}
+
+	@Test
+	public void testSaveChanges() {
+		Subject subject = TestFactory.makeNamedSubject("E01000001");
+		Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+		LocalDateTime timestamp = LocalDateTime.parse("2011-01-03T00:00");
+		TimedValueUtils.save(Arrays.asList(
+				new TimedValue(subject, attribute, timestamp, 100d),
+				new TimedValue(subject, attribute, timestamp.plusDays(1), 200d)));
+
+		MergeResult result = TimedValueUtils.saveChanges(Arrays.asList(
+				new TimedValue(subject, attribute, timestamp, 100d),
+				new TimedValue(subject, attribute, timestamp.plusDays(1), 300d),
+				new TimedValue(subject, attribute, timestamp.plusDays(2), 400d)));
+
+		assertEquals(1, result.getInserted());
+		assertEquals(1, result.getUpdated());
+		assertEquals(1, result.getUnchanged());
+		assertEquals(3, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+		assertEquals(300d, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).stream()
+				.filter(timedValue -> timedValue.getId().getTimestamp().equals(timestamp.plusDays(1)))
+				.findFirst().get().getValue(), 0d);
+	}
 }
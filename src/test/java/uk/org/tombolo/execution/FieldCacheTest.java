@@ -1,10 +1,14 @@
 package uk.org.tombolo.execution;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.org.tombolo.AbstractTest;
 import uk.org.tombolo.FieldBuilder;
 import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.DatabaseJournalEntry;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.utils.DatabaseJournal;
 import uk.org.tombolo.field.Field;
 
 import static org.junit.Assert.*;
@@ -12,6 +16,9 @@ import static org.junit.Assert.*;
 public class FieldCacheTest extends AbstractTest {
     FieldCache fieldCache = new FieldCache();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void getChachedValue() throws Exception {
         Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
@@ -29,4 +36,101 @@ public class FieldCacheTest extends AbstractTest {
         assertEquals("testvalue2", fieldCache.getChachedValue(field, subject));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getCachedDouble() throws Exception {
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+
+        assertNull(fieldCache.getCachedDouble(field, subject));
+
+        fieldCache.putCachedDouble(field, subject, 1.5d);
+        assertEquals(1.5d, fieldCache.getCachedDouble(field, subject), 0d);
+        // Numeric values can be read as strings too
+        assertEquals("1.5", fieldCache.getChachedValue(field, subject));
+    }
+
+    @Test
+    public void testEquivalentFieldsShareValues() throws Exception {
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Field equivalentField = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Field otherField = FieldBuilder.constantField("mylabel", "othervalue").build().toField();
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+
+        fieldCache.putCachedValue(field, subject, "testvalue");
+        assertEquals("testvalue", fieldCache.getChachedValue(equivalentField, subject));
+        assertNull(fieldCache.getChachedValue(otherField, subject));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+
+        fieldCache.getCachedDouble(field, subject);
+        fieldCache.putCachedDouble(field, subject, 1d);
+        fieldCache.getCachedDouble(field, subject);
+        fieldCache.getCachedDouble(field, subject);
+
+        assertEquals(2, fieldCache.getHits());
+        assertEquals(1, fieldCache.getMisses());
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        long maxBytes = 64 * 1024;
+        FieldCache boundedCache = new FieldCache(maxBytes);
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Subject subject = new Subject();
+
+        for (int id = 1; id <= 100000; id++) {
+            subject.setId(id);
+            boundedCache.putCachedDouble(field, subject, id);
+            assertTrue(boundedCache.getSizeBytes() <= maxBytes);
+        }
+
+        // The most recent values are kept
+        assertEquals(100000d, boundedCache.getCachedDouble(field, subject), 0d);
+        subject.setId(1);
+        assertNull(boundedCache.getCachedDouble(field, subject));
+    }
+
+    @Test
+    public void testPersistentCacheIsSharedAcrossFieldCaches() throws Exception {
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+
+        try (PersistentFieldCache persistentCache = PersistentFieldCache.open(folder.getRoot())) {
+            fieldCache.setPersistentCache(persistentCache);
+            fieldCache.putCachedDouble(field, subject, 1.5d);
+            fieldCache.putCachedValue(field, TestFactory.makeNamedSubject("E01000002"), "testvalue");
+        }
+
+        FieldCache nextFieldCache = new FieldCache();
+        Field equivalentField = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        try (PersistentFieldCache persistentCache = PersistentFieldCache.open(folder.getRoot())) {
+            nextFieldCache.setPersistentCache(persistentCache);
+            assertEquals(1.5d, nextFieldCache.getCachedDouble(equivalentField, subject), 0d);
+            assertEquals("testvalue", nextFieldCache.getChachedValue(equivalentField,
+                    TestFactory.makeNamedSubject("E01000002")));
+        }
+    }
+
+    @Test
+    public void testPersistentCacheIsInvalidatedByJournalEntry() throws Exception {
+        Field field = FieldBuilder.constantField("mylabel", "myvalue").build().toField();
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+
+        try (PersistentFieldCache persistentCache = PersistentFieldCache.open(folder.getRoot())) {
+            fieldCache.setPersistentCache(persistentCache);
+            fieldCache.putCachedDouble(field, subject, 1.5d);
+        }
+
+        DatabaseJournal.addJournalEntry(new DatabaseJournalEntry("com.example.Importer", "hello"));
+
+        FieldCache nextFieldCache = new FieldCache();
+        try (PersistentFieldCache persistentCache = PersistentFieldCache.open(folder.getRoot())) {
+            nextFieldCache.setPersistentCache(persistentCache);
+            assertNull(nextFieldCache.getCachedDouble(field, subject));
+        }
+    }
+}
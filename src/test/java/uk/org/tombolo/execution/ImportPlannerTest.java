@@ -0,0 +1,168 @@
+package uk.org.tombolo.execution;
+
+import org.junit.Test;
+import uk.org.tombolo.AbstractTest;
+import uk.org.tombolo.importer.Importer;
+import uk.org.tombolo.importer.dclg.IMDImporter;
+import uk.org.tombolo.importer.ons.OaImporter;
+import uk.org.tombolo.recipe.DatasourceRecipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ImportPlannerTest extends AbstractTest {
+
+    @Test
+    public void testAddSkipsDuplicates() throws Exception {
+        ImportPlanner planner = new ImportPlanner(1);
+
+        assertTrue(planner.add(makeRecipe("com.example.ValueImporter", "values")));
+        assertFalse(planner.add(makeRecipe("com.example.ValueImporter", "values")));
+        assertTrue(planner.add(new DatasourceRecipe("com.example.ValueImporter", "values",
+                Collections.singletonList("E09000001"), null, null, null)));
+        assertEquals(2, planner.getPending().size());
+    }
+
+    @Test
+    public void testRunImportsEachDatasourceOnce() throws Exception {
+        ImportPlanner planner = new ImportPlanner(1);
+        List<String> imported = new ArrayList<>();
+
+        planner.add(makeRecipe("com.example.ValueImporter", "values"));
+        planner.run(recipe -> new FakeImport(recipe, false, "lane", () -> imported.add(recipe.getDatasourceId())));
+        planner.add(makeRecipe("com.example.ValueImporter", "values"));
+        planner.run(recipe -> new FakeImport(recipe, false, "lane", () -> imported.add(recipe.getDatasourceId())));
+
+        assertEquals(Collections.singletonList("values"), imported);
+        assertEquals(1, planner.getTimings().size());
+    }
+
+    @Test
+    public void testRunImportsSubjectsFirst() throws Exception {
+        ImportPlanner planner = new ImportPlanner(4);
+        List<String> imported = Collections.synchronizedList(new ArrayList<>());
+
+        planner.add(makeRecipe("com.example.ValueImporter", "values"));
+        planner.add(makeRecipe("com.example.SubjectImporter", "subjects"));
+        planner.add(makeRecipe("com.example.OtherValueImporter", "otherValues"));
+        planner.run(recipe -> new FakeImport(recipe, recipe.getDatasourceId().equals("subjects"),
+                recipe.getImporterClass(), () -> imported.add(recipe.getDatasourceId())));
+
+        assertEquals(3, imported.size());
+        assertEquals("subjects", imported.get(0));
+        assertEquals(3, planner.getTimings().size());
+    }
+
+    @Test
+    public void testRunImportsSubjectsBeforeValuesOfTheirType() throws Exception {
+        ImportPlanner planner = new ImportPlanner(4);
+        List<String> imported = Collections.synchronizedList(new ArrayList<>());
+
+        // The IMD importer only saves values for the LSOAs saved by the OA importer
+        planner.add(makeRecipe(IMDImporter.class.getCanonicalName(), "imd"));
+        planner.add(makeRecipe(OaImporter.class.getCanonicalName(), "lsoa"));
+        planner.run(recipe -> {
+            Importer importer = (Importer) Class.forName(recipe.getImporterClass()).newInstance();
+            return new FakeImport(recipe, importer.createsSubjects(), importer.getProvider().getLabel(),
+                    () -> imported.add(recipe.getDatasourceId()));
+        });
+
+        assertFalse(new IMDImporter().createsSubjects());
+        assertTrue(new OaImporter().createsSubjects());
+        assertEquals(Arrays.asList("lsoa", "imd"), imported);
+    }
+
+    @Test
+    public void testRunImportsLanesConcurrently() throws Exception {
+        ImportPlanner planner = new ImportPlanner(2);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        planner.add(makeRecipe("com.example.ValueImporter", "values"));
+        planner.add(makeRecipe("com.example.OtherValueImporter", "otherValues"));
+        // Each import waits for the other one, so this only finishes if they run at the same time
+        planner.run(recipe -> new FakeImport(recipe, false, recipe.getImporterClass(), () -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+        }));
+
+        assertEquals(2, planner.getTimings().size());
+    }
+
+    @Test
+    public void testRunImportsSameLaneOneAfterAnother() throws Exception {
+        ImportPlanner planner = new ImportPlanner(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (String datasourceId : Arrays.asList("one", "two", "three")) {
+            planner.add(makeRecipe("com.example.ValueImporter", datasourceId));
+        }
+        planner.run(recipe -> new FakeImport(recipe, false, "sameProvider", () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            running.decrementAndGet();
+        }));
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRunRethrowsImportException() throws Exception {
+        ImportPlanner planner = new ImportPlanner(2);
+
+        planner.add(makeRecipe("com.example.ValueImporter", "values"));
+        planner.add(makeRecipe("com.example.OtherValueImporter", "otherValues"));
+        planner.run(recipe -> new FakeImport(recipe, false, recipe.getImporterClass(), () -> {
+            throw new IllegalStateException("failed");
+        }));
+    }
+
+    private static DatasourceRecipe makeRecipe(String importerClass, String datasourceId) {
+        return new DatasourceRecipe(importerClass, datasourceId, null, null, null, null);
+    }
+
+    private interface ImportAction {
+        void run() throws Exception;
+    }
+
+    private static class FakeImport implements ImportPlanner.DatasourceImport {
+        private final DatasourceRecipe datasourceRecipe;
+        private final boolean createsSubjects;
+        private final String lane;
+        private final ImportAction action;
+
+        private FakeImport(DatasourceRecipe datasourceRecipe, boolean createsSubjects, String lane, ImportAction action) {
+            this.datasourceRecipe = datasourceRecipe;
+            this.createsSubjects = createsSubjects;
+            this.lane = lane;
+            this.action = action;
+        }
+
+        @Override
+        public DatasourceRecipe getDatasourceRecipe() {
+            return datasourceRecipe;
+        }
+
+        @Override
+        public boolean createsSubjects() {
+            return createsSubjects;
+        }
+
+        @Override
+        public String getLane() {
+            return lane;
+        }
+
+        @Override
+        public void run() throws Exception {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.org.tombolo.execution;
+
+import org.junit.Test;
+import uk.org.tombolo.AbstractTest;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+import uk.org.tombolo.core.TimedValue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LatestTimedValuesTest extends AbstractTest {
+
+    @Test
+    public void testGetReturnsLatestValue() throws Exception {
+        Subject subject = TestFactory.makeNamedSubject("E01000001");
+        Subject otherSubject = TestFactory.makeNamedSubject("E01000002");
+        SubjectType lsoa = subject.getSubjectType();
+        Attribute attribute1 = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr1_label");
+        Attribute attribute2 = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr2_label");
+        TestFactory.makeTimedValue(lsoa, "E01000001", attribute1, "2011-01-03T00:00", 100d);
+        TestFactory.makeTimedValue(lsoa, "E01000001", attribute1, "2011-01-05T00:00", 200d);
+        TestFactory.makeTimedValue(lsoa, "E01000001", attribute2, "2011-01-01T00:00", 300d);
+        TestFactory.makeTimedValue(lsoa, "E01000002", attribute1, "2011-01-01T00:00", 400d);
+
+        LatestTimedValues latestTimedValues = LatestTimedValues.load(Arrays.asList(attribute1, attribute2));
+        assertEquals(3, latestTimedValues.size());
+
+        TimedValue timedValue = latestTimedValues.get(subject, attribute1);
+        assertEquals(200d, timedValue.getValue(), 0d);
+        assertEquals(LocalDateTime.parse("2011-01-05T00:00"), timedValue.getId().getTimestamp());
+        assertEquals(300d, latestTimedValues.get(subject, attribute2).getValue(), 0d);
+        assertEquals(400d, latestTimedValues.get(otherSubject, attribute1).getValue(), 0d);
+        assertNull(latestTimedValues.get(otherSubject, attribute2));
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        Attribute attribute1 = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr1_label");
+        Attribute attribute2 = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr2_label");
+
+        LatestTimedValues latestTimedValues = LatestTimedValues.load(Collections.singletonList(attribute1));
+        assertTrue(latestTimedValues.contains(attribute1));
+        assertFalse(latestTimedValues.contains(attribute2));
+    }
+}
@@ -0,0 +1,39 @@
+package uk.org.tombolo.execution;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongDoubleMapTest {
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        LongDoubleMap map = new LongDoubleMap();
+        for (long key = 1; key <= 10000; key++) {
+            map.put(key << 32 | key, key / 2d);
+        }
+
+        assertEquals(10000, map.size());
+        for (long key = 1; key <= 10000; key++) {
+            assertTrue(map.containsKey(key << 32 | key));
+            assertEquals(key / 2d, map.get(key << 32 | key, Double.NaN), 0d);
+        }
+        assertFalse(map.containsKey(10001));
+        assertEquals(-1d, map.get(10001, -1d), 0d);
+    }
+
+    @Test
+    public void testPutReplaces() throws Exception {
+        LongDoubleMap map = new LongDoubleMap();
+        map.put(42, 1d);
+        map.put(42, 2d);
+
+        assertEquals(1, map.size());
+        assertEquals(2d, map.get(42, Double.NaN), 0d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroKeyIsReserved() throws Exception {
+        new LongDoubleMap().put(0, 1d);
+    }
+}
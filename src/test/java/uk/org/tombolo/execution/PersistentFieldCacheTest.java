@@ -0,0 +1,87 @@
+package uk.org.tombolo.execution;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class PersistentFieldCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testValuesAreKeptAcrossRuns() throws Exception {
+        File root = folder.getRoot();
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            cache.putDouble("field", 1, 1.5d);
+            cache.putString("field", 2, "two");
+            assertEquals(1.5d, cache.getDouble("field", 1), 0d);
+        }
+
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            assertEquals(1.5d, cache.getDouble("field", 1), 0d);
+            assertEquals("1.5", cache.getString("field", 1));
+            assertEquals("two", cache.getString("field", 2));
+            assertNull(cache.getDouble("field", 2));
+            assertNull(cache.getDouble("field", 3));
+            assertNull(cache.getDouble("otherField", 1));
+        }
+    }
+
+    @Test
+    public void testLatestValueWins() throws Exception {
+        File root = folder.getRoot();
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            cache.putDouble("field", 1, 1d);
+            cache.putDouble("field", 1, 2d);
+        }
+
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            assertEquals(2d, cache.getDouble("field", 1), 0d);
+        }
+    }
+
+    @Test
+    public void testNewDataVersionDropsValues() throws Exception {
+        File root = folder.getRoot();
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            cache.putDouble("field", 1, 1.5d);
+        }
+
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "2-2")) {
+            assertNull(cache.getDouble("field", 1));
+        }
+        assertEquals(1, root.listFiles().length);
+    }
+
+    @Test
+    public void testIncompleteRecordIsDiscarded() throws Exception {
+        File root = folder.getRoot();
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            cache.putDouble("field", 1, 1.5d);
+        }
+        File valueFile = root.listFiles()[0].listFiles()[0];
+        appendBytes(valueFile, new byte[]{'D', 0, 0});
+
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            assertEquals(1.5d, cache.getDouble("field", 1), 0d);
+            cache.putDouble("field", 2, 2.5d);
+        }
+
+        try (PersistentFieldCache cache = new PersistentFieldCache(root, "1-1")) {
+            assertEquals(1.5d, cache.getDouble("field", 1), 0d);
+            assertEquals(2.5d, cache.getDouble("field", 2), 0d);
+        }
+    }
+
+    private static void appendBytes(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package uk.org.tombolo.execution;
+
+import org.junit.Test;
+import uk.org.tombolo.AbstractTest;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubjectEvaluatorTest extends AbstractTest {
+
+    @Test
+    public void testEvaluateInOrderKeepsSubjectOrder() throws Exception {
+        List<Subject> subjects = makeSubjects(500);
+        List<String> labels = new ArrayList<>();
+
+        new SubjectEvaluator(4).evaluateInOrder(subjects, Subject::getLabel, labels::add);
+
+        assertEquals(500, labels.size());
+        for (int i = 0; i < subjects.size(); i++) {
+            assertEquals(subjects.get(i).getLabel(), labels.get(i));
+        }
+    }
+
+    @Test
+    public void testEvaluateInOrderWithSingleThread() throws Exception {
+        List<Subject> subjects = makeSubjects(10);
+        List<String> labels = new ArrayList<>();
+
+        new SubjectEvaluator(1).evaluateInOrder(subjects, Subject::getLabel, labels::add);
+
+        assertEquals("label9", labels.get(9));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEvaluateInOrderRethrowsWorkerException() throws Exception {
+        List<Subject> subjects = makeSubjects(200);
+
+        new SubjectEvaluator(4).evaluateInOrder(subjects, subject -> {
+            if (subject.getId() == 150) throw new IllegalStateException("Failing subject");
+            return subject.getLabel();
+        }, label -> { });
+    }
+
+    private List<Subject> makeSubjects(int count) {
+        SubjectType subjectType = TestFactory.makeNamedSubjectType("lsoa");
+        List<Subject> subjects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Subject subject = new Subject(subjectType, "label" + i, "name" + i, TestFactory.FAKE_POINT_GEOMETRY);
+            subject.setId(i);
+            subjects.add(subject);
+        }
+        return subjects;
+    }
+}
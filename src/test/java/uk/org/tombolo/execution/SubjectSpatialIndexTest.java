@@ -0,0 +1,59 @@
+package uk.org.tombolo.execution;
+
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Test;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Subject;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SubjectSpatialIndexTest {
+    private Subject squareOne = makeSubject(1, TestFactory.makeSquareGeometry(0d, 0d, 10d));
+    private Subject squareTwo = makeSubject(2, TestFactory.makeSquareGeometry(20d, 20d, 10d));
+    private Subject bigSquare = makeSubject(3, TestFactory.makeSquareGeometry(-5d, -5d, 50d));
+    private Subject noShape = makeSubject(4, null);
+
+    private SubjectSpatialIndex index = new SubjectSpatialIndex(Arrays.asList(squareTwo, bigSquare, squareOne, noShape));
+
+    @Test
+    public void testSize() throws Exception {
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testSubjectsContaining() throws Exception {
+        assertEquals(Arrays.asList(squareOne, bigSquare), index.subjectsContaining(TestFactory.makePointGeometry(5d, 5d)));
+        assertEquals(Collections.singletonList(bigSquare), index.subjectsContaining(TestFactory.makePointGeometry(15d, 15d)));
+        assertEquals(Collections.emptyList(), index.subjectsContaining(TestFactory.makePointGeometry(100d, 100d)));
+        assertEquals(Collections.emptyList(), index.subjectsContaining(null));
+    }
+
+    @Test
+    public void testSubjectsWithin() throws Exception {
+        assertEquals(Arrays.asList(squareOne, squareTwo),
+                index.subjectsWithin(TestFactory.makeSquareGeometry(-1d, -1d, 40d)));
+        assertEquals(Collections.singletonList(squareOne),
+                index.subjectsWithin(TestFactory.makeSquareGeometry(-1d, -1d, 12d)));
+    }
+
+    @Test
+    public void testNearestSubject() throws Exception {
+        SubjectSpatialIndex points = new SubjectSpatialIndex(Arrays.asList(
+                makeSubject(1, TestFactory.makePointGeometry(0d, 0d)),
+                makeSubject(2, TestFactory.makePointGeometry(0.05d, 0d))));
+
+        assertEquals(2, (int) points.nearestSubject(TestFactory.makePointGeometry(0.04d, 0d), 0.1d).getId());
+        assertEquals(1, (int) points.nearestSubject(TestFactory.makePointGeometry(-0.01d, 0d), 0.1d).getId());
+        assertNull(points.nearestSubject(TestFactory.makePointGeometry(1d, 0d), 0.1d));
+    }
+
+    private static Subject makeSubject(int id, Geometry shape) {
+        Subject subject = new Subject(null, "subject" + id, "Subject " + id, shape);
+        subject.setId(id);
+        return subject;
+    }
+}
@@ -18,6 +18,7 @@ import uk.org.tombolo.field.value.LatestValueField;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -51,6 +52,28 @@ public class CSVExporterTest extends AbstractTest {
 		assertEquals(4, record.size());
 	}
 
+	@Test
+	public void testWriteWithThreads() throws Exception {
+		Attribute attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+		SubjectType localAuthority = TestFactory.makeNamedSubjectType("localAuthority");
+		TestFactory.makeNamedSubject("E09000019");
+		TestFactory.makeTimedValue(localAuthority,"E09000001", attribute, TestFactory.TIMESTAMP, 100d);
+		TestFactory.makeTimedValue(localAuthority,"E09000019", attribute, TestFactory.TIMESTAMP, 200d);
+
+		Writer writer = new StringWriter();
+		exporter.write(writer, Arrays.asList(
+				SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000019"),
+				SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000001")
+		), makeFields("default_provider_label", "attr_label"), false, 4);
+		List<CSVRecord> records = getRecords(writer.toString());
+
+		assertEquals(2, records.size());
+		assertEquals("E09000019", records.get(0).get("label"));
+		assertEquals("200.0", records.get(0).get("attr_label"));
+		assertEquals("E09000001", records.get(1).get("label"));
+		assertEquals("100.0", records.get(1).get("attr_label"));
+	}
+
 	@Test
 	public void testGetColumnNames() throws Exception {
 		List<String> attributes = exporter.getColumnNames(makeFields("uk.gov.london", "populationDensity"));
@@ -78,6 +78,29 @@ public class GeoJsonExporterTest extends AbstractTest {
 				"}", writer.toString(), false);
 	}
 
+	@Test
+	public void testWriteWithThreadsKeepsSubjectOrder() throws Exception {
+		TestFactory.makeNamedSubject("E09000002");
+		TestFactory.makeNamedSubject("E09000019");
+		Writer writer = new StringWriter();
+
+		exporter.write(writer,
+				Arrays.asList(
+						SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000019"),
+						SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000001"),
+						SubjectUtils.getSubjectByTypeAndLabel(localAuthority, "E09000002")),
+				Arrays.asList(new ConstantField("some_label", "some_value")), false, 2
+		);
+
+		JSONAssert.assertEquals("{" +
+				"  features: [" +
+				"    {properties: {label: 'E09000019', some_label: 'some_value'}}," +
+				"    {properties: {label: 'E09000001', some_label: 'some_value'}}," +
+				"    {properties: {label: 'E09000002', some_label: 'some_value'}}" +
+				"  ]" +
+				"}", writer.toString(), false);
+	}
+
 	private String getFirstFeatureLabel(String jsonString) throws ParseException {
 		JSONParser parser = new JSONParser();
 		JSONObject root = (JSONObject) parser.parse(jsonString);
@@ -8,6 +8,7 @@ import uk.org.tombolo.FieldBuilder;
 import uk.org.tombolo.TestFactory;
 import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.execution.FieldCache;
 import uk.org.tombolo.field.Field;
 import uk.org.tombolo.importer.ons.AbstractONSImporter;
 import uk.org.tombolo.recipe.FieldRecipe;
@@ -40,6 +41,16 @@ public class MapToContainingSubjectFieldTest extends AbstractTest {
         assertEquals("100.0", value);
     }
 
+    @Test
+    public void testValueForSubjectWithSpatialIndex() throws Exception {
+        FieldCache fieldCache = new FieldCache();
+        fieldCache.setSpatialIndexEnabled(true);
+        mapToContainingSubjectField.setFieldCache(fieldCache);
+
+        String value = mapToContainingSubjectField.valueForSubject(subject, true);
+        assertEquals("100.0", value);
+    }
+
     @Test
     public void testJsonValueForSubject() throws Exception {
         String jsonString = mapToContainingSubjectField.jsonValueForSubject(subject, true).toJSONString();
@@ -11,11 +11,16 @@ import uk.org.tombolo.core.SubjectType;
 import uk.org.tombolo.field.Field;
 import uk.org.tombolo.importer.ons.AbstractONSImporter;
 import uk.org.tombolo.recipe.DatasourceRecipe;
+import uk.org.tombolo.recipe.FieldRecipe;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 public class BasicModellingFieldTest extends AbstractTest {
     private static final String RECIPE = "ModellingFieldTest";
@@ -85,4 +90,38 @@ public class BasicModellingFieldTest extends AbstractTest {
         assertEquals(1, childFields.size());
         assertEquals("Fraction_of_80", childFields.get(0).getLabel());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIdentityFollowsNestedSpecification() throws Exception {
+        File directory = new File(ClassLoader.getSystemResource(
+                BasicModellingField.fieldSpecPath + RECIPE + BasicModellingField.fieldSpecPostfix).getFile())
+                .getParentFile();
+        File outer = new File(directory, "IdentityTestOuter" + BasicModellingField.fieldSpecPostfix);
+        File inner = new File(directory, "IdentityTestInner" + BasicModellingField.fieldSpecPostfix);
+        try {
+            write(outer, "{\"fieldClass\": \"uk.org.tombolo.field.transformation.ArithmeticField\", \"label\": \"sum\","
+                    + " \"operation\": \"add\", \"field1\": {\"fieldClass\": "
+                    + "\"uk.org.tombolo.field.modelling.SingleValueModellingField\", \"label\": \"inner\","
+                    + " \"recipe\": \"IdentityTestInner\"}, \"field2\": {\"fieldClass\": "
+                    + "\"uk.org.tombolo.field.value.ConstantField\", \"label\": \"one\", \"value\": \"1\"}}");
+            write(inner, "{\"fieldClass\": \"uk.org.tombolo.field.value.ConstantField\", \"label\": \"c\", \"value\": \"1\"}");
+            String identity = modellingField("IdentityTestOuter").getIdentity();
+            assertEquals(identity, modellingField("IdentityTestOuter").getIdentity());
+
+            write(inner, "{\"fieldClass\": \"uk.org.tombolo.field.value.ConstantField\", \"label\": \"c\", \"value\": \"2\"}");
+            assertNotEquals(identity, modellingField("IdentityTestOuter").getIdentity());
+        } finally {
+            outer.delete();
+            inner.delete();
+        }
+    }
+
+    private static Field modellingField(String recipe) throws Exception {
+        return new FieldRecipe("uk.org.tombolo.field.modelling.SingleValueModellingField",
+                "{\"label\": \"test_label\", \"recipe\": \"" + recipe + "\"}").toField();
+    }
+
+    private static void write(File file, String json) throws Exception {
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -7,6 +7,8 @@ import uk.org.tombolo.AbstractTest;
 import uk.org.tombolo.TestFactory;
 import uk.org.tombolo.core.Attribute;
 import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.execution.FieldCache;
+import uk.org.tombolo.execution.LatestTimedValues;
 import uk.org.tombolo.recipe.AttributeMatcher;
 
 import static org.junit.Assert.assertEquals;
@@ -29,6 +31,18 @@ public class LatestValueFieldTest extends AbstractTest {
         assertEquals("100.0", field.valueForSubject(subject, false));
     }
 
+    @Test
+    public void testValueForSubjectWithPrefetchedValues() throws Exception {
+        TestFactory.makeTimedValue(subject.getSubjectType(), "E01000001", attribute, "2011-01-01T00:00:00", 100d);
+        FieldCache fieldCache = new FieldCache();
+        fieldCache.setLatestTimedValues(LatestTimedValues.load(field.getPrefetchAttributes()));
+        field.setFieldCache(fieldCache);
+
+        // Values saved after the prefetch are not seen
+        TestFactory.makeTimedValue(subject.getSubjectType(), "E01000001", attribute, "2012-01-01T00:00:00", 200d);
+        assertEquals("100.0", field.valueForSubject(subject, false));
+    }
+
     @Test
     public void testJsonValueForSubject() throws Exception {
         TestFactory.makeTimedValue(subject.getSubjectType(), "E01000001", attribute, "2011-01-01T00:00:00", 100d);
@@ -0,0 +1,57 @@
+package uk.org.tombolo.importer;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferSizerTest {
+
+    @Test
+    public void testGrowsWhenWritesAreFast() throws Exception {
+        BufferSizer sizer = new BufferSizer("values", 100, 10, 300, Long.MAX_VALUE);
+        sizer.written(100, 10);
+        assertEquals(200, sizer.getSize());
+        sizer.written(200, 10);
+        assertEquals(300, sizer.getSize());
+    }
+
+    @Test
+    public void testKeepsSizeWhenBufferIsNotFull() throws Exception {
+        BufferSizer sizer = new BufferSizer("values", 100, 10, 300, Long.MAX_VALUE);
+        sizer.written(50, 10);
+        assertEquals(100, sizer.getSize());
+    }
+
+    @Test
+    public void testShrinksWhenWritesAreSlow() throws Exception {
+        BufferSizer sizer = new BufferSizer("values", 100, 30, 300, Long.MAX_VALUE);
+        sizer.written(100, 10000);
+        assertEquals(50, sizer.getSize());
+        sizer.written(50, 10000);
+        assertEquals(30, sizer.getSize());
+    }
+
+    @Test
+    public void testCapsSizeByMemory() throws Exception {
+        BufferSizer sizer = new BufferSizer("values", 100, 10, 300, 1000);
+        sizer.measure(Collections.nCopies(10, "value"), value -> 50);
+        assertEquals(20, sizer.getSize());
+        sizer.written(20, 10);
+        assertEquals(20, sizer.getSize());
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        BufferSizer sizer = new BufferSizer("values", 100, 10, 300, Long.MAX_VALUE);
+        sizer.written(100, 10);
+        sizer.written(200, 30);
+        String report = sizer.report();
+        assertTrue(report, report.startsWith("values: 2 buffers of 150 on average, size 100 to 300, now 300"));
+        assertTrue(report, report.endsWith("written in 20 ms on average and 30 ms at most"));
+
+        assertEquals("values: no buffers written, size 300", sizer.report());
+    }
+}
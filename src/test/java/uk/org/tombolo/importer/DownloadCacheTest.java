@@ -0,0 +1,137 @@
+package uk.org.tombolo.importer;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class DownloadCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private DownloadCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("TomboloData");
+		cache = new DownloadCache(directory);
+	}
+
+	@Test
+	public void testGetFilesListsLeastRecentlyUsedFirst() throws Exception {
+		makeFile("a/recent.csv", "recent", 0);
+		makeFile("a/old.csv", "old", 2);
+		makeFile("b/older.csv", "older", 3);
+		DownloadManifest.forDirectory(directory).put("a/old.csv",
+				new DownloadManifest.Entry("http://example.com/old", null, null, 3, DigestUtils.sha256Hex("old")));
+
+		List<DownloadCache.CachedFile> files = cache.getFiles();
+
+		assertEquals("b/older.csv,a/old.csv,a/recent.csv", paths(files));
+		assertEquals("http://example.com/old", files.get(1).getEntry().getUrl());
+		assertNull(files.get(0).getEntry());
+		assertEquals(14, cache.getSize());
+	}
+
+	@Test
+	public void testPruneEvictsLeastRecentlyUsedFiles() throws Exception {
+		makeFile("a/recent.csv", "0123456789", 0);
+		makeFile("a/old.csv", "0123456789", 2);
+		makeFile("a/older.csv", "0123456789", 3);
+		DownloadManifest.forDirectory(directory).put("a/older.csv",
+				new DownloadManifest.Entry("http://example.com/older", null, null, 10, null));
+
+		List<DownloadCache.CachedFile> evicted = cache.prune(15, file -> false);
+
+		assertEquals("a/older.csv,a/old.csv", paths(evicted));
+		assertEquals("a/recent.csv", paths(cache.getFiles()));
+		assertNull(DownloadManifest.forDirectory(directory).get("a/older.csv"));
+	}
+
+	@Test
+	public void testPruneKeepsFilesInUse() throws Exception {
+		makeFile("a/recent.csv", "0123456789", 0);
+		makeFile("a/old.csv", "0123456789", 2);
+
+		List<DownloadCache.CachedFile> evicted = cache.prune(5, file -> file.getName().equals("old.csv"));
+
+		assertEquals("a/recent.csv", paths(evicted));
+		assertEquals(10, cache.getSize());
+	}
+
+	@Test
+	public void testPruneCountsLinkedFilesOnce() throws Exception {
+		File original = makeFile("a/original.csv", "0123456789", 3);
+		Files.createLink(new File(directory, "a/link.csv").toPath(), original.toPath());
+		makeFile("a/recent.csv", "0123456789", 0);
+		assertEquals(20, cache.getSize());
+
+		// The space of the original is only freed with the link, both being the least recently used
+		List<DownloadCache.CachedFile> evicted = cache.prune(10, file -> false);
+
+		assertEquals(2, evicted.size());
+		assertEquals("a/recent.csv", paths(cache.getFiles()));
+	}
+
+	@Test
+	public void testVerifyRemovesCorruptedFiles() throws Exception {
+		makeFile("a/good.csv", "good", 0);
+		makeFile("a/bad.csv", "bad", 0);
+		makeFile("a/unknown.csv", "unknown", 0);
+		DownloadManifest manifest = DownloadManifest.forDirectory(directory);
+		manifest.put("a/good.csv", new DownloadManifest.Entry(null, null, null, 4, DigestUtils.sha256Hex("good")));
+		manifest.put("a/bad.csv", new DownloadManifest.Entry(null, null, null, 3, DigestUtils.sha256Hex("was good")));
+
+		List<DownloadCache.CachedFile> corrupted = cache.verify();
+
+		assertEquals("a/bad.csv", paths(corrupted));
+		assertEquals("a/good.csv,a/unknown.csv", cache.getFiles().stream()
+				.map(DownloadCache.CachedFile::getPath).sorted().collect(Collectors.joining(",")));
+		assertNull(manifest.get("a/bad.csv"));
+	}
+
+	@Test
+	public void testParseSize() throws Exception {
+		assertEquals(512, DownloadCache.parseSize("512"));
+		assertEquals(2048, DownloadCache.parseSize("2K"));
+		assertEquals(3L << 20, DownloadCache.parseSize("3MB"));
+		assertEquals(20L << 30, DownloadCache.parseSize(" 20gb "));
+		assertEquals(1L << 40, DownloadCache.parseSize("1T"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidSize() throws Exception {
+		DownloadCache.parseSize("lots");
+	}
+
+	@Test
+	public void testFormatSize() throws Exception {
+		assertEquals("512 B", DownloadCache.formatSize(512));
+		assertEquals("1.5 KB", DownloadCache.formatSize(1536));
+		assertEquals("20.0 GB", DownloadCache.formatSize(20L << 30));
+	}
+
+	// Makes a file last used the given number of minutes ago
+	private File makeFile(String path, String content, int minutesAgo) throws IOException {
+		File file = new File(directory, path);
+		FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+		assertTrue(file.setLastModified(System.currentTimeMillis() - minutesAgo * 60000L));
+		return file;
+	}
+
+	private static String paths(List<DownloadCache.CachedFile> files) {
+		return files.stream().map(DownloadCache.CachedFile::getPath).collect(Collectors.joining(","));
+	}
+}
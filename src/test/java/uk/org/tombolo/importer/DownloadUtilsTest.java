@@ -0,0 +1,321 @@
+package uk.org.tombolo.importer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DownloadUtilsTest {
+	private static final String PREFIX = "test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private DownloadUtils downloadUtils;
+	private final Map<String, byte[]> contents = new HashMap<>();
+	private final Map<String, String> eTags = new HashMap<>();
+	private final List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<>());
+	// Number of bytes sent before the connection is dropped, for the next response only
+	private int truncateNextResponseAt = -1;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+		downloadUtils = new DownloadUtils(folder.getRoot().getPath());
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testFetchFileDownloadsAndRecordsChecksum() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+
+		File file = downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+
+		assertEquals("a,b\n1,2\n", read(file));
+		assertFalse(new File(file.getPath() + ".part").exists());
+		DownloadManifest.Entry entry = manifest().get(PREFIX + "/" + file.getName());
+		assertEquals(DigestUtils.sha256Hex("a,b\n1,2\n"), entry.getSha256());
+		assertEquals("\"v1\"", entry.getETag());
+		assertEquals(8, entry.getLength());
+	}
+
+	@Test
+	public void testFetchFileRevalidatesUnchangedFile() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+
+		File file = downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+
+		assertEquals("a,b\n1,2\n", read(file));
+		assertEquals(2, requests.size());
+		assertEquals("\"v1\"", requests.get(1).get("If-None-Match"));
+	}
+
+	@Test
+	public void testFetchFileDownloadsChangedFileAgain() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+		serve("/data.csv", "a,b\n3,4\n", "\"v2\"");
+
+		File file = downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+
+		assertEquals("a,b\n3,4\n", read(file));
+		assertEquals("\"v2\"", manifest().get(PREFIX + "/" + file.getName()).getETag());
+	}
+
+	@Test
+	public void testFetchFileSkipsRevalidationWhenDisabled() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+		downloadUtils.setRevalidate(false);
+
+		downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void testFetchFileUsesCachedFileWhenServerIsDown() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		downloadUtils.fetchFile(url("/data.csv"), PREFIX, ".csv");
+		URL url = url("/data.csv");
+		server.stop(0);
+
+		assertEquals("a,b\n1,2\n", read(downloadUtils.fetchFile(url, PREFIX, ".csv")));
+	}
+
+	@Test
+	public void testFetchFileTrustsFileWithoutManifestEntry() throws Exception {
+		URL url = url("/data.csv");
+		FileUtils.writeStringToFile(localFile(url), "cached", StandardCharsets.UTF_8);
+
+		assertEquals("cached", read(downloadUtils.fetchFile(url, PREFIX, ".csv")));
+		assertEquals(0, requests.size());
+	}
+
+	@Test
+	public void testFetchFileResumesInterruptedDownload() throws Exception {
+		String content = "0123456789abcdefghij";
+		serve("/big.csv", content, "\"v1\"");
+		truncateNextResponseAt = 8;
+
+		File file = downloadUtils.fetchFile(url("/big.csv"), PREFIX, ".csv");
+
+		assertEquals(content, read(file));
+		assertEquals(2, requests.size());
+		assertEquals("bytes=8-", requests.get(1).get("Range"));
+		assertEquals("\"v1\"", requests.get(1).get("If-Range"));
+		assertEquals(DigestUtils.sha256Hex(content), manifest().get(PREFIX + "/" + file.getName()).getSha256());
+	}
+
+	@Test
+	public void testFetchFileRestartsDownloadOfChangedResource() throws Exception {
+		URL url = url("/big.csv");
+		File partialFile = new File(localFile(url).getPath() + ".part");
+		FileUtils.writeStringToFile(partialFile, "01234567", StandardCharsets.UTF_8);
+		manifest().put(PREFIX + "/" + partialFile.getName(),
+				new DownloadManifest.Entry(url.toString(), "\"v0\"", null, -1, null));
+		serve("/big.csv", "new content", "\"v1\"");
+
+		assertEquals("new content", read(downloadUtils.fetchFile(url, PREFIX, ".csv")));
+		assertEquals("\"v0\"", requests.get(0).get("If-Range"));
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testFetchFileMissingResource() throws Exception {
+		downloadUtils.fetchFile(url("/missing.csv"), PREFIX, ".csv");
+	}
+
+	@Test
+	public void testFetchInputStreamReturnsCompleteFile() throws Exception {
+		serve("/data.json", "{\"a\":1}", null);
+
+		String json = IOUtils.toString(downloadUtils.fetchInputStream(url("/data.json"), PREFIX, ".json"),
+				StandardCharsets.UTF_8);
+
+		assertEquals("{\"a\":1}", json);
+		assertEquals("application/json", requests.get(0).get("Accept"));
+	}
+
+	@Test
+	public void testFetchInputStreamStoresTextCompressed() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		URL url = url("/data.csv");
+
+		assertEquals("a,b\n1,2\n", IOUtils.toString(downloadUtils.fetchInputStream(url, PREFIX, ".csv"),
+				StandardCharsets.UTF_8));
+		assertFalse(localFile(url).exists());
+		File compressedFile = new File(localFile(url).getPath() + ".gz");
+		assertTrue(compressedFile.exists());
+		assertTrue(manifest().get(PREFIX + "/" + compressedFile.getName()).isCompressed());
+
+		assertEquals("a,b\n1,2\n", IOUtils.toString(downloadUtils.fetchInputStream(url, PREFIX, ".csv"),
+				StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testFetchFileKeepsCompressedFile() throws Exception {
+		serve("/data.csv", "a,b\n1,2\n", "\"v1\"");
+		URL url = url("/data.csv");
+		downloadUtils.fetchInputStream(url, PREFIX, ".csv").close();
+
+		File file = downloadUtils.fetchFile(url, PREFIX, ".csv");
+
+		assertEquals("a,b\n1,2\n", read(file));
+		assertEquals(localFile(url).getName(), file.getName());
+		assertFalse(localFile(url).exists());
+		File compressedFile = new File(localFile(url).getPath() + ".gz");
+		assertTrue(compressedFile.exists());
+		assertTrue(manifest().get(PREFIX + "/" + compressedFile.getName()).isCompressed());
+		// The copy is reused while the cached content is the same
+		assertEquals(file, downloadUtils.fetchFile(url, PREFIX, ".csv"));
+		assertEquals("a,b\n1,2\n", IOUtils.toString(downloadUtils.fetchInputStream(url, PREFIX, ".csv"),
+				StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testFetchFileLinksIdenticalContent() throws Exception {
+		serve("/one.csv", "same content", "\"1\"");
+		serve("/two.csv", "same content", "\"2\"");
+
+		File one = downloadUtils.fetchFile(url("/one.csv"), PREFIX, ".csv");
+		File two = downloadUtils.fetchFile(url("/two.csv"), PREFIX, ".csv");
+
+		assertEquals("same content", read(two));
+		assertTrue(Files.isSameFile(one.toPath(), two.toPath()));
+		assertEquals(12, new DownloadCache(new File(folder.getRoot(), "TomboloData")).getSize());
+	}
+
+	@Test
+	public void testFetchFileEvictsLeastRecentlyUsedFiles() throws Exception {
+		serve("/new.csv", "0123456789", null);
+		File oldFile = new File(folder.getRoot(), "TomboloData/" + PREFIX + "/old.csv");
+		FileUtils.writeStringToFile(oldFile, "0123456789", StandardCharsets.UTF_8);
+		assertTrue(oldFile.setLastModified(System.currentTimeMillis() - 60000));
+		downloadUtils.setMaxCacheSize(15);
+
+		File file = downloadUtils.fetchFile(url("/new.csv"), PREFIX, ".csv");
+
+		assertTrue(file.exists());
+		assertFalse(oldFile.exists());
+	}
+
+	@Test
+	public void testFetchFilesKeepsOrder() throws Exception {
+		List<URL> urls = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			serve("/file" + i + ".csv", "content " + i, "\"" + i + "\"");
+			urls.add(url("/file" + i + ".csv"));
+		}
+		downloadUtils.setDownloadThreads(3);
+
+		List<File> files = downloadUtils.fetchFiles(urls, PREFIX, ".csv");
+
+		assertEquals(10, files.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals("content " + i, read(files.get(i)));
+		}
+	}
+
+	private void serve(String path, String content, String eTag) {
+		synchronized (contents) {
+			contents.put(path, content.getBytes(StandardCharsets.UTF_8));
+			eTags.put(path, eTag);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		Map<String, String> headers = headers(exchange);
+		requests.add(headers);
+		String path = exchange.getRequestURI().getPath();
+		byte[] content;
+		String eTag;
+		synchronized (contents) {
+			content = contents.get(path);
+			eTag = eTags.get(path);
+		}
+		if (content == null) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		if (eTag != null) {
+			exchange.getResponseHeaders().add("ETag", eTag);
+			if (eTag.equals(headers.get("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+		}
+
+		int start = 0;
+		String range = headers.get("Range");
+		if (range != null && eTag != null && eTag.equals(headers.get("If-Range"))) {
+			start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+			exchange.getResponseHeaders().add("Content-Range",
+					"bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+			exchange.sendResponseHeaders(206, content.length - start);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+
+		int end = content.length;
+		if (truncateNextResponseAt >= 0) {
+			end = truncateNextResponseAt;
+			truncateNextResponseAt = -1;
+		}
+		OutputStream out = exchange.getResponseBody();
+		out.write(content, start, end - start);
+		out.flush();
+		// Closing the exchange before the whole body is sent drops the connection
+		exchange.close();
+	}
+
+	private static Map<String, String> headers(HttpExchange exchange) {
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		exchange.getRequestHeaders().forEach((name, values) -> headers.put(name, values.get(0)));
+		return headers;
+	}
+
+	private URL url(String path) throws Exception {
+		return new URL("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	private File localFile(URL url) {
+		return new File(folder.getRoot(),
+				"TomboloData/" + PREFIX + "/" + UUID.nameUUIDFromBytes(url.toString().getBytes()) + ".csv");
+	}
+
+	private DownloadManifest manifest() throws IOException {
+		return DownloadManifest.forDirectory(new File(folder.getRoot(), "TomboloData"));
+	}
+
+	private static String read(File file) throws IOException {
+		return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+	}
+}
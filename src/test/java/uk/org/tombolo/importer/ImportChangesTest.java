@@ -0,0 +1,121 @@
+package uk.org.tombolo.importer;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.org.tombolo.AbstractTest;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.FixedValue;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.TimedValue;
+import uk.org.tombolo.core.utils.FixedValueUtils;
+import uk.org.tombolo.core.utils.TimedValueUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImportChangesTest extends AbstractTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.parse("2017-01-01T00:00");
+
+    private Subject subject;
+    private Attribute attribute;
+    private Attribute otherAttribute;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = TestFactory.makeNamedSubject("E01000001");
+        attribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+        otherAttribute = TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "other_attr_label");
+    }
+
+    @Test
+    public void testDeleteVanishedValues() throws Exception {
+        importValues("run", false, Arrays.asList(TIMESTAMP, TIMESTAMP.plusDays(1)), Arrays.asList(attribute, otherAttribute));
+
+        ImportChanges changes = importValues("run", false,
+                Collections.singletonList(TIMESTAMP), Collections.singletonList(attribute));
+
+        assertEquals(1, changes.getDeletedTimedValueCount());
+        assertEquals(1, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+        assertEquals(1, changes.getDeletedFixedValueCount());
+        assertNull(FixedValueUtils.getBySubjectAndAttribute(subject, otherAttribute));
+    }
+
+    @Test
+    public void testFirstRunDeletesNothing() throws Exception {
+        // As written by a first, non-differential import, which records no keys
+        TimedValueUtils.save(Arrays.asList(
+                new TimedValue(subject, attribute, TIMESTAMP, 1d),
+                new TimedValue(subject, attribute, TIMESTAMP.plusDays(1), 2d)));
+
+        ImportChanges changes = importValues("run", false,
+                Collections.singletonList(TIMESTAMP), Collections.singletonList(attribute));
+
+        assertEquals(0, changes.getDeletedTimedValueCount());
+        assertEquals(2, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+    }
+
+    @Test
+    public void testDeleteVanishedValuesOfTemporalScope() throws Exception {
+        // The scopes of an importer importing a year at a time write the same subjects and attributes
+        LocalDateTime previousYear = TIMESTAMP.minusYears(1);
+        importValues("2016", false, Collections.singletonList(previousYear), Collections.singletonList(attribute));
+        importValues("2017", false, Arrays.asList(TIMESTAMP, TIMESTAMP.plusDays(1)), Collections.singletonList(attribute));
+
+        ImportChanges changes = importValues("2017", false,
+                Collections.singletonList(TIMESTAMP), Collections.singletonList(attribute));
+
+        assertEquals(1, changes.getDeletedTimedValueCount());
+        List<TimedValue> timedValues = TimedValueUtils.getBySubjectAndAttribute(subject, attribute);
+        assertEquals(2, timedValues.size());
+        assertTrue(timedValues.stream().anyMatch(timedValue -> timedValue.getId().getTimestamp().equals(previousYear)));
+        assertEquals(0, importValues("2016", false, Collections.singletonList(previousYear),
+                Collections.singletonList(attribute)).getDeletedTimedValueCount());
+    }
+
+    @Test
+    public void testKeepValuesWrittenByOtherRuns() throws Exception {
+        importValues("first", false, Collections.singletonList(TIMESTAMP), Collections.singletonList(attribute));
+        importValues("second", false, Arrays.asList(TIMESTAMP, TIMESTAMP.plusDays(1)), Collections.singletonList(attribute));
+
+        ImportChanges changes = importValues("second", false,
+                Collections.singletonList(TIMESTAMP.plusDays(1)), Collections.singletonList(attribute));
+
+        assertEquals(0, changes.getDeletedTimedValueCount());
+        assertEquals(2, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+    }
+
+    @Test
+    public void testResumedRunKeepsWrittenKeys() throws Exception {
+        importValues("run", false, Arrays.asList(TIMESTAMP, TIMESTAMP.plusDays(1)), Collections.singletonList(attribute));
+        // A run that fails after writing the first timestamp, and the run resuming it
+        ImportChanges failed = new ImportChanges("run", false);
+        TimedValueUtils.saveChanges(
+                Collections.singletonList(new TimedValue(subject, attribute, TIMESTAMP, 1d)), failed.getRun());
+
+        ImportChanges resumed = importValues("run", true,
+                Collections.singletonList(TIMESTAMP.plusDays(1)), Collections.singletonList(attribute));
+
+        assertEquals(0, resumed.getDeletedTimedValueCount());
+        assertEquals(2, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+    }
+
+    private ImportChanges importValues(String run, boolean resumed, List<LocalDateTime> timestamps,
+                                       List<Attribute> attributes) {
+        ImportChanges changes = new ImportChanges(run, resumed);
+        for (LocalDateTime timestamp : timestamps) {
+            changes.addTimedValues(TimedValueUtils.saveChanges(
+                    Collections.singletonList(new TimedValue(subject, attribute, timestamp, 1d)), run));
+        }
+        for (Attribute fixedAttribute : attributes) {
+            changes.addFixedValues(FixedValueUtils.saveChanges(
+                    Collections.singletonList(new FixedValue(subject, fixedAttribute, "value")), run));
+        }
+        changes.deleteVanishedValues();
+        return changes;
+    }
+}
@@ -0,0 +1,66 @@
+package uk.org.tombolo.importer;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.org.tombolo.AbstractTest;
+import uk.org.tombolo.TestFactory;
+import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.Subject;
+import uk.org.tombolo.core.SubjectType;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ImportContextTest extends AbstractTest {
+    private SubjectType subjectType;
+    private ImportContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        subjectType = TestFactory.makeNamedSubjectType("lsoa");
+        TestFactory.makeNamedSubject("E01000001");
+        TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+        context = new ImportContext();
+    }
+
+    @Test
+    public void testGetSubject() throws Exception {
+        Subject subject = context.getSubject(subjectType, "E01000001");
+        assertEquals("E01000001", subject.getLabel());
+        assertSame(subject, context.getSubject(subjectType, "E01000001"));
+        assertNull(context.getSubject(subjectType, "E01999999"));
+    }
+
+    @Test
+    public void testGetSubjectSavedAfterLoading() throws Exception {
+        assertNull(context.getSubject(subjectType, "E01000002"));
+
+        Subject saved = TestFactory.makeNamedSubject("E01000002");
+        context.addSubjects(Collections.singletonList(saved));
+
+        assertSame(saved, context.getSubject(subjectType, "E01000002"));
+    }
+
+    @Test
+    public void testGetAttribute() throws Exception {
+        Attribute attribute = context.getAttribute(TestFactory.DEFAULT_PROVIDER, "attr_label");
+        assertEquals("attr_label", attribute.getLabel());
+        assertNull(context.getAttribute(TestFactory.DEFAULT_PROVIDER, "unknown_label"));
+
+        // Attributes saved after loading are looked up on their own
+        TestFactory.makeAttribute(TestFactory.DEFAULT_PROVIDER, "new_label");
+        assertEquals("new_label", context.getAttribute(TestFactory.DEFAULT_PROVIDER, "new_label").getLabel());
+    }
+
+    @Test
+    public void testReportUnknownLabels() throws Exception {
+        context.reportUnknownSubject(subjectType, "E01999999");
+        context.reportUnknownSubject(subjectType, "E01999999");
+        context.reportUnknownSubject(subjectType, "E01999998");
+        context.reportUnknownAttribute(TestFactory.DEFAULT_PROVIDER, "unknown_label");
+
+        assertEquals(2, context.getUnknownSubjectCount());
+        assertEquals(1, context.getUnknownAttributeCount());
+    }
+}
@@ -0,0 +1,95 @@
+package uk.org.tombolo.importer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ImportWriterTest {
+    private ImportWriter writer = new ImportWriter(1);
+
+    @After
+    public void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    public void testWritesInOrder() throws Exception {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            int batch = i;
+            writer.submit(() -> written.add(batch));
+        }
+        writer.flush();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), written);
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        writer.submit(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        blocked.await();
+        // The queue holds one write, so the third submit waits for the first write to be done
+        writer.submit(() -> {});
+        AtomicBoolean submitted = new AtomicBoolean();
+        Thread importer = new Thread(() -> {
+            writer.submit(() -> {});
+            submitted.set(true);
+        });
+        importer.start();
+        importer.join(200);
+        assertFalse(submitted.get());
+
+        release.countDown();
+        importer.join(TimeUnit.SECONDS.toMillis(10));
+        assertTrue(submitted.get());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AtomicBoolean dropped = new AtomicBoolean(true);
+        CountDownLatch queued = new CountDownLatch(1);
+        writer.submit(() -> {
+            try {
+                queued.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new IllegalArgumentException("Write failed");
+        });
+        writer.submit(() -> dropped.set(false));
+        queued.countDown();
+
+        try {
+            writer.flush();
+            fail("Failure was not thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Write failed", e.getMessage());
+        }
+        assertTrue(dropped.get());
+
+        try {
+            writer.submit(() -> {});
+            fail("Failure was not thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Write failed", e.getMessage());
+        }
+    }
+}
@@ -7,20 +7,25 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import uk.org.tombolo.AbstractTest;
 import uk.org.tombolo.core.Attribute;
+import uk.org.tombolo.core.DatabaseJournalEntry;
 import uk.org.tombolo.core.Provider;
 import uk.org.tombolo.core.Subject;
 import uk.org.tombolo.core.TimedValue;
 import uk.org.tombolo.core.utils.AttributeUtils;
+import uk.org.tombolo.core.utils.DatabaseJournal;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
 import uk.org.tombolo.core.utils.TimedValueUtils;
 import uk.org.tombolo.importer.ConfigurationException;
+import uk.org.tombolo.importer.utils.JournalEntryUtils;
 
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  *
@@ -124,6 +129,38 @@ public class TrafficCountImporterTest extends AbstractTest {
 		testTimedValue(subject, "CountHeavyGoodsVehicles", "2004-12-31T23:59:59", 1307.0);
 	}
 
+	@Test
+	public void testImportDatasourceResumesFromCheckpoint() throws Exception {
+		// An earlier run got as far as the 2015 counts, leaving the three 2016 ones
+		DatabaseJournalEntry entry = JournalEntryUtils.getJournalEntryForDatasourceId(
+				TrafficCountImporter.class.getCanonicalName(), "trafficCounts", Arrays.asList("London"), null, null);
+		DatabaseJournal.saveCheckpoint(entry, "London:33");
+
+		importer.importDatasource("trafficCounts", Arrays.asList("London"), null, null);
+		assertEquals(3, importer.getSubjectCount());
+		assertEquals(3 * TrafficCountImporter.CountAttribute.values().length, importer.getTimedValueCount());
+		assertNull(DatabaseJournal.getCheckpoint(entry));
+	}
+
+	@Test
+	public void testImportDatasourceAgainWritesChanges() throws Exception {
+		importer.importDatasource("trafficCounts", Arrays.asList("London"), null, null);
+		Subject subject = SubjectUtils.getSubjectByTypeAndLabel(SubjectTypeUtils.getSubjectTypeByProviderAndLabel(
+				importer.getProvider().getLabel(), "trafficCounter"), "DfT-TrafficCounter-6075");
+		Attribute attribute = AttributeUtils.getByProviderAndLabel(importer.getProvider(), "CountPedalCycles");
+		// A value changed and a value the data source no longer has, as written by an earlier run of the import
+		DatabaseJournalEntry entry = JournalEntryUtils.getJournalEntryForDatasourceId(
+				TrafficCountImporter.class.getCanonicalName(), "trafficCounts", Arrays.asList("London"), null, null);
+		TimedValueUtils.saveChanges(Arrays.asList(
+				new TimedValue(subject, attribute, LocalDateTime.parse("2004-12-31T23:59:59"), 1d),
+				new TimedValue(subject, attribute, LocalDateTime.parse("2020-12-31T23:59:59"), 1d)),
+				entry.getClassName() + ":" + entry.getKey());
+
+		importer.importDatasource("trafficCounts", Arrays.asList("London"), null, null, true);
+		testTimedValue(subject, "CountPedalCycles", "2004-12-31T23:59:59", 671.0);
+		assertEquals(9, TimedValueUtils.getBySubjectAndAttribute(subject, attribute).size());
+	}
+
 	@Test
 	public void testImportDatasourceVolumeAberdeenCity() throws Exception {
 		importer.importDatasource("trafficVolume", Arrays.asList("Aberdeen City"), null, null);
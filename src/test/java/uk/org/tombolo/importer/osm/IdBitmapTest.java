@@ -0,0 +1,40 @@
+package uk.org.tombolo.importer.osm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IdBitmapTest {
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        IdBitmap bitmap = new IdBitmap();
+        long[] ids = {0, 63, 64, 65535, 65536, 5000000000L};
+        for (long id : ids) {
+            bitmap.add(id);
+        }
+        bitmap.add(63);
+
+        for (long id : ids) {
+            assertTrue(bitmap.contains(id));
+        }
+        assertFalse(bitmap.contains(1));
+        assertFalse(bitmap.contains(65537));
+        assertFalse(bitmap.contains(4999999999L));
+        assertEquals(ids.length, bitmap.cardinality());
+    }
+
+    @Test
+    public void testPagesAllocatedOnDemand() throws Exception {
+        IdBitmap bitmap = new IdBitmap();
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.getMemorySize());
+
+        for (long id = 1000000; id < 1010000; id++) {
+            bitmap.add(id);
+        }
+
+        assertEquals(10000, bitmap.cardinality());
+        assertEquals(8192, bitmap.getMemorySize());
+    }
+}
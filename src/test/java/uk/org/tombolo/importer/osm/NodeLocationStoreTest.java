@@ -0,0 +1,70 @@
+package uk.org.tombolo.importer.osm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NodeLocationStoreTest {
+    private NodeLocationStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new NodeLocationStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        store.put(10, -2.7160749, 52.0563539);
+        store.put(12, 0.0000001, -0.0000001);
+        store.put(15, 179.9999999, -89.9999999);
+
+        assertEquals(3, store.size());
+        long index = store.indexOf(10);
+        assertEquals(52.0563539, store.getLatitude(index), 1e-9);
+        assertEquals(-2.7160749, store.getLongitude(index), 1e-9);
+        index = store.indexOf(15);
+        assertEquals(-89.9999999, store.getLatitude(index), 1e-9);
+        assertEquals(179.9999999, store.getLongitude(index), 1e-9);
+        assertEquals(-1, store.indexOf(11));
+        assertEquals(-1, store.indexOf(16));
+    }
+
+    @Test
+    public void testLookupUnsorted() throws Exception {
+        long[] ids = {5, 3, 9, 1, 7, 2, 8};
+        for (long id : ids) {
+            store.put(id, id / 10d, -id / 10d);
+        }
+
+        for (long id : ids) {
+            long index = store.indexOf(id);
+            assertEquals(id / 10d, store.getLongitude(index), 1e-9);
+            assertEquals(-id / 10d, store.getLatitude(index), 1e-9);
+        }
+        assertEquals(-1, store.indexOf(4));
+    }
+
+    @Test
+    public void testLookupAcrossChunks() throws Exception {
+        // More than the 4M records of a chunk
+        int count = (1 << 22) + 1000;
+        for (int id = 0; id < count; id++) {
+            store.put(id * 2L, (id % 360) - 180, (id % 180) - 90);
+        }
+
+        for (int id : new int[]{0, (1 << 22) - 1, 1 << 22, count - 1}) {
+            long index = store.indexOf(id * 2L);
+            assertEquals(id, index);
+            assertEquals((id % 360) - 180, store.getLongitude(index), 1e-9);
+            assertEquals((id % 180) - 90, store.getLatitude(index), 1e-9);
+        }
+        assertEquals(-1, store.indexOf(count * 2L + 1));
+    }
+}
@@ -0,0 +1,28 @@
+package uk.org.tombolo.importer.osm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OSMCategoryFilterTest {
+
+    @Test
+    public void testMatches() throws Exception {
+        OSMCategoryFilter filter = OSMCategoryFilter.forDatasource("OSMGreenspace");
+
+        assertTrue(filter.matches("natural", "wood"));
+        assertTrue(filter.matches("leisure", "park"));
+        assertFalse(filter.matches("natural", "water"));
+        assertFalse(filter.matches("highway", "park"));
+    }
+
+    @Test
+    public void testMatchesWildcard() throws Exception {
+        OSMCategoryFilter filter = OSMCategoryFilter.forDatasource("OSMLanduse");
+
+        assertTrue(filter.matches("landuse", "forest"));
+        assertTrue(filter.matches("landuse", "anything"));
+        assertFalse(filter.matches("natural", "wood"));
+    }
+}
@@ -0,0 +1,28 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OSMEntityRegistryTest {
+
+    @Test
+    public void testClaim() throws Exception {
+        OSMEntityRegistry registry = new OSMEntityRegistry();
+        Node node = new Node(42, -2.7, 52.0);
+        Way way = new Way(42, new TLongArrayList(new long[]{1, 2}));
+
+        assertFalse(registry.isImported(node));
+        assertTrue(registry.claim(node));
+        assertTrue(registry.isImported(node));
+        assertFalse(registry.claim(new Node(42, -2.8, 52.1)));
+
+        // Entities of different types can have the same id
+        assertFalse(registry.isImported(way));
+        assertTrue(registry.claim(way));
+        assertEquals(2, registry.size());
+    }
+}
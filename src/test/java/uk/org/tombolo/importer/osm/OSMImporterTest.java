@@ -13,11 +13,13 @@ import uk.org.tombolo.core.utils.AttributeUtils;
 import uk.org.tombolo.core.utils.FixedValueUtils;
 import uk.org.tombolo.core.utils.SubjectTypeUtils;
 import uk.org.tombolo.core.utils.SubjectUtils;
+import uk.org.tombolo.importer.ConfigurationException;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -100,6 +102,50 @@ public class OSMImporterTest extends AbstractTest {
         testFixedValue(osm2, "source", "OS_OpenData_VectorMapDistrict");
     }
 
+    @Test
+    public void importDatasourceSequentially() throws Exception {
+        importer.configure(properties(OSMImporter.PROP_THREADS, "1"));
+        importer.importDatasource("OSMGreenspace", Arrays.asList("europe/great-britain/england/herefordshire"),
+                Collections.emptyList(), null);
+
+        SubjectType subjectType = SubjectTypeUtils.getSubjectTypeByProviderAndLabel("org.openstreetmap","OSMEntity");
+        Subject osm3 = SubjectUtils.getSubjectByTypeAndLabel(subjectType, "osm126115156");
+        assertEquals("Putson Coppice", osm3.getName());
+        testFixedValue(osm3, "natural", "wood");
+
+        Subject osm4 = SubjectUtils.getSubjectByTypeAndLabel(subjectType, "osm1101245");
+        assertEquals(MultiPolygon.class, osm4.getShape().getClass());
+        testFixedValue(osm4, "type", "multipolygon");
+    }
+
+    @Test
+    public void importDatasourceKeepingAllNodes() throws Exception {
+        importer.configure(properties(OSMImporter.PROP_TWO_PASS, "false"));
+        importer.importDatasource("OSMGreenspace", Arrays.asList("europe/great-britain/england/herefordshire"),
+                Collections.emptyList(), null);
+
+        SubjectType subjectType = SubjectTypeUtils.getSubjectTypeByProviderAndLabel("org.openstreetmap","OSMEntity");
+        Subject osm2 = SubjectUtils.getSubjectByTypeAndLabel(subjectType, "osm363465081");
+        testFixedValue(osm2, "landuse", "forest");
+
+        Subject osm4 = SubjectUtils.getSubjectByTypeAndLabel(subjectType, "osm1101245");
+        assertEquals(MultiPolygon.class, osm4.getShape().getClass());
+    }
+
+    @Test
+    public void importDatasourceRegionsOnce() throws Exception {
+        List<String> area = Arrays.asList("europe/great-britain/england/herefordshire");
+        importer.importDatasource("OSMGreenspace", area, Collections.emptyList(), null);
+        int subjectCount = importer.getSubjectCount();
+
+        // The entities of a region listed twice are all in both regions, and only imported once
+        OSMImporter regionsImporter = new OSMImporter();
+        mockDownloadUtils(regionsImporter);
+        regionsImporter.importDatasource("OSMGreenspace", Arrays.asList(area.get(0), area.get(0)),
+                Collections.emptyList(), null);
+        assertEquals(subjectCount, regionsImporter.getSubjectCount());
+    }
+
     private void testFixedValue(Subject subject, String attributeLabel, String value) {
         Attribute attribute = AttributeUtils.getByProviderAndLabel(importer.getProvider(), attributeLabel);
         FixedValue fixedValue = FixedValueUtils.getBySubjectAndAttribute(subject, attribute);
@@ -120,4 +166,15 @@ public class OSMImporterTest extends AbstractTest {
         Geometry geometry = (Geometry) method.invoke(handler, new GeometryCollection(geometries, factory));
         assertEquals("Point", geometry.getGeometryType());
     }
+
+    @Test(expected = ConfigurationException.class)
+    public void testConfigureRejectsInvalidThreads() throws Exception {
+        importer.configure(properties(OSMImporter.PROP_REGION_THREADS, "four"));
+    }
+
+    private static Properties properties(String name, String value) {
+        Properties properties = new Properties();
+        properties.setProperty(name, value);
+        return properties;
+    }
 }
@@ -0,0 +1,70 @@
+package uk.org.tombolo.importer.osm;
+
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.impl.Relation;
+import de.topobyte.osm4j.core.model.impl.RelationMember;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import gnu.trove.list.array.TLongArrayList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class OSMReferenceScannerTest {
+    private static final OSMCategoryFilter FILTER = OSMCategoryFilter.forDatasource("OSMGreenspace");
+
+    private final Way wood = new Way(1, new TLongArrayList(new long[]{10, 11, 12, 10}),
+            Collections.singletonList(new Tag("natural", "wood")));
+    private final Way road = new Way(2, new TLongArrayList(new long[]{20, 21}),
+            Collections.singletonList(new Tag("highway", "primary")));
+    private final Way outer = new Way(3, new TLongArrayList(new long[]{30, 31, 32, 30}),
+            Collections.emptyList());
+
+    @Test
+    public void testScanWays() throws Exception {
+        OSMReferenceScanner scanner = new OSMReferenceScanner(FILTER);
+        scan(scanner);
+
+        assertTrue(scanner.isComplete());
+        assertTrue(scanner.getWays().contains(1));
+        assertFalse(scanner.getWays().contains(2));
+        assertEquals(3, scanner.getNodes().cardinality());
+        assertTrue(scanner.getNodes().contains(12));
+        assertFalse(scanner.getNodes().contains(20));
+    }
+
+    @Test
+    public void testScanRelationMembers() throws Exception {
+        Relation forest = new Relation(4, Arrays.asList(
+                new RelationMember(3, EntityType.Way, "outer"),
+                new RelationMember(1, EntityType.Way, "inner")),
+                Arrays.asList(new Tag("type", "multipolygon"), new Tag("landuse", "forest")));
+        OSMReferenceScanner scanner = new OSMReferenceScanner(FILTER);
+        scan(scanner, forest);
+
+        // The nodes of the outer way are only known after scanning the ways again
+        assertFalse(scanner.isComplete());
+        assertTrue(scanner.getWays().contains(3));
+        assertFalse(scanner.getNodes().contains(30));
+
+        scan(scanner, forest);
+
+        assertTrue(scanner.isComplete());
+        assertEquals(2, scanner.getWays().cardinality());
+        assertEquals(6, scanner.getNodes().cardinality());
+        assertTrue(scanner.getNodes().contains(30));
+    }
+
+    private void scan(OSMReferenceScanner scanner, Relation... relations) {
+        scanner.handle(wood);
+        scanner.handle(road);
+        scanner.handle(outer);
+        for (Relation relation : relations) {
+            scanner.handle(relation);
+        }
+        scanner.complete();
+    }
+}
@@ -0,0 +1,71 @@
+package uk.org.tombolo.importer.osm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PbfBlobReaderTest {
+
+    @Test
+    public void testNext() throws Exception {
+        byte[] headerFrame = frame("OSMHeader", new byte[]{1, 2, 3});
+        byte[] dataFrame = frame("OSMData", new byte[300]);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(headerFrame);
+        file.write(dataFrame);
+
+        try (PbfBlobReader reader = new PbfBlobReader(new ByteArrayInputStream(file.toByteArray()))) {
+            PbfBlobReader.Blob header = reader.next();
+            assertTrue(header.isHeader());
+            assertArrayEquals(headerFrame, header.getFrame());
+
+            PbfBlobReader.Blob data = reader.next();
+            assertEquals("OSMData", data.getType());
+            assertFalse(data.isHeader());
+            assertArrayEquals(dataFrame, data.getFrame());
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNextTruncated() throws Exception {
+        byte[] frame = frame("OSMData", new byte[100]);
+        try (PbfBlobReader reader = new PbfBlobReader(new ByteArrayInputStream(Arrays.copyOf(frame, 50)))) {
+            reader.next();
+        }
+    }
+
+    // Frames the data as in a PBF file, with index data and a data size of more than one varint byte
+    private static byte[] frame(String type, byte[] data) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        header.write(0x0a);
+        header.write(typeBytes.length);
+        header.write(typeBytes);
+        header.write(0x12);
+        header.write(2);
+        header.write(new byte[]{7, 7});
+        header.write(0x18);
+        int size = data.length;
+        while (size >= 0x80) {
+            header.write((size & 0x7f) | 0x80);
+            size >>>= 7;
+        }
+        header.write(size);
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(frame);
+        output.writeInt(header.size());
+        output.write(header.toByteArray());
+        output.write(data);
+        return frame.toByteArray();
+    }
+}
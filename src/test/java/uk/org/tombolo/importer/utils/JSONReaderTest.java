@@ -3,11 +3,11 @@ package uk.org.tombolo.importer.utils;
 import org.junit.Before;
 import org.junit.Test;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class JSONReaderTest {
 
@@ -61,4 +61,39 @@ public class JSONReaderTest {
         assertEquals("Suburban", reader.conditionalResults("@SiteType", "@SiteCode", "BG1").get(0).get(0));
 
     }
+
+    @Test
+    public void testReadSectionsMatchesGetData() throws Exception {
+        List<LinkedHashMap<String, List<String>>> streamed = new ArrayList<>();
+        new JSONReader(getClass().getClassLoader().getResourceAsStream("utility-resources/air_quality_test_data.json"))
+                .readSections(streamed::add);
+
+        assertEquals(sections, streamed);
+    }
+
+    @Test
+    public void testReadSectionsWithTags() throws Exception {
+        String json = "{\"Sites\": [{\"code\": \"A\", \"name\": \"First\", \"values\": [1, 2.50]}, " +
+                "{\"code\": \"B\", \"name\": \"Second\", \"values\": [3]}]}";
+        List<LinkedHashMap<String, List<String>>> streamed = new ArrayList<>();
+        new JSONReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Arrays.asList("code", "values"))
+                .readSections(streamed::add);
+
+        assertEquals(2, streamed.size());
+        assertEquals(Arrays.asList("A"), streamed.get(0).get("code"));
+        assertEquals(Arrays.asList("1", "2.50"), streamed.get(0).get("values"));
+        assertEquals(Arrays.asList("3"), streamed.get(1).get("values"));
+        assertFalse(streamed.get(1).containsKey("name"));
+    }
+
+    @Test
+    public void testSectionIteratorReadsLazily() throws Exception {
+        // The document is cut short, which the parser only notices after the first two sections
+        String json = "[{\"code\": \"A\"}, {\"code\": \"B\"}, {\"code\": \"C\"}, {\"code\": ";
+        Iterator<LinkedHashMap<String, List<String>>> iterator =
+                new JSONReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))).sectionIterator();
+
+        assertEquals(Arrays.asList("A"), iterator.next().get("code"));
+        assertEquals(Arrays.asList("B"), iterator.next().get("code"));
+    }
 }
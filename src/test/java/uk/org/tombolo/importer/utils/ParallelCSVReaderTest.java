@@ -0,0 +1,151 @@
+package uk.org.tombolo.importer.utils;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelCSVReaderTest {
+    private File file;
+    private ParallelCSVReader reader = new ParallelCSVReader(4);
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("records", ".csv");
+        // Chunks of a few bytes cut the file after almost every record
+        reader.setChunkSize(16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            csv.append("E0").append(i).append(',').append(i * 0.5).append("\r\n");
+        }
+        write(csv.toString());
+
+        List<String> labels = new ArrayList<>();
+        reader.read(file, CSVFormat.DEFAULT, (CSVRecord record, List<String> values) -> values.add(record.get(0)),
+                chunk -> labels.addAll(chunk.getValues()));
+
+        assertEquals(1000, labels.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("E0" + i, labels.get(i));
+        }
+    }
+
+    @Test
+    public void testReadQuotedLineFeeds() throws Exception {
+        String csv = "label,description\n"
+                + "E01,\"first line\nsecond line\"\n"
+                + "\"E\"\"02\",\"a \"\"quoted\"\"\n, and a comma\"\n"
+                + "E03,\"\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\"\n"
+                + "E04,last without line feed";
+        write(csv);
+
+        List<List<String>> records = new ArrayList<>();
+        reader.read(file, CSVFormat.DEFAULT, (CSVRecord record, List<List<String>> values) -> values.add(values(record)),
+                chunk -> records.addAll(chunk.getValues()));
+
+        List<List<String>> expected = new ArrayList<>();
+        for (CSVRecord record : CSVParser.parse(csv, CSVFormat.DEFAULT)) {
+            expected.add(values(record));
+        }
+        assertEquals(5, expected.size());
+        assertEquals(expected, records);
+    }
+
+    @Test
+    public void testReadWithHeader() throws Exception {
+        write("\uFEFFlabel,value\nE01,1\nE02,2\nE03,3\nE04,4\nE05,5\n");
+
+        List<String> values = new ArrayList<>();
+        List<Long> firstRecordNumbers = new ArrayList<>();
+        reader.read(file, CSVFormat.DEFAULT.withFirstRecordAsHeader(),
+                (CSVRecord record, List<String> chunkValues) ->
+                        chunkValues.add(record.get("label") + "=" + record.get("value")),
+                chunk -> {
+                    values.addAll(chunk.getValues());
+                    firstRecordNumbers.add(chunk.getFirstRecordNumber());
+                    assertEquals(chunk.getValues().size(), chunk.getRecordCount());
+                });
+
+        assertEquals(Arrays.asList("E01=1", "E02=2", "E03=3", "E04=4", "E05=5"), values);
+        // The parser counts the header as the first record
+        assertEquals(Long.valueOf(2), firstRecordNumbers.get(0));
+        assertEquals(Arrays.asList("label", "value"), ParallelCSVReader.readHeader(file, CSVFormat.DEFAULT));
+    }
+
+    @Test
+    public void testReadWithRepeatedHeaderNames() throws Exception {
+        write("label,,,label\nE01,1,2,3\n");
+
+        List<String> values = new ArrayList<>();
+        reader.read(file, CSVFormat.DEFAULT.withFirstRecordAsHeader(),
+                (CSVRecord record, List<String> chunkValues) -> chunkValues.add(record.get(3)),
+                chunk -> values.addAll(chunk.getValues()));
+
+        assertEquals(Arrays.asList("3"), values);
+    }
+
+    @Test
+    public void testReadEmpty() throws Exception {
+        write("");
+
+        List<String> values = new ArrayList<>();
+        reader.read(file, CSVFormat.DEFAULT.withFirstRecordAsHeader(), (CSVRecord record, List<String> chunkValues) -> {},
+                chunk -> values.addAll(chunk.getValues()));
+
+        assertTrue(values.isEmpty());
+        assertTrue(ParallelCSVReader.readHeader(file, CSVFormat.DEFAULT).isEmpty());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testConverterException() throws Exception {
+        write("1\n2\nthree\n4\n");
+
+        reader.read(file, CSVFormat.DEFAULT, (CSVRecord record, List<Integer> values) ->
+                values.add(Integer.valueOf(record.get(0))), chunk -> {});
+    }
+
+    @Test
+    public void testFindRecordEnd() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap("a,\"b\nc\"\nd,\\\ne\nf".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(8, ParallelCSVReader.findRecordEnd(buffer, 0, '"', null));
+        assertEquals(12, ParallelCSVReader.findRecordEnd(buffer, 9, '"', null));
+        // An escaped line feed does not end the record
+        assertEquals(14, ParallelCSVReader.findRecordEnd(buffer, 9, '"', '\\'));
+        assertEquals(-1, ParallelCSVReader.findRecordEnd(buffer, 16, '"', '\\'));
+    }
+
+    private static List<String> values(CSVRecord record) {
+        List<String> values = new ArrayList<>();
+        record.forEach(values::add);
+        return values;
+    }
+
+    private void write(String csv) throws Exception {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(csv.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package uk.org.tombolo.importer.utils;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.org.tombolo.importer.utils.extraction.RowCellExtractor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamingXlsxReaderTest {
+    private File file;
+    private StreamingXlsxReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("workbook", ".xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file)) {
+            workbook.createSheet("first").createRow(0).createCell(0).setCellValue("first");
+            Sheet sheet = workbook.createSheet("second");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("label");
+            header.createCell(1).setCellValue("value");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("E01000001");
+            row.createCell(1).setCellValue(5.5d);
+            row.createCell(3).setCellValue(true);
+            row.createCell(4).setCellFormula("B2*2");
+            row.getCell(4).setCellValue(11d);
+            // Missing rows are skipped, as by the sheet iterator
+            Row last = sheet.createRow(4);
+            last.createCell(0).setCellValue("E01000002");
+            last.createCell(1).setCellValue("--");
+            last.createCell(2);
+            workbook.write(out);
+        }
+        reader = new StreamingXlsxReader(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.close();
+        file.delete();
+    }
+
+    @Test
+    public void testGetSheetNames() throws Exception {
+        assertEquals(Arrays.asList("first", "second"), reader.getSheetNames());
+    }
+
+    @Test
+    public void testReadSheet() throws Exception {
+        List<SheetRow> rows = new ArrayList<>();
+        reader.readSheet(1, row -> rows.add(row));
+
+        assertEquals(3, rows.size());
+        assertEquals(Arrays.asList(0, 1, 4), Arrays.asList(rows.get(0).getRowNum(), rows.get(1).getRowNum(),
+                rows.get(2).getRowNum()));
+
+        SheetRow row = rows.get(1);
+        assertEquals(5, row.getLastCellNum());
+        assertEquals(CellType.STRING, row.getCellType(0));
+        assertEquals("E01000001", row.getStringCellValue(0));
+        assertEquals(CellType.NUMERIC, row.getCellType(1));
+        assertEquals(5.5d, row.getNumericCellValue(1), 0d);
+        assertEquals("5.5", row.getCellText(1));
+        assertNull(row.getCellType(2));
+        assertNull(row.getCellText(2));
+        assertTrue(row.getBooleanCellValue(3));
+        assertEquals("TRUE", row.getFormattedCellValue(3));
+        // Formulas are read as their cached result
+        assertEquals(CellType.NUMERIC, row.getCellType(4));
+        assertEquals(11d, row.getNumericCellValue(4), 0d);
+
+        assertEquals(CellType.BLANK, rows.get(2).getCellType(2));
+        assertEquals("", rows.get(2).getCellText(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadWrongType() throws Exception {
+        List<SheetRow> rows = new ArrayList<>();
+        reader.readSheet("second", row -> rows.add(row));
+
+        rows.get(2).getNumericCellValue(1);
+    }
+
+    @Test
+    public void testReadSheetByName() throws Exception {
+        List<String> labels = new ArrayList<>();
+        reader.readSheet("first", row -> labels.add(row.getStringCellValue(0)));
+
+        assertEquals(Arrays.asList("first"), labels);
+    }
+
+    @Test
+    public void testStopReading() throws Exception {
+        List<SheetRow> rows = new ArrayList<>();
+        reader.readSheet("second", row -> {
+            rows.add(row);
+            return false;
+        });
+
+        assertEquals(1, rows.size());
+        assertEquals("label", rows.get(0).getStringCellValue(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHandlerException() throws Exception {
+        reader.readSheet(1, row -> {
+            throw new UnsupportedOperationException();
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadMissingSheet() throws Exception {
+        reader.readSheet("third", row -> true);
+    }
+
+    @Test
+    public void testExtractCells() throws Exception {
+        RowCellExtractor extractor = new RowCellExtractor(1, CellType.NUMERIC);
+        List<String> values = new ArrayList<>();
+        reader.readSheet(1, row -> {
+            extractor.setRow(row);
+            if (row.getRowNum() == 1)
+                values.add(extractor.extract());
+            return true;
+        });
+
+        assertEquals(Arrays.asList("5.5"), values);
+    }
+}
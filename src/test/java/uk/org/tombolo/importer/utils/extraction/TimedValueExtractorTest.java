@@ -8,8 +8,10 @@ import uk.org.tombolo.TestFactory;
 import uk.org.tombolo.core.Provider;
 import uk.org.tombolo.core.TimedValue;
 import uk.org.tombolo.core.TimedValueId;
+import uk.org.tombolo.importer.ImportContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class TimedValueExtractorTest extends AbstractExtractorTest {
 
@@ -61,6 +63,35 @@ public class TimedValueExtractorTest extends AbstractExtractorTest {
         assertEquals(6.0d, value2.getValue(), 0.01d);
     }
 
+    @Test
+    public void extractWithImportContext() throws Exception {
+        Workbook workbook = makeDummyWorkbook();
+        ImportContext context = new ImportContext();
+        extractor.setImportContext(context);
+
+        subjectLabelExtractor.setRow(workbook.getSheet("sheet").getRow(0));
+        valueExtractor.setRow(workbook.getSheet("sheet").getRow(0));
+        TimedValue value = extractor.extract();
+        assertEquals("E01000001", value.getId().getSubject().getLabel());
+        assertEquals(5.0d, value.getValue(), 0.01d);
+
+        TimedValueExtractor unknownExtractor = new TimedValueExtractor(
+                provider,
+                TestFactory.makeNamedSubjectType("lsoa"),
+                new ConstantExtractor("E01999999"),
+                new ConstantExtractor("Attribute"),
+                new ConstantExtractor("2016"),
+                valueExtractor
+        );
+        unknownExtractor.setImportContext(context);
+        try {
+            unknownExtractor.extract();
+            fail("Expected an unknown subject");
+        } catch (UnknownSubjectLabelException e) {
+            assertEquals(1, context.getUnknownSubjectCount());
+        }
+    }
+
     @Test
     public void getValueExtractor() throws Exception {
         assertEquals(valueExtractor, extractor.getValueExtractor());